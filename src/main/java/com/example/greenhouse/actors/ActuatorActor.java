@@ -1,44 +1,110 @@
 package com.example.greenhouse.actors;
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.PreRestart;
 import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.device.ActuatorDevice;
+import com.example.greenhouse.device.ActuatorSettings;
 
 import java.time.Duration;
 
+/**
+ * Drives one device through an {@link ActuatorLink}: requested positions are coalesced, rate-limited,
+ * acknowledged and retried there. In lightweight mode the greenhouse hosts the links itself instead.
+ */
 public class ActuatorActor extends AbstractBehavior<ActuatorActor.Command> {
 
     public enum Type { Fan, Heater, Irrigation }
 
     public interface Command {}
+    // Free-form commands of the demos; on/off ones are mapped to Switch, the rest are only logged
     public static final class Execute implements Command { public final String command; public Execute(String command){this.command=command;} }
+    // Sent by the greenhouse only when the position is to change (and once on start, to sync the device)
+    public static final class Switch implements Command { public final boolean on; public Switch(boolean on){this.on=on;} }
+
+    public static final class GetStats implements Command {
+        public final ActorRef<Stats> replyTo;
+        public GetStats(ActorRef<Stats> replyTo) { this.replyTo = replyTo; }
+    }
+
+    // requested - sent positions were coalesced away; acked counts first sends and resends alike
+    public static final class Stats {
+        public final long requested;
+        public final long sent;
+        public final long retries;
+        public final long acked;
+        public final long failed;
+        public final boolean confirmed;
+        public final boolean on;
+        public Stats(long requested, long sent, long retries, long acked, long failed, boolean confirmed, boolean on) {
+            this.requested = requested; this.sent = sent; this.retries = retries; this.acked = acked; this.failed = failed;
+            this.confirmed = confirmed; this.on = on;
+        }
+    }
 
     private final String greenhouseId;
     private final Type type;
+    private final ActuatorLink link;
 
     public static Behavior<Command> create(String greenhouseId, Type type) {
-        Behavior<Command> behavior = Behaviors.setup(ctx -> new ActuatorActor(ctx, greenhouseId, type));
+        return create(greenhouseId, type, (g, t) -> ActuatorDevice.loopback(), ActuatorSettings.immediate());
+    }
+
+    public static Behavior<Command> create(String greenhouseId, Type type, ActuatorDevice.Factory devices, ActuatorSettings settings) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> new ActuatorActor(ctx, greenhouseId, type, devices.open(greenhouseId, type), settings));
         // Restart on power/transient failures (limited retries), stop on mechanical failures would be modeled via exceptions
         return Behaviors.supervise(behavior)
                 .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 0.2));
     }
 
-    private ActuatorActor(ActorContext<Command> ctx, String greenhouseId, Type type) {
+    private ActuatorActor(ActorContext<Command> ctx, String greenhouseId, Type type, ActuatorDevice device, ActuatorSettings settings) {
         super(ctx);
         this.greenhouseId = greenhouseId;
         this.type = type;
+        this.link = new ActuatorLink(greenhouseId, type, device, settings, ActuatorLink.host(ctx, signal -> signal));
     }
 
     @Override
     public Receive<Command> createReceive() {
         return newReceiveBuilder()
                 .onMessage(Execute.class, this::onExecute)
+                .onMessage(Switch.class, this::onSwitch)
+                .onMessage(ActuatorLink.Signal.class, this::onSignal)
+                .onMessage(GetStats.class, this::onGetStats)
+                // A restart opens the device again
+                .onSignal(PostStop.class, signal -> onStop())
+                .onSignal(PreRestart.class, signal -> onStop())
                 .build();
     }
 
     private Behavior<Command> onExecute(Execute exec) {
         getContext().getLog().info("[{}:{}] Executing: {}", greenhouseId, type, exec.command);
+        if (exec.command.equals("TURN_ON") || exec.command.startsWith("START_")) return onSwitch(new Switch(true));
+        if (exec.command.equals("TURN_OFF") || exec.command.startsWith("STOP_")) return onSwitch(new Switch(false));
+        getContext().getLog().warn("[{}:{}] unsupported command {}", greenhouseId, type, exec.command);
+        return this;
+    }
+
+    private Behavior<Command> onSwitch(Switch sw) {
+        link.request(sw.on);
         return this;
     }
-}
 
+    private Behavior<Command> onSignal(ActuatorLink.Signal signal) {
+        link.onSignal(signal);
+        return this;
+    }
+
+    private Behavior<Command> onGetStats(GetStats get) {
+        get.replyTo.tell(link.stats());
+        return this;
+    }
+
+    private Behavior<Command> onStop() {
+        link.close();
+        return this;
+    }
+}
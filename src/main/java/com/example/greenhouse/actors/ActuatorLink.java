@@ -0,0 +1,222 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.typed.javadsl.ActorContext;
+import com.example.greenhouse.device.ActuatorDevice;
+import com.example.greenhouse.device.ActuatorSettings;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Command pipeline to one device, as plain state: requested positions are coalesced over the coalesce
+ * window and sent at most at the device's command rate, one command in flight at a time; a command that
+ * is not acknowledged within the ack timeout is resent with the same sequence number (the device applies
+ * it once) up to max-retries, or replaced by a new one if the requested position changed meanwhile.
+ * After max-retries the requested position stays pending and is sent again on the longer recovery
+ * backoff, so a device that was unreachable for a while still ends up where the greenhouse decided.
+ * Hosted by an {@link ActuatorActor}, or by the greenhouse itself in lightweight mode; either way the
+ * host hands the {@link Signal}s it schedules back to {@link #onSignal}.
+ */
+final class ActuatorLink {
+
+    /** What the link needs of the actor it lives in. */
+    interface Host {
+        void scheduleOnce(Duration delay, Signal signal);
+        void pipeToSelf(CompletionStage<ActuatorDevice.Ack> reply, BiFunction<ActuatorDevice.Ack, Throwable, Signal> adapt);
+        Logger log();
+    }
+
+    static <T> Host host(ActorContext<T> ctx, Function<Signal, T> wrap) {
+        return new Host() {
+            @Override
+            public void scheduleOnce(Duration delay, Signal signal) { ctx.scheduleOnce(delay, ctx.getSelf(), wrap.apply(signal)); }
+
+            @Override
+            public void pipeToSelf(CompletionStage<ActuatorDevice.Ack> reply, BiFunction<ActuatorDevice.Ack, Throwable, Signal> adapt) {
+                ctx.pipeToSelf(reply, (ack, failure) -> wrap.apply(adapt.apply(ack, failure)));
+            }
+
+            @Override
+            public Logger log() { return ctx.getLog(); }
+        };
+    }
+
+    // Timers are not cancelled: a signal for anything but the current transmission is ignored
+    static final class Signal implements ActuatorActor.Command, GreenhouseActor.Command, ControlFirstMailbox.Internal {
+        static final int FLUSH = 0, REPLY = 1, ACK_TIMEOUT = 2, RETRY = 3;
+
+        final ActuatorActor.Type type;
+        final int what;
+        final long seq;
+        final long transmission;
+        final ActuatorDevice.Ack ack;
+        final Throwable failure;
+
+        Signal(ActuatorActor.Type type, int what, long seq, long transmission, ActuatorDevice.Ack ack, Throwable failure) {
+            this.type = type; this.what = what; this.seq = seq; this.transmission = transmission; this.ack = ack; this.failure = failure;
+        }
+    }
+
+    private final String greenhouseId;
+    private final ActuatorActor.Type type;
+    private final ActuatorDevice device;
+    private final ActuatorSettings settings;
+    private final Host host;
+    private final long minIntervalNanos;
+    private boolean hasTarget;
+    private boolean target;
+    private boolean flushPending;
+    // Position the device last acknowledged
+    private boolean confirmed;
+    private boolean confirmedOn;
+    // Sequence numbers start from the clock so they keep increasing across restarts of the host
+    private long nextSeq = System.currentTimeMillis() * 1_000;
+    private long inFlight; // 0: nothing in flight
+    private boolean inFlightOn;
+    private long transmission;
+    private int attempts;
+    private int giveUps; // since the device last acknowledged a command
+    private long lastSentNanos;
+    private long requested;
+    private long sent;
+    private long retries;
+    private long acked;
+    private long failed;
+
+    ActuatorLink(String greenhouseId, ActuatorActor.Type type, ActuatorDevice device, ActuatorSettings settings, Host host) {
+        this.greenhouseId = greenhouseId;
+        this.type = type;
+        this.device = device;
+        this.settings = settings;
+        this.host = host;
+        this.minIntervalNanos = settings.minIntervalNanos();
+        this.lastSentNanos = System.nanoTime() - minIntervalNanos;
+    }
+
+    void request(boolean on) {
+        requested++;
+        hasTarget = true;
+        target = on;
+        scheduleFlush(settings.coalesceWindow.toNanos());
+    }
+
+    void onSignal(Signal signal) {
+        switch (signal.what) {
+            case Signal.FLUSH -> {
+                flushPending = false;
+                flush();
+            }
+            case Signal.REPLY -> onDeviceReply(signal);
+            case Signal.ACK_TIMEOUT -> {
+                if (signal.transmission == transmission && inFlight != 0) retryOrGiveUp("no ack within " + settings.ackTimeout.toMillis() + " ms");
+            }
+            case Signal.RETRY -> onRetry(signal);
+            default -> throw new IllegalArgumentException("unknown actuator signal " + signal.what);
+        }
+    }
+
+    void close() {
+        device.close();
+    }
+
+    ActuatorActor.Stats stats() {
+        return new ActuatorActor.Stats(requested, sent, retries, acked, failed, confirmed, confirmedOn);
+    }
+
+    // While a command is in flight nothing else goes out; its ack schedules the next flush if still needed
+    private void scheduleFlush(long delayNanos) {
+        if (inFlight != 0 || flushPending) return;
+        long delay = Math.max(delayNanos, lastSentNanos + minIntervalNanos - System.nanoTime());
+        if (delay <= 0) {
+            flush();
+        } else {
+            flushLater(delay);
+        }
+    }
+
+    private void flushLater(long delayNanos) {
+        flushPending = true;
+        host.scheduleOnce(Duration.ofNanos(delayNanos), new Signal(type, Signal.FLUSH, 0, 0, null, null));
+    }
+
+    private void flush() {
+        if (inFlight != 0 || flushPending || !hasTarget || (confirmed && confirmedOn == target)) return;
+        long wait = lastSentNanos + minIntervalNanos - System.nanoTime();
+        if (wait > 0) {
+            flushLater(wait);
+            return;
+        }
+        attempts = 0;
+        sent++;
+        transmit(nextSeq++, target);
+    }
+
+    private void transmit(long seq, boolean on) {
+        inFlight = seq;
+        inFlightOn = on;
+        long t = ++transmission;
+        lastSentNanos = System.nanoTime();
+        host.pipeToSelf(device.send(new ActuatorDevice.Command(seq, on)), (ack, failure) -> new Signal(type, Signal.REPLY, seq, t, ack, failure));
+        host.scheduleOnce(settings.ackTimeout, new Signal(type, Signal.ACK_TIMEOUT, seq, t, null, null));
+    }
+
+    private void onDeviceReply(Signal reply) {
+        // A late reply to a command already given up on or resent under a new number
+        if (reply.seq != inFlight) return;
+        if (reply.failure != null) {
+            // Only the current transmission's failure counts; an earlier one was already retried
+            if (reply.transmission == transmission) retryOrGiveUp(reply.failure.getMessage());
+            return;
+        }
+        inFlight = 0;
+        transmission++; // its ack timeout no longer applies
+        acked++;
+        giveUps = 0;
+        if (!confirmed || confirmedOn != reply.ack.on) {
+            host.log().info("[{}:{}] Switched {}", greenhouseId, type, reply.ack.on ? "on" : "off");
+        }
+        confirmed = true;
+        confirmedOn = reply.ack.on;
+        if (target != confirmedOn) scheduleFlush(0);
+    }
+
+    private void retryOrGiveUp(String why) {
+        long t = ++transmission; // neither the ack timeout nor a reply of the failed attempt counts any more
+        if (attempts < settings.maxRetries) {
+            attempts++;
+            host.log().debug("[{}:{}] command #{} failed ({}), retry {}", greenhouseId, type, inFlight, why, attempts);
+            host.scheduleOnce(settings.retryBackoff, new Signal(type, Signal.RETRY, inFlight, t, null, null));
+            return;
+        }
+        // Pending until acknowledged: the greenhouse has recorded the switch and will not ask for it again
+        long backoff = Math.min(settings.recoveryBackoffMax.toNanos(), settings.recoveryBackoff.toNanos() << Math.min(giveUps, 20));
+        giveUps++;
+        host.log().warn("[{}:{}] command #{} failed after {} attempts ({}), sending again in {} ms", greenhouseId, type, inFlight, attempts + 1,
+                why, backoff / 1_000_000);
+        failed++;
+        inFlight = 0;
+        confirmed = false; // unknown until the next command is acknowledged
+        flushLater(backoff);
+    }
+
+    // Same number if the request still stands, so a device that did apply it does not apply it again
+    private void onRetry(Signal retry) {
+        if (retry.seq != inFlight || retry.transmission != transmission) return;
+        long wait = lastSentNanos + minIntervalNanos - System.nanoTime();
+        if (wait > 0) {
+            host.scheduleOnce(Duration.ofNanos(wait), retry);
+            return;
+        }
+        retries++;
+        if (target == inFlightOn) {
+            transmit(inFlight, inFlightOn);
+        } else {
+            attempts = 0;
+            sent++;
+            transmit(nextSeq++, target);
+        }
+    }
+}
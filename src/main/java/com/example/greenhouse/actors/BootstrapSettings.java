@@ -0,0 +1,24 @@
+package com.example.greenhouse.actors;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Startup of the region/site/greenhouse hierarchy, read from {@code greenhouse.bootstrap}. */
+public final class BootstrapSettings {
+
+    /** Greenhouses are registered with routing but only spawned when their first message arrives. */
+    public final boolean lazy;
+    /** Sensor ingest starts after this long even if not every region has reported ready. */
+    public final Duration timeout;
+
+    public BootstrapSettings(boolean lazy, Duration timeout) {
+        this.lazy = lazy;
+        this.timeout = timeout;
+    }
+
+    public static BootstrapSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.bootstrap");
+        return new BootstrapSettings(c.getBoolean("lazy"), c.getDuration("timeout"));
+    }
+}
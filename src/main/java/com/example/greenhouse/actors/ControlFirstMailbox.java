@@ -0,0 +1,235 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Dropped;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mailbox of greenhouse and actuator actors, configured in {@code greenhouse.control.mailbox}. Control and
+ * lifecycle messages (decisions, switches, initialization, recovery, sensor health) are dequeued first,
+ * then the actor's own {@link Internal} messages (timers, device replies), then everything else (queries),
+ * then readings, each in arrival order. Readings are bounded per kind, counted in readings rather than
+ * messages: when more than {@code readings-per-kind} of a kind are queued, the oldest of that kind are
+ * dropped, taken out of the batches holding them, so a burst costs stale readings rather than memory or
+ * control latency, and the other kinds of a batch still arrive. Control and other messages are bounded by
+ * {@code capacity}; beyond it new ones are dropped. Drops are published as {@link Dropped} and show up as
+ * dead letters. Internal messages are never dropped: the actor waits for each one it scheduled. Nor is a
+ * passivation {@link GreenhouseActor.Stop}, which leaves in arrival order with the readings, so none routed
+ * before it are lost.
+ */
+public final class ControlFirstMailbox implements MailboxType, ProducesMessageQueue<ControlFirstMailbox.Queue> {
+
+    private static final int KINDS = SensorActor.Kind.count();
+    // Readings of a kind this build does not know share one more bound
+    private static final int UNKNOWN = KINDS;
+
+    /** What an actor sends itself, a timer or a piped reply it keeps a flag for until it arrives. */
+    interface Internal {}
+
+    private static final int CONTROL = 0, INTERNAL = 1, OTHER = 2, READINGS = 3;
+
+    private final int capacity;
+    private final int readingsPerKind;
+
+    public ControlFirstMailbox(ActorSystem.Settings settings, Config config) {
+        this(config.getInt("capacity"), config.getInt("readings-per-kind"));
+    }
+
+    public ControlFirstMailbox(int capacity, int readingsPerKind) {
+        if (capacity < 1 || readingsPerKind < 1) throw new IllegalArgumentException("mailbox capacity and readings-per-kind must be positive");
+        this.capacity = capacity;
+        this.readingsPerKind = readingsPerKind;
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        return new Queue(capacity, readingsPerKind, system.isDefined() ? system.get() : null);
+    }
+
+    /** Control, internal, other or reading lane; a passivation Stop goes with the readings. */
+    static int laneOf(Object message) {
+        if (message instanceof Internal) return INTERNAL;
+        if (message instanceof GreenhouseActor.Stop || message instanceof GreenhouseActor.SensorReading || message instanceof SensorBatch) {
+            return READINGS;
+        }
+        if (message instanceof GreenhouseActor.ControlDecision || message instanceof GreenhouseActor.Initialize
+                || message instanceof GreenhouseActor.SensorHealth || message instanceof JournalManager.Recovered
+                || message instanceof ActuatorActor.Switch || message instanceof ActuatorActor.Execute) {
+            return CONTROL;
+        }
+        return OTHER;
+    }
+
+    private static int kindOf(GreenhouseActor.SensorReading reading) {
+        SensorActor.Kind kind = SensorActor.Kind.fromWire(reading.kind);
+        return kind == null ? UNKNOWN : kind.ordinal();
+    }
+
+    // One lock per actor: enqueues come from many threads but are short, and there is only ever one dequeuer
+    public static final class Queue implements MessageQueue, UnboundedMessageQueueSemantics {
+
+        private final int capacity;
+        private final int readingsPerKind;
+        private final ActorSystem system; // null outside an actor system (tests)
+        private final ArrayDeque<Envelope> control = new ArrayDeque<>();
+        private final ArrayDeque<Envelope> internal = new ArrayDeque<>();
+        private final ArrayDeque<Envelope> other = new ArrayDeque<>();
+        // Readings of all kinds, single or in batches, and Stop, in arrival order
+        private final ArrayDeque<Envelope> readings = new ArrayDeque<>();
+        // Per kind: readings queued, and while superseding, how many of the oldest are still to go
+        private final int[] queued = new int[KINDS + 1];
+        private final int[] excess = new int[KINDS + 1];
+        // Envelopes looked at while superseding, put back in front afterwards
+        private final ArrayDeque<Envelope> kept = new ArrayDeque<>();
+        private long dropped;
+
+        Queue(int capacity, int readingsPerKind, ActorSystem system) {
+            this.capacity = capacity;
+            this.readingsPerKind = readingsPerKind;
+            this.system = system;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            Envelope drop = null;
+            String reason = null;
+            List<Envelope> superseded = null;
+            synchronized (this) {
+                int lane = laneOf(handle.message());
+                if (lane == INTERNAL) {
+                    internal.addLast(handle);
+                } else if (lane < READINGS) {
+                    if (control.size() + other.size() >= capacity) {
+                        drop = handle;
+                        reason = "greenhouse mailbox full";
+                        dropped++;
+                    } else {
+                        (lane == CONTROL ? control : other).addLast(handle);
+                    }
+                } else {
+                    readings.addLast(handle);
+                    if (count(handle.message(), 1)) superseded = supersede();
+                }
+            }
+            if (system == null) return;
+            if (drop != null) system.eventStream().publish(new Dropped(drop.message(), reason, drop.sender(), receiver));
+            if (superseded != null) {
+                for (Envelope e : superseded) {
+                    system.eventStream().publish(new Dropped(e.message(), "superseded by newer readings of the same kind", e.sender(), receiver));
+                }
+            }
+        }
+
+        // Adds the readings of a message to (or with -1 takes them from) the per-kind counts; true if a kind is over its bound
+        private boolean count(Object message, int sign) {
+            boolean over = false;
+            if (message instanceof SensorBatch) {
+                SensorBatch batch = (SensorBatch) message;
+                for (int i = 0; i < batch.size; i++) over |= (queued[batch.kind[i]] += sign) > readingsPerKind;
+            } else if (message instanceof GreenhouseActor.SensorReading) {
+                over = (queued[kindOf((GreenhouseActor.SensorReading) message)] += sign) > readingsPerKind;
+            }
+            return over;
+        }
+
+        // Takes the oldest readings of every kind over its bound out of the lane: whole messages, or the readings of
+        // those kinds out of a batch, whose other readings stay where they were. Returns what was dropped
+        private List<Envelope> supersede() {
+            int toDrop = 0;
+            for (int k = 0; k <= KINDS; k++) {
+                excess[k] = Math.max(0, queued[k] - readingsPerKind);
+                toDrop += excess[k];
+            }
+            List<Envelope> superseded = new ArrayList<>();
+            // The newest message is in the lane as well, so this ends before it runs dry
+            while (toDrop > 0) {
+                Envelope e = readings.pollFirst();
+                Object message = e.message();
+                if (message instanceof GreenhouseActor.SensorReading) {
+                    int k = kindOf((GreenhouseActor.SensorReading) message);
+                    if (excess[k] > 0) {
+                        excess[k]--;
+                        queued[k]--;
+                        toDrop--;
+                        dropped++;
+                        superseded.add(e);
+                    } else {
+                        kept.addLast(e);
+                    }
+                } else if (message instanceof SensorBatch && holdsExcess((SensorBatch) message)) {
+                    SensorBatch batch = (SensorBatch) message;
+                    SensorBatch.Builder keep = new SensorBatch.Builder(batch.size);
+                    SensorBatch.Builder gone = new SensorBatch.Builder(batch.size);
+                    for (int i = 0; i < batch.size; i++) {
+                        int k = batch.kind[i];
+                        if (excess[k] > 0) {
+                            excess[k]--;
+                            queued[k]--;
+                            toDrop--;
+                            gone.add(batch.greenhouse[i], k, batch.value[i], batch.timestamp[i]);
+                        } else {
+                            keep.add(batch.greenhouse[i], k, batch.value[i], batch.timestamp[i]);
+                        }
+                    }
+                    dropped += gone.size();
+                    if (keep.size() == 0) {
+                        superseded.add(e);
+                    } else {
+                        kept.addLast(e.copy(keep.build(), e.sender()));
+                        superseded.add(e.copy(gone.build(), e.sender()));
+                    }
+                } else {
+                    kept.addLast(e);
+                }
+            }
+            while (!kept.isEmpty()) readings.addFirst(kept.pollLast());
+            return superseded;
+        }
+
+        private boolean holdsExcess(SensorBatch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                if (excess[batch.kind[i]] > 0) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public synchronized Envelope dequeue() {
+            Envelope e = control.pollFirst();
+            if (e != null) return e;
+            e = internal.pollFirst();
+            if (e != null) return e;
+            e = other.pollFirst();
+            if (e != null) return e;
+            e = readings.pollFirst();
+            if (e != null) count(e.message(), -1);
+            return e;
+        }
+
+        @Override
+        public synchronized int numberOfMessages() { return control.size() + internal.size() + other.size() + readings.size(); }
+
+        @Override
+        public synchronized boolean hasMessages() { return numberOfMessages() > 0; }
+
+        /** Dropped so far: control and other messages, and superseded readings one by one, batched or not. */
+        public synchronized long dropped() { return dropped; }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            Envelope e;
+            while ((e = dequeue()) != null) deadLetters.enqueue(owner, e);
+        }
+    }
+}
@@ -2,9 +2,22 @@ package com.example.greenhouse.actors;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.Terminated;
 import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.journal.GreenhouseState;
+import com.example.greenhouse.validation.SensorValidator;
+import com.example.greenhouse.validation.ValidationSettings;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class DataProcessingManager extends AbstractBehavior<DataProcessingManager.Command> {
@@ -18,6 +31,33 @@ public class DataProcessingManager extends AbstractBehavior<DataProcessingManage
         public RegisterGreenhouse(String greenhouseId, ActorRef<GreenhouseActor.Command> ref) { this.greenhouseId = greenhouseId; this.ref = ref; }
     }
 
+    // A greenhouse of a lazily bootstrapped site: not spawned yet, its site spawns it when its first message arrives
+    public static final class RegisterDormant implements Command {
+        public final String greenhouseId;
+        public final String name;
+        public final ActorRef<SiteManager.Command> site;
+        public RegisterDormant(String greenhouseId, String name, ActorRef<SiteManager.Command> site) {
+            this.greenhouseId = greenhouseId; this.name = name; this.site = site;
+        }
+    }
+
+    // An idle greenhouse asks to be stopped: from here on its messages are held, and it is told to Stop
+    public static final class Passivate implements Command {
+        public final String greenhouseId;
+        public final ActorRef<GreenhouseActor.Command> ref;
+        public final ActorRef<SiteManager.Command> site; // respawns it when a message for it arrives
+        public Passivate(String greenhouseId, ActorRef<GreenhouseActor.Command> ref, ActorRef<SiteManager.Command> site) {
+            this.greenhouseId = greenhouseId; this.ref = ref; this.site = site;
+        }
+    }
+
+    // Last word of a stopping greenhouse: its state, unless the journal has it (null)
+    public static final class Passivated implements Command {
+        public final String greenhouseId;
+        public final GreenhouseState snapshot;
+        public Passivated(String greenhouseId, GreenhouseState snapshot) { this.greenhouseId = greenhouseId; this.snapshot = snapshot; }
+    }
+
     // Stream envelope representing sensor data from Kafka (stubbed)
     public static final class SensorEnvelope implements Command {
         public final String greenhouseId;
@@ -26,42 +66,675 @@ public class DataProcessingManager extends AbstractBehavior<DataProcessingManage
         public SensorEnvelope(String greenhouseId, String kind, double value) { this.greenhouseId = greenhouseId; this.kind = kind; this.value = value; }
     }
 
+    // Backpressured ingest: replyTo is acked once every reading of the batch has been routed. Sent to a worker, not the
+    // sharded tier's front; the batch holds only the worker's greenhouses
+    public static final class Ingest implements Command {
+        public final SensorBatch batch;
+        public final ActorRef<IngestAck> replyTo;
+        public Ingest(SensorBatch batch, ActorRef<IngestAck> replyTo) { this.batch = batch; this.replyTo = replyTo; }
+    }
+
+    public static final class IngestAck {
+        public final int readings;
+        public IngestAck(int readings) { this.readings = readings; }
+    }
+
+    // Replies with the routing workers, for producers that send readings to them directly
+    public static final class GetShards implements Command {
+        public final ActorRef<Shards> replyTo;
+        public GetShards(ActorRef<Shards> replyTo) { this.replyTo = replyTo; }
+    }
+
+    // Subscribers get every batch a shard routes (single envelopes as one-reading batches), e.g. storage
+    public static final class Subscribe implements Command {
+        public final ActorRef<SensorBatch> subscriber;
+        public Subscribe(ActorRef<SensorBatch> subscriber) { this.subscriber = subscriber; }
+    }
+
+    // Replies with what was parked for greenhouses not registered yet, summed over the shards
+    public static final class GetParkingStats implements Command {
+        public final ActorRef<ParkingStats> replyTo;
+        public GetParkingStats(ActorRef<ParkingStats> replyTo) { this.replyTo = replyTo; }
+    }
+
+    // Readings, not messages: a parked batch counts with its size
+    public static final class ParkingStats {
+        public final long waiting; // parked now
+        public final long parked;
+        public final long replayed;
+        public final long expired;
+        public final long dropped; // over the per-greenhouse or greenhouse limit
+        public ParkingStats(long waiting, long parked, long replayed, long expired, long dropped) {
+            this.waiting = waiting; this.parked = parked; this.replayed = replayed; this.expired = expired; this.dropped = dropped;
+        }
+        public ParkingStats plus(ParkingStats o) {
+            return new ParkingStats(waiting + o.waiting, parked + o.parked, replayed + o.replayed, expired + o.expired, dropped + o.dropped);
+        }
+        public String toString() {
+            return waiting + " waiting, " + parked + " parked, " + replayed + " replayed, " + expired + " expired, " + dropped + " dropped";
+        }
+    }
+
+    private enum SweepParking implements Command { INSTANCE }
+
     // Generic ingest logging (optional)
     public static final class IngestMetric implements Command { public final String source; public final String payload; public IngestMetric(String source, String payload){this.source=source;this.payload=payload;} }
 
-    public static Behavior<Command> create() { return Behaviors.setup(DataProcessingManager::new); }
+    /** What a routing tier does besides routing, and the directory numbering its greenhouses; each with method returns a copy. */
+    public static final class Options {
+        public final GreenhouseDirectory directory;
+        public final LatestValueTable latest; // null: not kept
+        public final ValidationSettings validation; // null: readings are routed unchecked
+        public final ParkingSettings parking; // null: readings for unregistered greenhouses are dropped
+
+        private Options(GreenhouseDirectory directory, LatestValueTable latest, ValidationSettings validation, ParkingSettings parking) {
+            this.directory = directory; this.latest = latest; this.validation = validation; this.parking = parking;
+        }
+
+        public static Options of(GreenhouseDirectory directory) { return new Options(directory, null, null, null); }
+
+        /**
+         * Records every routed reading in {@code latest}. Every shard writes the rows of its own greenhouses
+         * only, which is the single writer per row the table requires.
+         */
+        public Options withLatest(LatestValueTable latest) { return new Options(directory, latest, validation, parking); }
+
+        /**
+         * Validates readings before anything else sees them: rejected ones are dropped, and greenhouses are
+         * told when one of their sensors is quarantined or released. Every shard validates its own greenhouses.
+         */
+        public Options withValidation(ValidationSettings validation) { return new Options(directory, latest, validation, parking); }
+
+        /**
+         * Holds readings for a greenhouse that is not registered yet, up to the settings' limits and ttl, and
+         * ingests them in order when it registers.
+         */
+        public Options withParking(ParkingSettings parking) { return new Options(directory, latest, validation, parking); }
+    }
+
+    /**
+     * The routing workers of a tier, as answered to {@link GetShards}. Readings of a greenhouse must go to
+     * the worker owning it ({@link #forGreenhouse}); a batch to a worker holds only its greenhouses, which
+     * a {@link Splitter} takes care of.
+     */
+    public static final class Shards {
+        private final List<ActorRef<Command>> refs;
+        private final GreenhouseDirectory directory;
+
+        public Shards(List<ActorRef<Command>> refs, GreenhouseDirectory directory) {
+            this.refs = List.copyOf(refs);
+            this.directory = directory;
+        }
+
+        public int count() { return refs.size(); }
+
+        public ActorRef<Command> get(int shard) { return refs.get(shard); }
+
+        public ActorRef<Command> forGreenhouse(String greenhouseId) { return refs.get(shardFor(greenhouseId, refs.size())); }
 
-    private final Map<String, ActorRef<GreenhouseActor.Command>> registry = new HashMap<>();
+        /** A new splitter; each is used by one thread (or stream stage) at a time. */
+        public Splitter splitter() { return new Splitter(this); }
 
-    private DataProcessingManager(ActorContext<Command> ctx) { super(ctx); }
+        /** Splits batches into per-shard parts, hashing each greenhouse id once rather than once per reading. */
+        public static final class Splitter {
+            private final Shards shards;
+            // Shard + 1 of each directory index, 0 until its first reading
+            private int[] shardOfIndex = new int[0];
+            // Scratch space, reused across batches
+            private int[] shardOfReading = new int[0];
+            private final int[] perShard;
+            private final SensorBatch.Builder[] builders;
+
+            private Splitter(Shards shards) {
+                this.shards = shards;
+                this.perShard = new int[shards.count()];
+                this.builders = new SensorBatch.Builder[shards.count()];
+            }
+
+            /** Parts in shard order, readings in batch order within each; a batch owned by one shard is not copied. */
+            public List<Part> split(SensorBatch batch) {
+                int n = shards.count();
+                if (n == 1) return List.of(new Part(0, batch));
+                if (shardOfReading.length < batch.size) shardOfReading = new int[Math.max(batch.size, 2 * shardOfReading.length)];
+                Arrays.fill(perShard, 0);
+                for (int i = 0; i < batch.size; i++) {
+                    int s = shardOf(batch.greenhouse[i]);
+                    shardOfReading[i] = s;
+                    perShard[s]++;
+                }
+                List<Part> parts = new ArrayList<>();
+                for (int s = 0; s < n; s++) {
+                    if (perShard[s] == batch.size) return List.of(new Part(s, batch));
+                    if (perShard[s] > 0) builders[s] = new SensorBatch.Builder(perShard[s]);
+                }
+                for (int i = 0; i < batch.size; i++) {
+                    builders[shardOfReading[i]].add(batch.greenhouse[i], batch.kind[i], batch.value[i], batch.timestamp[i]);
+                }
+                for (int s = 0; s < n; s++) {
+                    if (builders[s] != null) parts.add(new Part(s, builders[s].build()));
+                    builders[s] = null;
+                }
+                return parts;
+            }
+
+            private int shardOf(int index) {
+                int s = index < shardOfIndex.length ? shardOfIndex[index] - 1 : -1;
+                if (s >= 0) return s;
+                String greenhouseId = shards.directory.idAt(index);
+                s = shardFor(greenhouseId, shards.count());
+                if (greenhouseId == null) return s;
+                if (index >= shardOfIndex.length) shardOfIndex = Arrays.copyOf(shardOfIndex, Math.max(index + 1, 2 * shardOfIndex.length));
+                shardOfIndex[index] = s + 1;
+                return s;
+            }
+        }
+
+        public static final class Part {
+            public final int shard;
+            public final SensorBatch batch;
+            Part(int shard, SensorBatch batch) { this.shard = shard; this.batch = batch; }
+        }
+    }
+
+    /** Single routing worker holding the whole registry. */
+    public static Behavior<Command> create() { return create(1, new GreenhouseDirectory()); }
+
+    /**
+     * Sharded ingest tier: spawns {@code shards} routing workers, each owning the greenhouses
+     * {@link #shardFor} maps to it. The returned actor only forwards registration and passivation to the
+     * owner and fans out subscriptions and stats; readings are sent to the owning worker directly (ask it
+     * for the {@link Shards}), so no single mailbox carries all ingest. A greenhouse always lands on the
+     * same worker, so per-greenhouse ordering is kept while routing work is spread across cores.
+     */
+    public static Behavior<Command> create(int shards) { return create(shards, new GreenhouseDirectory()); }
+
+    public static Behavior<Command> create(int shards, GreenhouseDirectory directory) { return create(shards, Options.of(directory)); }
+
+    /** One shard or fewer: a single worker, without the router in front. */
+    public static Behavior<Command> create(int shards, Options options) {
+        if (shards <= 1) return Behaviors.setup(ctx -> new DataProcessingManager(ctx, options));
+        return Behaviors.setup(ctx -> new ShardRouter(ctx, shards, options));
+    }
+
+    /** Stable shard for a greenhouse id; String.hashCode is specified, so this holds across restarts. */
+    public static int shardFor(String greenhouseId, int shards) {
+        if (greenhouseId == null) return 0;
+        int h = greenhouseId.hashCode();
+        h ^= (h >>> 16); // spread the high bits, ids often differ only in the trailing digits
+        return Math.floorMod(h * 0x9E3779B1, shards);
+    }
+
+    // Revival is a round trip to the site and the journal, so only a short burst needs holding back: in readings,
+    // single or batched, so what is held does not depend on how they arrive
+    private static final int REVIVAL_BUFFER = 1000;
+    private static final long DROP_WARNING_INTERVAL_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private final GreenhouseDirectory directory;
+    private final LatestValueTable latest; // null when not kept
+    private final SensorValidator validator; // null: readings are routed unchecked
+    private final SensorValidator.Listener health = this::onSensorHealth;
+    // Registry indexed by directory index; a shard only fills the slots of its own greenhouses
+    @SuppressWarnings("unchecked")
+    private ActorRef<GreenhouseActor.Command>[] registry = new ActorRef[64];
+
+    // Passivated (or stopping, or not spawned yet) greenhouses by directory index, with what arrived for them meanwhile
+    private Dormant[] dormant = new Dormant[64];
+    private int dormantCount;
+
+    // Readings for greenhouses not registered yet, by id (they may not be in the directory either), oldest first
+    private final ParkingSettings parking; // null: dropped
+    private final Map<String, ArrayDeque<Parked>> parked = new HashMap<>();
+    private long parkedWaiting;
+    private long parkedTotal;
+    private long replayed;
+    private long expired;
+    private long parkingDropped;
+    private boolean sweepPending;
+    private long warnedAt = System.nanoTime() - DROP_WARNING_INTERVAL_NANOS;
+    private long missesSinceWarning;
+    // Readings that arrived for a reviving greenhouse with its buffer full
+    private long revivalDropped;
+    private long revivalDroppedWarned;
+
+    private final List<ActorRef<SensorBatch>> subscribers = new ArrayList<>();
+
+    // Scratch space for splitting batches per greenhouse, reused across messages
+    private int[] perGreenhouseCount = new int[64];
+    private int[] touched = new int[64];
+
+    private DataProcessingManager(ActorContext<Command> ctx, Options options) {
+        super(ctx);
+        this.directory = options.directory;
+        this.parking = options.parking;
+        this.latest = options.latest;
+        this.validator = options.validation == null ? null : new SensorValidator(options.validation, SensorActor.Kind.count());
+    }
 
     @Override
     public Receive<Command> createReceive() {
         return newReceiveBuilder()
                 .onMessage(RegisterGreenhouse.class, this::onRegister)
+                .onMessage(RegisterDormant.class, this::onRegisterDormant)
+                .onMessage(Passivate.class, this::onPassivate)
+                .onMessage(Passivated.class, this::onPassivated)
                 .onMessage(SensorEnvelope.class, this::onSensorEnvelope)
+                .onMessage(SensorBatch.class, this::onSensorBatch)
+                .onMessage(Ingest.class, this::onIngestBatch)
+                .onMessage(GetShards.class, this::onGetShards)
+                .onMessage(Subscribe.class, this::onSubscribe)
+                .onMessage(GetParkingStats.class, this::onGetParkingStats)
+                .onMessageEquals(SweepParking.INSTANCE, this::onSweepParking)
                 .onMessage(IngestMetric.class, this::onIngest)
+                .onSignal(Terminated.class, this::onSubscriberTerminated)
                 .build();
     }
 
+    private Behavior<Command> onSubscribe(Subscribe msg) {
+        subscribers.add(msg.subscriber);
+        getContext().watch(msg.subscriber);
+        return this;
+    }
+
+    private Behavior<Command> onSubscriberTerminated(Terminated terminated) {
+        subscribers.removeIf(s -> s.equals(terminated.getRef()));
+        return this;
+    }
+
+    private void publish(SensorBatch batch) {
+        for (int i = 0; i < subscribers.size(); i++) subscribers.get(i).tell(batch);
+    }
+
+    private Behavior<Command> onIngestBatch(Ingest msg) {
+        onSensorBatch(msg.batch);
+        msg.replyTo.tell(new IngestAck(msg.batch.size));
+        return this;
+    }
+
+    // A single worker is the only shard of its tier
+    private Behavior<Command> onGetShards(GetShards get) {
+        get.replyTo.tell(new Shards(List.of(getContext().getSelf()), directory));
+        return this;
+    }
+
     private Behavior<Command> onRegister(RegisterGreenhouse reg) {
         getContext().getLog().info("[data] registered greenhouse {}", reg.greenhouseId);
-        registry.put(reg.greenhouseId, reg.ref);
+        int idx = directory.register(reg.greenhouseId);
+        if (idx >= registry.length) registry = Arrays.copyOf(registry, Math.max(idx + 1, registry.length * 2));
+        registry[idx] = reg.ref;
+        Dormant d = dormant(idx);
+        if (d != null) {
+            // Revived: what was held goes first, and it hears again which of its sensors are quarantined
+            dormant[idx] = null;
+            dormantCount--;
+            getContext().getLog().debug("[data] revived greenhouse {}, delivering {} held readings", reg.greenhouseId, d.heldReadings);
+            if (validator != null) {
+                for (SensorActor.Kind kind : SensorActor.Kind.values()) {
+                    if (validator.isQuarantined(idx, kind.ordinal())) {
+                        reg.ref.tell(new GreenhouseActor.SensorHealth(kind, false, "quarantined before revival"));
+                    }
+                }
+            }
+            if (d.buffer != null) d.buffer.forEach(reg.ref::tell);
+        }
+        replayParked(reg.greenhouseId, reg.ref);
         return this;
     }
 
-    private Behavior<Command> onSensorEnvelope(SensorEnvelope env) {
-        var target = registry.get(env.greenhouseId);
+    private Behavior<Command> onPassivate(Passivate p) {
+        int idx = directory.indexOf(p.greenhouseId);
+        if (idx < 0) return this;
+        Dormant d = dormant(idx);
+        if (d == null) {
+            if (!p.ref.equals(target(idx))) return this; // superseded by a newer registration
+            hold(idx, new Dormant(p.site, p.ref.path().name()));
+            registry[idx] = null;
+        } else if (d.stopped) {
+            return this;
+        }
+        // Again if it asks again, having restarted before the first Stop reached it
+        p.ref.tell(new GreenhouseActor.Stop());
+        return this;
+    }
+
+    private Behavior<Command> onRegisterDormant(RegisterDormant reg) {
+        int idx = directory.register(reg.greenhouseId);
+        if (target(idx) != null || dormant(idx) != null) return this;
+        Dormant d = new Dormant(reg.site, reg.name);
+        d.stopped = true;
+        hold(idx, d);
+        return this;
+    }
+
+    private void hold(int idx, Dormant d) {
+        if (idx >= dormant.length) dormant = Arrays.copyOf(dormant, Math.max(idx + 1, dormant.length * 2));
+        dormant[idx] = d;
+        dormantCount++;
+    }
+
+    private Behavior<Command> onPassivated(Passivated p) {
+        int idx = directory.indexOf(p.greenhouseId);
+        Dormant d = dormant(idx);
+        if (d == null || d.stopped) return this;
+        d.stopped = true;
+        d.snapshot = p.snapshot;
+        getContext().getLog().debug("[data] greenhouse {} passivated ({} passivated in this shard)", p.greenhouseId, dormantCount);
+        if (d.buffer != null) revive(idx, d);
+        return this;
+    }
+
+    // The site spawns it again under the same name; it registers and gets what was held
+    private void revive(int idx, Dormant d) {
+        d.reviving = true;
+        d.site.tell(new SiteManager.Revive(directory.idAt(idx), d.name, d.snapshot));
+        d.snapshot = null;
+    }
+
+    private ActorRef<GreenhouseActor.Command> target(int idx) {
+        return idx >= 0 && idx < registry.length ? registry[idx] : null;
+    }
+
+    private Dormant dormant(int idx) {
+        return idx >= 0 && idx < dormant.length ? dormant[idx] : null;
+    }
+
+    // To the greenhouse, or held for it while it is passivated; false if it never registered
+    private boolean send(int idx, GreenhouseActor.Command msg) {
+        var target = target(idx);
         if (target != null) {
-            target.tell(new GreenhouseActor.SensorReading(env.greenhouseId + "-" + env.kind, env.kind, env.value));
+            target.tell(msg);
+            return true;
+        }
+        Dormant d = dormant(idx);
+        if (d == null) return false;
+        if (d.buffer == null) d.buffer = new ArrayList<>();
+        int readings = msg instanceof SensorBatch ? ((SensorBatch) msg).size : 1;
+        if (d.heldReadings + readings <= REVIVAL_BUFFER) {
+            d.buffer.add(msg);
+            d.heldReadings += readings;
         } else {
-            getContext().getLog().warn("[data] no target registered for greenhouse {}", env.greenhouseId);
+            revivalDropped += readings;
+            if (warningDue()) warnDrops("still reviving, dropping readings for", directory.idAt(idx));
+        }
+        if (d.stopped && !d.reviving) revive(idx, d);
+        return true;
+    }
+
+    private Behavior<Command> onSensorEnvelope(SensorEnvelope env) {
+        int idx = directory.indexOf(env.greenhouseId);
+        if (idx < 0) {
+            // Unknown so far: nothing can validate or record it yet, so it is parked as it came and ingested on registration
+            miss(env.greenhouseId, env, 1);
+            return this;
+        }
+        if (validator != null) {
+            SensorActor.Kind kind = SensorActor.Kind.fromWire(env.kind);
+            if (kind != null && !validator.accept(idx, kind.ordinal(), env.value, System.currentTimeMillis(), health)) return this;
+        }
+        if (latest != null || !subscribers.isEmpty()) {
+            SensorActor.Kind kind = SensorActor.Kind.fromWire(env.kind);
+            if (kind != null) {
+                long now = System.currentTimeMillis();
+                if (latest != null) latest.put(idx, kind.ordinal(), env.value, now);
+                if (!subscribers.isEmpty()) publish(new SensorBatch.Builder(1).add(idx, kind.ordinal(), env.value, now).build());
+            }
+        }
+        var reading = new GreenhouseActor.SensorReading(env.greenhouseId + "-" + env.kind, env.kind, env.value);
+        if (!send(idx, reading)) miss(env.greenhouseId, reading, 1);
+        return this;
+    }
+
+    // Counting sort by greenhouse index: one pass to size the per-greenhouse batches, one to fill them. A greenhouse
+    // gets one batch, its readings of all kinds in arrival order; its mailbox drops superseded readings per kind
+    private Behavior<Command> onSensorBatch(SensorBatch batch) {
+        if (validator != null) {
+            batch = validator.filter(batch, health);
+            if (batch.isEmpty()) return this;
+        }
+        publish(batch);
+        if (perGreenhouseCount.length < directory.size()) {
+            perGreenhouseCount = Arrays.copyOf(perGreenhouseCount, Math.max(directory.size(), perGreenhouseCount.length * 2));
+        }
+        int distinct = 0;
+        for (int i = 0; i < batch.size; i++) {
+            int g = batch.greenhouse[i];
+            if (latest != null) latest.put(g, batch.kind[i], batch.value[i], batch.timestamp[i]);
+            if (g >= perGreenhouseCount.length) {
+                perGreenhouseCount = Arrays.copyOf(perGreenhouseCount, Math.max(g + 1, perGreenhouseCount.length * 2));
+            }
+            if (perGreenhouseCount[g]++ == 0) {
+                if (distinct == touched.length) touched = Arrays.copyOf(touched, distinct * 2);
+                touched[distinct++] = g;
+            }
+        }
+        if (distinct == 1) {
+            // Already a single-greenhouse batch: pass it on as is
+            int g = touched[0];
+            perGreenhouseCount[g] = 0;
+            deliver(g, batch);
+            return this;
+        }
+        SensorBatch.Builder[] parts = new SensorBatch.Builder[distinct];
+        for (int t = 0; t < distinct; t++) {
+            int g = touched[t];
+            parts[t] = new SensorBatch.Builder(perGreenhouseCount[g]);
+            perGreenhouseCount[g] = t; // reuse the slot as the part index while filling
+        }
+        for (int i = 0; i < batch.size; i++) {
+            int g = batch.greenhouse[i];
+            parts[perGreenhouseCount[g]].add(g, batch.kind[i], batch.value[i], batch.timestamp[i]);
+        }
+        for (int t = 0; t < distinct; t++) {
+            int g = touched[t];
+            perGreenhouseCount[g] = 0;
+            deliver(g, parts[t].build());
         }
         return this;
     }
 
+    // Quarantine transitions are rare, so each one is logged and told to the greenhouse owning the sensor
+    private void onSensorHealth(int greenhouse, int kind, boolean healthy, int reason) {
+        String greenhouseId = directory.idAt(greenhouse);
+        SensorActor.Kind k = SensorActor.Kind.ofOrdinal(kind);
+        if (healthy) {
+            getContext().getLog().info("[data] sensor {}/{} released from quarantine", greenhouseId, k.wireName);
+        } else {
+            getContext().getLog().warn("[data] sensor {}/{} quarantined: {} ({} sensors quarantined)", greenhouseId, k.wireName,
+                    SensorValidator.describe(reason), validator.quarantinedSensors());
+        }
+        // A passivated greenhouse hears of its quarantined sensors when revived
+        var target = target(greenhouse);
+        if (target != null) target.tell(new GreenhouseActor.SensorHealth(k, healthy, SensorValidator.describe(reason)));
+    }
+
+    private void deliver(int greenhouseIndex, SensorBatch part) {
+        if (!send(greenhouseIndex, part)) miss(directory.idAt(greenhouseIndex), part, part.size);
+    }
+
+    // Not registered yet: parked for it if there is room, dropped otherwise
+    private void miss(String greenhouseId, Object readings, int count) {
+        boolean kept = parking != null && park(greenhouseId, readings, count);
+        missesSinceWarning++;
+        if (warningDue()) warnDrops(kept ? "no target registered, parking readings for" : "no target registered, dropping readings for", greenhouseId);
+    }
+
+    // Undeliverable readings come in floods: at most one warning per interval, which counts the rest
+    private void warnDrops(String what, String greenhouseId) {
+        getContext().getLog().warn("[data] {} greenhouse {}; since the last warning: {} misses, {} readings dropped while reviving{}", what,
+                greenhouseId, missesSinceWarning, revivalDropped - revivalDroppedWarned, parking == null ? "" : "; parking: " + parkingStats());
+        missesSinceWarning = 0;
+        revivalDroppedWarned = revivalDropped;
+    }
+
+    private boolean warningDue() {
+        long now = System.nanoTime();
+        if (now - warnedAt < DROP_WARNING_INTERVAL_NANOS) return false;
+        warnedAt = now;
+        return true;
+    }
+
+    private boolean park(String greenhouseId, Object readings, int count) {
+        ArrayDeque<Parked> queue = parked.get(greenhouseId);
+        if (queue == null) {
+            if (parked.size() >= parking.maxGreenhouses) {
+                parkingDropped += count;
+                return false;
+            }
+            parked.put(greenhouseId, queue = new ArrayDeque<>());
+        }
+        if (queue.size() >= parking.perGreenhouse) {
+            Parked oldest = queue.pollFirst();
+            parkedWaiting -= oldest.count;
+            parkingDropped += oldest.count;
+        }
+        queue.addLast(new Parked(readings, count, System.nanoTime()));
+        parkedWaiting += count;
+        parkedTotal += count;
+        if (!sweepPending) {
+            sweepPending = true;
+            getContext().scheduleOnce(parking.ttl, getContext().getSelf(), SweepParking.INSTANCE);
+        }
+        return true;
+    }
+
+    private void replayParked(String greenhouseId, ActorRef<GreenhouseActor.Command> ref) {
+        ArrayDeque<Parked> queue = parked.remove(greenhouseId);
+        if (queue == null) return;
+        long deadline = System.nanoTime() - parking.ttl.toNanos();
+        int delivered = 0;
+        for (Parked p : queue) {
+            parkedWaiting -= p.count;
+            if (p.parkedAt < deadline) {
+                expired += p.count;
+            } else {
+                replayed += p.count;
+                if (p.readings instanceof SensorEnvelope) {
+                    onSensorEnvelope((SensorEnvelope) p.readings); // through validation, views and subscribers like a live one
+                } else {
+                    ref.tell((GreenhouseActor.Command) p.readings);
+                }
+                delivered += p.count;
+            }
+        }
+        getContext().getLog().debug("[data] replayed {} parked readings to greenhouse {}", delivered, greenhouseId);
+    }
+
+    // Parked oldest first, so expired readings are at the head of each queue
+    private Behavior<Command> onSweepParking() {
+        sweepPending = false;
+        long deadline = System.nanoTime() - parking.ttl.toNanos();
+        long before = expired;
+        for (Iterator<ArrayDeque<Parked>> it = parked.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<Parked> queue = it.next();
+            while (!queue.isEmpty() && queue.peekFirst().parkedAt < deadline) {
+                Parked p = queue.pollFirst();
+                parkedWaiting -= p.count;
+                expired += p.count;
+            }
+            if (queue.isEmpty()) it.remove();
+        }
+        if (expired > before) {
+            getContext().getLog().info("[data] {} parked readings expired before their greenhouse registered; parking: {}", expired - before,
+                    parkingStats());
+        }
+        if (!parked.isEmpty()) {
+            sweepPending = true;
+            getContext().scheduleOnce(parking.ttl, getContext().getSelf(), SweepParking.INSTANCE);
+        }
+        return this;
+    }
+
+    private ParkingStats parkingStats() {
+        return new ParkingStats(parkedWaiting, parkedTotal, replayed, expired, parkingDropped);
+    }
+
+    private Behavior<Command> onGetParkingStats(GetParkingStats get) {
+        get.replyTo.tell(parkingStats());
+        return this;
+    }
+
     private Behavior<Command> onIngest(IngestMetric msg) {
         getContext().getLog().info("[data] ingest from {}: {}", msg.source, msg.payload);
         return this;
     }
+
+    /**
+     * Front of the sharded tier: registration, passivation, subscriptions and stats. Readings never pass
+     * through it, producers address the shards themselves (see {@link Shards}).
+     */
+    private static final class ShardRouter extends AbstractBehavior<Command> {
+
+        private final Shards shards;
+
+        private ShardRouter(ActorContext<Command> ctx, int shardCount, Options options) {
+            super(ctx);
+            List<ActorRef<Command>> refs = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                refs.add(ctx.spawn(DataProcessingManager.create(1, options), "shard-" + i, DispatcherSelector.sameAsParent()));
+            }
+            this.shards = new Shards(refs, options.directory);
+            ctx.getLog().info("[data] started {} routing shards", shardCount);
+        }
+
+        @Override
+        public Receive<Command> createReceive() {
+            return newReceiveBuilder()
+                    .onMessage(RegisterGreenhouse.class, reg -> forward(reg.greenhouseId, reg))
+                    .onMessage(RegisterDormant.class, reg -> forward(reg.greenhouseId, reg))
+                    .onMessage(Passivate.class, p -> forward(p.greenhouseId, p))
+                    .onMessage(Passivated.class, p -> forward(p.greenhouseId, p))
+                    .onMessage(GetShards.class, get -> {
+                        get.replyTo.tell(shards);
+                        return this;
+                    })
+                    .onMessage(Subscribe.class, this::broadcast)
+                    .onMessage(GetParkingStats.class, this::onGetParkingStats)
+                    .onMessage(IngestMetric.class, msg -> forward(msg.source, msg))
+                    .build();
+        }
+
+        // Every shard answers a short-lived collector, which sums their stats and replies
+        private Behavior<Command> onGetParkingStats(GetParkingStats get) {
+            ActorRef<ParkingStats> collector = getContext().spawnAnonymous(Behaviors.setup(ctx -> {
+                ParkingStats[] sum = {new ParkingStats(0, 0, 0, 0, 0)};
+                int[] remaining = {shards.count()};
+                return Behaviors.receive(ParkingStats.class).onAnyMessage(stats -> {
+                    sum[0] = sum[0].plus(stats);
+                    if (--remaining[0] > 0) return Behaviors.same();
+                    get.replyTo.tell(sum[0]);
+                    return Behaviors.stopped();
+                }).build();
+            }));
+            for (int s = 0; s < shards.count(); s++) shards.get(s).tell(new GetParkingStats(collector));
+            return this;
+        }
+
+        private Behavior<Command> broadcast(Command msg) {
+            for (int s = 0; s < shards.count(); s++) shards.get(s).tell(msg);
+            return this;
+        }
+
+        private Behavior<Command> forward(String key, Command msg) {
+            shards.forGreenhouse(key).tell(msg);
+            return this;
+        }
+    }
+
+    // A SensorEnvelope of a greenhouse not in the directory yet, or readings already ingested (a SensorBatch, a SensorReading)
+    private static final class Parked {
+        final Object readings;
+        final int count;
+        final long parkedAt;
+        Parked(Object readings, int count, long parkedAt) { this.readings = readings; this.count = count; this.parkedAt = parkedAt; }
+    }
+
+    private static final class Dormant {
+        final ActorRef<SiteManager.Command> site;
+        final String name;
+        GreenhouseState snapshot;
+        List<GreenhouseActor.Command> buffer; // null until something arrives for it
+        int heldReadings; // in buffer, bounded by REVIVAL_BUFFER
+        boolean stopped;
+        boolean reviving;
+        Dormant(ActorRef<SiteManager.Command> site, String name) { this.site = site; this.name = name; }
+    }
 }
@@ -0,0 +1,67 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.MailboxSelector;
+import akka.actor.typed.Props;
+import com.typesafe.config.Config;
+
+/**
+ * Dispatchers the areas of the system are spawned on, so a burst in one (ingest, maintenance,
+ * notifications) does not queue in front of control decisions. Each is the {@code dispatcher} block
+ * of its area in {@code greenhouse}; an area without one runs on the default dispatcher. Greenhouses and
+ * actuators also get the {@link ControlFirstMailbox} of {@code greenhouse.control.mailbox}, if configured.
+ */
+public final class DispatcherSettings {
+
+    public static final String INGEST = "greenhouse.data-processing.dispatcher";
+    public static final String CONTROL = "greenhouse.control.dispatcher";
+    public static final String MAINTENANCE = "greenhouse.maintenance.dispatcher";
+    public static final String NOTIFICATIONS = "greenhouse.notifications.dispatcher";
+    public static final String CONTROL_MAILBOX = "greenhouse.control.mailbox";
+
+    // Routing shards and their router
+    public final DispatcherSelector ingest;
+    // Greenhouses with their sensor and actuator children
+    public final DispatcherSelector control;
+    // Maintenance scheduler and the per-site maintenance actors
+    public final DispatcherSelector maintenance;
+    public final DispatcherSelector notifications;
+    // Of greenhouses and their actuators
+    public final MailboxSelector controlMailbox;
+
+    public DispatcherSettings(DispatcherSelector ingest, DispatcherSelector control, DispatcherSelector maintenance,
+                              DispatcherSelector notifications) {
+        this(ingest, control, maintenance, notifications, MailboxSelector.defaultMailbox());
+    }
+
+    public DispatcherSettings(DispatcherSelector ingest, DispatcherSelector control, DispatcherSelector maintenance,
+                              DispatcherSelector notifications, MailboxSelector controlMailbox) {
+        this.ingest = ingest;
+        this.control = control;
+        this.maintenance = maintenance;
+        this.notifications = notifications;
+        this.controlMailbox = controlMailbox;
+    }
+
+    /** Props of a greenhouse: the control dispatcher and mailbox. */
+    public Props greenhouse() { return control.withNext(controlMailbox); }
+
+    /** Props of a greenhouse child that takes control messages: its parent's dispatcher and the control mailbox. */
+    public Props actuator() { return DispatcherSelector.sameAsParent().withNext(controlMailbox); }
+
+    /** Everything on the default dispatcher. */
+    public static DispatcherSettings shared() {
+        DispatcherSelector d = DispatcherSelector.defaultDispatcher();
+        return new DispatcherSettings(d, d, d, d);
+    }
+
+    public static DispatcherSettings fromConfig(Config config) {
+        return new DispatcherSettings(select(config, INGEST), select(config, CONTROL), select(config, MAINTENANCE),
+                select(config, NOTIFICATIONS),
+                config.hasPath(CONTROL_MAILBOX) ? MailboxSelector.fromConfig(CONTROL_MAILBOX) : MailboxSelector.defaultMailbox());
+    }
+
+    private static DispatcherSelector select(Config config, String path) {
+        return config.hasPath(path) ? DispatcherSelector.fromConfig(path) : DispatcherSelector.defaultDispatcher();
+    }
+}
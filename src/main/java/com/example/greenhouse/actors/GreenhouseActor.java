@@ -2,15 +2,49 @@ package com.example.greenhouse.actors;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.PreRestart;
 import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.anomaly.AnomalyDetector;
+import com.example.greenhouse.control.ControlRules;
+import com.example.greenhouse.control.DwellSettings;
+import com.example.greenhouse.control.RuleEvaluator;
+import com.example.greenhouse.device.ActuatorDevice;
+import com.example.greenhouse.device.ActuatorSettings;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.QuantileSketch;
+import com.example.greenhouse.fleet.SketchSettings;
+import com.example.greenhouse.journal.GreenhouseEvent;
+import com.example.greenhouse.journal.GreenhouseState;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Controller of one greenhouse: records its readings, runs the control rules of its class on them and
+ * drives its actuators. Journal, published views, site aggregates and sketches, anomaly detection,
+ * lightweight mode and passivation each depend on what its {@link GreenhouseServices} hold.
+ */
 public class GreenhouseActor extends AbstractBehavior<GreenhouseActor.Command> {
 
     public interface Command {}
-    public static final class Initialize implements Command {}
+    public static final class Initialize implements Command {
+        // Spawned by routing's request (revived after passivation, or spawned lazily): no boot smoke reading
+        public final boolean revived;
+        // Told once the greenhouse is registered for routing; null: nobody waits for it
+        public final ActorRef<SiteManager.GreenhouseReady> replyTo;
+        public Initialize() { this(false); }
+        public Initialize(boolean revived) { this(revived, null); }
+        public Initialize(boolean revived, ActorRef<SiteManager.GreenhouseReady> replyTo) { this.revived = revived; this.replyTo = replyTo; }
+    }
+
+    // From routing, in reply to DataProcessingManager.Passivate: routing holds this greenhouse's messages from
+    // now on, and this one leaves the mailbox after everything it routed before (see ControlFirstMailbox)
+    public static final class Stop implements Command {}
 
     // Sensor data and control messages
     public static final class SensorReading implements Command, java.io.Serializable {
@@ -24,28 +58,199 @@ public class GreenhouseActor extends AbstractBehavior<GreenhouseActor.Command> {
     }
 
     public static final class ControlDecision implements Command {
-        public enum Action { TURN_ON_FAN, TURN_OFF_FAN, TURN_ON_HEATER, TURN_OFF_HEATER, START_IRRIGATION, STOP_IRRIGATION }
+        public enum Action {
+            TURN_ON_FAN(ActuatorActor.Type.Fan, true), TURN_OFF_FAN(ActuatorActor.Type.Fan, false),
+            TURN_ON_HEATER(ActuatorActor.Type.Heater, true), TURN_OFF_HEATER(ActuatorActor.Type.Heater, false),
+            START_IRRIGATION(ActuatorActor.Type.Irrigation, true), STOP_IRRIGATION(ActuatorActor.Type.Irrigation, false);
+
+            public final ActuatorActor.Type actuator;
+            public final boolean on;
+            Action(ActuatorActor.Type actuator, boolean on) { this.actuator = actuator; this.on = on; }
+
+            private static final Action[] VALUES = values();
+
+            public static Action of(ActuatorActor.Type actuator, boolean on) {
+                for (Action a : VALUES) {
+                    if (a.actuator == actuator && a.on == on) return a;
+                }
+                throw new IllegalArgumentException("no action switches " + actuator + (on ? " on" : " off"));
+            }
+        }
         public final Action action;
         public ControlDecision(Action action) { this.action = action; }
     }
 
+    // A sensor was quarantined by ingest validation (its readings no longer arrive) or released again
+    public static final class SensorHealth implements Command {
+        public final SensorActor.Kind kind;
+        public final boolean healthy;
+        public final String reason;
+        public SensorHealth(SensorActor.Kind kind, boolean healthy, String reason) { this.kind = kind; this.healthy = healthy; this.reason = reason; }
+    }
+
+    // Replies with a copy of the current control state
+    public static final class GetState implements Command {
+        public final ActorRef<GreenhouseState> replyTo;
+        public GetState(ActorRef<GreenhouseState> replyTo) { this.replyTo = replyTo; }
+    }
+
+    // Replies with counts of control decisions against commands actually sent to actuators
+    public static final class GetControlStats implements Command {
+        public final ActorRef<ControlStats> replyTo;
+        public GetControlStats(ActorRef<ControlStats> replyTo) { this.replyTo = replyTo; }
+    }
+
+    public static final class ControlStats {
+        public final long decisions;
+        public final long commands;
+        public final long deferred;
+        public ControlStats(long decisions, long commands, long deferred) { this.decisions = decisions; this.commands = commands; this.deferred = deferred; }
+    }
+
+    private enum PushAggregate implements Command, ControlFirstMailbox.Internal { INSTANCE }
+
+    private enum Idle implements Command, ControlFirstMailbox.Internal { INSTANCE }
+
+    private static final class DwellElapsed implements Command, ControlFirstMailbox.Internal {
+        final ActuatorActor.Type actuator;
+        DwellElapsed(ActuatorActor.Type actuator) { this.actuator = actuator; }
+    }
+
+    private static final class FlushSketches implements Command, ControlFirstMailbox.Internal {
+        final long slice;
+        FlushSketches(long slice) { this.slice = slice; }
+    }
+
+    private static final ControlRules DEFAULT_RULES = ControlRules.defaults();
+    private static final ActuatorSettings IMMEDIATE = ActuatorSettings.immediate();
+    private static final ActuatorActor.Type[] ACTUATOR_TYPES = ActuatorActor.Type.values();
+
+    // Recovery is one round trip to the journal's in-memory view, so only a short burst needs holding back
+    private static final int RECOVERY_STASH = 1000;
+
     private final String regionId;
     private final String siteId;
     private final String greenhouseId;
     private final ActorRef<DataProcessingManager.Command> dataRef;
+    private final ActorRef<JournalManager.Command> journal; // null: state lives only as long as the actor
+    private final ActuatorStates actuatorStates; // null: not published
+    private final ActorRef<SiteManager.Command> site; // null: no subtree aggregates or sketches
+    private final ActorRef<SiteManager.Command> home; // parent site that revives it; null: never passivated
+    private boolean passivating;
+    private final AggregateSettings aggregates;
+    private final SketchSettings sketches;
+    // Sensor children by kind ordinal (null before Initialize) and whether validation quarantined them
+    @SuppressWarnings("unchecked")
+    private final ActorRef<SensorActor.Command>[] sensors = new ActorRef[SensorActor.Kind.count()];
+    private final boolean[] quarantined = new boolean[SensorActor.Kind.count()];
+    private final AnomalyDetector detector; // null: no anomaly detection
+    private final ActorRef<NotificationManager.Command> notifications;
+    private final RuleEvaluator rules;
+    private final DwellSettings dwell;
+    private final ActuatorSettings actuatorSettings; // null (or no devices): devices that apply every command at once
+    private final ActuatorDevice.Factory devices;
+    private final DispatcherSettings dispatchers;
+    // Actuator children by type ordinal (null before Initialize), the position last decided for each,
+    // and whether a dwell timer is running for it
+    @SuppressWarnings("unchecked")
+    private final ActorRef<ActuatorActor.Command>[] actuators = new ActorRef[ACTUATOR_TYPES.length];
+    // Lightweight mode: the actuators themselves, by type ordinal (null before Initialize); null otherwise
+    private final ActuatorLink[] links;
+    private final boolean[] desired = new boolean[ACTUATOR_TYPES.length];
+    private final boolean[] dwellPending = new boolean[ACTUATOR_TYPES.length];
+    private long decisions;
+    private long commands;
+    private long deferred;
+    private final RuleEvaluator.Listener switcher = this::onRuleSwitch;
+    private final GreenhouseState state;
+    private final long readingsIntervalMillis;
+    private long readingsPersistedAt;
+    private boolean readingsDirty;
+    private boolean pushPending;
+    private double[] pushed;
+    // Sketches of the current slice by kind, null until its first reading; handed to the site when it ends
+    private QuantileSketch[] sliceSketches;
+    private long sketchSlice;
 
     public static Behavior<Command> create(String regionId, String siteId, String greenhouseId, ActorRef<DataProcessingManager.Command> dataRef) {
-        Behavior<Command> behavior = Behaviors.setup(ctx -> new GreenhouseActor(ctx, regionId, siteId, greenhouseId, dataRef));
+        return create(regionId, siteId, greenhouseId, dataRef, null);
+    }
+
+    public static Behavior<Command> create(String regionId, String siteId, String greenhouseId,
+                                           ActorRef<DataProcessingManager.Command> dataRef,
+                                           ActorRef<JournalManager.Command> journal) {
+        return create(regionId, siteId, greenhouseId, GreenhouseServices.of(dataRef).withJournal(journal));
+    }
+
+    public static Behavior<Command> create(String regionId, String siteId, String greenhouseId, GreenhouseServices services) {
+        return create(regionId, siteId, greenhouseId, services, null);
+    }
+
+    /** With a site (and aggregate or sketch settings in the services), the site's aggregates and quantiles include this greenhouse. */
+    public static Behavior<Command> create(String regionId, String siteId, String greenhouseId, GreenhouseServices services,
+                                           ActorRef<SiteManager.Command> site) {
+        return create(regionId, siteId, greenhouseId, services, site, null);
+    }
+
+    /** Revived from {@code snapshot}, the state it handed over when passivated; the journal's state wins if there is one. */
+    public static Behavior<Command> create(String regionId, String siteId, String greenhouseId, GreenhouseServices services,
+                                           ActorRef<SiteManager.Command> site, GreenhouseState snapshot) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> {
+            if (services.journal == null) {
+                return new GreenhouseActor(ctx, regionId, siteId, greenhouseId, services, site,
+                        snapshot == null ? new GreenhouseState() : snapshot, 0);
+            }
+            // Event-sourced: on every (re)start the state comes from the journal, other messages wait in the stash meanwhile
+            services.journal.tell(new JournalManager.Recover(greenhouseId, ctx.getSelf()));
+            return Behaviors.<Command>withStash(RECOVERY_STASH, stash -> Behaviors.receive(Command.class)
+                    .onMessage(JournalManager.Recovered.class, recovered -> stash.unstashAll(new GreenhouseActor(ctx, regionId, siteId,
+                            greenhouseId, services, site, recovered.state, recovered.readingsInterval.toMillis())))
+                    .onAnyMessage(msg -> {
+                        if (stash.isFull()) {
+                            ctx.getLog().warn("[{}] recovery stash full, dropping {}", greenhouseId, msg);
+                        } else {
+                            stash.stash(msg);
+                        }
+                        return Behaviors.same();
+                    })
+                    .build());
+        });
         return Behaviors.supervise(behavior)
                 .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 0.2));
     }
 
-    private GreenhouseActor(ActorContext<Command> ctx, String regionId, String siteId, String greenhouseId, ActorRef<DataProcessingManager.Command> dataRef) {
+    private GreenhouseActor(ActorContext<Command> ctx, String regionId, String siteId, String greenhouseId,
+                            GreenhouseServices services, ActorRef<SiteManager.Command> site, GreenhouseState state,
+                            long readingsIntervalMillis) {
         super(ctx);
         this.regionId = regionId;
         this.siteId = siteId;
         this.greenhouseId = greenhouseId;
-        this.dataRef = dataRef;
+        this.dataRef = services.data;
+        this.journal = services.journal;
+        this.actuatorStates = services.actuatorStates;
+        this.aggregates = services.aggregates;
+        this.sketches = services.sketches;
+        this.site = services.reportsToSite() ? site : null;
+        this.home = services.passivateAfter == null ? null : site;
+        this.notifications = services.notifications;
+        this.detector = services.anomalies == null || notifications == null ? null
+                : new AnomalyDetector(services.anomalies, SensorActor.Kind.count());
+        // The rules of its class, compiled once for the whole fleet
+        this.rules = (services.rules == null ? DEFAULT_RULES : services.rules).tableFor(greenhouseId).newEvaluator();
+        this.dwell = services.dwell == null ? DwellSettings.none() : services.dwell;
+        this.actuatorSettings = services.actuators;
+        this.devices = services.devices;
+        this.dispatchers = services.dispatchers;
+        this.links = services.lightweight ? new ActuatorLink[ACTUATOR_TYPES.length] : null;
+        this.state = state;
+        for (ActuatorActor.Type t : ACTUATOR_TYPES) desired[t.ordinal()] = state.isOn(t);
+        this.readingsIntervalMillis = readingsIntervalMillis;
+        this.readingsPersistedAt = System.currentTimeMillis();
+        this.pushed = new GreenhouseState().lastValues(); // nothing yet
+        if (actuatorStates != null) publishActuators();
+        readingsChanged(); // recovered readings count towards the site too
+        if (home != null) ctx.setReceiveTimeout(services.passivateAfter, Idle.INSTANCE);
     }
 
     @Override
@@ -53,7 +258,19 @@ public class GreenhouseActor extends AbstractBehavior<GreenhouseActor.Command> {
         return newReceiveBuilder()
                 .onMessage(Initialize.class, this::onInitialize)
                 .onMessage(SensorReading.class, this::onSensorReading)
+                .onMessage(SensorBatch.class, this::onSensorBatch)
                 .onMessage(ControlDecision.class, this::onControlDecision)
+                .onMessage(GetState.class, this::onGetState)
+                .onMessage(GetControlStats.class, this::onGetControlStats)
+                .onMessage(DwellElapsed.class, this::onDwellElapsed)
+                .onMessage(SensorHealth.class, this::onSensorHealth)
+                .onMessageEquals(PushAggregate.INSTANCE, this::onPushAggregate)
+                .onMessage(FlushSketches.class, this::onFlushSketches)
+                .onMessage(ActuatorLink.Signal.class, this::onActuatorSignal)
+                .onMessageEquals(Idle.INSTANCE, this::onIdle)
+                .onMessage(Stop.class, this::onStop)
+                .onSignal(PostStop.class, signal -> closeDevices())
+                .onSignal(PreRestart.class, signal -> closeDevices())
                 .build();
     }
 
@@ -61,36 +278,270 @@ public class GreenhouseActor extends AbstractBehavior<GreenhouseActor.Command> {
         getContext().getLog().info("Initializing greenhouse {}", greenhouseId);
         // Register with data processing for routing
         dataRef.tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, getContext().getSelf()));
+        // Routing hears of it first, so readings sent once the fleet is ready find it
+        if (init.replyTo != null) init.replyTo.tell(new SiteManager.GreenhouseReady(greenhouseId));
+        if (links != null) {
+            // Lightweight: no children. Sensor health is the quarantine flags, each actuator a link driven by this actor;
+            // devices start from the recovered positions
+            ActuatorLink.Host host = ActuatorLink.host(getContext(), signal -> signal);
+            for (ActuatorActor.Type type : ACTUATOR_TYPES) {
+                boolean simple = devices == null || actuatorSettings == null;
+                links[type.ordinal()] = new ActuatorLink(greenhouseId, type, simple ? ActuatorDevice.loopback() : devices.open(greenhouseId, type),
+                        simple ? IMMEDIATE : actuatorSettings, host);
+                links[type.ordinal()].request(state.isOn(type));
+            }
+            // Boot smoke, as a sensor would
+            if (!init.revived && !quarantined[SensorActor.Kind.Temperature.ordinal()]) {
+                getContext().getSelf().tell(SensorActor.sample(greenhouseId, SensorActor.Kind.Temperature, ThreadLocalRandom.current()));
+            }
+            return this;
+        }
         // Spawn sensors and actuators under this greenhouse
-        var sensors = getContext().spawn(SensorActor.create(greenhouseId, SensorActor.Kind.Temperature), "sensor-temperature");
-        getContext().spawn(SensorActor.create(greenhouseId, SensorActor.Kind.Humidity), "sensor-humidity");
-        getContext().spawn(SensorActor.create(greenhouseId, SensorActor.Kind.SoilMoisture), "sensor-soil");
+        for (SensorActor.Kind kind : SensorActor.Kind.values()) {
+            sensors[kind.ordinal()] = getContext().spawn(SensorActor.create(greenhouseId, kind), "sensor-" + kind.wireName,
+                    DispatcherSelector.sameAsParent());
+            if (quarantined[kind.ordinal()]) sensors[kind.ordinal()].tell(new SensorActor.SetHealth(false, "quarantined before start"));
+        }
 
-        getContext().spawn(ActuatorActor.create(greenhouseId, ActuatorActor.Type.Fan), "actuator-fan");
-        getContext().spawn(ActuatorActor.create(greenhouseId, ActuatorActor.Type.Heater), "actuator-heater");
-        getContext().spawn(ActuatorActor.create(greenhouseId, ActuatorActor.Type.Irrigation), "actuator-irrigation");
+        // Devices start from the recovered positions
+        for (ActuatorActor.Type type : ACTUATOR_TYPES) {
+            Behavior<ActuatorActor.Command> actuator = devices == null || actuatorSettings == null ? ActuatorActor.create(greenhouseId, type)
+                    : ActuatorActor.create(greenhouseId, type, devices, actuatorSettings);
+            actuators[type.ordinal()] = getContext().spawn(actuator, "actuator-" + type.name().toLowerCase(), dispatchers.actuator());
+            actuators[type.ordinal()].tell(new ActuatorActor.Switch(state.isOn(type)));
+        }
 
         // Ask one sensor to emit a sample reading (boot smoke)
-        sensors.tell(new SensorActor.EmitSample(getContext().getSelf()));
+        if (!init.revived) sensors[SensorActor.Kind.Temperature.ordinal()].tell(new SensorActor.EmitSample(getContext().getSelf()));
         return this;
     }
 
+    // With passivate-after, an idle greenhouse asks routing to stop it; its state goes to the journal, or to routing
+    // as a snapshot, and routing has the site revive it when its next message arrives. A switch waiting out its
+    // dwell time keeps the greenhouse up; the timeout fires again while it stays idle
+    private Behavior<Command> onIdle() {
+        if (passivating) return this;
+        for (boolean pending : dwellPending) {
+            if (pending) return this;
+        }
+        getContext().getLog().debug("[{}] idle, asking to be passivated", greenhouseId);
+        passivating = true;
+        dataRef.tell(new DataProcessingManager.Passivate(greenhouseId, getContext().getSelf(), home));
+        return this;
+    }
+
+    // Whatever would otherwise go out later goes out now; with a journal, the journal has the state
+    private Behavior<Command> onStop(Stop stop) {
+        if (journal != null && readingsDirty) persist(state.readingsEvent());
+        if (sliceSketches != null) flushSketches();
+        if (pushPending) onPushAggregate();
+        dataRef.tell(new DataProcessingManager.Passivated(greenhouseId, journal == null ? state.copy() : null));
+        getContext().getLog().debug("[{}] passivated", greenhouseId);
+        return Behaviors.stopped();
+    }
+
     private Behavior<Command> onSensorReading(SensorReading reading) {
         getContext().getLog().info("[{}] Received reading: {}", greenhouseId, reading);
-        // Dummy rule: if temperature > 28C turn on fan, if < 20C turn on heater
-        if ("temperature".equals(reading.kind)) {
-            if (reading.value > 28.0) {
-                return onControlDecision(new ControlDecision(ControlDecision.Action.TURN_ON_FAN));
-            } else if (reading.value < 20.0) {
-                return onControlDecision(new ControlDecision(ControlDecision.Action.TURN_ON_HEATER));
-            }
+        SensorActor.Kind kind = SensorActor.Kind.fromWire(reading.kind);
+        if (kind != null && quarantined[kind.ordinal()]) {
+            getContext().getLog().debug("[{}] ignoring reading of quarantined sensor: {}", greenhouseId, reading);
+        } else if (kind != null) {
+            long now = System.currentTimeMillis();
+            state.recordReading(kind.ordinal(), reading.value, now);
+            readingsDirty = true;
+            readingsChanged();
+            sketch(kind.ordinal(), reading.value, now);
+            detect(kind.ordinal(), reading.value, now);
+            applyRules(kind.ordinal(), reading.value);
+            maybePersistReadings(now);
+        }
+        return this;
+    }
+
+    // Whole batch per dequeue; the greenhouse column is ignored, routing already targeted this actor
+    private Behavior<Command> onSensorBatch(SensorBatch batch) {
+        getContext().getLog().debug("[{}] Received {}", greenhouseId, batch);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < batch.size; i++) {
+            state.recordReading(batch.kind[i], batch.value[i], batch.timestamp[i]);
+            sketch(batch.kind[i], batch.value[i], now);
+            detect(batch.kind[i], batch.value[i], now);
+            applyRules(batch.kind[i], batch.value[i]);
         }
+        readingsDirty |= batch.size > 0;
+        if (batch.size > 0) readingsChanged();
+        maybePersistReadings(now);
         return this;
     }
 
+    // Only a rule starting or stopping to hold gets as far as a control decision
+    private void applyRules(int kindOrdinal, double value) {
+        rules.evaluate(kindOrdinal, value, switcher);
+    }
+
+    private void onRuleSwitch(ActuatorActor.Type actuator, boolean on, String rule) {
+        getContext().getLog().debug("[{}] rule {} {}", greenhouseId, rule, on ? "holds" : "cleared");
+        onControlDecision(new ControlDecision(ControlDecision.Action.of(actuator, on)));
+    }
+
     private Behavior<Command> onControlDecision(ControlDecision decision) {
-        getContext().getLog().info("[{}] Control decision: {}", greenhouseId, decision.action);
-        // In a full implementation, we'd route to actuators; here we just log
+        getContext().getLog().debug("[{}] Control decision: {}", greenhouseId, decision.action);
+        decisions++;
+        desired[decision.action.actuator.ordinal()] = decision.action.on;
+        dispatch(decision.action.actuator, System.currentTimeMillis());
+        return this;
+    }
+
+    private Behavior<Command> onDwellElapsed(DwellElapsed elapsed) {
+        dwellPending[elapsed.actuator.ordinal()] = false;
+        dispatch(elapsed.actuator, System.currentTimeMillis());
+        return this;
+    }
+
+    // An actuator only hears of a change of position: repeated decisions for the position it is already in stop
+    // here, as does switching back within the dwell time; the latter is retried once the dwell is over, with
+    // whatever was decided last
+    private void dispatch(ActuatorActor.Type actuator, long now) {
+        int a = actuator.ordinal();
+        boolean on = desired[a];
+        if (state.isOn(actuator) == on) return;
+        long dwellLeft = state.switchedAt(actuator) + (on ? dwell.minOffMillis(actuator) : dwell.minOnMillis(actuator)) - now;
+        if (dwellLeft > 0) {
+            if (!dwellPending[a]) {
+                dwellPending[a] = true;
+                deferred++;
+                getContext().scheduleOnce(Duration.ofMillis(dwellLeft), getContext().getSelf(), new DwellElapsed(actuator));
+            }
+            return;
+        }
+        getContext().getLog().info("[{}] Switching {} {}", greenhouseId, actuator, on ? "on" : "off");
+        persist(new GreenhouseEvent.ActuatorSwitched(actuator, on, now));
+        if (links != null && links[a] != null) {
+            links[a].request(on);
+            commands++;
+        } else if (actuators[a] != null) {
+            actuators[a].tell(new ActuatorActor.Switch(on));
+            commands++;
+        }
+    }
+
+    private Behavior<Command> onActuatorSignal(ActuatorLink.Signal signal) {
+        links[signal.type.ordinal()].onSignal(signal);
+        return this;
+    }
+
+    // Lightweight mode opened the devices itself; otherwise each actuator child closes its own
+    private Behavior<Command> closeDevices() {
+        if (links != null) {
+            for (ActuatorLink link : links) {
+                if (link != null) link.close();
+            }
+        }
+        return this;
+    }
+
+    private Behavior<Command> onGetControlStats(GetControlStats get) {
+        get.replyTo.tell(new ControlStats(decisions, commands, deferred));
+        return this;
+    }
+
+    private Behavior<Command> onSensorHealth(SensorHealth health) {
+        int k = health.kind.ordinal();
+        if (quarantined[k] == !health.healthy) return this;
+        quarantined[k] = !health.healthy;
+        getContext().getLog().warn("[{}] {} sensor {}: {}", greenhouseId, health.kind.wireName,
+                health.healthy ? "healthy again" : "quarantined", health.reason);
+        if (sensors[k] != null) sensors[k].tell(new SensorActor.SetHealth(health.healthy, health.reason));
+        return this;
+    }
+
+    private Behavior<Command> onGetState(GetState get) {
+        get.replyTo.tell(state.copy());
         return this;
     }
+
+    // However many readings arrive, the site hears from this greenhouse at most once per push-interval
+    private void readingsChanged() {
+        if (aggregates == null || site == null || pushPending) return;
+        pushPending = true;
+        getContext().scheduleOnce(aggregates.pushInterval, getContext().getSelf(), PushAggregate.INSTANCE);
+    }
+
+    private Behavior<Command> onPushAggregate() {
+        pushPending = false;
+        double[] latest = state.lastValues();
+        if (!Arrays.equals(latest, pushed)) {
+            site.tell(new SiteManager.GreenhouseChanged(greenhouseId, latest));
+            pushed = latest;
+        }
+        return this;
+    }
+
+    private static final SensorActor.Kind[] KINDS = SensorActor.Kind.values();
+
+    // Runs on every reading; only an anomaly past its cooldown costs more than a few arithmetic operations
+    private void detect(int kindOrdinal, double value, long now) {
+        if (detector == null) return;
+        int anomaly = detector.update(kindOrdinal, value, now);
+        if (anomaly == AnomalyDetector.NONE) return;
+        String message = String.format("[%s] %s %s: %.2f (mean %.2f, sd %.2f, z %.1f)", greenhouseId, KINDS[kindOrdinal].wireName,
+                AnomalyDetector.describe(anomaly), value, detector.mean(kindOrdinal), detector.stdDev(kindOrdinal), detector.lastZ(kindOrdinal));
+        notifications.tell(new NotificationManager.Notify("warn", message));
+    }
+
+    // Readings are sketched by arrival time; a slice goes to the site as soon as it ends
+    private void sketch(int kindOrdinal, double value, long now) {
+        if (sketches == null || site == null) return;
+        long slice = sketches.sliceOf(now);
+        if (sliceSketches != null && slice != sketchSlice) flushSketches();
+        if (sliceSketches == null) {
+            sliceSketches = new QuantileSketch[SensorActor.Kind.count()];
+            sketchSlice = slice;
+            long untilEnd = (slice + 1) * sketches.slice.toMillis() - now;
+            getContext().scheduleOnce(Duration.ofMillis(untilEnd), getContext().getSelf(), new FlushSketches(slice));
+        }
+        QuantileSketch s = sliceSketches[kindOrdinal];
+        if (s == null) sliceSketches[kindOrdinal] = s = sketches.newSketch();
+        s.add(value);
+    }
+
+    private Behavior<Command> onFlushSketches(FlushSketches flush) {
+        // Already handed over when a later slice's reading arrived first
+        if (sliceSketches != null && sketchSlice == flush.slice) flushSketches();
+        return this;
+    }
+
+    private void flushSketches() {
+        site.tell(new SketchSlice(greenhouseId, sketchSlice, sliceSketches));
+        sliceSketches = null;
+    }
+
+    // Switches are journaled, and published for readers outside the hierarchy (HTTP) when there is a view
+    private void persist(GreenhouseEvent event) {
+        state.apply(event);
+        if (journal != null) journal.tell(new JournalManager.Persist(greenhouseId, event));
+        if (actuatorStates != null && event instanceof GreenhouseEvent.ActuatorSwitched) {
+            GreenhouseEvent.ActuatorSwitched e = (GreenhouseEvent.ActuatorSwitched) event;
+            actuatorStates.switched(greenhouseId, e.actuator.ordinal(), e.on, e.timestamp);
+        }
+    }
+
+    private void publishActuators() {
+        ActuatorActor.Type[] types = ActuatorActor.Type.values();
+        boolean[] on = new boolean[types.length];
+        long[] since = new long[types.length];
+        for (ActuatorActor.Type t : types) {
+            on[t.ordinal()] = state.isOn(t);
+            since[t.ordinal()] = state.switchedAt(t);
+        }
+        actuatorStates.publish(greenhouseId, on, since);
+    }
+
+    // Readings change far too often to journal each one: persist the latest values now and then
+    private void maybePersistReadings(long now) {
+        if (journal == null || !readingsDirty || now - readingsPersistedAt < readingsIntervalMillis) return;
+        persist(state.readingsEvent());
+        readingsPersistedAt = now;
+        readingsDirty = false;
+    }
 }
@@ -0,0 +1,138 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.typed.ActorRef;
+import com.example.greenhouse.anomaly.AnomalySettings;
+import com.example.greenhouse.control.ControlRules;
+import com.example.greenhouse.control.DwellSettings;
+import com.example.greenhouse.device.ActuatorDevice;
+import com.example.greenhouse.device.ActuatorSettings;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.QuantileViews;
+import com.example.greenhouse.fleet.SketchSettings;
+
+import java.time.Duration;
+
+/**
+ * Shared collaborators handed down the region/site/greenhouse hierarchy, so adding one does not mean
+ * another create overload on every level. Everything but {@link #data} is optional and may be null;
+ * start from {@link #of} and add what is needed with the {@code with} methods.
+ */
+public final class GreenhouseServices {
+
+    public final ActorRef<DataProcessingManager.Command> data;
+    public final ActorRef<JournalManager.Command> journal;
+    // Actuator positions published for readers outside the hierarchy (HTTP)
+    public final ActuatorStates actuatorStates;
+    // Site and region managers keep subtree aggregates, fed by coalesced pushes from their children, and publish
+    // them into aggregateViews
+    public final AggregateSettings aggregates;
+    public final AggregateViews aggregateViews;
+    // Windowed quantile sketches merged up the hierarchy; the managers publish theirs into quantileViews
+    public final SketchSettings sketches;
+    public final QuantileViews quantileViews;
+    // Greenhouses run anomaly detection on their readings and report to notifications
+    public final AnomalySettings anomalies;
+    public final ActorRef<NotificationManager.Command> notifications;
+    // Compiled control rules; null: the built-in fan and heater thresholds
+    public final ControlRules rules;
+    // Minimum on/off times of actuators; null: switch as soon as decided
+    public final DwellSettings dwell;
+    // Devices behind the actuator actors and their command pipeline; null: devices that apply every command at once
+    public final ActuatorSettings actuators;
+    public final ActuatorDevice.Factory devices;
+    // Dispatchers of greenhouses and site maintenance; never null, everything on the default one unless given
+    public final DispatcherSettings dispatchers;
+    // Sensors and actuators as state inside the greenhouse actor rather than as child actors
+    public final boolean lightweight;
+    // Greenhouses of a site stop after this long without messages and are revived by routing; null: never
+    public final Duration passivateAfter;
+
+    private GreenhouseServices(ActorRef<DataProcessingManager.Command> data, ActorRef<JournalManager.Command> journal,
+                               ActuatorStates actuatorStates, AggregateSettings aggregates, AggregateViews aggregateViews,
+                               SketchSettings sketches, QuantileViews quantileViews,
+                               AnomalySettings anomalies, ActorRef<NotificationManager.Command> notifications,
+                               ControlRules rules, DwellSettings dwell, ActuatorSettings actuators, ActuatorDevice.Factory devices,
+                               DispatcherSettings dispatchers, boolean lightweight, Duration passivateAfter) {
+        this.data = data;
+        this.journal = journal;
+        this.actuatorStates = actuatorStates;
+        this.aggregates = aggregates;
+        this.aggregateViews = aggregateViews;
+        this.sketches = sketches;
+        this.quantileViews = quantileViews;
+        this.anomalies = anomalies;
+        this.notifications = notifications;
+        this.rules = rules;
+        this.dwell = dwell;
+        this.actuators = actuators;
+        this.devices = devices;
+        this.dispatchers = dispatchers == null ? DispatcherSettings.shared() : dispatchers;
+        this.lightweight = lightweight;
+        this.passivateAfter = passivateAfter;
+    }
+
+    /** Routing only; the rest is added with the {@code with} methods, each returning a copy. */
+    public static GreenhouseServices of(ActorRef<DataProcessingManager.Command> data) {
+        return new GreenhouseServices(data, null, null, null, null, null, null, null, null, null, null, null, null, null, false, null);
+    }
+
+    public GreenhouseServices withJournal(ActorRef<JournalManager.Command> journal) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withActuatorStates(ActuatorStates actuatorStates) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withAggregates(AggregateSettings aggregates, AggregateViews aggregateViews) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withSketches(SketchSettings sketches, QuantileViews quantileViews) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withAnomalies(AnomalySettings anomalies, ActorRef<NotificationManager.Command> notifications) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withRules(ControlRules rules) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withDwell(DwellSettings dwell) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withActuators(ActuatorSettings actuators, ActuatorDevice.Factory devices) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withDispatchers(DispatcherSettings dispatchers) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withLightweight(boolean lightweight) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    public GreenhouseServices withPassivateAfter(Duration passivateAfter) {
+        return new GreenhouseServices(data, journal, actuatorStates, aggregates, aggregateViews, sketches, quantileViews, anomalies, notifications,
+                rules, dwell, actuators, devices, dispatchers, lightweight, passivateAfter);
+    }
+
+    /** Whether greenhouses report to their site at all. */
+    boolean reportsToSite() { return aggregates != null || sketches != null; }
+}
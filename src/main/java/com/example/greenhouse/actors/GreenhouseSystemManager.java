@@ -2,10 +2,34 @@ package com.example.greenhouse.actors;
 
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.DispatcherSelector;
 import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.anomaly.AnomalySettings;
+import com.example.greenhouse.control.ControlRules;
+import com.example.greenhouse.control.DwellSettings;
+import com.example.greenhouse.device.ActuatorSettings;
+import com.example.greenhouse.device.DeviceDrivers;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.fleet.QuantileViews;
+import com.example.greenhouse.fleet.SketchSettings;
+import com.example.greenhouse.fleet.SketchWindow;
+import com.example.greenhouse.http.HttpSettings;
+import com.example.greenhouse.journal.JournalSettings;
+import com.example.greenhouse.validation.ValidationSettings;
+import com.example.greenhouse.storage.StorageSettings;
+import com.example.greenhouse.stream.LiveFeed;
+import com.example.greenhouse.stream.LiveFeedSettings;
+import com.example.greenhouse.stream.LoadProfile;
 import com.example.greenhouse.stream.SensorStream;
 
+import com.typesafe.config.Config;
+
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
@@ -18,58 +42,255 @@ public class GreenhouseSystemManager extends AbstractBehavior<GreenhouseSystemMa
         public final List<String> regions;
         public final int sitesPerRegion;
         public final int greenhousesPerSite;
+        public final LoadProfile load;
+        public final ActorRef<Ready> replyTo; // null: nobody waits for the fleet to be ready
         public Initialize(List<String> regions, int sitesPerRegion, int greenhousesPerSite) {
+            this(regions, sitesPerRegion, greenhousesPerSite, LoadProfile.disabled());
+        }
+        public Initialize(List<String> regions, int sitesPerRegion, int greenhousesPerSite, LoadProfile load) {
+            this(regions, sitesPerRegion, greenhousesPerSite, load, null);
+        }
+        public Initialize(List<String> regions, int sitesPerRegion, int greenhousesPerSite, LoadProfile load, ActorRef<Ready> replyTo) {
             this.regions = regions;
             this.sitesPerRegion = sitesPerRegion;
             this.greenhousesPerSite = greenhousesPerSite;
+            this.load = load;
+            this.replyTo = replyTo;
+        }
+    }
+
+    // Every greenhouse is registered for routing (complete), or bootstrap timed out first; sensor ingest starts now
+    public static final class Ready {
+        public final int greenhouses;
+        public final Duration elapsed;
+        public final boolean lazy;
+        public final boolean complete;
+        public Ready(int greenhouses, Duration elapsed, boolean lazy, boolean complete) {
+            this.greenhouses = greenhouses; this.elapsed = elapsed; this.lazy = lazy; this.complete = complete;
         }
     }
 
+    private enum PublishSketches implements Command { INSTANCE }
+
+    private enum BootstrapTimeout implements Command { INSTANCE }
+
     public static Behavior<Command> create() {
-        Behavior<Command> behavior = Behaviors.setup(GreenhouseSystemManager::new);
+        Behavior<Command> behavior = Behaviors.setup(ctx -> Behaviors.withTimers(timers -> new GreenhouseSystemManager(ctx, timers)));
         // Critical component: restart on failures, limited backoff
         return Behaviors.supervise(behavior)
                 .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 0.2));
     }
 
-    private GreenhouseSystemManager(ActorContext<Command> ctx) {
+    private final TimerScheduler<Command> timers;
+    // Fleet-wide quantiles, merged from what the regions hand up; null until initialized with sketches enabled
+    private SketchSettings sketches;
+    private SketchWindow window;
+    private QuantileViews quantileViews;
+    // Bootstrap in progress: ingest starts once every region is ready; null when not bootstrapping
+    private Bootstrap bootstrap;
+
+    private GreenhouseSystemManager(ActorContext<Command> ctx, TimerScheduler<Command> timers) {
         super(ctx);
+        this.timers = timers;
     }
 
     @Override
     public Receive<Command> createReceive() {
         return newReceiveBuilder()
                 .onMessage(Initialize.class, this::onInitialize)
+                .onMessage(SketchSlice.class, this::onSketchSlice)
+                .onMessageEquals(PublishSketches.INSTANCE, this::onPublishSketches)
+                .onMessage(RegionManager.RegionReady.class, this::onRegionReady)
+                .onMessageEquals(BootstrapTimeout.INSTANCE, this::onBootstrapTimeout)
                 .build();
     }
 
     private Behavior<Command> onInitialize(Initialize msg) {
         getContext().getLog().info("Initializing system for regions: {}", msg.regions);
+        long started = System.nanoTime();
+        // Dense greenhouse numbering shared by ingest and routing, pre-assigned in topology order
+        GreenhouseDirectory directory = new GreenhouseDirectory();
+        FleetTopology topology = buildTopology(directory, msg.regions, msg.sitesPerRegion, msg.greenhousesPerSite);
+        // Latest reading per greenhouse sensor, written by the routing shards, read without asking any actor
+        LatestValueTable latest = new LatestValueTable(SensorActor.Kind.count());
         // Spawn shared service supervisors (stubs)
-        ActorRef<DataProcessingManager.Command> dataProc = getContext().spawn(DataProcessingManager.create(), "data-processing");
-        getContext().spawn(NotificationManager.create(), "notification");
-        getContext().spawn(MaintenanceScheduler.create(), "maintenance-scheduler");
+        // Faulty readings are dropped (and their sensors quarantined) in the shards, before routing or any view sees them
+        ValidationSettings validation = ValidationSettings.fromConfig(getContext().getSystem().settings().config());
+        // Ingest, control, maintenance and notifications each on their own dispatcher: a burst in one does not delay the others
+        DispatcherSettings dispatchers = DispatcherSettings.fromConfig(getContext().getSystem().settings().config());
+        ParkingSettings parking = ParkingSettings.fromConfig(getContext().getSystem().settings().config());
+        DataProcessingManager.Options routing = DataProcessingManager.Options.of(directory).withLatest(latest)
+                .withValidation(validation.enabled ? validation : null).withParking(parking.enabled ? parking : null);
+        ActorRef<DataProcessingManager.Command> dataProc = getContext().spawn(DataProcessingManager.create(ingestShards(), routing),
+                "data-processing", dispatchers.ingest);
+        StorageSettings storage = StorageSettings.fromConfig(getContext().getSystem().settings().config());
+        if (storage.enabled) {
+            // Readings reach the store as a side feed of routing, on the store's own dispatcher
+            ActorRef<StorageManager.Command> store = getContext().spawn(StorageManager.create(storage, directory), "storage",
+                    DispatcherSelector.fromConfig("greenhouse.storage.dispatcher"));
+            dataProc.tell(new DataProcessingManager.Subscribe(store.narrow()));
+        }
+        JournalSettings journalSettings = JournalSettings.fromConfig(getContext().getSystem().settings().config());
+        ActorRef<JournalManager.Command> journal = null;
+        if (journalSettings.enabled) {
+            // Greenhouse control state is recovered from here, so it must exist before any greenhouse
+            journal = getContext().spawn(JournalManager.create(journalSettings), "journal",
+                    DispatcherSelector.fromConfig("greenhouse.journal.dispatcher"));
+        }
+        ActuatorStates actuatorStates = new ActuatorStates(ActuatorActor.Type.values().length);
+        SketchSettings sketchSettings = SketchSettings.fromConfig(getContext().getSystem().settings().config());
+        if (sketchSettings.enabled) {
+            // Every level publishes its windowed quantiles here once per slice
+            sketches = sketchSettings;
+            quantileViews = new QuantileViews();
+            window = new SketchWindow(sketches, SensorActor.Kind.count(), false);
+            timers.startTimerWithFixedDelay(PublishSketches.INSTANCE, sketches.slice);
+        }
+        HttpSettings http = HttpSettings.fromConfig(getContext().getSystem().settings().config());
+        LiveFeedSettings liveSettings = LiveFeedSettings.fromConfig(getContext().getSystem().settings().config());
+        LiveFeed live = null;
+        if (http.enabled && liveSettings.enabled) {
+            // Routed batches are fanned out to streaming clients; routing never waits for them
+            live = LiveFeed.start(getContext().getSystem(), liveSettings, directory);
+            ActorRef<SensorBatch> feed = getContext().spawn(live.ingress(), "live-feed");
+            dataProc.tell(new DataProcessingManager.Subscribe(feed));
+        }
+        AggregateSettings aggregates = AggregateSettings.fromConfig(getContext().getSystem().settings().config());
+        // Sites and regions publish their running aggregates here as they push them up
+        AggregateViews aggregateViews = aggregates.enabled ? new AggregateViews() : null;
+        if (http.enabled) {
+            // Queries are served from the shared views above, never by asking greenhouses
+            getContext().spawn(HttpApiManager.create(http, HttpApiManager.Views.of(topology, latest, actuatorStates)
+                    .withLive(live, liveSettings).withAggregates(aggregateViews).withQuantiles(quantileViews)), "http");
+        }
+        ActorRef<NotificationManager.Command> notifications = getContext().spawn(NotificationManager.create(), "notification",
+                dispatchers.notifications);
+        getContext().spawn(MaintenanceScheduler.create(), "maintenance-scheduler", dispatchers.maintenance);
 
+        AnomalySettings anomalies = AnomalySettings.fromConfig(getContext().getSystem().settings().config());
+        // Compiled once here, shared by every greenhouse of the fleet; a bad rule fails startup rather than a greenhouse
+        ControlRules rules = ControlRules.fromConfig(getContext().getSystem().settings().config());
+        // Simulated devices, or blocking drivers kept off the actors' dispatcher
+        ActuatorSettings actuatorSettings = ActuatorSettings.fromConfig(getContext().getSystem().settings().config());
+        GreenhouseServices services = GreenhouseServices.of(dataProc)
+                .withJournal(journal)
+                .withActuatorStates(actuatorStates)
+                .withAggregates(aggregates.enabled ? aggregates : null, aggregateViews)
+                .withSketches(sketches, quantileViews)
+                .withAnomalies(anomalies.enabled ? anomalies : null, notifications)
+                .withRules(rules)
+                .withDwell(DwellSettings.fromConfig(getContext().getSystem().settings().config()))
+                .withActuators(actuatorSettings, DeviceDrivers.factory(getContext().getSystem(), actuatorSettings))
+                .withDispatchers(dispatchers)
+                .withLightweight(lightweight(getContext().getSystem().settings().config()))
+                .withPassivateAfter(passivateAfter(getContext().getSystem().settings().config()));
+        // Regions bootstrap side by side and ack up the tree; sensor ingest waits for all of them
+        BootstrapSettings bootstrapSettings = BootstrapSettings.fromConfig(getContext().getSystem().settings().config());
+        bootstrap = new Bootstrap(msg, dataProc, directory, bootstrapSettings.lazy, started);
+        timers.startSingleTimer(BootstrapTimeout.INSTANCE, bootstrapSettings.timeout);
         for (String region : msg.regions) {
-            var child = getContext().spawn(RegionManager.create(region, msg.sitesPerRegion, msg.greenhousesPerSite, dataProc), "region-" + region);
-            child.tell(new RegionManager.Bootstrap());
+            var child = getContext().spawn(RegionManager.create(region, msg.sitesPerRegion, msg.greenhousesPerSite, services,
+                    sketches == null ? null : getContext().getSelf()), "region-" + region);
+            child.tell(new RegionManager.Bootstrap(bootstrapSettings.lazy, getContext().getSelf().narrow()));
+        }
+        if (msg.regions.isEmpty()) ready(true);
+        return this;
+    }
+
+    private Behavior<Command> onRegionReady(RegionManager.RegionReady ready) {
+        if (bootstrap == null) {
+            getContext().getLog().info("[bootstrap] region {} ready after ingest started, in {} ms", ready.regionId, ready.elapsed.toMillis());
+            return this;
+        }
+        getContext().getLog().info("[bootstrap] region {} ready: {} greenhouses in {} ms, slowest site {} ({} ms)", ready.regionId,
+                ready.greenhouses, ready.elapsed.toMillis(), ready.slowestSite, ready.slowestSiteElapsed.toMillis());
+        bootstrap.greenhouses += ready.greenhouses;
+        if (++bootstrap.regionsReady == bootstrap.request.regions.size()) ready(true);
+        return this;
+    }
+
+    private Behavior<Command> onBootstrapTimeout() {
+        if (bootstrap == null) return this;
+        getContext().getLog().warn("[bootstrap] only {} of {} regions ready after {} ms, starting ingest anyway", bootstrap.regionsReady,
+                bootstrap.request.regions.size(), (System.nanoTime() - bootstrap.started) / 1_000_000);
+        ready(false);
+        return this;
+    }
+
+    private void ready(boolean complete) {
+        Bootstrap b = bootstrap;
+        bootstrap = null;
+        timers.cancel(BootstrapTimeout.INSTANCE);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - b.started);
+        if (complete) {
+            getContext().getLog().info("[bootstrap] fleet ready: {} greenhouses{} in {} ms", b.greenhouses, b.lazy ? " (spawned on demand)" : "",
+                    elapsed.toMillis());
         }
+        if (b.request.load.enabled) {
+            // Synthetic high-rate load for capacity testing
+            SensorStream.runLoad(getContext().getSystem(), b.dataProc, b.directory, b.request.load);
+        } else {
+            // Start stubbed stream simulating Kafka sensor events routed via data processing
+            SensorStream.run(getContext().getSystem(), b.dataProc, b.directory);
+        }
+        if (b.request.replyTo != null) b.request.replyTo.tell(new Ready(b.greenhouses, elapsed, b.lazy, complete));
+    }
+
+    private Behavior<Command> onSketchSlice(SketchSlice slice) {
+        if (window != null) window.add(slice.slice, slice.sketches, sketches.sliceOf(System.currentTimeMillis()));
+        return this;
+    }
 
-        // Start stubbed stream simulating Kafka sensor events routed via data processing
-        SensorStream.run(getContext().getSystem(), dataProc, computeGreenhouseIds(msg.regions, msg.sitesPerRegion, msg.greenhousesPerSite));
+    private Behavior<Command> onPublishSketches() {
+        long now = System.currentTimeMillis();
+        quantileViews.publish(QuantileViews.FLEET, window.view(sketches.sliceOf(now), now));
         return this;
     }
 
-    private static java.util.List<String> computeGreenhouseIds(java.util.List<String> regions, int sitesPerRegion, int greenhousesPerSite) {
-        java.util.ArrayList<String> ids = new java.util.ArrayList<>();
+    private static final class Bootstrap {
+        final Initialize request;
+        final ActorRef<DataProcessingManager.Command> dataProc;
+        final GreenhouseDirectory directory;
+        final boolean lazy;
+        final long started;
+        int regionsReady;
+        int greenhouses;
+        Bootstrap(Initialize request, ActorRef<DataProcessingManager.Command> dataProc, GreenhouseDirectory directory, boolean lazy, long started) {
+            this.request = request; this.dataProc = dataProc; this.directory = directory; this.lazy = lazy; this.started = started;
+        }
+    }
+
+    // 0 (or less) means one routing shard per available core
+    private int ingestShards() {
+        int shards = getContext().getSystem().settings().config().getInt("greenhouse.data-processing.shards");
+        return shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+    }
+
+    // One actor per greenhouse instead of seven; anything but the two modes is a configuration error
+    private static boolean lightweight(Config config) {
+        String mode = config.getString("greenhouse.greenhouse-mode");
+        if (!mode.equals("actors") && !mode.equals("lightweight")) {
+            throw new IllegalArgumentException("greenhouse.greenhouse-mode must be actors or lightweight, not " + mode);
+        }
+        return mode.equals("lightweight");
+    }
+
+    private static Duration passivateAfter(Config config) {
+        Duration after = config.getDuration("greenhouse.passivate-after");
+        return after.isZero() ? null : after;
+    }
+
+    // Same ids as RegionManager and SiteManager give their children
+    private static FleetTopology buildTopology(GreenhouseDirectory directory, List<String> regions, int sitesPerRegion, int greenhousesPerSite) {
+        FleetTopology.Builder topology = FleetTopology.builder(directory);
         for (String region : regions) {
             for (int s = 0; s < sitesPerRegion; s++) {
                 String siteId = region + "-site-" + s;
                 for (int g = 0; g < greenhousesPerSite; g++) {
-                    ids.add(siteId + "-gh-" + g);
+                    topology.add(region, siteId, siteId + "-gh-" + g);
                 }
             }
         }
-        return ids;
+        return topology.build();
     }
 }
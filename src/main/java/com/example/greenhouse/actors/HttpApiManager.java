@@ -0,0 +1,110 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.SupervisorStrategy;
+import akka.actor.typed.javadsl.*;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.server.Route;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.fleet.QuantileViews;
+import com.example.greenhouse.http.HttpSettings;
+import com.example.greenhouse.http.LiveRoutes;
+import com.example.greenhouse.http.QueryRoutes;
+import com.example.greenhouse.stream.LiveFeed;
+import com.example.greenhouse.stream.LiveFeedSettings;
+
+import java.time.Duration;
+
+/**
+ * Owns the HTTP binding of the query API. The routes read the views the rest of the system publishes
+ * into; requests themselves never reach this actor.
+ */
+public class HttpApiManager extends AbstractBehavior<HttpApiManager.Command> {
+
+    public interface Command {}
+
+    private static final class BindResult implements Command {
+        final ServerBinding binding;
+        final Throwable failure;
+        BindResult(ServerBinding binding, Throwable failure) { this.binding = binding; this.failure = failure; }
+    }
+
+    /** What the routes serve, all of it shared views the rest of the system publishes into. */
+    public static final class Views {
+        public final FleetTopology topology;
+        public final LatestValueTable latest;
+        public final ActuatorStates actuators;
+        public final LiveFeed live; // null: no /api/live
+        public final LiveFeedSettings liveSettings;
+        public final AggregateViews aggregates; // null: no site and region aggregates
+        public final QuantileViews quantiles; // null: no quantiles
+
+        private Views(FleetTopology topology, LatestValueTable latest, ActuatorStates actuators, LiveFeed live, LiveFeedSettings liveSettings,
+                      AggregateViews aggregates, QuantileViews quantiles) {
+            this.topology = topology; this.latest = latest; this.actuators = actuators; this.live = live; this.liveSettings = liveSettings;
+            this.aggregates = aggregates; this.quantiles = quantiles;
+        }
+
+        public static Views of(FleetTopology topology, LatestValueTable latest, ActuatorStates actuators) {
+            return new Views(topology, latest, actuators, null, null, null, null);
+        }
+
+        /** Also serves the feed as server-sent events under /api/live. */
+        public Views withLive(LiveFeed live, LiveFeedSettings liveSettings) {
+            return new Views(topology, latest, actuators, live, liveSettings, aggregates, quantiles);
+        }
+
+        /** Also serves the site and region aggregates. */
+        public Views withAggregates(AggregateViews aggregates) {
+            return new Views(topology, latest, actuators, live, liveSettings, aggregates, quantiles);
+        }
+
+        /** Also serves the site, region and fleet quantiles. */
+        public Views withQuantiles(QuantileViews quantiles) {
+            return new Views(topology, latest, actuators, live, liveSettings, aggregates, quantiles);
+        }
+    }
+
+    public static Behavior<Command> create(HttpSettings settings, Views views) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> {
+            Route routes = new QueryRoutes(views.topology, views.latest, views.actuators, views.aggregates, views.quantiles).route();
+            if (views.live != null) routes = routes.orElse(new LiveRoutes(views.topology, views.live, views.liveSettings).route());
+            ctx.pipeToSelf(Http.get(ctx.getSystem()).newServerAt(settings.host, settings.port).bind(routes), BindResult::new);
+            return new HttpApiManager(ctx);
+        });
+        // A failed bind (port in use) is retried with backoff
+        return Behaviors.supervise(behavior)
+                .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(30), 0.2));
+    }
+
+    private ServerBinding binding;
+
+    private HttpApiManager(ActorContext<Command> ctx) {
+        super(ctx);
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(BindResult.class, this::onBindResult)
+                .onSignal(PostStop.class, signal -> onStop())
+                .build();
+    }
+
+    private Behavior<Command> onBindResult(BindResult result) {
+        if (result.failure != null) throw new IllegalStateException("[http] bind failed", result.failure);
+        binding = result.binding;
+        getContext().getLog().info("[http] query API listening on {}", binding.localAddress());
+        return this;
+    }
+
+    private Behavior<Command> onStop() {
+        if (binding != null) binding.unbind();
+        return this;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.PreRestart;
+import akka.actor.typed.SupervisorStrategy;
+import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.journal.ControlJournal;
+import com.example.greenhouse.journal.GreenhouseEvent;
+import com.example.greenhouse.journal.GreenhouseState;
+import com.example.greenhouse.journal.JournalSettings;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Single writer of the control-state journal. Greenhouses persist their events here and get their
+ * state back from here when they (re)start; the journal's in-memory view answers recovery without
+ * touching disk. Meant to run on its own dispatcher, like StorageManager.
+ */
+public class JournalManager extends AbstractBehavior<JournalManager.Command> {
+
+    public interface Command {}
+
+    // Write-behind: durable after the next flush, which bounds what a crash can lose
+    public static final class Persist implements Command {
+        public final String greenhouseId;
+        public final GreenhouseEvent event;
+        public Persist(String greenhouseId, GreenhouseEvent event) { this.greenhouseId = greenhouseId; this.event = event; }
+    }
+
+    public static final class Recover implements Command {
+        public final String greenhouseId;
+        public final ActorRef<GreenhouseActor.Command> replyTo;
+        public Recover(String greenhouseId, ActorRef<GreenhouseActor.Command> replyTo) { this.greenhouseId = greenhouseId; this.replyTo = replyTo; }
+    }
+
+    // Reply to Recover: a private copy of the greenhouse's state, empty if it has no history
+    public static final class Recovered implements GreenhouseActor.Command {
+        public final GreenhouseState state;
+        public final Duration readingsInterval;
+        public Recovered(GreenhouseState state, Duration readingsInterval) { this.state = state; this.readingsInterval = readingsInterval; }
+    }
+
+    private enum Flush implements Command { INSTANCE }
+
+    public static Behavior<Command> create(JournalSettings settings) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> Behaviors.withTimers(timers -> {
+            timers.startTimerWithFixedDelay(Flush.INSTANCE, settings.flushInterval);
+            long start = System.nanoTime();
+            ControlJournal journal = ControlJournal.open(settings);
+            ctx.getLog().info("[journal] recovered {} greenhouses ({} events replayed) in {} ms",
+                    journal.greenhouseCount(), journal.eventsReplayed(), (System.nanoTime() - start) / 1_000_000);
+            return new JournalManager(ctx, settings, journal);
+        }));
+        // Reopening runs recovery again, so restarting is the answer to I/O failures (the old journal is closed on PreRestart)
+        return Behaviors.supervise(behavior)
+                .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(30), 0.2));
+    }
+
+    private final JournalSettings settings;
+    private final ControlJournal journal;
+
+    private JournalManager(ActorContext<Command> ctx, JournalSettings settings, ControlJournal journal) {
+        super(ctx);
+        this.settings = settings;
+        this.journal = journal;
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(Persist.class, this::onPersist)
+                .onMessage(Recover.class, this::onRecover)
+                .onMessageEquals(Flush.INSTANCE, this::onFlush)
+                .onSignal(PostStop.class, signal -> onStop())
+                .onSignal(PreRestart.class, signal -> onStop())
+                .build();
+    }
+
+    private Behavior<Command> onPersist(Persist p) throws IOException {
+        journal.append(p.greenhouseId, p.event);
+        return this;
+    }
+
+    private Behavior<Command> onRecover(Recover r) {
+        GreenhouseState state = journal.state(r.greenhouseId);
+        r.replyTo.tell(new Recovered(state == null ? new GreenhouseState() : state.copy(), settings.readingsInterval));
+        return this;
+    }
+
+    private Behavior<Command> onFlush() throws IOException {
+        journal.flush();
+        return this;
+    }
+
+    // A final snapshot makes the next start replay nothing
+    private Behavior<Command> onStop() {
+        try {
+            if (settings.snapshotEvery > 0 && journal.eventsSinceSnapshot() > 0) journal.snapshot();
+            journal.close();
+        } catch (IOException e) {
+            getContext().getLog().warn("[journal] failed to close journal cleanly", e);
+        }
+        return this;
+    }
+}
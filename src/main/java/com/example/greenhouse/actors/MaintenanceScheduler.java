@@ -17,7 +17,7 @@ public class MaintenanceScheduler extends AbstractBehavior<MaintenanceScheduler.
                     Duration.ofSeconds(10),
                     Duration.ofSeconds(60),
                     () -> ctx.getSelf().tell(new Tick()),
-                    ctx.getSystem().executionContext());
+                    ctx.getExecutionContext());
             return actor;
         });
     }
@@ -0,0 +1,32 @@
+package com.example.greenhouse.actors;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Readings held by routing for greenhouses not registered yet, read from {@code greenhouse.data-processing.parking}. */
+public final class ParkingSettings {
+
+    public final boolean enabled;
+    /** Reading messages held per greenhouse; a newer one drops the oldest. */
+    public final int perGreenhouse;
+    /** Greenhouses a routing shard holds readings for; readings for one more are dropped. */
+    public final int maxGreenhouses;
+    /** Readings held longer are dropped instead of delivered. */
+    public final Duration ttl;
+
+    public ParkingSettings(boolean enabled, int perGreenhouse, int maxGreenhouses, Duration ttl) {
+        if (enabled && (perGreenhouse < 1 || maxGreenhouses < 1 || ttl.isNegative() || ttl.isZero())) {
+            throw new IllegalArgumentException("greenhouse.data-processing.parking limits and ttl must be positive");
+        }
+        this.enabled = enabled;
+        this.perGreenhouse = perGreenhouse;
+        this.maxGreenhouses = maxGreenhouses;
+        this.ttl = ttl;
+    }
+
+    public static ParkingSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.data-processing.parking");
+        return new ParkingSettings(c.getBoolean("enabled"), c.getInt("per-greenhouse"), c.getInt("max-greenhouses"), c.getDuration("ttl"));
+    }
+}
@@ -4,37 +4,123 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.QuantileViews;
+import com.example.greenhouse.fleet.SketchSettings;
+import com.example.greenhouse.fleet.SketchWindow;
+import com.example.greenhouse.fleet.SubtreeStats;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Spawns the sites of a region. With aggregate settings in the services it also keeps the region's
+ * {@link SubtreeStats}, merged from the aggregates its sites push and published into the aggregate views,
+ * so neither queries nor {@link GetAggregate} ask any site or greenhouse. With sketch settings it merges its sites' {@link SketchSlice}s
+ * into a sliding window, publishes the region's quantiles once per slice and hands what it merged since
+ * the last time to the system manager, if given one. Given a replyTo, the bootstrap is acknowledged with
+ * {@link RegionReady} once every site has acknowledged its own.
+ */
 public class RegionManager extends AbstractBehavior<RegionManager.Command> {
 
     public interface Command {}
-    public static final class Bootstrap implements Command {}
+    public static final class Bootstrap implements Command {
+        public final boolean lazy; // sites spawn their greenhouses on demand
+        public final ActorRef<RegionReady> replyTo; // null: nobody waits for it
+        public Bootstrap() { this(false, null); }
+        public Bootstrap(boolean lazy, ActorRef<RegionReady> replyTo) { this.lazy = lazy; this.replyTo = replyTo; }
+    }
+
+    public static final class RegionReady implements GreenhouseSystemManager.Command {
+        public final String regionId;
+        public final int greenhouses;
+        public final Duration elapsed;
+        // The site that took longest, a hint of where a slow start comes from
+        public final String slowestSite;
+        public final Duration slowestSiteElapsed;
+        public RegionReady(String regionId, int greenhouses, Duration elapsed, String slowestSite, Duration slowestSiteElapsed) {
+            this.regionId = regionId; this.greenhouses = greenhouses; this.elapsed = elapsed;
+            this.slowestSite = slowestSite; this.slowestSiteElapsed = slowestSiteElapsed;
+        }
+    }
+
+    // A site's aggregates, pushed at most once per push-interval
+    public static final class SiteChanged implements Command {
+        public final String siteId;
+        public final SubtreeStats stats;
+        public SiteChanged(String siteId, SubtreeStats stats) { this.siteId = siteId; this.stats = stats; }
+    }
+
+    // Replies with a copy of the region's aggregates
+    public static final class GetAggregate implements Command {
+        public final ActorRef<SubtreeStats> replyTo;
+        public GetAggregate(ActorRef<SubtreeStats> replyTo) { this.replyTo = replyTo; }
+    }
+
+    private enum PublishSketches implements Command { INSTANCE }
 
     private final String regionId;
     private final int sitesPerRegion;
     private final int greenhousesPerSite;
-    private final ActorRef<DataProcessingManager.Command> dataRef;
+    private final GreenhouseServices services;
+    private final SubtreeStats stats = new SubtreeStats(SensorActor.Kind.count());
+    private final Map<String, SubtreeStats> sites = new HashMap<>();
+    private final ActorRef<GreenhouseSystemManager.Command> system; // null: sketches are not pushed up
+    private final SketchSettings sketches; // null: no sketches
+    private final SketchWindow window;
+    // Bootstrap in progress: who waits for it, the sites not ready yet and what the ready ones reported
+    private ActorRef<RegionReady> readyTo;
+    private int sitesNotReady;
+    private int greenhousesReady;
+    private SiteManager.SiteReady slowest;
+    private long bootstrapStarted;
 
     public static Behavior<Command> create(String regionId, int sitesPerRegion, int greenhousesPerSite, ActorRef<DataProcessingManager.Command> dataRef) {
-        Behavior<Command> behavior = Behaviors.setup(ctx -> new RegionManager(ctx, regionId, sitesPerRegion, greenhousesPerSite, dataRef));
+        return create(regionId, sitesPerRegion, greenhousesPerSite, dataRef, null);
+    }
+
+    public static Behavior<Command> create(String regionId, int sitesPerRegion, int greenhousesPerSite, ActorRef<DataProcessingManager.Command> dataRef,
+                                           ActorRef<JournalManager.Command> journal) {
+        return create(regionId, sitesPerRegion, greenhousesPerSite, GreenhouseServices.of(dataRef).withJournal(journal));
+    }
+
+    public static Behavior<Command> create(String regionId, int sitesPerRegion, int greenhousesPerSite, GreenhouseServices services) {
+        return create(regionId, sitesPerRegion, greenhousesPerSite, services, null);
+    }
+
+    /** With the system manager (and sketch settings in the services), the fleet's quantiles include this region. */
+    public static Behavior<Command> create(String regionId, int sitesPerRegion, int greenhousesPerSite, GreenhouseServices services,
+                                           ActorRef<GreenhouseSystemManager.Command> system) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> Behaviors.withTimers(timers -> {
+            if (services.sketches != null) timers.startTimerWithFixedDelay(PublishSketches.INSTANCE, services.sketches.slice);
+            return new RegionManager(ctx, regionId, sitesPerRegion, greenhousesPerSite, services, system);
+        }));
         return Behaviors.supervise(behavior)
                 .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 0.2));
     }
 
-    private RegionManager(ActorContext<Command> ctx, String regionId, int sitesPerRegion, int greenhousesPerSite, ActorRef<DataProcessingManager.Command> dataRef) {
+    private RegionManager(ActorContext<Command> ctx, String regionId, int sitesPerRegion, int greenhousesPerSite, GreenhouseServices services,
+                          ActorRef<GreenhouseSystemManager.Command> system) {
         super(ctx);
         this.regionId = regionId;
         this.sitesPerRegion = sitesPerRegion;
         this.greenhousesPerSite = greenhousesPerSite;
-        this.dataRef = dataRef;
+        this.services = services;
+        this.system = system;
+        this.sketches = services.sketches;
+        this.window = sketches == null ? null : new SketchWindow(sketches, SensorActor.Kind.count(), system != null);
     }
 
     @Override
     public Receive<Command> createReceive() {
         return newReceiveBuilder()
                 .onMessage(Bootstrap.class, this::onBootstrap)
+                .onMessage(SiteManager.SiteReady.class, this::onSiteReady)
+                .onMessage(SiteChanged.class, this::onSiteChanged)
+                .onMessage(GetAggregate.class, this::onGetAggregate)
+                .onMessage(SketchSlice.class, this::onSketchSlice)
+                .onMessageEquals(PublishSketches.INSTANCE, this::onPublishSketches)
                 .build();
     }
 
@@ -42,10 +128,72 @@ public class RegionManager extends AbstractBehavior<RegionManager.Command> {
         getContext().getLog().info("Bootstrapping region {} with {} sites", regionId, sitesPerRegion);
         // Spawn a weather station actor (resumed on failure)
         getContext().spawn(WeatherStationActor.create(regionId), "weather-station");
+        bootstrapStarted = System.nanoTime();
+        readyTo = b.replyTo;
+        sitesNotReady = sitesPerRegion;
+        // Sites bootstrap side by side, each acking when its greenhouses are up
+        ActorRef<SiteManager.SiteReady> ackTo = readyTo == null ? null : getContext().getSelf().narrow();
         for (int i = 0; i < sitesPerRegion; i++) {
             String siteId = regionId + "-site-" + i;
-            var site = getContext().spawn(SiteManager.create(regionId, siteId, greenhousesPerSite, dataRef), "site-" + i);
-            site.tell(new SiteManager.Bootstrap());
+            var site = getContext().spawn(SiteManager.create(regionId, siteId, greenhousesPerSite, services,
+                    services.reportsToSite() ? getContext().getSelf() : null), "site-" + i);
+            site.tell(new SiteManager.Bootstrap(b.lazy, ackTo));
+        }
+        if (sitesNotReady == 0) regionReady();
+        return this;
+    }
+
+    private Behavior<Command> onSiteReady(SiteManager.SiteReady ready) {
+        if (sitesNotReady == 0) return this;
+        greenhousesReady += ready.greenhouses;
+        if (slowest == null || ready.elapsed.compareTo(slowest.elapsed) > 0) slowest = ready;
+        if (--sitesNotReady == 0) regionReady();
+        return this;
+    }
+
+    private void regionReady() {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - bootstrapStarted);
+        getContext().getLog().debug("[{}] ready: {} sites, {} greenhouses in {} ms", regionId, sitesPerRegion, greenhousesReady, elapsed.toMillis());
+        if (readyTo != null) {
+            readyTo.tell(new RegionReady(regionId, greenhousesReady, elapsed, slowest == null ? null : slowest.siteId,
+                    slowest == null ? Duration.ZERO : slowest.elapsed));
+        }
+        readyTo = null;
+    }
+
+    // Sites are few and push rarely, so the region is re-merged from them instead of tracking deltas
+    private Behavior<Command> onSiteChanged(SiteChanged changed) {
+        sites.put(changed.siteId, changed.stats);
+        stats.clear();
+        for (SubtreeStats site : sites.values()) stats.merge(site);
+        if (services.aggregateViews != null) {
+            services.aggregateViews.publish(AggregateViews.region(regionId), stats, System.currentTimeMillis());
+        }
+        return this;
+    }
+
+    private Behavior<Command> onGetAggregate(GetAggregate get) {
+        get.replyTo.tell(stats.copy());
+        return this;
+    }
+
+    private Behavior<Command> onSketchSlice(SketchSlice slice) {
+        if (window == null) return this;
+        if (!window.add(slice.slice, slice.sketches, sketches.sliceOf(System.currentTimeMillis()))) {
+            getContext().getLog().debug("[{}] dropping {}, older than the window", regionId, slice);
+        }
+        return this;
+    }
+
+    private Behavior<Command> onPublishSketches() {
+        long now = System.currentTimeMillis();
+        if (system != null) {
+            for (SketchWindow.Slice pending : window.drainPending()) {
+                system.tell(new SketchSlice(regionId, pending.slice, pending.sketches));
+            }
+        }
+        if (services.quantileViews != null) {
+            services.quantileViews.publish(QuantileViews.region(regionId), window.view(sketches.sliceOf(now), now));
         }
         return this;
     }
@@ -10,7 +10,27 @@ import java.util.Random;
 
 public class SensorActor extends AbstractBehavior<SensorActor.Command> {
 
-    public enum Kind { Temperature, Humidity, SoilMoisture }
+    public enum Kind {
+        Temperature("temperature"), Humidity("humidity"), SoilMoisture("soil");
+
+        /** Name used on the wire and in SensorEnvelope/SensorReading. */
+        public final String wireName;
+        Kind(String wireName) { this.wireName = wireName; }
+
+        private static final Kind[] VALUES = values();
+
+        public static Kind ofOrdinal(int ordinal) { return VALUES[ordinal]; }
+
+        /** Kind for a wire name, or null when unknown. */
+        public static Kind fromWire(String wireName) {
+            for (Kind k : VALUES) {
+                if (k.wireName.equals(wireName)) return k;
+            }
+            return null;
+        }
+
+        public static int count() { return VALUES.length; }
+    }
 
     public interface Command {}
 
@@ -28,8 +48,16 @@ public class SensorActor extends AbstractBehavior<SensorActor.Command> {
         }
     }
 
+    // Set by the greenhouse when ingest validation quarantines or releases this sensor
+    public static final class SetHealth implements Command {
+        public final boolean healthy;
+        public final String reason;
+        public SetHealth(boolean healthy, String reason) { this.healthy = healthy; this.reason = reason; }
+    }
+
     private final String greenhouseId;
     private final Kind kind;
+    private boolean healthy = true;
     private final Random rnd = new Random();
 
     public static Behavior<Command> create(String greenhouseId, Kind kind) {
@@ -50,28 +78,41 @@ public class SensorActor extends AbstractBehavior<SensorActor.Command> {
         return newReceiveBuilder()
                 .onMessage(Read.class, this::onRead)
                 .onMessage(EmitSample.class, this::onEmitSample)
+                .onMessage(SetHealth.class, this::onSetHealth)
                 .build();
     }
 
+    // An unhealthy sensor's readings are not to be acted on, so it gives none
     private Behavior<Command> onRead(Read msg) {
-        msg.replyTo.tell(sampleReading());
+        if (healthy) msg.replyTo.tell(sampleReading());
         return this;
     }
 
     private Behavior<Command> onEmitSample(EmitSample msg) {
-        msg.replyTo.tell(sampleReading());
+        if (healthy) msg.replyTo.tell(sampleReading());
+        return this;
+    }
+
+    private Behavior<Command> onSetHealth(SetHealth msg) {
+        healthy = msg.healthy;
+        getContext().getLog().info("[{}] {} sensor marked {}: {}", greenhouseId, kind.wireName, healthy ? "healthy" : "unhealthy", msg.reason);
         return this;
     }
 
     private GreenhouseActor.SensorReading sampleReading() {
+        return sample(greenhouseId, kind, rnd);
+    }
+
+    /** A simulated reading; lightweight greenhouses, which have no sensor actors, sample with this directly. */
+    static GreenhouseActor.SensorReading sample(String greenhouseId, Kind kind, Random rnd) {
         double value;
-        String kindStr;
         switch (kind) {
-            case Temperature -> { value = 18 + rnd.nextDouble() * 15; kindStr = "temperature"; }
-            case Humidity -> { value = 40 + rnd.nextDouble() * 50; kindStr = "humidity"; }
-            case SoilMoisture -> { value = 10 + rnd.nextDouble() * 50; kindStr = "soil"; }
-            default -> { value = 0; kindStr = "unknown"; }
+            case Temperature -> value = 18 + rnd.nextDouble() * 15;
+            case Humidity -> value = 40 + rnd.nextDouble() * 50;
+            case SoilMoisture -> value = 10 + rnd.nextDouble() * 50;
+            default -> value = 0;
         }
+        String kindStr = kind.wireName;
         return new GreenhouseActor.SensorReading(kindStr + "-" + greenhouseId, kindStr, value);
     }
 }
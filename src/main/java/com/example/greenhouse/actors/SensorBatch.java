@@ -0,0 +1,79 @@
+package com.example.greenhouse.actors;
+
+import java.util.Arrays;
+
+/**
+ * Columnar batch of sensor readings: entry {@code i} is greenhouse {@code greenhouse[i]} (a
+ * {@link com.example.greenhouse.fleet.GreenhouseDirectory} index), sensor kind {@code kind[i]} (a
+ * {@link SensorActor.Kind} ordinal), {@code value[i]} and {@code timestamp[i]} (epoch millis).
+ *
+ * The same message travels through {@link DataProcessingManager}, which splits it per shard and then
+ * per greenhouse, and into {@link GreenhouseActor}, which applies its rules to the whole batch in one
+ * dequeue. Subscribers of DataProcessingManager (such as {@link StorageManager}) get the same batches.
+ * The arrays are shared, not copied: a batch must not be modified once it has been sent.
+ */
+public final class SensorBatch implements DataProcessingManager.Command, GreenhouseActor.Command, StorageManager.Command {
+
+    public final int size;
+    public final int[] greenhouse;
+    public final byte[] kind;
+    public final double[] value;
+    public final long[] timestamp;
+
+    public SensorBatch(int size, int[] greenhouse, byte[] kind, double[] value, long[] timestamp) {
+        this.size = size;
+        this.greenhouse = greenhouse;
+        this.kind = kind;
+        this.value = value;
+        this.timestamp = timestamp;
+    }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public String toString() { return "SensorBatch(" + size + ")"; }
+
+    /** Growable builder; {@link #build()} hands the arrays over without copying when they are full. */
+    public static final class Builder {
+        private int size;
+        private int[] greenhouse;
+        private byte[] kind;
+        private double[] value;
+        private long[] timestamp;
+
+        public Builder(int capacity) {
+            int cap = Math.max(1, capacity);
+            greenhouse = new int[cap];
+            kind = new byte[cap];
+            value = new double[cap];
+            timestamp = new long[cap];
+        }
+
+        public Builder add(int greenhouseIndex, int kindOrdinal, double v, long ts) {
+            if (size == greenhouse.length) grow();
+            greenhouse[size] = greenhouseIndex;
+            kind[size] = (byte) kindOrdinal;
+            value[size] = v;
+            timestamp[size] = ts;
+            size++;
+            return this;
+        }
+
+        public int size() { return size; }
+
+        public SensorBatch build() {
+            if (size != greenhouse.length) {
+                return new SensorBatch(size, Arrays.copyOf(greenhouse, size), Arrays.copyOf(kind, size),
+                        Arrays.copyOf(value, size), Arrays.copyOf(timestamp, size));
+            }
+            return new SensorBatch(size, greenhouse, kind, value, timestamp);
+        }
+
+        private void grow() {
+            int cap = greenhouse.length * 2;
+            greenhouse = Arrays.copyOf(greenhouse, cap);
+            kind = Arrays.copyOf(kind, cap);
+            value = Arrays.copyOf(value, cap);
+            timestamp = Arrays.copyOf(timestamp, cap);
+        }
+    }
+}
@@ -4,50 +4,241 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.SupervisorStrategy;
 import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.QuantileViews;
+import com.example.greenhouse.fleet.SketchSettings;
+import com.example.greenhouse.fleet.SketchWindow;
+import com.example.greenhouse.fleet.SubtreeStats;
+import com.example.greenhouse.journal.GreenhouseState;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 
+/**
+ * Spawns the greenhouses of a site. With aggregate settings in the services it also keeps the site's
+ * {@link SubtreeStats}, applying each greenhouse's pushed readings as a delta, answers
+ * {@link GetAggregate} from them, and at most once per push-interval publishes them into the aggregate
+ * views and pushes them to its region. With
+ * sketch settings it merges the greenhouses' {@link SketchSlice}s into a sliding window, and once per
+ * slice publishes the site's quantiles and hands what it merged since the last time to its region.
+ * Passivated greenhouses are spawned again when routing asks for them with {@link Revive}. A lazy
+ * bootstrap spawns none: they are registered with routing as passivated and spawned by their first message.
+ * Given a replyTo, the bootstrap is acknowledged with {@link SiteReady} once every greenhouse is registered
+ * for routing.
+ */
 public class SiteManager extends AbstractBehavior<SiteManager.Command> {
 
     public interface Command {}
-    public static final class Bootstrap implements Command {}
+    public static final class Bootstrap implements Command {
+        public final boolean lazy;
+        public final ActorRef<SiteReady> replyTo; // null: nobody waits for it
+        public Bootstrap() { this(false, null); }
+        public Bootstrap(boolean lazy, ActorRef<SiteReady> replyTo) { this.lazy = lazy; this.replyTo = replyTo; }
+    }
+
+    public static final class GreenhouseReady implements Command {
+        public final String greenhouseId;
+        public GreenhouseReady(String greenhouseId) { this.greenhouseId = greenhouseId; }
+    }
+
+    public static final class SiteReady implements RegionManager.Command {
+        public final String siteId;
+        public final int greenhouses;
+        public final Duration elapsed;
+        public SiteReady(String siteId, int greenhouses, Duration elapsed) { this.siteId = siteId; this.greenhouses = greenhouses; this.elapsed = elapsed; }
+    }
+
+    // Latest readings of one greenhouse by kind ordinal (NaN where none), pushed when they changed
+    public static final class GreenhouseChanged implements Command {
+        public final String greenhouseId;
+        public final double[] values;
+        public GreenhouseChanged(String greenhouseId, double[] values) { this.greenhouseId = greenhouseId; this.values = values; }
+    }
+
+    // Replies with a copy of the site's aggregates
+    public static final class GetAggregate implements Command {
+        public final ActorRef<SubtreeStats> replyTo;
+        public GetAggregate(ActorRef<SubtreeStats> replyTo) { this.replyTo = replyTo; }
+    }
+
+    // From routing: a message arrived for a passivated (or not yet spawned) greenhouse; snapshot is null when the journal
+    // has its state or there is none
+    public static final class Revive implements Command {
+        public final String greenhouseId;
+        public final String name;
+        public final GreenhouseState snapshot;
+        public Revive(String greenhouseId, String name, GreenhouseState snapshot) { this.greenhouseId = greenhouseId; this.name = name; this.snapshot = snapshot; }
+    }
+
+    private enum PushAggregate implements Command { INSTANCE }
+
+    private enum PublishSketches implements Command { INSTANCE }
 
     private final String regionId;
     private final String siteId;
     private final int greenhousesPerSite;
-    private final ActorRef<DataProcessingManager.Command> dataRef;
+    private final GreenhouseServices services;
+    private final ActorRef<RegionManager.Command> region; // null: aggregates and sketches are not pushed up
+    private final AggregateSettings aggregates; // null: no aggregates
+    private final SketchSettings sketches; // null: no sketches
+    private final SketchWindow window;
+    private final QuantileViews quantileViews; // null: not published
+    private final AggregateViews aggregateViews; // null: not published
+    private final SubtreeStats stats = new SubtreeStats(SensorActor.Kind.count());
+    private final Map<String, double[]> latest = new HashMap<>();
+    private boolean pushPending;
+    // Bootstrap in progress: who waits for it, and the greenhouses not registered yet
+    private ActorRef<SiteReady> readyTo;
+    private int notReady;
+    private long bootstrapStarted;
 
     public static Behavior<Command> create(String regionId, String siteId, int greenhousesPerSite, ActorRef<DataProcessingManager.Command> dataRef) {
-        Behavior<Command> behavior = Behaviors.setup(ctx -> new SiteManager(ctx, regionId, siteId, greenhousesPerSite, dataRef));
+        return create(regionId, siteId, greenhousesPerSite, dataRef, null);
+    }
+
+    public static Behavior<Command> create(String regionId, String siteId, int greenhousesPerSite, ActorRef<DataProcessingManager.Command> dataRef,
+                                           ActorRef<JournalManager.Command> journal) {
+        return create(regionId, siteId, greenhousesPerSite, GreenhouseServices.of(dataRef).withJournal(journal));
+    }
+
+    public static Behavior<Command> create(String regionId, String siteId, int greenhousesPerSite, GreenhouseServices services) {
+        return create(regionId, siteId, greenhousesPerSite, services, null);
+    }
+
+    public static Behavior<Command> create(String regionId, String siteId, int greenhousesPerSite, GreenhouseServices services,
+                                           ActorRef<RegionManager.Command> region) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> Behaviors.withTimers(timers -> {
+            if (services.sketches != null) timers.startTimerWithFixedDelay(PublishSketches.INSTANCE, services.sketches.slice);
+            return new SiteManager(ctx, regionId, siteId, greenhousesPerSite, services, region);
+        }));
         // Restart individual greenhouse controllers; stop actuators on critical failures handled in child actors
         return Behaviors.supervise(behavior)
                 .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(10), 0.2));
     }
 
-    private SiteManager(ActorContext<Command> ctx, String regionId, String siteId, int greenhousesPerSite, ActorRef<DataProcessingManager.Command> dataRef) {
+    private SiteManager(ActorContext<Command> ctx, String regionId, String siteId, int greenhousesPerSite, GreenhouseServices services,
+                        ActorRef<RegionManager.Command> region) {
         super(ctx);
         this.regionId = regionId;
         this.siteId = siteId;
         this.greenhousesPerSite = greenhousesPerSite;
-        this.dataRef = dataRef;
+        this.services = services;
+        this.aggregates = services.aggregates;
+        this.sketches = services.sketches;
+        this.quantileViews = services.quantileViews;
+        this.aggregateViews = services.aggregateViews;
+        this.region = region;
+        this.window = sketches == null ? null : new SketchWindow(sketches, SensorActor.Kind.count(), region != null);
     }
 
     @Override
     public Receive<Command> createReceive() {
         return newReceiveBuilder()
                 .onMessage(Bootstrap.class, this::onBootstrap)
+                .onMessage(Revive.class, this::onRevive)
+                .onMessage(GreenhouseReady.class, this::onGreenhouseReady)
+                .onMessage(GreenhouseChanged.class, this::onGreenhouseChanged)
+                .onMessage(GetAggregate.class, this::onGetAggregate)
+                .onMessageEquals(PushAggregate.INSTANCE, this::onPushAggregate)
+                .onMessage(SketchSlice.class, this::onSketchSlice)
+                .onMessageEquals(PublishSketches.INSTANCE, this::onPublishSketches)
                 .build();
     }
 
     private Behavior<Command> onBootstrap(Bootstrap b) {
-        getContext().getLog().info("Bootstrapping site {} with {} greenhouses", siteId, greenhousesPerSite);
+        getContext().getLog().info("Bootstrapping site {} with {} greenhouses{}", siteId, greenhousesPerSite, b.lazy ? " (lazily)" : "");
+        bootstrapStarted = System.nanoTime();
+        readyTo = b.replyTo;
         // Spawn maintenance actor (non-critical, resume on failures)
-        getContext().spawn(MaintenanceActor.create(siteId), "maintenance");
+        getContext().spawn(MaintenanceActor.create(siteId), "maintenance", services.dispatchers.maintenance);
+        if (b.lazy) {
+            for (int i = 0; i < greenhousesPerSite; i++) {
+                services.data.tell(new DataProcessingManager.RegisterDormant(siteId + "-gh-" + i, "gh-" + i, getContext().getSelf()));
+            }
+            siteReady();
+            return this;
+        }
+        ActorRef<GreenhouseReady> ackTo = readyTo == null ? null : getContext().getSelf().narrow();
+        notReady = greenhousesPerSite;
         for (int i = 0; i < greenhousesPerSite; i++) {
             String greenhouseId = siteId + "-gh-" + i;
-            var gh = getContext().spawn(GreenhouseActor.create(regionId, siteId, greenhouseId, dataRef), "gh-" + i);
-            gh.tell(new GreenhouseActor.Initialize());
+            var gh = getContext().spawn(GreenhouseActor.create(regionId, siteId, greenhouseId, services, getContext().getSelf()),
+                    "gh-" + i, services.dispatchers.greenhouse());
+            gh.tell(new GreenhouseActor.Initialize(false, ackTo));
+        }
+        if (notReady == 0) siteReady();
+        return this;
+    }
+
+    private Behavior<Command> onGreenhouseReady(GreenhouseReady ready) {
+        if (notReady > 0 && --notReady == 0) siteReady();
+        return this;
+    }
+
+    private void siteReady() {
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - bootstrapStarted);
+        getContext().getLog().debug("[{}] ready: {} greenhouses in {} ms", siteId, greenhousesPerSite, elapsed.toMillis());
+        if (readyTo != null) readyTo.tell(new SiteReady(siteId, greenhousesPerSite, elapsed));
+        readyTo = null;
+    }
+
+    private Behavior<Command> onRevive(Revive revive) {
+        Optional<ActorRef<Void>> stopping = getContext().getChild(revive.name);
+        if (stopping.isPresent()) {
+            // Still stopping its children; the name is free once it is gone
+            getContext().watchWith(stopping.get(), revive);
+            return this;
+        }
+        var gh = getContext().spawn(GreenhouseActor.create(regionId, siteId, revive.greenhouseId, services, getContext().getSelf(),
+                revive.snapshot), revive.name, services.dispatchers.greenhouse());
+        gh.tell(new GreenhouseActor.Initialize(true));
+        return this;
+    }
+
+    private Behavior<Command> onGreenhouseChanged(GreenhouseChanged changed) {
+        if (aggregates == null) return this;
+        double[] before = latest.put(changed.greenhouseId, changed.values);
+        int rescan = stats.replace(before, changed.values, aggregates);
+        if (rescan != 0) stats.rescan(rescan, latest.values());
+        if ((region != null || aggregateViews != null) && !pushPending) {
+            pushPending = true;
+            getContext().scheduleOnce(aggregates.pushInterval, getContext().getSelf(), PushAggregate.INSTANCE);
+        }
+        return this;
+    }
+
+    private Behavior<Command> onPushAggregate() {
+        pushPending = false;
+        if (aggregateViews != null) aggregateViews.publish(AggregateViews.site(siteId), stats, System.currentTimeMillis());
+        if (region != null) region.tell(new RegionManager.SiteChanged(siteId, stats.copy()));
+        return this;
+    }
+
+    private Behavior<Command> onGetAggregate(GetAggregate get) {
+        get.replyTo.tell(stats.copy());
+        return this;
+    }
+
+    private Behavior<Command> onSketchSlice(SketchSlice slice) {
+        if (window == null) return this;
+        if (!window.add(slice.slice, slice.sketches, sketches.sliceOf(System.currentTimeMillis()))) {
+            getContext().getLog().debug("[{}] dropping {}, older than the window", siteId, slice);
+        }
+        return this;
+    }
+
+    // However many greenhouses report, the region hears from this site at most once per slice
+    private Behavior<Command> onPublishSketches() {
+        long now = System.currentTimeMillis();
+        if (region != null) {
+            for (SketchWindow.Slice pending : window.drainPending()) {
+                region.tell(new SketchSlice(siteId, pending.slice, pending.sketches));
+            }
         }
+        if (quantileViews != null) quantileViews.publish(QuantileViews.site(siteId), window.view(sketches.sliceOf(now), now));
         return this;
     }
 }
@@ -0,0 +1,24 @@
+package com.example.greenhouse.actors;
+
+import com.example.greenhouse.fleet.QuantileSketch;
+
+/**
+ * Quantile sketches of one slice of readings (one per {@link SensorActor.Kind} ordinal, null where
+ * none), handed one level up the hierarchy: greenhouse to site, site to region, region to
+ * {@link GreenhouseSystemManager}. The receiver merges them into its window; the sender must not touch
+ * them again.
+ */
+public final class SketchSlice implements SiteManager.Command, RegionManager.Command, GreenhouseSystemManager.Command {
+
+    public final String sourceId;
+    public final long slice;
+    public final QuantileSketch[] sketches;
+
+    public SketchSlice(String sourceId, long slice, QuantileSketch[] sketches) {
+        this.sourceId = sourceId;
+        this.slice = slice;
+        this.sketches = sketches;
+    }
+
+    public String toString() { return "SketchSlice(" + sourceId + ", " + slice + ")"; }
+}
@@ -0,0 +1,205 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.PreRestart;
+import akka.actor.typed.SupervisorStrategy;
+import akka.actor.typed.javadsl.*;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.storage.PointBuffer;
+import com.example.greenhouse.storage.RollupBuffer;
+import com.example.greenhouse.storage.Rollups;
+import com.example.greenhouse.storage.StorageSettings;
+import com.example.greenhouse.storage.TimeSeriesStore;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Single writer of the reading store. Subscribed to DataProcessingManager, it receives every routed
+ * SensorBatch after the fact, so disk I/O never sits on the routing path. Meant to run on its own
+ * dispatcher since mapped writes can block on page faults.
+ *
+ * With rollups enabled it also maintains the minute/hour/day tiers, closes idle buckets on every flush
+ * and runs retention on the compaction interval; {@link QueryRollups} reads the cheapest tier.
+ */
+public class StorageManager extends AbstractBehavior<StorageManager.Command> {
+
+    public interface Command {}
+
+    // Readings between two timestamps (inclusive) of one greenhouse sensor
+    public static final class Query implements Command {
+        public final String greenhouseId;
+        public final SensorActor.Kind kind;
+        public final long from;
+        public final long to;
+        public final ActorRef<QueryResult> replyTo;
+        public Query(String greenhouseId, SensorActor.Kind kind, long from, long to, ActorRef<QueryResult> replyTo) {
+            this.greenhouseId = greenhouseId; this.kind = kind; this.from = from; this.to = to; this.replyTo = replyTo;
+        }
+    }
+
+    public static final class QueryResult {
+        public final String greenhouseId;
+        public final SensorActor.Kind kind;
+        public final long[] timestamps;
+        public final double[] values;
+        public QueryResult(String greenhouseId, SensorActor.Kind kind, long[] timestamps, double[] values) {
+            this.greenhouseId = greenhouseId; this.kind = kind; this.timestamps = timestamps; this.values = values;
+        }
+    }
+
+    // Aggregates of one greenhouse sensor in buckets of the given resolution
+    public static final class QueryRollups implements Command {
+        public final String greenhouseId;
+        public final SensorActor.Kind kind;
+        public final long from;
+        public final long to;
+        public final Duration resolution;
+        public final ActorRef<RollupResult> replyTo;
+        public QueryRollups(String greenhouseId, SensorActor.Kind kind, long from, long to, Duration resolution, ActorRef<RollupResult> replyTo) {
+            this.greenhouseId = greenhouseId; this.kind = kind; this.from = from; this.to = to; this.resolution = resolution; this.replyTo = replyTo;
+        }
+    }
+
+    // source is the tier label the buckets were read from, or "raw"
+    public static final class RollupResult {
+        public final String greenhouseId;
+        public final SensorActor.Kind kind;
+        public final String source;
+        public final long[] bucketStarts;
+        public final double[] min;
+        public final double[] max;
+        public final double[] sum;
+        public final long[] count;
+        public final double[] last;
+        public RollupResult(String greenhouseId, SensorActor.Kind kind, String source, long[] bucketStarts,
+                            double[] min, double[] max, double[] sum, long[] count, double[] last) {
+            this.greenhouseId = greenhouseId; this.kind = kind; this.source = source; this.bucketStarts = bucketStarts;
+            this.min = min; this.max = max; this.sum = sum; this.count = count; this.last = last;
+        }
+    }
+
+    private enum Flush implements Command { INSTANCE }
+
+    private enum Compact implements Command { INSTANCE }
+
+    public static Behavior<Command> create(StorageSettings settings, GreenhouseDirectory directory) {
+        Behavior<Command> behavior = Behaviors.setup(ctx -> Behaviors.withTimers(timers -> {
+            timers.startTimerWithFixedDelay(Flush.INSTANCE, settings.flushInterval);
+            TimeSeriesStore store = TimeSeriesStore.open(settings);
+            Rollups rollups = null;
+            if (settings.rollup.enabled) {
+                try {
+                    rollups = Rollups.open(settings, store);
+                } catch (Exception e) {
+                    store.close();
+                    throw e;
+                }
+                timers.startTimerWithFixedDelay(Compact.INSTANCE, settings.rollup.compactionInterval);
+            }
+            return new StorageManager(ctx, store, rollups, directory);
+        }));
+        // Reopening the store runs recovery, so a restart is the right answer to I/O failures (the old one is closed on PreRestart)
+        return Behaviors.supervise(behavior)
+                .onFailure(Exception.class, SupervisorStrategy.restartWithBackoff(Duration.ofSeconds(1), Duration.ofSeconds(30), 0.2));
+    }
+
+    private final TimeSeriesStore store;
+    private final Rollups rollups; // null when disabled
+    private final GreenhouseDirectory directory;
+    // Series id per (directory index * kinds + kind ordinal), -1 until first seen
+    private int[] seriesByGreenhouseKind = new int[0];
+
+    private StorageManager(ActorContext<Command> ctx, TimeSeriesStore store, Rollups rollups, GreenhouseDirectory directory) {
+        super(ctx);
+        this.store = store;
+        this.rollups = rollups;
+        this.directory = directory;
+        ctx.getLog().info("[storage] opened store with {} series in {} segments", store.seriesCount(), store.segmentCount());
+    }
+
+    @Override
+    public Receive<Command> createReceive() {
+        return newReceiveBuilder()
+                .onMessage(SensorBatch.class, this::onSensorBatch)
+                .onMessage(Query.class, this::onQuery)
+                .onMessage(QueryRollups.class, this::onQueryRollups)
+                .onMessageEquals(Flush.INSTANCE, this::onFlush)
+                .onMessageEquals(Compact.INSTANCE, this::onCompact)
+                .onSignal(PostStop.class, signal -> onStop())
+                .onSignal(PreRestart.class, signal -> onStop())
+                .build();
+    }
+
+    private Behavior<Command> onSensorBatch(SensorBatch batch) {
+        for (int i = 0; i < batch.size; i++) {
+            int series = series(batch.greenhouse[i], batch.kind[i]);
+            store.append(series, batch.timestamp[i], batch.value[i]);
+            if (rollups != null) rollups.add(series, batch.timestamp[i], batch.value[i]);
+        }
+        return this;
+    }
+
+    private int series(int greenhouseIndex, int kind) {
+        int slot = greenhouseIndex * SensorActor.Kind.count() + kind;
+        if (slot >= seriesByGreenhouseKind.length) {
+            int old = seriesByGreenhouseKind.length;
+            seriesByGreenhouseKind = Arrays.copyOf(seriesByGreenhouseKind, Math.max(slot + 1, old * 2));
+            Arrays.fill(seriesByGreenhouseKind, old, seriesByGreenhouseKind.length, -1);
+        }
+        int id = seriesByGreenhouseKind[slot];
+        if (id < 0) {
+            id = seriesByGreenhouseKind[slot] = store.seriesId(directory.idAt(greenhouseIndex), kind);
+        }
+        return id;
+    }
+
+    private Behavior<Command> onQuery(Query q) {
+        PointBuffer points = new PointBuffer();
+        store.query(store.findSeries(q.greenhouseId, q.kind.ordinal()), q.from, q.to, points);
+        q.replyTo.tell(new QueryResult(q.greenhouseId, q.kind, points.timestamps(), points.values()));
+        return this;
+    }
+
+    private Behavior<Command> onQueryRollups(QueryRollups q) {
+        if (rollups == null) {
+            // Without tiers raw points still answer, just more slowly
+            RollupBuffer buckets = new RollupBuffer(null, q.resolution.toMillis());
+            store.query(store.findSeries(q.greenhouseId, q.kind.ordinal()), q.from, q.to, (ts, v) -> buckets.add(ts, v, v, v, 1, v));
+            q.replyTo.tell(rollupResult(q, buckets));
+            return this;
+        }
+        q.replyTo.tell(rollupResult(q, rollups.query(store.findSeries(q.greenhouseId, q.kind.ordinal()), q.from, q.to, q.resolution.toMillis())));
+        return this;
+    }
+
+    private static RollupResult rollupResult(QueryRollups q, RollupBuffer b) {
+        return new RollupResult(q.greenhouseId, q.kind, b.source == null ? "raw" : b.source.label,
+                b.starts(), b.min(), b.max(), b.sum(), b.count(), b.last());
+    }
+
+    private Behavior<Command> onFlush() {
+        store.flush();
+        if (rollups != null) rollups.closeIdle(System.currentTimeMillis());
+        return this;
+    }
+
+    private Behavior<Command> onCompact() {
+        int dropped = rollups.compact(System.currentTimeMillis());
+        if (dropped > 0) getContext().getLog().info("[storage] retention deleted {} segments", dropped);
+        return this;
+    }
+
+    private Behavior<Command> onStop() {
+        try {
+            if (rollups != null) rollups.close();
+            store.close();
+        } catch (IOException e) {
+            getContext().getLog().warn("[storage] failed to close store cleanly", e);
+        }
+        return this;
+    }
+}
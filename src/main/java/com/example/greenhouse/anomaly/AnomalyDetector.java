@@ -0,0 +1,109 @@
+package com.example.greenhouse.anomaly;
+
+import java.util.Arrays;
+
+/**
+ * Streaming anomaly detection for the sensor series of one greenhouse, one series per sensor kind.
+ * Each series keeps an exponentially weighted mean and variance; a reading is a spike when its z-score
+ * against them passes the threshold, and a two-sided CUSUM of the z-scores catches shifts too gradual
+ * to spike. State is six doubles per series, interleaved in one array so an update touches a single
+ * cache line, allocated once; {@link #update} does not allocate. Not thread safe: owned by the
+ * greenhouse actor.
+ */
+public final class AnomalyDetector {
+
+    public static final int NONE = 0;
+    public static final int SPIKE_HIGH = 1;
+    public static final int SPIKE_LOW = 2;
+    public static final int SHIFT_UP = 3;
+    public static final int SHIFT_DOWN = 4;
+    private static final int TYPES = 4;
+
+    // Fields of a series in the state array
+    private static final int SEEN = 0;
+    private static final int MEAN = 1;
+    private static final int VARIANCE = 2;
+    private static final int Z = 3;
+    private static final int CUSUM_HIGH = 4;
+    private static final int CUSUM_LOW = 5;
+    private static final int STRIDE = 6;
+
+    private final AnomalySettings settings;
+    private final long cooldownMillis;
+    private final double[] state;
+    private final long[] quietUntil; // per kind and anomaly type, only read once an anomaly is found
+
+    public AnomalyDetector(AnomalySettings settings, int kinds) {
+        this.settings = settings;
+        this.cooldownMillis = settings.cooldown.toMillis();
+        state = new double[kinds * STRIDE];
+        quietUntil = new long[kinds * TYPES];
+        Arrays.fill(quietUntil, Long.MIN_VALUE);
+    }
+
+    /**
+     * Adds a reading of a kind and returns the anomaly to report ({@link #NONE} when there is none, or
+     * the same anomaly was reported within the cooldown).
+     */
+    public int update(int kind, double value, long now) {
+        if (Double.isNaN(value)) return NONE;
+        double[] s = state;
+        int at = kind * STRIDE;
+        double n = ++s[at + SEEN];
+        if (n == 1) {
+            s[at + MEAN] = value;
+            return NONE;
+        }
+        double m = s[at + MEAN];
+        double variance = s[at + VARIANCE];
+        double sd = Math.max(Math.sqrt(variance), settings.minStdDev);
+        double score = (value - m) / sd;
+        s[at + Z] = score;
+
+        // Outliers move the mean and variance no more than a reading at the threshold would
+        double limit = settings.zThreshold * sd;
+        double diff = Math.max(-limit, Math.min(limit, value - m));
+        double increment = settings.alpha * diff;
+        s[at + MEAN] = m + increment;
+        s[at + VARIANCE] = (1 - settings.alpha) * (variance + diff * increment);
+        if (n <= settings.warmup) return NONE;
+
+        int anomaly = NONE;
+        if (Math.abs(score) > settings.zThreshold) {
+            anomaly = score > 0 ? SPIKE_HIGH : SPIKE_LOW;
+        } else {
+            // Spikes are reported on their own and left out of the shift statistic
+            double high = Math.max(0, s[at + CUSUM_HIGH] + score - settings.cusumSlack);
+            double low = Math.max(0, s[at + CUSUM_LOW] - score - settings.cusumSlack);
+            if (high > settings.cusumThreshold || low > settings.cusumThreshold) {
+                anomaly = high > low ? SHIFT_UP : SHIFT_DOWN;
+                high = 0;
+                low = 0;
+            }
+            s[at + CUSUM_HIGH] = high;
+            s[at + CUSUM_LOW] = low;
+        }
+        if (anomaly == NONE) return NONE;
+        int slot = kind * TYPES + anomaly - 1;
+        if (now < quietUntil[slot]) return NONE;
+        quietUntil[slot] = now + cooldownMillis;
+        return anomaly;
+    }
+
+    public double mean(int kind) { return state[kind * STRIDE + SEEN] == 0 ? Double.NaN : state[kind * STRIDE + MEAN]; }
+
+    public double stdDev(int kind) { return Math.sqrt(state[kind * STRIDE + VARIANCE]); }
+
+    /** z-score of the latest reading of a kind against the mean and variance before it. */
+    public double lastZ(int kind) { return state[kind * STRIDE + Z]; }
+
+    public static String describe(int anomaly) {
+        switch (anomaly) {
+            case SPIKE_HIGH: return "spike up";
+            case SPIKE_LOW: return "spike down";
+            case SHIFT_UP: return "level shift up";
+            case SHIFT_DOWN: return "level shift down";
+            default: return "none";
+        }
+    }
+}
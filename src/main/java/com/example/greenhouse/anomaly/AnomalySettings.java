@@ -0,0 +1,50 @@
+package com.example.greenhouse.anomaly;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Per-sensor anomaly detection in greenhouse actors, read from {@code greenhouse.anomaly}. */
+public final class AnomalySettings {
+
+    public final boolean enabled;
+    /** EWMA weight of a new reading; about 2 / alpha readings of memory. */
+    public final double alpha;
+    /** Readings per series before anything is reported, while mean and variance settle. */
+    public final int warmup;
+    /** A reading further than this many standard deviations from the mean is a spike. */
+    public final double zThreshold;
+    /** CUSUM slack and decision threshold, in standard deviations. */
+    public final double cusumSlack;
+    public final double cusumThreshold;
+    /** Floor of the standard deviation, so a perfectly flat series does not alarm on the first wobble. */
+    public final double minStdDev;
+    /** At most one notification per series and kind of anomaly within this time. */
+    public final Duration cooldown;
+
+    public AnomalySettings(boolean enabled, double alpha, int warmup, double zThreshold, double cusumSlack, double cusumThreshold,
+                           double minStdDev, Duration cooldown) {
+        if (alpha <= 0 || alpha >= 1) throw new IllegalArgumentException("alpha must be in (0, 1): " + alpha);
+        this.enabled = enabled;
+        this.alpha = alpha;
+        this.warmup = warmup;
+        this.zThreshold = zThreshold;
+        this.cusumSlack = cusumSlack;
+        this.cusumThreshold = cusumThreshold;
+        this.minStdDev = minStdDev;
+        this.cooldown = cooldown;
+    }
+
+    public static AnomalySettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.anomaly");
+        return new AnomalySettings(
+                c.getBoolean("enabled"),
+                c.getDouble("alpha"),
+                c.getInt("warmup"),
+                c.getDouble("z-threshold"),
+                c.getDouble("cusum-slack"),
+                c.getDouble("cusum-threshold"),
+                c.getDouble("min-std-dev"),
+                c.getDuration("cooldown"));
+    }
+}
@@ -3,6 +3,7 @@ package com.example.greenhouse.app;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
 import com.example.greenhouse.actors.GreenhouseSystemManager;
+import com.example.greenhouse.stream.LoadProfile;
 
 import java.time.Duration;
 import java.util.Arrays;
@@ -21,7 +22,15 @@ public class Main {
         int sitesPerRegion = getInt("greenhouse.sites-per-region", 2);
         int greenhousesPerSite = getInt("greenhouse.greenhouses-per-site", 2);
 
-        system.tell(new GreenhouseSystemManager.Initialize(regions, sitesPerRegion, greenhousesPerSite));
+        // Load generator: application.conf, overridable with -Dgreenhouse.load-generator.<key>=...
+        LoadProfile load = LoadProfile.fromConfig(system.settings().config());
+        if (load.enabled && load.fleetSize > 0) {
+            // Grow the topology so every generated greenhouse exists
+            int sites = regions.size() * sitesPerRegion;
+            greenhousesPerSite = Math.max(greenhousesPerSite, (load.fleetSize + sites - 1) / sites);
+        }
+
+        system.tell(new GreenhouseSystemManager.Initialize(regions, sitesPerRegion, greenhousesPerSite, load));
 
 
         // Add a shutdown hook for graceful termination
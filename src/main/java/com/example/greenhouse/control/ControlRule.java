@@ -0,0 +1,68 @@
+package com.example.greenhouse.control;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One control rule as configured: while all of its conditions hold, its actuator is on, and it is
+ * switched off again once any of them clears. Conditions have hysteresis, so a reading wobbling around
+ * a threshold does not switch the actuator back and forth.
+ */
+public final class ControlRule {
+
+    public final String name;
+    /** Greenhouse classes the rule applies to; empty: every class. */
+    public final Set<String> classes;
+    public final List<Condition> when;
+    public final ActuatorActor.Type actuator;
+
+    public ControlRule(String name, Set<String> classes, List<Condition> when, ActuatorActor.Type actuator) {
+        if (when.isEmpty()) throw new IllegalArgumentException("rule " + name + " has no conditions");
+        this.name = name;
+        this.classes = Set.copyOf(classes);
+        this.when = List.copyOf(when);
+        this.actuator = actuator;
+    }
+
+    public boolean appliesTo(String greenhouseClass) {
+        return classes.isEmpty() || classes.contains(greenhouseClass);
+    }
+
+    /**
+     * A threshold on one sensor kind. An "above" condition starts to hold once a reading is above
+     * {@code threshold} and stops once one is below {@code clear} (so clear is at most the threshold);
+     * a "below" condition the other way round.
+     */
+    public static final class Condition {
+        public final SensorActor.Kind kind;
+        public final boolean above;
+        public final double threshold;
+        public final double clear;
+
+        private Condition(SensorActor.Kind kind, boolean above, double threshold, double clear) {
+            if (above ? clear > threshold : clear < threshold) {
+                throw new IllegalArgumentException(kind.wireName + (above ? " above " : " below ") + threshold
+                        + " cannot clear " + (above ? "below " : "above ") + clear);
+            }
+            this.kind = kind;
+            this.above = above;
+            this.threshold = threshold;
+            this.clear = clear;
+        }
+
+        public static Condition above(SensorActor.Kind kind, double threshold, double clearBelow) {
+            return new Condition(kind, true, threshold, clearBelow);
+        }
+
+        public static Condition below(SensorActor.Kind kind, double threshold, double clearAbove) {
+            return new Condition(kind, false, threshold, clearAbove);
+        }
+
+        public String toString() {
+            return kind.wireName + (above ? " > " : " < ") + threshold + " (clears at " + clear + ")";
+        }
+    }
+}
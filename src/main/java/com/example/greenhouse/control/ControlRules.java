@@ -0,0 +1,101 @@
+package com.example.greenhouse.control;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+import com.typesafe.config.Config;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Greenhouse control rules, read from {@code greenhouse.control} and compiled once at startup into one
+ * {@link RuleTable} per greenhouse class. Greenhouses are put in a class by id pattern ('*' matches any
+ * run of characters, the first matching class wins) and are of class {@value #DEFAULT_CLASS} otherwise.
+ */
+public final class ControlRules {
+
+    public static final String DEFAULT_CLASS = "default";
+
+    private final List<String> classNames = new ArrayList<>();
+    private final List<Pattern> classPatterns = new ArrayList<>();
+    private final Map<String, RuleTable> tables = new LinkedHashMap<>();
+
+    /** Classes in order of precedence, each with its greenhouse id patterns. */
+    public ControlRules(Map<String, List<String>> classes, List<ControlRule> rules) {
+        Set<String> names = new HashSet<>(classes.keySet());
+        names.add(DEFAULT_CLASS);
+        for (ControlRule rule : rules) {
+            for (String c : rule.classes) {
+                if (!names.contains(c)) throw new IllegalArgumentException("rule " + rule.name + " names unknown greenhouse class " + c);
+            }
+        }
+        for (Map.Entry<String, List<String>> c : classes.entrySet()) {
+            for (String glob : c.getValue()) {
+                classNames.add(c.getKey());
+                classPatterns.add(Pattern.compile(("\\Q" + glob + "\\E").replace("*", "\\E.*\\Q")));
+            }
+        }
+        for (String name : names) {
+            List<ControlRule> of = new ArrayList<>();
+            for (ControlRule rule : rules) if (rule.appliesTo(name)) of.add(rule);
+            tables.put(name, new RuleTable(of));
+        }
+    }
+
+    /** The fixed thresholds greenhouses used before rules were configurable: fan above 28°C, heater below 20°C. */
+    public static ControlRules defaults() {
+        return new ControlRules(Map.of(), List.of(
+                new ControlRule("cooling", Set.of(), List.of(ControlRule.Condition.above(SensorActor.Kind.Temperature, 28, 26)), ActuatorActor.Type.Fan),
+                new ControlRule("heating", Set.of(), List.of(ControlRule.Condition.below(SensorActor.Kind.Temperature, 20, 22)), ActuatorActor.Type.Heater)));
+    }
+
+    public static ControlRules fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.control");
+        Map<String, List<String>> classes = new LinkedHashMap<>();
+        for (Config cls : c.getConfigList("classes")) classes.put(cls.getString("name"), cls.getStringList("match"));
+        List<ControlRule> rules = new ArrayList<>();
+        for (Config rule : c.getConfigList("rules")) {
+            String name = rule.getString("name");
+            List<ControlRule.Condition> when = new ArrayList<>();
+            for (Config cond : rule.getConfigList("when")) when.add(condition(name, cond));
+            Set<String> applies = rule.hasPath("classes") ? new HashSet<>(rule.getStringList("classes")) : Set.of();
+            rules.add(new ControlRule(name, applies, when, actuator(name, rule.getString("actuator"))));
+        }
+        return new ControlRules(classes, rules);
+    }
+
+    private static ControlRule.Condition condition(String rule, Config c) {
+        SensorActor.Kind kind = SensorActor.Kind.fromWire(c.getString("kind"));
+        if (kind == null) throw new IllegalArgumentException("rule " + rule + ": unknown sensor kind " + c.getString("kind"));
+        if (c.hasPath("above") == c.hasPath("below")) throw new IllegalArgumentException("rule " + rule + ": a condition needs one of above or below");
+        if (c.hasPath("above")) {
+            double threshold = c.getDouble("above");
+            return ControlRule.Condition.above(kind, threshold, c.hasPath("clear-below") ? c.getDouble("clear-below") : threshold);
+        }
+        double threshold = c.getDouble("below");
+        return ControlRule.Condition.below(kind, threshold, c.hasPath("clear-above") ? c.getDouble("clear-above") : threshold);
+    }
+
+    private static ActuatorActor.Type actuator(String rule, String name) {
+        for (ActuatorActor.Type t : ActuatorActor.Type.values()) {
+            if (t.name().equalsIgnoreCase(name)) return t;
+        }
+        throw new IllegalArgumentException("rule " + rule + ": unknown actuator " + name);
+    }
+
+    public String classOf(String greenhouseId) {
+        for (int i = 0; i < classPatterns.size(); i++) {
+            if (classPatterns.get(i).matcher(greenhouseId).matches()) return classNames.get(i);
+        }
+        return DEFAULT_CLASS;
+    }
+
+    public RuleTable table(String greenhouseClass) { return tables.get(greenhouseClass); }
+
+    public RuleTable tableFor(String greenhouseId) { return tables.get(classOf(greenhouseId)); }
+}
@@ -0,0 +1,51 @@
+package com.example.greenhouse.control;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Minimum time an actuator stays in a position once switched, per actuator type, read from
+ * {@code greenhouse.control.dwell}. A decision to switch back earlier is held until the dwell is over
+ * and then applied only if it still stands, which keeps devices from chattering.
+ */
+public final class DwellSettings {
+
+    private static final ActuatorActor.Type[] TYPES = ActuatorActor.Type.values();
+
+    private final long[] minOnMillis = new long[TYPES.length];
+    private final long[] minOffMillis = new long[TYPES.length];
+
+    /** Both arrays by actuator type ordinal. */
+    public DwellSettings(Duration[] minOn, Duration[] minOff) {
+        for (ActuatorActor.Type t : TYPES) {
+            minOnMillis[t.ordinal()] = minOn[t.ordinal()].toMillis();
+            minOffMillis[t.ordinal()] = minOff[t.ordinal()].toMillis();
+        }
+    }
+
+    /** Switch as soon as decided. */
+    public static DwellSettings none() {
+        Duration[] zero = new Duration[TYPES.length];
+        Arrays.fill(zero, Duration.ZERO);
+        return new DwellSettings(zero, zero);
+    }
+
+    public static DwellSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.control.dwell");
+        Duration[] minOn = new Duration[TYPES.length];
+        Duration[] minOff = new Duration[TYPES.length];
+        for (ActuatorActor.Type t : TYPES) {
+            String name = t.name().toLowerCase();
+            minOn[t.ordinal()] = c.getDuration(name + ".min-on");
+            minOff[t.ordinal()] = c.getDuration(name + ".min-off");
+        }
+        return new DwellSettings(minOn, minOff);
+    }
+
+    public long minOnMillis(ActuatorActor.Type type) { return minOnMillis[type.ordinal()]; }
+
+    public long minOffMillis(ActuatorActor.Type type) { return minOffMillis[type.ordinal()]; }
+}
@@ -0,0 +1,77 @@
+package com.example.greenhouse.control;
+
+import com.example.greenhouse.actors.ActuatorActor;
+
+import java.util.Arrays;
+
+/**
+ * Rule state of one greenhouse over a shared {@link RuleTable}: which conditions hold, how many
+ * conditions of each rule hold, and per kind the last reading and where it sits among the switch
+ * points. Not thread-safe; owned by the greenhouse actor. Evaluating a reading allocates nothing.
+ */
+public final class RuleEvaluator {
+
+    /** Told when a rule starts or stops holding, that is, when its actuator is to be switched. */
+    public interface Listener {
+        void switchActuator(ActuatorActor.Type actuator, boolean on, String rule);
+    }
+
+    private final RuleTable table;
+    private final boolean[] holds;
+    private final int[] holding;
+    private final boolean[] active;
+    private final double[] last;
+    private final int[] cursor;
+
+    RuleEvaluator(RuleTable table) {
+        this.table = table;
+        this.holds = new boolean[table.conditions()];
+        this.holding = new int[table.rules()];
+        this.active = new boolean[table.rules()];
+        this.last = new double[table.kindConditions.length];
+        this.cursor = new int[last.length];
+        Arrays.fill(last, Double.NaN);
+    }
+
+    public void evaluate(int kind, double value, Listener listener) {
+        if (Double.isNaN(value)) return;
+        double previous = last[kind];
+        last[kind] = value;
+        if (Double.isNaN(previous)) {
+            for (int c : table.kindConditions[kind]) update(c, value, listener);
+            cursor[kind] = table.firstPointFrom(kind, value);
+            return;
+        }
+        // Only a condition with a switch point between the two readings (inclusive) can have changed.
+        // The cursor sits on the first point at or above the previous reading, so no search is needed:
+        // a reading costs the points it crosses, however many there are in total.
+        double[] points = table.points[kind];
+        int[] conditions = table.pointCondition[kind];
+        int i = cursor[kind];
+        if (value > previous) {
+            for (; i < points.length && points[i] <= value; i++) update(conditions[i], value, listener);
+            while (i > 0 && points[i - 1] >= value) i--;
+        } else if (value < previous) {
+            for (int j = i; j < points.length && points[j] == previous; j++) update(conditions[j], value, listener);
+            for (; i > 0 && points[i - 1] >= value; i--) update(conditions[i - 1], value, listener);
+        }
+        cursor[kind] = i;
+    }
+
+    public boolean isActive(int rule) { return active[rule]; }
+
+    // Idempotent for a given value, so a condition with both its points in range may be visited twice
+    private void update(int c, double value, Listener listener) {
+        boolean now = holds[c]
+                ? (table.above[c] ? value >= table.clear[c] : value <= table.clear[c])
+                : (table.above[c] ? value > table.threshold[c] : value < table.threshold[c]);
+        if (now == holds[c]) return;
+        holds[c] = now;
+        int r = table.conditionRule[c];
+        holding[r] += now ? 1 : -1;
+        boolean ruleActive = holding[r] == table.ruleSize[r];
+        if (ruleActive == active[r]) return;
+        active[r] = ruleActive;
+        listener.switchActuator(table.ruleActuator[r], ruleActive, table.ruleName[r]);
+    }
+}
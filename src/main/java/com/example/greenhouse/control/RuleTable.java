@@ -0,0 +1,114 @@
+package com.example.greenhouse.control;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The rules of one greenhouse class compiled into flat arrays. Conditions are numbered, and per sensor
+ * kind the points where one of them can change (thresholds and clear points) are kept sorted, so a
+ * reading only has to look at the conditions with a point between the previous reading of its kind and
+ * itself: the cost of a reading is the points it crosses, however many rules there are.
+ * Immutable and shared by every greenhouse of the class; the state lives in {@link RuleEvaluator}.
+ */
+public final class RuleTable {
+
+    // By condition
+    final int[] conditionRule;
+    final boolean[] above;
+    final double[] threshold;
+    final double[] clear;
+    // By rule
+    final int[] ruleSize;
+    final ActuatorActor.Type[] ruleActuator;
+    final String[] ruleName;
+    // By kind ordinal: all its conditions (for the first reading), and the sorted switch points
+    final int[][] kindConditions;
+    final double[][] points;
+    final int[][] pointCondition;
+
+    RuleTable(List<ControlRule> rules) {
+        int conditions = 0;
+        for (ControlRule r : rules) conditions += r.when.size();
+        conditionRule = new int[conditions];
+        above = new boolean[conditions];
+        threshold = new double[conditions];
+        clear = new double[conditions];
+        ruleSize = new int[rules.size()];
+        ruleActuator = new ActuatorActor.Type[rules.size()];
+        ruleName = new String[rules.size()];
+
+        int kinds = SensorActor.Kind.count();
+        int[] perKind = new int[kinds];
+        int c = 0;
+        for (int r = 0; r < rules.size(); r++) {
+            ControlRule rule = rules.get(r);
+            ruleSize[r] = rule.when.size();
+            ruleActuator[r] = rule.actuator;
+            ruleName[r] = rule.name;
+            for (ControlRule.Condition when : rule.when) {
+                conditionRule[c] = r;
+                above[c] = when.above;
+                threshold[c] = when.threshold;
+                clear[c] = when.clear;
+                perKind[when.kind.ordinal()]++;
+                c++;
+            }
+        }
+
+        kindConditions = new int[kinds][];
+        for (int k = 0; k < kinds; k++) kindConditions[k] = new int[perKind[k]];
+        Arrays.fill(perKind, 0);
+        c = 0;
+        for (ControlRule rule : rules) {
+            for (ControlRule.Condition when : rule.when) {
+                int k = when.kind.ordinal();
+                kindConditions[k][perKind[k]++] = c++;
+            }
+        }
+
+        points = new double[kinds][];
+        pointCondition = new int[kinds][];
+        for (int k = 0; k < kinds; k++) {
+            int[] ofKind = kindConditions[k];
+            double[] values = new double[ofKind.length * 2];
+            for (int i = 0; i < ofKind.length; i++) {
+                values[2 * i] = threshold[ofKind[i]];
+                values[2 * i + 1] = clear[ofKind[i]];
+            }
+            Integer[] idx = new Integer[values.length];
+            for (int i = 0; i < idx.length; i++) idx[i] = i;
+            Arrays.sort(idx, (a, b) -> Double.compare(values[a], values[b]));
+            points[k] = new double[idx.length];
+            pointCondition[k] = new int[idx.length];
+            for (int i = 0; i < idx.length; i++) {
+                points[k][i] = values[idx[i]];
+                pointCondition[k][i] = ofKind[idx[i] / 2];
+            }
+        }
+    }
+
+    public int rules() { return ruleSize.length; }
+
+    public int conditions() { return conditionRule.length; }
+
+    public String ruleName(int rule) { return ruleName[rule]; }
+
+    public ActuatorActor.Type actuator(int rule) { return ruleActuator[rule]; }
+
+    public RuleEvaluator newEvaluator() { return new RuleEvaluator(this); }
+
+    // First switch point at or above value
+    int firstPointFrom(int kind, double value) {
+        double[] p = points[kind];
+        int lo = 0;
+        int hi = p.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (p[mid] < value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.greenhouse.device;
+
+import com.example.greenhouse.actors.ActuatorActor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Connection to one physical actuator. Commands carry increasing sequence numbers and a device applies
+ * a command only if its number is above the last one it applied, so resending after a lost ack is
+ * harmless; the ack reports the position the device is in. A send may fail, or never complete when the
+ * command or its ack is lost; {@link ActuatorActor} times it out.
+ */
+public interface ActuatorDevice {
+
+    CompletionStage<Ack> send(Command command);
+
+    /** Releases the connection once its actuator stops or restarts; must not block. */
+    default void close() {}
+
+    final class Command {
+        public final long seq;
+        public final boolean on;
+        public Command(long seq, boolean on) { this.seq = seq; this.on = on; }
+        public String toString() { return "#" + seq + (on ? " on" : " off"); }
+    }
+
+    final class Ack {
+        public final long seq;
+        public final boolean on;
+        public Ack(long seq, boolean on) { this.seq = seq; this.on = on; }
+    }
+
+    /** Opens the device of an actuator; called once per actuator actor start. */
+    interface Factory {
+        ActuatorDevice open(String greenhouseId, ActuatorActor.Type type);
+    }
+
+    /** Applies every command at once; for actuators without hardware behind them. */
+    static ActuatorDevice loopback() {
+        return new ActuatorDevice() {
+            private long applied;
+            private boolean on;
+
+            @Override
+            public synchronized CompletionStage<Ack> send(Command command) {
+                if (command.seq > applied) {
+                    applied = command.seq;
+                    on = command.on;
+                }
+                return CompletableFuture.completedFuture(new Ack(command.seq, on));
+            }
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.greenhouse.device;
+
+import java.io.IOException;
+
+/**
+ * Blocking connection to one actuator, as serial, Modbus or HTTP-to-PLC drivers are. Called from a
+ * driver executor only, never from an actor, and never concurrently for the same device. A command must
+ * be applied only if its sequence number is above the last one applied; the return value is the position
+ * the device reports afterwards.
+ */
+public interface ActuatorDriver extends AutoCloseable {
+
+    boolean apply(long seq, boolean on) throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+}
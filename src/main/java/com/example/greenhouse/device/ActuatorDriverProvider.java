@@ -0,0 +1,27 @@
+package com.example.greenhouse.device;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.typesafe.config.Config;
+
+import java.io.IOException;
+
+/**
+ * Service provider of blocking {@link ActuatorDriver}s, found with {@link java.util.ServiceLoader} (list
+ * implementations in META-INF/services/com.example.greenhouse.device.ActuatorDriverProvider) and chosen
+ * by name with {@code greenhouse.actuators.driver}.
+ */
+public interface ActuatorDriverProvider {
+
+    String name();
+
+    /** Called once before the first open, with {@code greenhouse.actuators}; may block. */
+    void configure(Config actuators) throws IOException;
+
+    boolean supports(ActuatorActor.Type type);
+
+    /** Opens the driver of one device; runs on the driver executor and may block. */
+    ActuatorDriver open(String greenhouseId, ActuatorActor.Type type) throws IOException;
+
+    /** Releases what {@link #configure} set up; called once the actor system has terminated. */
+    default void close() {}
+}
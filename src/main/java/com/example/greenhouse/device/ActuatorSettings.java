@@ -0,0 +1,114 @@
+package com.example.greenhouse.device;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Command pipeline of the actuator actors towards their devices, read from {@code greenhouse.actuators}. */
+public final class ActuatorSettings {
+
+    public static final String SIMULATED = "simulated";
+
+    /** Position changes within this window go out as one command (or none, if they cancel out). */
+    public final Duration coalesceWindow;
+    /** Commands per second a device accepts; further changes wait and are coalesced meanwhile. */
+    public final double maxCommandsPerSecond;
+    public final Duration ackTimeout;
+    /** Resends of an unacknowledged command before the actuator backs off for recovery-backoff. */
+    public final int maxRetries;
+    public final Duration retryBackoff;
+    /**
+     * After max-retries the requested position is sent again after this long, doubling on every further
+     * failure up to recovery-backoff-max, until the device acknowledges it.
+     */
+    public final Duration recoveryBackoff;
+    public final Duration recoveryBackoffMax;
+    /** Name of the {@link ActuatorDriverProvider} to drive devices with, or "simulated" for {@link SimulatedDevice}. */
+    public final String driver;
+    /** Where blocking drivers run: "virtual" threads (Java 21+), the "dispatcher", or "auto" (virtual when available). */
+    public final String driverExecutor;
+    // Simulated devices, used while there is no hardware
+    public final Duration simulatedLatency;
+    public final Duration simulatedJitter;
+    public final double simulatedFailureRate;
+
+    private ActuatorSettings(Duration coalesceWindow, double maxCommandsPerSecond, Duration ackTimeout, int maxRetries, Duration retryBackoff,
+                             Duration recoveryBackoff, Duration recoveryBackoffMax, String driver, String driverExecutor,
+                             Duration simulatedLatency, Duration simulatedJitter, double simulatedFailureRate) {
+        if (maxCommandsPerSecond <= 0) throw new IllegalArgumentException("max-commands-per-second must be positive: " + maxCommandsPerSecond);
+        this.coalesceWindow = coalesceWindow;
+        this.maxCommandsPerSecond = maxCommandsPerSecond;
+        this.ackTimeout = ackTimeout;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        if (recoveryBackoff.isNegative() || recoveryBackoff.isZero() || recoveryBackoffMax.compareTo(recoveryBackoff) < 0) {
+            throw new IllegalArgumentException("recovery-backoff must be positive and at most recovery-backoff-max: "
+                    + recoveryBackoff + ", " + recoveryBackoffMax);
+        }
+        this.recoveryBackoff = recoveryBackoff;
+        this.recoveryBackoffMax = recoveryBackoffMax;
+        this.driver = driver;
+        this.driverExecutor = driverExecutor;
+        this.simulatedLatency = simulatedLatency;
+        this.simulatedJitter = simulatedJitter;
+        this.simulatedFailureRate = simulatedFailureRate;
+    }
+
+    /**
+     * No coalescing, no rate limit to speak of, instant simulated devices; for actuators without a device
+     * behind them, and the base the {@code with} methods change one aspect of.
+     */
+    public static ActuatorSettings immediate() {
+        return new ActuatorSettings(Duration.ZERO, 1_000_000, Duration.ofSeconds(5), 3, Duration.ofMillis(100),
+                Duration.ofSeconds(5), Duration.ofMinutes(1), SIMULATED, "auto", Duration.ZERO, Duration.ZERO, 0);
+    }
+
+    public ActuatorSettings withCoalesceWindow(Duration window) {
+        return new ActuatorSettings(window, maxCommandsPerSecond, ackTimeout, maxRetries, retryBackoff, recoveryBackoff, recoveryBackoffMax,
+                driver, driverExecutor, simulatedLatency, simulatedJitter, simulatedFailureRate);
+    }
+
+    public ActuatorSettings withMaxCommandsPerSecond(double rate) {
+        return new ActuatorSettings(coalesceWindow, rate, ackTimeout, maxRetries, retryBackoff, recoveryBackoff, recoveryBackoffMax,
+                driver, driverExecutor, simulatedLatency, simulatedJitter, simulatedFailureRate);
+    }
+
+    public ActuatorSettings withRetries(Duration ackTimeout, int maxRetries, Duration retryBackoff) {
+        return new ActuatorSettings(coalesceWindow, maxCommandsPerSecond, ackTimeout, maxRetries, retryBackoff, recoveryBackoff, recoveryBackoffMax,
+                driver, driverExecutor, simulatedLatency, simulatedJitter, simulatedFailureRate);
+    }
+
+    public ActuatorSettings withRecoveryBackoff(Duration min, Duration max) {
+        return new ActuatorSettings(coalesceWindow, maxCommandsPerSecond, ackTimeout, maxRetries, retryBackoff, min, max,
+                driver, driverExecutor, simulatedLatency, simulatedJitter, simulatedFailureRate);
+    }
+
+    public ActuatorSettings withDriver(String driver, String driverExecutor) {
+        return new ActuatorSettings(coalesceWindow, maxCommandsPerSecond, ackTimeout, maxRetries, retryBackoff, recoveryBackoff, recoveryBackoffMax,
+                driver, driverExecutor, simulatedLatency, simulatedJitter, simulatedFailureRate);
+    }
+
+    public ActuatorSettings withSimulatedDevice(Duration latency, Duration jitter, double failureRate) {
+        return new ActuatorSettings(coalesceWindow, maxCommandsPerSecond, ackTimeout, maxRetries, retryBackoff, recoveryBackoff, recoveryBackoffMax,
+                driver, driverExecutor, latency, jitter, failureRate);
+    }
+
+    public static ActuatorSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.actuators");
+        return new ActuatorSettings(
+                c.getDuration("coalesce-window"),
+                c.getDouble("max-commands-per-second"),
+                c.getDuration("ack-timeout"),
+                c.getInt("max-retries"),
+                c.getDuration("retry-backoff"),
+                c.getDuration("recovery-backoff"),
+                c.getDuration("recovery-backoff-max"),
+                c.getString("driver"),
+                c.getString("driver-executor"),
+                c.getDuration("simulated-device.latency"),
+                c.getDuration("simulated-device.jitter"),
+                c.getDouble("simulated-device.failure-rate"));
+    }
+
+    public long minIntervalNanos() { return (long) (1_000_000_000L / maxCommandsPerSecond); }
+}
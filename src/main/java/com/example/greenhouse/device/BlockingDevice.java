@@ -0,0 +1,76 @@
+package com.example.greenhouse.device;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adapts a blocking {@link ActuatorDriver} to {@link ActuatorDevice}: every command runs on the driver
+ * executor and completes the returned stage, which the actuator actor pipes back to itself. The driver
+ * is opened on first use and reopened after a failure. A command that outlived its ack timeout still
+ * holds the device until it returns, so its resend queues behind it rather than running alongside.
+ * Closing closes the driver on the driver executor as well.
+ */
+public final class BlockingDevice implements ActuatorDevice {
+
+    private final Callable<ActuatorDriver> opener;
+    private final Executor executor;
+    // Not synchronized: on virtual threads a monitor held across blocking I/O would pin the carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+    private ActuatorDriver driver;
+
+    public BlockingDevice(Callable<ActuatorDriver> opener, Executor executor) {
+        this.opener = opener;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletionStage<Ack> send(Command command) {
+        return CompletableFuture.supplyAsync(() -> apply(command), executor);
+    }
+
+    // After the command holding the device, if any; a send after this reopens the driver
+    @Override
+    public void close() {
+        Runnable close = () -> {
+            lock.lock();
+            try {
+                closeDriver();
+            } finally {
+                lock.unlock();
+            }
+        };
+        try {
+            executor.execute(close);
+        } catch (RejectedExecutionException e) {
+            close.run(); // the executor is shutting down, nothing runs on it anymore
+        }
+    }
+
+    private Ack apply(Command command) {
+        lock.lock();
+        try {
+            if (driver == null) driver = opener.call();
+            return new Ack(command.seq, driver.apply(command.seq, command.on));
+        } catch (Exception e) {
+            closeDriver();
+            throw new CompletionException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeDriver() {
+        if (driver == null) return;
+        try {
+            driver.close();
+        } catch (Exception ignored) {
+            // reopened on the next command anyway
+        }
+        driver = null;
+    }
+}
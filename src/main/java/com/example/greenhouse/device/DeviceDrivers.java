@@ -0,0 +1,70 @@
+package com.example.greenhouse.device;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ServiceLoader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves the device factory of the actuator actors from {@code greenhouse.actuators}: simulated devices,
+ * or the named {@link ActuatorDriverProvider} with its blocking drivers on virtual threads where the
+ * runtime has them (Java 21+), otherwise on the bounded {@code driver-dispatcher}. Either way, blocking
+ * device I/O never runs on the dispatcher of the actors.
+ */
+public final class DeviceDrivers {
+
+    public static final String DISPATCHER = "greenhouse.actuators.driver-dispatcher";
+
+    private DeviceDrivers() {}
+
+    public static ActuatorDevice.Factory factory(ActorSystem<?> system, ActuatorSettings settings) {
+        if (ActuatorSettings.SIMULATED.equals(settings.driver)) return SimulatedDevice.factory(settings);
+        ActuatorDriverProvider provider = provider(settings.driver);
+        try {
+            provider.configure(system.settings().config().getConfig("greenhouse.actuators"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("[devices] cannot configure driver " + settings.driver, e);
+        }
+        system.getWhenTerminated().thenRun(provider::close);
+        Executor executor = executor(system, settings.driverExecutor);
+        system.log().info("[devices] driving actuators with {} on {}", provider.name(), describe(executor));
+        return (greenhouseId, type) -> {
+            if (!provider.supports(type)) throw new IllegalArgumentException("driver " + provider.name() + " does not support " + type);
+            return new BlockingDevice(() -> provider.open(greenhouseId, type), executor);
+        };
+    }
+
+    public static ActuatorDriverProvider provider(String name) {
+        for (ActuatorDriverProvider p : ServiceLoader.load(ActuatorDriverProvider.class)) {
+            if (p.name().equals(name)) return p;
+        }
+        throw new IllegalArgumentException("no actuator driver named " + name);
+    }
+
+    public static Executor executor(ActorSystem<?> system, String kind) {
+        if (!"dispatcher".equals(kind)) {
+            ExecutorService virtual = virtualThreads();
+            if (virtual != null) return virtual;
+            if ("virtual".equals(kind)) throw new IllegalStateException("driver-executor = virtual needs Java 21 or later");
+        }
+        return system.dispatchers().lookup(DispatcherSelector.fromConfig(DISPATCHER));
+    }
+
+    // Looked up reflectively so the build keeps targeting Java 17
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static String describe(Executor executor) {
+        return executor instanceof ExecutorService ? "virtual threads" : DISPATCHER;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.greenhouse.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for a gateway with many slow devices behind it, for {@link FakeTcpDriver}. Line
+ * protocol: a request {@code <device> <seq> on|off} is answered after the configured latency with
+ * {@code <device> <seq> on|off}, the position of the device, which applies only commands with a higher
+ * sequence number than the last. One selector thread serves every connection; replies are written by a
+ * timer thread, so thousands of commands can be pending without a thread each.
+ */
+public final class FakeDeviceServer implements AutoCloseable {
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final long latencyMicros;
+    private final ScheduledExecutorService timer;
+    private final Thread loop;
+    // Per device: last applied sequence number, negative when off
+    private final ConcurrentHashMap<String, Long> devices = new ConcurrentHashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private volatile boolean running = true;
+
+    private FakeDeviceServer(String host, int port, Duration latency) throws IOException {
+        this.latencyMicros = latency.toNanos() / 1_000;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(host, port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "fake-devices-timer"));
+        this.loop = daemon(this::run, "fake-devices");
+        loop.start();
+    }
+
+    /** Port 0 picks a free one; see {@link #port()}. */
+    public static FakeDeviceServer start(String host, int port, Duration latency) throws IOException {
+        return new FakeDeviceServer(host, port, latency);
+    }
+
+    public int port() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Position of a device as last applied, for tests. */
+    public boolean isOn(String device) {
+        Long seq = devices.get(device);
+        return seq != null && seq > 0;
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        SocketChannel client = server.accept();
+                        if (client == null) continue;
+                        client.configureBlocking(false);
+                        client.register(selector, SelectionKey.OP_READ, new StringBuilder());
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            if (running) throw new IllegalStateException("[fake-devices] server failed", e);
+        }
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel client = (SocketChannel) key.channel();
+        StringBuilder pending = (StringBuilder) key.attachment();
+        buffer.clear();
+        int n;
+        try {
+            n = client.read(buffer);
+        } catch (IOException e) {
+            n = -1;
+        }
+        if (n < 0) {
+            key.cancel();
+            closeQuietly(client);
+            return;
+        }
+        pending.append(new String(buffer.array(), 0, n, StandardCharsets.US_ASCII));
+        int end;
+        while ((end = pending.indexOf("\n")) >= 0) {
+            String line = pending.substring(0, end).trim();
+            pending.delete(0, end + 1);
+            if (!line.isEmpty()) timer.schedule(() -> answer(client, line), latencyMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void answer(SocketChannel client, String request) {
+        String[] parts = request.split(" ");
+        String reply;
+        if (parts.length != 3) {
+            reply = "error " + request;
+        } else {
+            long seq = Long.parseLong(parts[1]);
+            long signed = "on".equals(parts[2]) ? seq : -seq;
+            Long now = devices.merge(parts[0], signed, (old, cmd) -> Math.abs(cmd) > Math.abs(old) ? cmd : old);
+            reply = parts[0] + " " + seq + (now > 0 ? " on" : " off");
+        }
+        ByteBuffer out = ByteBuffer.wrap((reply + "\n").getBytes(StandardCharsets.US_ASCII));
+        try {
+            synchronized (client) {
+                while (out.hasRemaining()) {
+                    if (client.write(out) == 0) Thread.onSpinWait();
+                }
+            }
+        } catch (IOException e) {
+            closeQuietly(client);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        closeQuietly(server);
+        try {
+            loop.join(1_000);
+            selector.close();
+        } catch (InterruptedException | IOException ignored) {
+            // shutting down
+        }
+        // After the loop, which schedules the replies
+        timer.shutdownNow();
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+}
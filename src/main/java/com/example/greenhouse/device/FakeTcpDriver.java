@@ -0,0 +1,168 @@
+package com.example.greenhouse.device;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.typesafe.config.Config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking driver for the devices behind a {@link FakeDeviceServer}, the way a Modbus/TCP or PLC gateway
+ * is driven: commands go over a small pool of connections to the gateway, a connection is held for the
+ * whole exchange, and a read blocks until the answer or the read timeout. Registered as driver
+ * {@code fake-tcp}, configured in {@code greenhouse.actuators.fake-tcp}.
+ */
+public final class FakeTcpDriver implements ActuatorDriver {
+
+    private final String device;
+    private final Gateway gateway;
+
+    FakeTcpDriver(String device, Gateway gateway) {
+        this.device = device;
+        this.gateway = gateway;
+    }
+
+    @Override
+    public boolean apply(long seq, boolean on) throws IOException {
+        Connection connection = gateway.borrow();
+        try {
+            connection.out.write((device + " " + seq + (on ? " on" : " off") + "\n").getBytes(StandardCharsets.US_ASCII));
+            connection.out.flush();
+            String prefix = device + " " + seq + " ";
+            String line;
+            // Answers to exchanges abandoned on this connection are skipped
+            while ((line = connection.in.readLine()) != null) {
+                if (line.startsWith(prefix)) {
+                    gateway.release(connection);
+                    return line.endsWith(" on");
+                }
+            }
+            throw new IOException("gateway closed the connection");
+        } catch (IOException e) {
+            gateway.discard(connection);
+            throw e;
+        }
+    }
+
+    public static final class Provider implements ActuatorDriverProvider {
+
+        private Gateway gateway;
+        private FakeDeviceServer server;
+
+        @Override
+        public String name() { return "fake-tcp"; }
+
+        @Override
+        public synchronized void configure(Config actuators) throws IOException {
+            Config c = actuators.getConfig("fake-tcp");
+            String host = c.getString("host");
+            int port = c.getInt("port");
+            if (c.getBoolean("start-server")) {
+                server = FakeDeviceServer.start(host, port, c.getDuration("latency"));
+                port = server.port();
+            }
+            gateway = new Gateway(host, port, c.getInt("connections"), c.getDuration("read-timeout"));
+        }
+
+        @Override
+        public boolean supports(ActuatorActor.Type type) { return true; }
+
+        @Override
+        public ActuatorDriver open(String greenhouseId, ActuatorActor.Type type) {
+            return new FakeTcpDriver(greenhouseId + "/" + type.name().toLowerCase(), gateway);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (gateway != null) gateway.close();
+            if (server != null) server.close();
+            gateway = null;
+            server = null;
+        }
+    }
+
+    static final class Connection {
+        final Socket socket;
+        final BufferedReader in;
+        final OutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            this.out = socket.getOutputStream();
+        }
+    }
+
+    /** Connections to one gateway, at most a fixed number open; callers beyond that wait for one. */
+    public static final class Gateway {
+        private final InetSocketAddress address;
+        private final int readTimeoutMillis;
+        private final Semaphore permits;
+        private final ArrayBlockingQueue<Connection> idle;
+        private volatile boolean closed;
+
+        public Gateway(String host, int port, int connections, Duration readTimeout) {
+            this.address = new InetSocketAddress(host, port);
+            this.readTimeoutMillis = (int) readTimeout.toMillis();
+            this.permits = new Semaphore(connections);
+            this.idle = new ArrayBlockingQueue<>(connections);
+        }
+
+        Connection borrow() throws IOException {
+            try {
+                if (!permits.tryAcquire(readTimeoutMillis, TimeUnit.MILLISECONDS)) throw new IOException("no gateway connection free");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for a gateway connection", e);
+            }
+            Connection c = idle.poll();
+            if (c != null) return c;
+            try {
+                Socket socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(address, readTimeoutMillis);
+                socket.setSoTimeout(readTimeoutMillis);
+                return new Connection(socket);
+            } catch (IOException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        void release(Connection c) {
+            idle.offer(c);
+            permits.release();
+            // Closed meanwhile: whichever of close and this takes it out closes it
+            if (closed && idle.remove(c)) closeSocket(c);
+        }
+
+        void discard(Connection c) {
+            closeSocket(c);
+            permits.release();
+        }
+
+        /** Closes the idle connections; those in use are closed when they come back. */
+        public void close() {
+            closed = true;
+            Connection c;
+            while ((c = idle.poll()) != null) closeSocket(c);
+        }
+
+        private static void closeSocket(Connection c) {
+            try {
+                c.socket.close();
+            } catch (IOException ignored) {
+                // gone either way
+            }
+        }
+    }
+}
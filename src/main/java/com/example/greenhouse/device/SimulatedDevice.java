@@ -0,0 +1,87 @@
+package com.example.greenhouse.device;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for an actuator on the network: each command takes the configured latency plus up to
+ * the jitter, and with the failure rate it goes wrong in one of three ways, equally often: the command
+ * is lost, the ack is lost after the command was applied, or the device answers with an error.
+ * Commands are applied in sequence order only, duplicates are acknowledged without applying them again.
+ */
+public final class SimulatedDevice implements ActuatorDevice {
+
+    private final long latencyMicros;
+    private final long jitterMicros;
+    private final double failureRate;
+    private final ScheduledExecutorService scheduler;
+    private final SplittableRandom rnd;
+    private long appliedSeq;
+    private boolean on;
+    private long applied;
+    private long duplicates;
+
+    public SimulatedDevice(Duration latency, Duration jitter, double failureRate, ScheduledExecutorService scheduler, long seed) {
+        this.latencyMicros = latency.toNanos() / 1_000;
+        this.jitterMicros = jitter.toNanos() / 1_000;
+        this.failureRate = failureRate;
+        this.scheduler = scheduler;
+        this.rnd = new SplittableRandom(seed);
+    }
+
+    /** Devices sharing one timer thread, as configured in {@code greenhouse.actuators.simulated-device}. */
+    public static ActuatorDevice.Factory factory(ActuatorSettings settings) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "simulated-devices");
+            t.setDaemon(true);
+            return t;
+        });
+        return (greenhouseId, type) -> new SimulatedDevice(settings.simulatedLatency, settings.simulatedJitter, settings.simulatedFailureRate,
+                scheduler, greenhouseId.hashCode() * 31L + type.ordinal());
+    }
+
+    @Override
+    public CompletionStage<Ack> send(Command command) {
+        CompletableFuture<Ack> reply = new CompletableFuture<>();
+        int failure;
+        long delay;
+        synchronized (this) {
+            failure = rnd.nextDouble() < failureRate ? 1 + rnd.nextInt(3) : 0;
+            delay = latencyMicros + (jitterMicros == 0 ? 0 : rnd.nextLong(jitterMicros));
+        }
+        if (failure == 1) return reply; // command lost
+        scheduler.schedule(() -> {
+            if (failure == 3) {
+                reply.completeExceptionally(new IOException("device error on " + command));
+                return;
+            }
+            Ack ack = apply(command);
+            if (failure == 0) reply.complete(ack); // else the ack is lost
+        }, delay, TimeUnit.MICROSECONDS);
+        return reply;
+    }
+
+    private synchronized Ack apply(Command command) {
+        if (command.seq > appliedSeq) {
+            appliedSeq = command.seq;
+            on = command.on;
+            applied++;
+        } else {
+            duplicates++;
+        }
+        return new Ack(command.seq, on);
+    }
+
+    public synchronized boolean isOn() { return on; }
+
+    /** Commands that changed the applied sequence number, and those that arrived again or out of order. */
+    public synchronized long applied() { return applied; }
+
+    public synchronized long duplicates() { return duplicates; }
+}
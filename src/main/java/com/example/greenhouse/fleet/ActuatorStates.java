@@ -0,0 +1,53 @@
+package com.example.greenhouse.fleet;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Actuator positions of every greenhouse for readers outside the actor hierarchy. Each greenhouse
+ * controller publishes its own entry; an entry is immutable and replaced as a whole on every switch, so
+ * readers always see all actuators of a greenhouse as of one switch. Switches are rare next to
+ * readings, which makes copy-on-write cheap here.
+ */
+public final class ActuatorStates {
+
+    private final int actuators;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ActuatorStates(int actuators) {
+        this.actuators = actuators;
+    }
+
+    public int actuators() { return actuators; }
+
+    /** Publishes the full position of a greenhouse's actuators, e.g. after recovery. Arrays are copied. */
+    public void publish(String greenhouseId, boolean[] on, long[] since) {
+        entries.put(greenhouseId, new Entry(on.clone(), since.clone()));
+    }
+
+    /** Switches one actuator; only the greenhouse's own controller may call this. */
+    public void switched(String greenhouseId, int actuator, boolean on, long at) {
+        Entry current = entries.get(greenhouseId);
+        boolean[] nextOn = current == null ? new boolean[actuators] : current.on.clone();
+        long[] nextSince = current == null ? new long[actuators] : current.since.clone();
+        nextOn[actuator] = on;
+        nextSince[actuator] = at;
+        entries.put(greenhouseId, new Entry(nextOn, nextSince));
+    }
+
+    /** Current entry, or null when the greenhouse never published one. */
+    public Entry get(String greenhouseId) { return entries.get(greenhouseId); }
+
+    public void remove(String greenhouseId) { entries.remove(greenhouseId); }
+
+    public static final class Entry {
+        private final boolean[] on;
+        private final long[] since;
+
+        private Entry(boolean[] on, long[] since) { this.on = on; this.since = since; }
+
+        public boolean isOn(int actuator) { return on[actuator]; }
+
+        /** When the actuator last switched, 0 if never. */
+        public long since(int actuator) { return since[actuator]; }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.greenhouse.fleet;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.List;
+
+/** Subtree aggregates kept by site and region managers, read from {@code greenhouse.aggregates}. */
+public final class AggregateSettings {
+
+    public final boolean enabled;
+    /** Changes are pushed up one level at most this often, however many readings arrived. */
+    public final Duration pushInterval;
+    private final double[] low;
+    private final double[] high;
+
+    /** Bands are indexed by kind ordinal; a reading outside [low, high] is out of band. */
+    public AggregateSettings(boolean enabled, Duration pushInterval, double[] low, double[] high) {
+        this.enabled = enabled;
+        this.pushInterval = pushInterval;
+        this.low = low.clone();
+        this.high = high.clone();
+    }
+
+    public static AggregateSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.aggregates");
+        double[] low = new double[SensorActor.Kind.count()];
+        double[] high = new double[SensorActor.Kind.count()];
+        for (SensorActor.Kind k : SensorActor.Kind.values()) {
+            List<Double> band = c.getDoubleList("bands." + k.wireName);
+            if (band.size() != 2) throw new IllegalArgumentException("greenhouse.aggregates.bands." + k.wireName + " must be [low, high]");
+            low[k.ordinal()] = band.get(0);
+            high[k.ordinal()] = band.get(1);
+        }
+        return new AggregateSettings(c.getBoolean("enabled"), c.getDuration("push-interval"), low, high);
+    }
+
+    public boolean outOfBand(int kind, double value) {
+        return value < low[kind] || value > high[kind];
+    }
+}
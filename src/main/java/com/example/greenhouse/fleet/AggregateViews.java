@@ -0,0 +1,33 @@
+package com.example.greenhouse.fleet;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest running aggregates of every site and region, published by their managers whenever they
+ * change (at most once per push-interval) for readers outside the hierarchy. Views are replaced whole;
+ * the stats inside are copies nobody mutates.
+ */
+public final class AggregateViews {
+
+    private final ConcurrentHashMap<String, View> views = new ConcurrentHashMap<>();
+
+    public static String site(String siteId) { return "site/" + siteId; }
+
+    public static String region(String regionId) { return "region/" + regionId; }
+
+    /** Publishes a copy of {@code stats}, so the owner may keep changing its own. */
+    public void publish(String key, SubtreeStats stats, long computedAt) { views.put(key, new View(computedAt, stats.copy())); }
+
+    /** Latest view, or null when none was published yet. */
+    public View get(String key) { return views.get(key); }
+
+    public static final class View {
+        public final long computedAt;
+        public final SubtreeStats stats;
+
+        View(long computedAt, SubtreeStats stats) {
+            this.computedAt = computedAt;
+            this.stats = stats;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.greenhouse.fleet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Region/site/greenhouse hierarchy in dense form: sites and regions get indices of their own, and the
+ * site of a greenhouse is looked up by its {@link GreenhouseDirectory} index. Built once from the
+ * configured topology and immutable afterwards, so any thread may read it.
+ */
+public final class FleetTopology {
+
+    private final GreenhouseDirectory directory;
+    private final String[] regionIds;
+    private final String[] siteIds;
+    private final int[] regionOfSite;
+    private final int[] siteOfGreenhouse; // by directory index, -1 for greenhouses outside the topology
+    private final int[][] greenhousesOfSite;
+    private final Map<String, Integer> siteIndex;
+    private final Map<String, Integer> regionIndex;
+
+    private FleetTopology(Builder b) {
+        this.directory = b.directory;
+        this.regionIds = b.regionIds.toArray(new String[0]);
+        this.siteIds = b.siteIds.toArray(new String[0]);
+        this.regionOfSite = b.regionOfSite.stream().mapToInt(Integer::intValue).toArray();
+        this.siteIndex = Map.copyOf(b.siteIndex);
+        this.regionIndex = Map.copyOf(b.regionIndex);
+        int maxIndex = -1;
+        for (int g : b.greenhouseIndices) maxIndex = Math.max(maxIndex, g);
+        this.siteOfGreenhouse = new int[maxIndex + 1];
+        Arrays.fill(siteOfGreenhouse, -1);
+        int[] perSite = new int[siteIds.length];
+        for (int i = 0; i < b.greenhouseIndices.size(); i++) {
+            siteOfGreenhouse[b.greenhouseIndices.get(i)] = b.greenhouseSites.get(i);
+            perSite[b.greenhouseSites.get(i)]++;
+        }
+        this.greenhousesOfSite = new int[siteIds.length][];
+        for (int s = 0; s < siteIds.length; s++) greenhousesOfSite[s] = new int[perSite[s]];
+        Arrays.fill(perSite, 0);
+        for (int i = 0; i < b.greenhouseIndices.size(); i++) {
+            int s = b.greenhouseSites.get(i);
+            greenhousesOfSite[s][perSite[s]++] = b.greenhouseIndices.get(i);
+        }
+    }
+
+    public static Builder builder(GreenhouseDirectory directory) { return new Builder(directory); }
+
+    public GreenhouseDirectory directory() { return directory; }
+
+    public int regionCount() { return regionIds.length; }
+
+    public int siteCount() { return siteIds.length; }
+
+    public String regionId(int region) { return regionIds[region]; }
+
+    public String siteId(int site) { return siteIds[site]; }
+
+    /** Index of a site id, or -1. */
+    public int siteIndex(String siteId) { return siteIndex.getOrDefault(siteId, -1); }
+
+    /** Index of a region id, or -1. */
+    public int regionIndex(String regionId) { return regionIndex.getOrDefault(regionId, -1); }
+
+    public int regionOfSite(int site) { return regionOfSite[site]; }
+
+    /** Site of the greenhouse with this directory index, or -1. */
+    public int siteOf(int greenhouse) {
+        return greenhouse >= 0 && greenhouse < siteOfGreenhouse.length ? siteOfGreenhouse[greenhouse] : -1;
+    }
+
+    /** Directory indices of the site's greenhouses, in the order they were added. Do not modify. */
+    public int[] greenhousesOf(int site) { return greenhousesOfSite[site]; }
+
+    public static final class Builder {
+        private final GreenhouseDirectory directory;
+        private final List<String> regionIds = new ArrayList<>();
+        private final List<String> siteIds = new ArrayList<>();
+        private final List<Integer> regionOfSite = new ArrayList<>();
+        private final List<Integer> greenhouseIndices = new ArrayList<>();
+        private final List<Integer> greenhouseSites = new ArrayList<>();
+        private final Map<String, Integer> siteIndex = new HashMap<>();
+        private final Map<String, Integer> regionIndex = new HashMap<>();
+
+        private Builder(GreenhouseDirectory directory) { this.directory = directory; }
+
+        /** Adds a greenhouse, registering it in the directory and creating its site and region on first sight. */
+        public Builder add(String regionId, String siteId, String greenhouseId) {
+            int region = regionIndex.computeIfAbsent(regionId, id -> {
+                regionIds.add(id);
+                return regionIds.size() - 1;
+            });
+            int site = siteIndex.computeIfAbsent(siteId, id -> {
+                siteIds.add(id);
+                regionOfSite.add(region);
+                return siteIds.size() - 1;
+            });
+            greenhouseIndices.add(directory.register(greenhouseId));
+            greenhouseSites.add(site);
+            return this;
+        }
+
+        public FleetTopology build() { return new FleetTopology(this); }
+    }
+}
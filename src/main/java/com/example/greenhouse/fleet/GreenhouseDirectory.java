@@ -0,0 +1,59 @@
+package com.example.greenhouse.fleet;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense, append-only numbering of greenhouse ids. An index is handed out once and never reused, so it
+ * can key primitive arrays and columnar batches instead of the id string. Lookups are lock-free;
+ * registration of new ids is serialized.
+ */
+public final class GreenhouseDirectory {
+
+    private final ConcurrentHashMap<String, Integer> indexById = new ConcurrentHashMap<>();
+    private volatile String[] ids;
+    private volatile int size;
+
+    public GreenhouseDirectory() { this(java.util.List.of()); }
+
+    /** Pre-assigns indices in iteration order, e.g. from the configured topology. */
+    public GreenhouseDirectory(Collection<String> greenhouseIds) {
+        this.ids = new String[Math.max(16, greenhouseIds.size())];
+        for (String id : greenhouseIds) register(id);
+    }
+
+    /** Index of a known greenhouse, or -1. */
+    public int indexOf(String greenhouseId) {
+        if (greenhouseId == null) return -1;
+        Integer idx = indexById.get(greenhouseId);
+        return idx == null ? -1 : idx;
+    }
+
+    /** Index of the greenhouse, assigning the next free one on first sight. */
+    public int register(String greenhouseId) {
+        int idx = indexOf(greenhouseId);
+        if (idx >= 0) return idx;
+        synchronized (this) {
+            Integer existing = indexById.get(greenhouseId);
+            if (existing != null) return existing;
+            int next = size;
+            String[] current = ids;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = greenhouseId;
+            ids = current;
+            size = next + 1;
+            indexById.put(greenhouseId, next);
+            return next;
+        }
+    }
+
+    public String idAt(int index) {
+        String[] current = ids;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    public int size() { return size; }
+}
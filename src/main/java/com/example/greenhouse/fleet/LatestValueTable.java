@@ -0,0 +1,195 @@
+package com.example.greenhouse.fleet;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latest reading (value and timestamp) of every sensor kind of every greenhouse, indexed by
+ * {@link GreenhouseDirectory} index and kind ordinal, so fleet-wide reads need no message to any actor.
+ *
+ * Rows live in fixed-size pages of primitive arrays that never move once allocated; only the page
+ * array grows. Each row has a sequence number used as a seqlock: the writer makes it odd, updates the
+ * row and makes it even again, and a reader retries until it saw the same even number before and after
+ * copying. Readers therefore always get every kind of a greenhouse from the same point in time, without
+ * locks and without slowing the writer down. A fleet-wide {@link #snapshot} is consistent per row; rows
+ * are read one after another, not at a single instant.
+ *
+ * A row must have a single writer. Routing shards own disjoint sets of greenhouses, so each shard can
+ * write its own rows without coordination.
+ */
+public final class LatestValueTable {
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle DOUBLES = MethodHandles.arrayElementVarHandle(double[].class);
+    private static final int SPINS = 100;
+
+    /** Timestamp of a slot that never had a reading; its value is NaN. */
+    public static final long NO_READING = Long.MIN_VALUE;
+
+    private final int kinds;
+    private volatile Page[] pages = new Page[16];
+    private final AtomicInteger rows = new AtomicInteger();
+
+    public LatestValueTable(int kinds) {
+        if (kinds <= 0) throw new IllegalArgumentException("kinds must be positive: " + kinds);
+        this.kinds = kinds;
+    }
+
+    public int kinds() { return kinds; }
+
+    /** One past the highest greenhouse index ever written. */
+    public int rows() { return rows.get(); }
+
+    /**
+     * Records a reading unless the slot already holds a newer one. Only the owner of the greenhouse's row
+     * may call this.
+     */
+    public void put(int greenhouse, int kind, double value, long timestamp) {
+        Page page = writablePage(greenhouse);
+        int row = greenhouse & (PAGE_ROWS - 1);
+        int slot = row * kinds + kind;
+        if (timestamp < page.timestamps[slot]) return; // plain read: this thread is the only writer
+        long seq = page.seq[row];
+        LONGS.setOpaque(page.seq, row, seq + 1);
+        VarHandle.storeStoreFence();
+        DOUBLES.setOpaque(page.values, slot, value);
+        LONGS.setOpaque(page.timestamps, slot, timestamp);
+        LONGS.setRelease(page.seq, row, seq + 2);
+    }
+
+    /** Latest value of one sensor, or NaN when it never reported. */
+    public double value(int greenhouse, int kind) {
+        Page page = page(greenhouse);
+        if (page == null) return Double.NaN;
+        int row = greenhouse & (PAGE_ROWS - 1);
+        int slot = row * kinds + kind;
+        for (int attempt = 0; ; attempt++) {
+            long before = (long) LONGS.getAcquire(page.seq, row);
+            double v = (double) DOUBLES.getOpaque(page.values, slot);
+            VarHandle.loadLoadFence();
+            if ((before & 1) == 0 && before == (long) LONGS.getOpaque(page.seq, row)) return v;
+            backOff(attempt);
+        }
+    }
+
+    /**
+     * Copies the row of a greenhouse into {@code values} and {@code timestamps} (at least {@link #kinds}
+     * long each), all from the same write. Returns false when the greenhouse never reported anything.
+     */
+    public boolean read(int greenhouse, double[] values, long[] timestamps) {
+        Page page = page(greenhouse);
+        if (page == null) {
+            Arrays.fill(values, 0, kinds, Double.NaN);
+            Arrays.fill(timestamps, 0, kinds, NO_READING);
+            return false;
+        }
+        return copyRow(page, greenhouse & (PAGE_ROWS - 1), values, timestamps, 0);
+    }
+
+    /** Copies every row written so far. */
+    public Snapshot snapshot() {
+        int n = rows();
+        double[] values = new double[n * kinds];
+        long[] timestamps = new long[n * kinds];
+        Page[] current = pages;
+        for (int g = 0; g < n; g++) {
+            int p = g >>> PAGE_SHIFT;
+            Page page = p < current.length ? current[p] : null;
+            if (page == null) {
+                Arrays.fill(values, g * kinds, (g + 1) * kinds, Double.NaN);
+                Arrays.fill(timestamps, g * kinds, (g + 1) * kinds, NO_READING);
+            } else {
+                copyRow(page, g & (PAGE_ROWS - 1), values, timestamps, g * kinds);
+            }
+        }
+        return new Snapshot(n, kinds, values, timestamps);
+    }
+
+    private boolean copyRow(Page page, int row, double[] values, long[] timestamps, int at) {
+        int base = row * kinds;
+        for (int attempt = 0; ; attempt++) {
+            long before = (long) LONGS.getAcquire(page.seq, row);
+            boolean any = false;
+            for (int k = 0; k < kinds; k++) {
+                values[at + k] = (double) DOUBLES.getOpaque(page.values, base + k);
+                long ts = (long) LONGS.getOpaque(page.timestamps, base + k);
+                timestamps[at + k] = ts;
+                any |= ts != NO_READING;
+            }
+            VarHandle.loadLoadFence();
+            if ((before & 1) == 0 && before == (long) LONGS.getOpaque(page.seq, row)) return any;
+            backOff(attempt);
+        }
+    }
+
+    // A write takes nanoseconds, so spin briefly; past that the writer was most likely descheduled
+    // mid-write, and spinning on would only keep it off the CPU
+    private static void backOff(int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private Page page(int greenhouse) {
+        if (greenhouse < 0) return null;
+        Page[] current = pages;
+        int p = greenhouse >>> PAGE_SHIFT;
+        return p < current.length ? current[p] : null;
+    }
+
+    private Page writablePage(int greenhouse) {
+        Page page = page(greenhouse);
+        if (page == null) {
+            if (greenhouse < 0) throw new IndexOutOfBoundsException("greenhouse index " + greenhouse);
+            page = allocate(greenhouse >>> PAGE_SHIFT);
+        }
+        if (greenhouse >= rows.get()) rows.accumulateAndGet(greenhouse + 1, Math::max);
+        return page;
+    }
+
+    // Pages are shared by all writers, so allocation (rare) is serialized
+    private synchronized Page allocate(int p) {
+        Page[] current = pages;
+        if (p < current.length && current[p] != null) return current[p];
+        Page[] next = p < current.length ? current.clone() : Arrays.copyOf(current, Math.max(p + 1, current.length * 2));
+        Page page = new Page(kinds);
+        next[p] = page;
+        pages = next;
+        return page;
+    }
+
+    private static final class Page {
+        final long[] seq = new long[PAGE_ROWS];
+        final double[] values;
+        final long[] timestamps;
+
+        Page(int kinds) {
+            values = new double[PAGE_ROWS * kinds];
+            timestamps = new long[PAGE_ROWS * kinds];
+            Arrays.fill(values, Double.NaN);
+            Arrays.fill(timestamps, NO_READING);
+        }
+    }
+
+    /** Copy of the table; entry {@code greenhouse * kinds + kind}. */
+    public static final class Snapshot {
+        public final int rows;
+        public final int kinds;
+        public final double[] values;
+        public final long[] timestamps;
+
+        Snapshot(int rows, int kinds, double[] values, long[] timestamps) {
+            this.rows = rows; this.kinds = kinds; this.values = values; this.timestamps = timestamps;
+        }
+
+        public double value(int greenhouse, int kind) { return values[greenhouse * kinds + kind]; }
+
+        public long timestamp(int greenhouse, int kind) { return timestamps[greenhouse * kinds + kind]; }
+    }
+}
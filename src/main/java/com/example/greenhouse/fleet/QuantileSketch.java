@@ -0,0 +1,234 @@
+package com.example.greenhouse.fleet;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch with relative-error guarantees (DDSketch). A value v lands in bucket
+ * ceil(log_gamma(|v|)), gamma = (1 + a) / (1 - a), and every quantile is answered within relative
+ * error a of the true value, as long as the values of the sketch span less than gamma^maxBins
+ * (about 170x for a = 2% and 128 bins). Beyond that the lowest buckets are collapsed into one, which
+ * only costs accuracy for the smallest magnitudes; memory never grows past two stores of maxBins
+ * counters.
+ *
+ * Positive and negative values have separate stores (the negative one allocated on first use);
+ * magnitudes below {@link #MIN_MAGNITUDE} count as zero. Adding a value does not allocate. Not thread
+ * safe: each sketch has one owner at a time, and a sketch handed to another actor is not touched again.
+ */
+public final class QuantileSketch {
+
+    public static final double MIN_MAGNITUDE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double multiplier;
+    private final int maxBins;
+    private final Store positive;
+    private Store negative;
+    private long zeroCount;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) throw new IllegalArgumentException("relative accuracy must be in (0, 1): " + relativeAccuracy);
+        if (maxBins < 2) throw new IllegalArgumentException("max bins must be at least 2: " + maxBins);
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.multiplier = 1 / Math.log(gamma);
+        this.maxBins = maxBins;
+        this.positive = new Store(maxBins);
+    }
+
+    public double relativeAccuracy() { return relativeAccuracy; }
+
+    public int maxBins() { return maxBins; }
+
+    public long count() { return count; }
+
+    public boolean isEmpty() { return count == 0; }
+
+    public double min() { return count == 0 ? Double.NaN : min; }
+
+    public double max() { return count == 0 ? Double.NaN : max; }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) return;
+        if (value > MIN_MAGNITUDE) {
+            positive.add(index(value), 1);
+        } else if (value < -MIN_MAGNITUDE) {
+            negative().add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /** Adds everything in {@code other}, which must have the same accuracy and bins. */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy || other.maxBins != maxBins) {
+            throw new IllegalArgumentException("cannot merge sketches with different parameters");
+        }
+        if (other.count == 0) return;
+        positive.merge(other.positive);
+        if (other.negative != null) negative().merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /** Value at quantile q in [0, 1], NaN when empty. */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) throw new IllegalArgumentException("quantile must be in [0, 1]: " + q);
+        if (count == 0) return Double.NaN;
+        long rank = (long) (q * (count - 1));
+        // The extremes are known exactly, even when their buckets were collapsed
+        if (rank == 0) return min;
+        if (rank == count - 1) return max;
+        double v;
+        long negatives = negative == null ? 0 : negative.total;
+        if (rank < negatives) {
+            // Most negative first: highest magnitude bucket of the negative store
+            v = -value(negative.indexAtRankFromTop(rank));
+        } else if (rank < negatives + zeroCount) {
+            v = 0;
+        } else {
+            v = value(positive.indexAtRank(rank - negatives - zeroCount));
+        }
+        return Math.max(min, Math.min(max, v));
+    }
+
+    public void clear() {
+        positive.clear();
+        if (negative != null) negative.clear();
+        zeroCount = 0;
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy, maxBins);
+        copy.merge(this);
+        return copy;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) * multiplier);
+    }
+
+    // Midpoint of the bucket (gamma^(i-1), gamma^i] in relative terms
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (1 + gamma);
+    }
+
+    private Store negative() {
+        if (negative == null) negative = new Store(maxBins);
+        return negative;
+    }
+
+    /**
+     * Counts of a window of at most maxBins consecutive bucket indexes starting at {@code offset}. A
+     * bucket below the window that cannot fit without dropping the highest buckets is counted in the
+     * lowest one instead (collapsing lowest).
+     */
+    private static final class Store {
+        private final long[] counts;
+        private int offset;
+        private int minIndex;
+        private int maxIndex;
+        private long total;
+
+        Store(int maxBins) { counts = new long[maxBins]; }
+
+        void add(int index, long n) {
+            if (total == 0) {
+                // Room on both sides for values to spread
+                offset = index - counts.length / 2;
+                minIndex = index;
+                maxIndex = index;
+            } else if (index < offset) {
+                int newOffset = Math.max(index, maxIndex - counts.length + 1);
+                shiftTo(newOffset);
+                index = Math.max(index, newOffset);
+            } else if (index >= offset + counts.length) {
+                int newOffset = index - counts.length + 1;
+                if (newOffset > minIndex) {
+                    collapseTo(newOffset);
+                } else {
+                    shiftTo(newOffset);
+                }
+            }
+            counts[index - offset] += n;
+            total += n;
+            if (index < minIndex) minIndex = index;
+            if (index > maxIndex) maxIndex = index;
+        }
+
+        void merge(Store other) {
+            if (other.total == 0) return;
+            for (int i = other.minIndex; i <= other.maxIndex; i++) {
+                long n = other.counts[i - other.offset];
+                if (n != 0) add(i, n);
+            }
+        }
+
+        // Starts the window at newOffset, folding every bucket below it into the lowest one
+        private void collapseTo(int newOffset) {
+            long folded = 0;
+            for (int i = minIndex; i < newOffset && i <= maxIndex; i++) {
+                folded += counts[i - offset];
+                counts[i - offset] = 0;
+            }
+            if (maxIndex >= newOffset) {
+                minIndex = newOffset;
+                shiftTo(newOffset);
+            } else {
+                offset = newOffset;
+                minIndex = newOffset;
+                maxIndex = newOffset;
+            }
+            counts[0] += folded;
+        }
+
+        // Moves the window so it starts at newOffset; used buckets always fit
+        private void shiftTo(int newOffset) {
+            int shift = newOffset - offset;
+            if (shift == 0) return;
+            int from = minIndex - offset;
+            int length = maxIndex - minIndex + 1;
+            System.arraycopy(counts, from, counts, from - shift, length);
+            if (shift > 0) {
+                Arrays.fill(counts, Math.max(from - shift + length, 0), Math.min(from + length, counts.length), 0);
+            } else {
+                Arrays.fill(counts, from, Math.min(from - shift, from + length), 0);
+            }
+            offset = newOffset;
+        }
+
+        int indexAtRank(long rank) {
+            long seen = 0;
+            for (int i = minIndex; i <= maxIndex; i++) {
+                seen += counts[i - offset];
+                if (seen > rank) return i;
+            }
+            return maxIndex;
+        }
+
+        int indexAtRankFromTop(long rank) {
+            long seen = 0;
+            for (int i = maxIndex; i >= minIndex; i--) {
+                seen += counts[i - offset];
+                if (seen > rank) return i;
+            }
+            return minIndex;
+        }
+
+        void clear() {
+            if (total > 0) Arrays.fill(counts, minIndex - offset, maxIndex - offset + 1, 0);
+            total = 0;
+        }
+    }
+}
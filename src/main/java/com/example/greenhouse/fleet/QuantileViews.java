@@ -0,0 +1,49 @@
+package com.example.greenhouse.fleet;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest windowed quantiles of every site, region and the whole fleet, published by their managers
+ * once per sketch slice for readers outside the hierarchy. Views are immutable and replaced whole.
+ */
+public final class QuantileViews {
+
+    public static final String FLEET = "fleet";
+
+    private final ConcurrentHashMap<String, View> views = new ConcurrentHashMap<>();
+
+    public static String site(String siteId) { return "site/" + siteId; }
+
+    public static String region(String regionId) { return "region/" + regionId; }
+
+    public void publish(String key, View view) { views.put(key, view); }
+
+    /** Latest view, or null when none was published yet. */
+    public View get(String key) { return views.get(key); }
+
+    public static final class View {
+        public final long computedAt;
+        public final long windowMillis;
+        private final double[] quantiles;
+        private final long[] counts;
+        private final double[][] values;
+
+        View(long computedAt, long windowMillis, double[] quantiles, long[] counts, double[][] values) {
+            this.computedAt = computedAt;
+            this.windowMillis = windowMillis;
+            this.quantiles = quantiles;
+            this.counts = counts;
+            this.values = values;
+        }
+
+        public int quantileCount() { return quantiles.length; }
+
+        public double quantile(int i) { return quantiles[i]; }
+
+        /** Readings of a kind in the window. */
+        public long count(int kind) { return counts[kind]; }
+
+        /** Value of the i-th published quantile of a kind, NaN without readings. */
+        public double value(int kind, int i) { return values[kind][i]; }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.greenhouse.fleet;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Windowed quantile sketches per site, region and fleet, read from {@code greenhouse.sketches}. */
+public final class SketchSettings {
+
+    public final boolean enabled;
+    public final double relativeAccuracy;
+    /** Buckets per sign; fixes the memory of every sketch. */
+    public final int maxBins;
+    /** Greenhouses hand their readings up once per slice; the window moves by whole slices. */
+    public final Duration slice;
+    /** Window length in slices. */
+    public final int windowSlices;
+    /** Quantiles published for the query API. */
+    public final double[] published;
+
+    public SketchSettings(boolean enabled, double relativeAccuracy, int maxBins, Duration slice, int windowSlices, double[] published) {
+        this.enabled = enabled;
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+        this.slice = slice;
+        this.windowSlices = windowSlices;
+        this.published = published.clone();
+    }
+
+    public static SketchSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.sketches");
+        return new SketchSettings(
+                c.getBoolean("enabled"),
+                c.getDouble("relative-accuracy"),
+                Math.max(2, c.getInt("max-bins")),
+                c.getDuration("slice"),
+                Math.max(1, c.getInt("window-slices")),
+                c.getDoubleList("published-quantiles").stream().mapToDouble(Double::doubleValue).toArray());
+    }
+
+    public QuantileSketch newSketch() { return new QuantileSketch(relativeAccuracy, maxBins); }
+
+    /** Slice a wall-clock time falls into. */
+    public long sliceOf(long millis) { return millis / slice.toMillis(); }
+}
@@ -0,0 +1,119 @@
+package com.example.greenhouse.fleet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sliding window of quantile sketches per sensor kind, as a ring of {@link SketchSettings#windowSlices}
+ * slices: a slot is reused (cleared) when a newer slice maps to it, so memory is fixed at
+ * windowSlices x kinds sketches. A query merges the slices still inside the window.
+ *
+ * When the owner forwards to the next level up, everything merged in since the last
+ * {@link #drainPending} is also kept in a second ring and handed over as is, so the level above merges
+ * each reading exactly once however late it arrives.
+ */
+public final class SketchWindow {
+
+    private final SketchSettings settings;
+    private final int kinds;
+    private final int slices;
+    private final long[] sliceOf;
+    private final QuantileSketch[][] slots;
+    private final long[] pendingSliceOf; // null: not forwarding
+    private final QuantileSketch[][] pending;
+
+    public SketchWindow(SketchSettings settings, int kinds, boolean forwards) {
+        this.settings = settings;
+        this.kinds = kinds;
+        this.slices = settings.windowSlices;
+        this.sliceOf = emptySlices(slices);
+        this.slots = new QuantileSketch[slices][];
+        this.pendingSliceOf = forwards ? emptySlices(slices) : null;
+        this.pending = forwards ? new QuantileSketch[slices][] : null;
+    }
+
+    private static long[] emptySlices(int n) {
+        long[] s = new long[n];
+        Arrays.fill(s, Long.MIN_VALUE);
+        return s;
+    }
+
+    /**
+     * Merges one slice of readings (a sketch per kind, null where none). Returns false when the slice
+     * already left the window.
+     */
+    public boolean add(long slice, QuantileSketch[] perKind, long currentSlice) {
+        if (slice <= currentSlice - slices) return false;
+        if (!mergeInto(sliceOf, slots, slice, perKind)) return false;
+        if (pending != null) mergeInto(pendingSliceOf, pending, slice, perKind);
+        return true;
+    }
+
+    private boolean mergeInto(long[] sliceOf, QuantileSketch[][] ring, long slice, QuantileSketch[] perKind) {
+        int slot = (int) Math.floorMod(slice, (long) slices);
+        if (sliceOf[slot] > slice) return false; // a newer slice owns the slot
+        if (sliceOf[slot] != slice) {
+            if (ring[slot] != null) {
+                for (QuantileSketch s : ring[slot]) {
+                    if (s != null) s.clear();
+                }
+            }
+            sliceOf[slot] = slice;
+        }
+        if (ring[slot] == null) ring[slot] = new QuantileSketch[kinds];
+        for (int k = 0; k < kinds && k < perKind.length; k++) {
+            if (perKind[k] == null || perKind[k].isEmpty()) continue;
+            if (ring[slot][k] == null) ring[slot][k] = settings.newSketch();
+            ring[slot][k].merge(perKind[k]);
+        }
+        return true;
+    }
+
+    /** Readings merged since the last call, per slice; the sketches are handed over, not copied. */
+    public List<Slice> drainPending() {
+        List<Slice> out = new ArrayList<>();
+        if (pending == null) return out;
+        for (int slot = 0; slot < slices; slot++) {
+            if (pending[slot] == null) continue;
+            out.add(new Slice(pendingSliceOf[slot], pending[slot]));
+            pending[slot] = null;
+            pendingSliceOf[slot] = Long.MIN_VALUE;
+        }
+        return out;
+    }
+
+    /** All readings of a kind in the window ending with {@code currentSlice}. */
+    public QuantileSketch merged(int kind, long currentSlice) {
+        QuantileSketch out = settings.newSketch();
+        for (int slot = 0; slot < slices; slot++) {
+            if (slots[slot] == null || slots[slot][kind] == null) continue;
+            if (sliceOf[slot] > currentSlice - slices && sliceOf[slot] <= currentSlice) out.merge(slots[slot][kind]);
+        }
+        return out;
+    }
+
+    /** The published quantiles of every kind over the window. */
+    public QuantileViews.View view(long currentSlice, long now) {
+        double[] quantiles = settings.published;
+        long[] counts = new long[kinds];
+        double[][] values = new double[kinds][];
+        for (int k = 0; k < kinds; k++) {
+            QuantileSketch merged = merged(k, currentSlice);
+            counts[k] = merged.count();
+            values[k] = new double[quantiles.length];
+            for (int q = 0; q < quantiles.length; q++) values[k][q] = merged.quantile(quantiles[q]);
+        }
+        return new QuantileViews.View(now, settings.slice.toMillis() * slices, quantiles, counts, values);
+    }
+
+    public static final class Slice {
+        public final long slice;
+        public final QuantileSketch[] sketches;
+
+        public Slice(long slice, QuantileSketch[] sketches) {
+            this.slice = slice;
+            this.sketches = sketches;
+        }
+    }
+}
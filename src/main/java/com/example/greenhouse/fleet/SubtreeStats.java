@@ -0,0 +1,168 @@
+package com.example.greenhouse.fleet;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Running aggregates of the latest readings in a subtree of the hierarchy: per sensor kind the number
+ * of greenhouses reporting it, their sum (hence mean), min, max and how many are out of band, plus how
+ * many greenhouses report anything and how many have any kind out of band.
+ *
+ * Mutable and owned by one actor. A site applies each greenhouse's change as a delta; only removing a
+ * current min or max needs a rescan of the site's greenhouses. Copies travel in messages.
+ */
+public final class SubtreeStats {
+
+    private final int kinds;
+    private int greenhouses;
+    private int greenhousesOutOfBand;
+    private final int[] count;
+    private final double[] sum;
+    private final double[] min;
+    private final double[] max;
+    private final int[] outOfBand;
+
+    public SubtreeStats(int kinds) {
+        this.kinds = kinds;
+        count = new int[kinds];
+        sum = new double[kinds];
+        min = new double[kinds];
+        max = new double[kinds];
+        outOfBand = new int[kinds];
+    }
+
+    private SubtreeStats(SubtreeStats other) {
+        kinds = other.kinds;
+        greenhouses = other.greenhouses;
+        greenhousesOutOfBand = other.greenhousesOutOfBand;
+        count = other.count.clone();
+        sum = other.sum.clone();
+        min = other.min.clone();
+        max = other.max.clone();
+        outOfBand = other.outOfBand.clone();
+    }
+
+    public SubtreeStats copy() { return new SubtreeStats(this); }
+
+    /**
+     * Replaces one greenhouse's latest values ({@code before} null when it was not counted yet; NaN
+     * for a kind without reading). Returns a bit per kind whose min or max must be {@link #rescan}ned
+     * because a value holding it went away.
+     */
+    public int replace(double[] before, double[] after, AggregateSettings bands) {
+        if (before != null) {
+            if (anyReading(before)) greenhouses--;
+            if (anyOutOfBand(before, bands)) greenhousesOutOfBand--;
+        }
+        if (anyReading(after)) greenhouses++;
+        if (anyOutOfBand(after, bands)) greenhousesOutOfBand++;
+        int rescan = 0;
+        for (int k = 0; k < kinds; k++) {
+            double b = before == null ? Double.NaN : before[k];
+            double a = after[k];
+            if (Double.compare(a, b) == 0) continue;
+            if (!Double.isNaN(b)) {
+                count[k]--;
+                sum[k] -= b;
+                if (bands.outOfBand(k, b)) outOfBand[k]--;
+                if (b <= min[k] || b >= max[k]) rescan |= 1 << k;
+            }
+            if (!Double.isNaN(a)) {
+                if (count[k]++ == 0) {
+                    min[k] = a;
+                    max[k] = a;
+                } else {
+                    if (a < min[k]) min[k] = a;
+                    if (a > max[k]) max[k] = a;
+                }
+                sum[k] += a;
+                if (bands.outOfBand(k, a)) outOfBand[k]++;
+            }
+        }
+        return rescan;
+    }
+
+    /** Recomputes min, max (and sum, to shed rounding drift) of the kinds in {@code mask} from every greenhouse. */
+    public void rescan(int mask, Collection<double[]> latest) {
+        for (int k = 0; k < kinds; k++) {
+            if ((mask & (1 << k)) == 0) continue;
+            double lo = Double.POSITIVE_INFINITY;
+            double hi = Double.NEGATIVE_INFINITY;
+            double s = 0;
+            for (double[] values : latest) {
+                double v = values[k];
+                if (Double.isNaN(v)) continue;
+                if (v < lo) lo = v;
+                if (v > hi) hi = v;
+                s += v;
+            }
+            min[k] = lo;
+            max[k] = hi;
+            sum[k] = s;
+        }
+    }
+
+    /** Adds another subtree, e.g. a site into its region. */
+    public void merge(SubtreeStats other) {
+        greenhouses += other.greenhouses;
+        greenhousesOutOfBand += other.greenhousesOutOfBand;
+        for (int k = 0; k < kinds; k++) {
+            if (other.count[k] == 0) continue;
+            if (count[k] == 0) {
+                min[k] = other.min[k];
+                max[k] = other.max[k];
+            } else {
+                min[k] = Math.min(min[k], other.min[k]);
+                max[k] = Math.max(max[k], other.max[k]);
+            }
+            count[k] += other.count[k];
+            sum[k] += other.sum[k];
+            outOfBand[k] += other.outOfBand[k];
+        }
+    }
+
+    public void clear() {
+        greenhouses = 0;
+        greenhousesOutOfBand = 0;
+        Arrays.fill(count, 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(outOfBand, 0);
+    }
+
+    private static boolean anyReading(double[] values) {
+        for (double v : values) {
+            if (!Double.isNaN(v)) return true;
+        }
+        return false;
+    }
+
+    private static boolean anyOutOfBand(double[] values, AggregateSettings bands) {
+        for (int k = 0; k < values.length; k++) {
+            if (!Double.isNaN(values[k]) && bands.outOfBand(k, values[k])) return true;
+        }
+        return false;
+    }
+
+    public int kinds() { return kinds; }
+
+    /** Greenhouses with at least one reading. */
+    public int greenhouses() { return greenhouses; }
+
+    /** Greenhouses with any latest reading out of band. */
+    public int greenhousesOutOfBand() { return greenhousesOutOfBand; }
+
+    public int count(int kind) { return count[kind]; }
+
+    public double mean(int kind) { return count[kind] == 0 ? Double.NaN : sum[kind] / count[kind]; }
+
+    public double min(int kind) { return count[kind] == 0 ? Double.NaN : min[kind]; }
+
+    public double max(int kind) { return count[kind] == 0 ? Double.NaN : max[kind]; }
+
+    /** Greenhouses whose latest reading of this kind is out of band. */
+    public int outOfBand(int kind) { return outOfBand[kind]; }
+
+    public String toString() {
+        return "SubtreeStats(" + greenhouses + " greenhouses, " + greenhousesOutOfBand + " out of band)";
+    }
+}
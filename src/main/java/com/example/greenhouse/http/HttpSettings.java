@@ -0,0 +1,26 @@
+package com.example.greenhouse.http;
+
+import com.typesafe.config.Config;
+
+/** Query API binding, read from {@code greenhouse.http}. */
+public final class HttpSettings {
+
+    public final boolean enabled;
+    public final String host;
+    /** 0 binds an ephemeral port. */
+    public final int port;
+
+    public HttpSettings(boolean enabled, String host, int port) {
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+    }
+
+    public static HttpSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.http");
+        return new HttpSettings(
+                c.getBoolean("enabled"),
+                c.getString("interface"),
+                c.getInt("port"));
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.greenhouse.http;
+
+import akka.NotUsed;
+import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.marshalling.sse.EventStreamMarshalling;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.sse.ServerSentEvent;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.Route;
+import akka.stream.javadsl.Source;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.stream.LiveFeed;
+import com.example.greenhouse.stream.LiveFeedSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live readings as server-sent events, one {@code readings} event (a JSON array) per routed batch that
+ * has anything the client asked for.
+ *
+ * <pre>
+ * GET /api/live?region=&amp;site=&amp;greenhouse=&amp;kind=&amp;overflow=drop|conflate&amp;buffer=
+ * </pre>
+ *
+ * region, site, greenhouse and kind take comma-separated lists; a greenhouse is streamed when it matches
+ * any of the region, site or greenhouse lists (all greenhouses when none is given). overflow and buffer
+ * override the configured per-client policy, buffer up to max-client-buffer.
+ */
+public final class LiveRoutes extends AllDirectives {
+
+    private final FleetTopology topology;
+    private final LiveFeed feed;
+    private final LiveFeedSettings settings;
+
+    public LiveRoutes(FleetTopology topology, LiveFeed feed, LiveFeedSettings settings) {
+        this.topology = topology;
+        this.feed = feed;
+        this.settings = settings;
+    }
+
+    public Route route() {
+        return pathPrefix("api", () -> path("live", () -> get(() -> parameterMap(this::live))));
+    }
+
+    private Route live(Map<String, String> params) {
+        LiveFeed.Filter filter;
+        LiveFeedSettings.Overflow overflow;
+        int buffer;
+        try {
+            filter = LiveFeed.Filter.of(greenhouses(params), kinds(params.get("kind")));
+            overflow = params.containsKey("overflow")
+                    ? LiveFeedSettings.Overflow.valueOf(params.get("overflow").trim().toUpperCase())
+                    : settings.overflow;
+            buffer = params.containsKey("buffer")
+                    ? Math.min(settings.maxClientBuffer, Math.max(1, Integer.parseInt(params.get("buffer").trim())))
+                    : settings.clientBuffer;
+        } catch (UnknownId e) {
+            return complete(StatusCodes.NOT_FOUND, new QueryRoutes.Problem(e.getMessage()), Jackson.marshaller());
+        } catch (IllegalArgumentException e) {
+            return complete(StatusCodes.BAD_REQUEST, new QueryRoutes.Problem(e.getMessage()), Jackson.marshaller());
+        }
+        Source<ServerSentEvent, NotUsed> events = feed.subscribe(filter, overflow, buffer)
+                .map(json -> ServerSentEvent.create(json, "readings"))
+                .keepAlive(settings.keepAlive, ServerSentEvent::heartbeat);
+        return completeOK(events, EventStreamMarshalling.toEventStream());
+    }
+
+    // null selects every greenhouse, including ones registered after the client subscribed
+    private boolean[] greenhouses(Map<String, String> params) {
+        List<String> regions = list(params.get("region"));
+        List<String> sites = list(params.get("site"));
+        List<String> greenhouses = list(params.get("greenhouse"));
+        if (regions.isEmpty() && sites.isEmpty() && greenhouses.isEmpty()) return null;
+        boolean[] selected = new boolean[topology.directory().size()];
+        for (String id : regions) {
+            int region = topology.regionIndex(id);
+            if (region < 0) throw new UnknownId("region", id);
+            for (int s = 0; s < topology.siteCount(); s++) {
+                if (topology.regionOfSite(s) == region) selectSite(selected, s);
+            }
+        }
+        for (String id : sites) {
+            int site = topology.siteIndex(id);
+            if (site < 0) throw new UnknownId("site", id);
+            selectSite(selected, site);
+        }
+        for (String id : greenhouses) {
+            int g = topology.directory().indexOf(id);
+            if (g < 0 || g >= selected.length) throw new UnknownId("greenhouse", id);
+            selected[g] = true;
+        }
+        return selected;
+    }
+
+    private void selectSite(boolean[] selected, int site) {
+        for (int g : topology.greenhousesOf(site)) {
+            if (g < selected.length) selected[g] = true;
+        }
+    }
+
+    private static SensorActor.Kind[] kinds(String param) {
+        List<String> names = list(param);
+        if (names.isEmpty()) return null;
+        SensorActor.Kind[] kinds = new SensorActor.Kind[names.size()];
+        for (int i = 0; i < kinds.length; i++) {
+            kinds[i] = SensorActor.Kind.fromWire(names.get(i));
+            if (kinds[i] == null) throw new IllegalArgumentException("unknown kind " + names.get(i));
+        }
+        return kinds;
+    }
+
+    private static List<String> list(String param) {
+        List<String> out = new ArrayList<>();
+        if (param == null) return out;
+        for (String part : param.split(",")) {
+            if (!part.isBlank()) out.add(part.trim());
+        }
+        return out;
+    }
+
+    private static final class UnknownId extends RuntimeException {
+        UnknownId(String what, String id) { super("unknown " + what + " " + id); }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.greenhouse.http;
+
+import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.AllDirectives;
+import akka.http.javadsl.server.PathMatchers;
+import akka.http.javadsl.server.Route;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.fleet.QuantileViews;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only query API over the fleet views. Every request is answered from memory shared with the
+ * ingest path (latest values, actuator positions) or from the aggregates and quantiles the site and
+ * region managers last published; no route sends a message to an actor.
+ *
+ * <pre>
+ * GET /api/greenhouses/{id}             latest readings and actuator positions
+ * GET /api/greenhouses/{id}/readings
+ * GET /api/greenhouses/{id}/actuators
+ * GET /api/sites/{id}/readings          latest readings of every greenhouse of the site
+ * GET /api/sites/{id}/aggregates        min/max/mean per sensor kind over the site
+ * GET /api/sites/{id}/quantiles         p50/p95/p99 per sensor kind over the sliding window
+ * GET /api/regions/{id}/aggregates
+ * GET /api/regions/{id}/quantiles
+ * GET /api/quantiles                    over the whole fleet
+ * </pre>
+ */
+public final class QueryRoutes extends AllDirectives {
+
+    private static final SensorActor.Kind[] KINDS = SensorActor.Kind.values();
+    private static final ActuatorActor.Type[] ACTUATORS = ActuatorActor.Type.values();
+
+    private final FleetTopology topology;
+    private final LatestValueTable latest;
+    private final ActuatorStates actuators; // null: actuator positions are not published
+    private final AggregateViews aggregates; // null: aggregates are disabled
+    private final QuantileViews quantiles; // null: sketches are disabled
+
+    public QueryRoutes(FleetTopology topology, LatestValueTable latest, ActuatorStates actuators, AggregateViews aggregates) {
+        this(topology, latest, actuators, aggregates, null);
+    }
+
+    public QueryRoutes(FleetTopology topology, LatestValueTable latest, ActuatorStates actuators, AggregateViews aggregates,
+                       QuantileViews quantiles) {
+        this.topology = topology;
+        this.latest = latest;
+        this.actuators = actuators;
+        this.aggregates = aggregates;
+        this.quantiles = quantiles;
+    }
+
+    public Route route() {
+        return pathPrefix("api", () -> get(() -> concat(
+                pathPrefix("greenhouses", () -> pathPrefix(PathMatchers.segment(), id -> concat(
+                        pathEnd(() -> greenhouse(id)),
+                        path("readings", () -> withGreenhouse(id, g -> completeOK(readings(g), Jackson.marshaller()))),
+                        path("actuators", () -> withGreenhouse(id, g -> completeOK(actuators(id), Jackson.marshaller())))))),
+                pathPrefix("sites", () -> pathPrefix(PathMatchers.segment(), site -> concat(
+                        path("readings", () -> siteReadings(site)),
+                        path("aggregates", () -> siteAggregates(site)),
+                        path("quantiles", () -> siteQuantiles(site))))),
+                pathPrefix("regions", () -> pathPrefix(PathMatchers.segment(), region -> concat(
+                        path("aggregates", () -> regionAggregates(region)),
+                        path("quantiles", () -> regionQuantiles(region))))),
+                path("quantiles", () -> quantiles("fleet", QuantileViews.FLEET)))));
+    }
+
+    private Route greenhouse(String id) {
+        return withGreenhouse(id, g -> {
+            int site = topology.siteOf(g);
+            return completeOK(new GreenhouseView(id,
+                    site < 0 ? null : topology.siteId(site),
+                    site < 0 ? null : topology.regionId(topology.regionOfSite(site)),
+                    readings(g), actuators(id)), Jackson.marshaller());
+        });
+    }
+
+    private Route siteReadings(String siteId) {
+        int site = topology.siteIndex(siteId);
+        if (site < 0) return notFound("site", siteId);
+        Map<String, Map<String, Reading>> greenhouses = new LinkedHashMap<>();
+        for (int g : topology.greenhousesOf(site)) greenhouses.put(topology.directory().idAt(g), readings(g));
+        return completeOK(new SiteReadings(siteId, greenhouses), Jackson.marshaller());
+    }
+
+    private Route siteAggregates(String siteId) {
+        if (topology.siteIndex(siteId) < 0) return notFound("site", siteId);
+        return aggregates(siteId, AggregateViews.site(siteId));
+    }
+
+    private Route regionAggregates(String regionId) {
+        if (topology.regionIndex(regionId) < 0) return notFound("region", regionId);
+        return aggregates(regionId, AggregateViews.region(regionId));
+    }
+
+    private Route siteQuantiles(String siteId) {
+        if (topology.siteIndex(siteId) < 0) return notFound("site", siteId);
+        return quantiles(siteId, QuantileViews.site(siteId));
+    }
+
+    private Route regionQuantiles(String regionId) {
+        if (topology.regionIndex(regionId) < 0) return notFound("region", regionId);
+        return quantiles(regionId, QuantileViews.region(regionId));
+    }
+
+    // Before the first publication (or with aggregates disabled) there is nothing to report yet
+    private Route aggregates(String id, String key) {
+        AggregateViews.View view = aggregates == null ? null : aggregates.get(key);
+        Map<String, KindStats> kinds = new LinkedHashMap<>();
+        if (view == null) return completeOK(new Aggregates(id, 0, kinds), Jackson.marshaller());
+        for (SensorActor.Kind k : KINDS) {
+            int n = view.stats.count(k.ordinal());
+            if (n > 0) kinds.put(k.wireName, new KindStats(n, view.stats.min(k.ordinal()), view.stats.max(k.ordinal()), view.stats.mean(k.ordinal())));
+        }
+        return completeOK(new Aggregates(id, view.computedAt, kinds), Jackson.marshaller());
+    }
+
+    // Before the first publication (or with sketches disabled) there is nothing to report yet
+    private Route quantiles(String id, String key) {
+        QuantileViews.View view = quantiles == null ? null : quantiles.get(key);
+        Map<String, KindQuantiles> kinds = new LinkedHashMap<>();
+        if (view == null) return completeOK(new Quantiles(id, 0, 0, kinds), Jackson.marshaller());
+        for (SensorActor.Kind k : KINDS) {
+            long n = view.count(k.ordinal());
+            if (n == 0) continue;
+            Map<String, Double> values = new LinkedHashMap<>();
+            for (int q = 0; q < view.quantileCount(); q++) values.put(label(view.quantile(q)), view.value(k.ordinal(), q));
+            kinds.put(k.wireName, new KindQuantiles(n, values));
+        }
+        return completeOK(new Quantiles(id, view.computedAt, view.windowMillis, kinds), Jackson.marshaller());
+    }
+
+    // 0.5 -> p50, 0.999 -> p99.9
+    static String label(double quantile) {
+        return "p" + BigDecimal.valueOf(quantile).movePointRight(2).stripTrailingZeros().toPlainString();
+    }
+
+    private Route withGreenhouse(String id, IntFunction<Route> inner) {
+        int g = topology.directory().indexOf(id);
+        return g < 0 ? notFound("greenhouse", id) : inner.apply(g);
+    }
+
+    private Route notFound(String what, String id) {
+        return complete(StatusCodes.NOT_FOUND, new Problem("unknown " + what + " " + id), Jackson.marshaller());
+    }
+
+    // Kinds without a reading are left out
+    private Map<String, Reading> readings(int greenhouse) {
+        double[] values = new double[latest.kinds()];
+        long[] timestamps = new long[latest.kinds()];
+        Map<String, Reading> out = new LinkedHashMap<>();
+        if (!latest.read(greenhouse, values, timestamps)) return out;
+        for (SensorActor.Kind k : KINDS) {
+            if (timestamps[k.ordinal()] != LatestValueTable.NO_READING) {
+                out.put(k.wireName, new Reading(values[k.ordinal()], timestamps[k.ordinal()]));
+            }
+        }
+        return out;
+    }
+
+    private Map<String, Actuator> actuators(String greenhouseId) {
+        Map<String, Actuator> out = new LinkedHashMap<>();
+        ActuatorStates.Entry entry = actuators == null ? null : actuators.get(greenhouseId);
+        if (entry == null) return out;
+        for (ActuatorActor.Type t : ACTUATORS) out.put(t.name().toLowerCase(), new Actuator(entry.isOn(t.ordinal()), entry.since(t.ordinal())));
+        return out;
+    }
+
+    public static final class Reading {
+        public final double value;
+        public final long timestamp;
+        public Reading(double value, long timestamp) { this.value = value; this.timestamp = timestamp; }
+    }
+
+    public static final class Actuator {
+        public final boolean on;
+        public final long since;
+        public Actuator(boolean on, long since) { this.on = on; this.since = since; }
+    }
+
+    public static final class GreenhouseView {
+        public final String greenhouseId;
+        public final String site;
+        public final String region;
+        public final Map<String, Reading> readings;
+        public final Map<String, Actuator> actuators;
+        public GreenhouseView(String greenhouseId, String site, String region, Map<String, Reading> readings, Map<String, Actuator> actuators) {
+            this.greenhouseId = greenhouseId; this.site = site; this.region = region; this.readings = readings; this.actuators = actuators;
+        }
+    }
+
+    public static final class SiteReadings {
+        public final String site;
+        public final Map<String, Map<String, Reading>> greenhouses;
+        public SiteReadings(String site, Map<String, Map<String, Reading>> greenhouses) { this.site = site; this.greenhouses = greenhouses; }
+    }
+
+    public static final class KindStats {
+        public final int greenhouses;
+        public final double min;
+        public final double max;
+        public final double mean;
+        public KindStats(int greenhouses, double min, double max, double mean) {
+            this.greenhouses = greenhouses; this.min = min; this.max = max; this.mean = mean;
+        }
+    }
+
+    // computedAt tells how stale the aggregates are
+    public static final class Aggregates {
+        public final String id;
+        public final long computedAt;
+        public final Map<String, KindStats> kinds;
+        public Aggregates(String id, long computedAt, Map<String, KindStats> kinds) { this.id = id; this.computedAt = computedAt; this.kinds = kinds; }
+    }
+
+    public static final class KindQuantiles {
+        public final long readings;
+        public final Map<String, Double> quantiles;
+        public KindQuantiles(long readings, Map<String, Double> quantiles) { this.readings = readings; this.quantiles = quantiles; }
+    }
+
+    // Over the readings of the last windowMillis as of computedAt
+    public static final class Quantiles {
+        public final String id;
+        public final long computedAt;
+        public final long windowMillis;
+        public final Map<String, KindQuantiles> kinds;
+        public Quantiles(String id, long computedAt, long windowMillis, Map<String, KindQuantiles> kinds) {
+            this.id = id; this.computedAt = computedAt; this.windowMillis = windowMillis; this.kinds = kinds;
+        }
+    }
+
+    public static final class Problem {
+        public final String error;
+        public Problem(String error) { this.error = error; }
+    }
+}
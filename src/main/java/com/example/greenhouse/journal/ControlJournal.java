@@ -0,0 +1,228 @@
+package com.example.greenhouse.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local event journal for the control state of every greenhouse on this node, with fleet-wide snapshots.
+ *
+ * Events of all greenhouses go to one append-only file as {@code int length | int crc32c | long seq |
+ * short idLength | id | event} records, written through a buffer and forced on {@link #flush()}. The
+ * journal keeps the current state of every greenhouse in memory, so a snapshot is a dump of that map
+ * ({@code snapshot-<seq>.snap}, written to a temporary file and moved into place) after which the
+ * journal rolls to a new file and everything older is deleted. Recovery therefore reads one snapshot
+ * and at most {@code snapshot-every} events, however long the history is. A torn record at the end of
+ * the last journal file is cut off.
+ *
+ * Not thread-safe: owned by a single writer (see {@code JournalManager}).
+ */
+public final class ControlJournal implements Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x47485350; // "GHSP"
+    private static final int VERSION = 1;
+    private static final int RECORD_HEADER = 8;
+
+    private final JournalSettings settings;
+    private final Map<String, GreenhouseState> states = new HashMap<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(64 * 1024);
+    private FileChannel channel;
+    private Path journalFile;
+    private long sequenceNr;
+    private long eventsSinceSnapshot;
+    private long snapshotSequenceNr;
+    private long eventsReplayed;
+
+    private ControlJournal(JournalSettings settings) {
+        this.settings = settings;
+    }
+
+    public static ControlJournal open(JournalSettings settings) throws IOException {
+        Files.createDirectories(settings.directory);
+        ControlJournal journal = new ControlJournal(settings);
+        journal.recover();
+        return journal;
+    }
+
+    private void recover() throws IOException {
+        List<Path> snapshots = list("snapshot-", ".snap");
+        boolean loaded = false;
+        for (int i = snapshots.size() - 1; i >= 0 && !loaded; i--) {
+            loaded = loadSnapshot(snapshots.get(i));
+        }
+        sequenceNr = snapshotSequenceNr;
+        List<Path> journals = list("journal-", ".log");
+        for (Path file : journals) replay(file);
+        eventsSinceSnapshot = sequenceNr - snapshotSequenceNr;
+        if (journals.isEmpty()) {
+            startJournal();
+        } else {
+            journalFile = journals.get(journals.size() - 1);
+            channel = FileChannel.open(journalFile, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+    }
+
+    /** Current state of a greenhouse, or null if it has no history. The caller must not modify it. */
+    public GreenhouseState state(String greenhouseId) { return states.get(greenhouseId); }
+
+    public int greenhouseCount() { return states.size(); }
+
+    public long sequenceNr() { return sequenceNr; }
+
+    /** Events appended (or replayed) since the last snapshot. */
+    public long eventsSinceSnapshot() { return eventsSinceSnapshot; }
+
+    /** Events applied on top of the snapshot during the last recovery. */
+    public long eventsReplayed() { return eventsReplayed; }
+
+    /** Applies an event to the greenhouse's state and appends it; durable after the next {@link #flush()}. */
+    public void append(String greenhouseId, GreenhouseEvent event) throws IOException {
+        states.computeIfAbsent(greenhouseId, id -> new GreenhouseState()).apply(event);
+        byte[] id = greenhouseId.getBytes(StandardCharsets.UTF_8);
+        int payload = 8 + 2 + id.length + event.encodedSize();
+        if (writeBuffer.remaining() < RECORD_HEADER + payload) drain();
+        ByteBuffer out = payload + RECORD_HEADER <= writeBuffer.remaining() ? writeBuffer : ByteBuffer.allocate(RECORD_HEADER + payload);
+        int start = out.position();
+        out.putInt(payload).putInt(0).putLong(++sequenceNr).putShort((short) id.length).put(id);
+        event.writeTo(out);
+        CRC32C crc = new CRC32C();
+        crc.update(out.array(), start + RECORD_HEADER, payload);
+        out.putInt(start + 4, (int) crc.getValue());
+        if (out != writeBuffer) write(out.flip());
+        if (settings.snapshotEvery > 0 && ++eventsSinceSnapshot >= settings.snapshotEvery) snapshot();
+    }
+
+    public void flush() throws IOException {
+        drain();
+        channel.force(false);
+    }
+
+    /** Writes a snapshot of every greenhouse, then starts a new journal file and deletes what the snapshot covers. */
+    public void snapshot() throws IOException {
+        flush();
+        Path target = settings.directory.resolve(String.format("snapshot-%019d.snap", sequenceNr));
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CRC32C crc = new CRC32C();
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            buf.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(sequenceNr).putInt(states.size());
+            for (Map.Entry<String, GreenhouseState> e : states.entrySet()) {
+                byte[] id = e.getKey().getBytes(StandardCharsets.UTF_8);
+                if (buf.remaining() < 2 + id.length + GreenhouseState.ENCODED_SIZE + 4) writeChecked(out, buf, crc);
+                buf.putShort((short) id.length).put(id);
+                e.getValue().writeTo(buf);
+            }
+            writeChecked(out, buf, crc);
+            buf.putInt((int) crc.getValue()).flip();
+            while (buf.hasRemaining()) out.write(buf);
+            out.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        snapshotSequenceNr = sequenceNr;
+        eventsSinceSnapshot = 0;
+
+        channel.close();
+        startJournal();
+        for (Path old : list("journal-", ".log")) {
+            if (!old.equals(journalFile)) Files.deleteIfExists(old);
+        }
+        for (Path old : list("snapshot-", ".snap")) {
+            if (!old.equals(target)) Files.deleteIfExists(old);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void startJournal() throws IOException {
+        journalFile = settings.directory.resolve(String.format("journal-%019d.log", sequenceNr + 1));
+        channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private void drain() throws IOException {
+        write(writeBuffer.flip());
+        writeBuffer.clear();
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) channel.write(buf);
+    }
+
+    private static void writeChecked(FileChannel out, ByteBuffer buf, CRC32C crc) throws IOException {
+        buf.flip();
+        crc.update(buf.array(), 0, buf.limit());
+        while (buf.hasRemaining()) out.write(buf);
+        buf.clear();
+    }
+
+    private boolean loadSnapshot(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (in.capacity() < 24 || in.getInt(0) != SNAPSHOT_MAGIC) return false;
+        CRC32C crc = new CRC32C();
+        crc.update(in.array(), 0, in.capacity() - 4);
+        if ((int) crc.getValue() != in.getInt(in.capacity() - 4)) return false;
+        in.position(8);
+        long seq = in.getLong();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] id = new byte[in.getShort()];
+            in.get(id);
+            states.put(new String(id, StandardCharsets.UTF_8), GreenhouseState.readFrom(in));
+        }
+        snapshotSequenceNr = seq;
+        return true;
+    }
+
+    // Applies records newer than the snapshot and cuts the file at the first record that does not validate
+    private void replay(Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        int at = 0;
+        while (at + RECORD_HEADER <= in.capacity()) {
+            int payload = in.getInt(at);
+            if (payload < 11 || payload > in.capacity() - at - RECORD_HEADER) break;
+            CRC32C crc = new CRC32C();
+            crc.update(in.array(), at + RECORD_HEADER, payload);
+            if ((int) crc.getValue() != in.getInt(at + 4)) break;
+            in.position(at + RECORD_HEADER);
+            long seq = in.getLong();
+            byte[] id = new byte[in.getShort()];
+            in.get(id);
+            GreenhouseEvent event = GreenhouseEvent.readFrom(in);
+            if (seq > sequenceNr) {
+                states.computeIfAbsent(new String(id, StandardCharsets.UTF_8), k -> new GreenhouseState()).apply(event);
+                sequenceNr = seq;
+                eventsReplayed++;
+            }
+            at += RECORD_HEADER + payload;
+        }
+        if (at < in.capacity()) {
+            try (FileChannel truncate = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                truncate.truncate(at);
+                truncate.force(true);
+            }
+        }
+    }
+
+    private List<Path> list(String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(settings.directory)) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix) && p.getFileName().toString().endsWith(suffix))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
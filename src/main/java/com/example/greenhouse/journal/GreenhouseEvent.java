@@ -0,0 +1,88 @@
+package com.example.greenhouse.journal;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/** Journaled change of a greenhouse's control state; see {@link GreenhouseState#apply}. */
+public abstract class GreenhouseEvent {
+
+    private static final byte ACTUATOR_SWITCHED = 1;
+    private static final byte READINGS_RECORDED = 2;
+
+    private GreenhouseEvent() {}
+
+    abstract int encodedSize();
+
+    abstract void writeTo(ByteBuffer out);
+
+    static GreenhouseEvent readFrom(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+            case ACTUATOR_SWITCHED: return ActuatorSwitched.read(in);
+            case READINGS_RECORDED: return ReadingsRecorded.read(in);
+            default: throw new IllegalStateException("unknown event type " + type);
+        }
+    }
+
+    /** An actuator was turned on or off. */
+    public static final class ActuatorSwitched extends GreenhouseEvent {
+        public final ActuatorActor.Type actuator;
+        public final boolean on;
+        public final long timestamp;
+
+        public ActuatorSwitched(ActuatorActor.Type actuator, boolean on, long timestamp) {
+            this.actuator = actuator;
+            this.on = on;
+            this.timestamp = timestamp;
+        }
+
+        int encodedSize() { return 1 + 1 + 1 + 8; }
+
+        void writeTo(ByteBuffer out) {
+            out.put(ACTUATOR_SWITCHED).put((byte) actuator.ordinal()).put((byte) (on ? 1 : 0)).putLong(timestamp);
+        }
+
+        static ActuatorSwitched read(ByteBuffer in) {
+            return new ActuatorSwitched(ActuatorActor.Type.values()[in.get()], in.get() != 0, in.getLong());
+        }
+
+        public String toString() { return "ActuatorSwitched(" + actuator + (on ? " on" : " off") + ")"; }
+    }
+
+    /**
+     * Latest reading per sensor kind (indexed by {@link SensorActor.Kind} ordinal; NaN and 0 where none yet).
+     * Readings are journaled as these coalesced snapshots, not one event per reading.
+     */
+    public static final class ReadingsRecorded extends GreenhouseEvent {
+        public final double[] values;
+        public final long[] timestamps;
+
+        public ReadingsRecorded(double[] values, long[] timestamps) {
+            this.values = values;
+            this.timestamps = timestamps;
+        }
+
+        int encodedSize() { return 1 + 1 + values.length * 16; }
+
+        void writeTo(ByteBuffer out) {
+            out.put(READINGS_RECORDED).put((byte) values.length);
+            for (int k = 0; k < values.length; k++) out.putDouble(values[k]).putLong(timestamps[k]);
+        }
+
+        static ReadingsRecorded read(ByteBuffer in) {
+            int kinds = in.get();
+            double[] values = new double[kinds];
+            long[] timestamps = new long[kinds];
+            for (int k = 0; k < kinds; k++) {
+                values[k] = in.getDouble();
+                timestamps[k] = in.getLong();
+            }
+            return new ReadingsRecorded(values, timestamps);
+        }
+
+        public String toString() { return "ReadingsRecorded" + Arrays.toString(values); }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.greenhouse.journal;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Control state of one greenhouse: actuator positions and the latest reading per sensor kind. Owned by
+ * one actor at a time; hand out {@link #copy()}s.
+ */
+public final class GreenhouseState {
+
+    private static final int ACTUATORS = ActuatorActor.Type.values().length;
+    private static final int KINDS = SensorActor.Kind.count();
+    static final int ENCODED_SIZE = ACTUATORS * 9 + KINDS * 16;
+
+    private final boolean[] actuatorOn = new boolean[ACTUATORS];
+    private final long[] actuatorSince = new long[ACTUATORS];
+    private final double[] lastValue = new double[KINDS];
+    private final long[] lastReadingAt = new long[KINDS];
+
+    public GreenhouseState() {
+        Arrays.fill(lastValue, Double.NaN);
+    }
+
+    public boolean isOn(ActuatorActor.Type actuator) { return actuatorOn[actuator.ordinal()]; }
+
+    /** When the actuator last switched, 0 if never. */
+    public long switchedAt(ActuatorActor.Type actuator) { return actuatorSince[actuator.ordinal()]; }
+
+    /** Latest reading of a kind, NaN if none. */
+    public double lastValue(SensorActor.Kind kind) { return lastValue[kind.ordinal()]; }
+
+    public long lastReadingAt(SensorActor.Kind kind) { return lastReadingAt[kind.ordinal()]; }
+
+    /** Copy of the latest reading of every kind by ordinal, NaN where none. */
+    public double[] lastValues() { return lastValue.clone(); }
+
+    /** Records a reading without an event; readings reach the journal through {@link #readingsEvent()}. */
+    public void recordReading(int kindOrdinal, double value, long timestamp) {
+        if (timestamp >= lastReadingAt[kindOrdinal]) {
+            lastValue[kindOrdinal] = value;
+            lastReadingAt[kindOrdinal] = timestamp;
+        }
+    }
+
+    public GreenhouseEvent.ReadingsRecorded readingsEvent() {
+        return new GreenhouseEvent.ReadingsRecorded(lastValue.clone(), lastReadingAt.clone());
+    }
+
+    public void apply(GreenhouseEvent event) {
+        if (event instanceof GreenhouseEvent.ActuatorSwitched) {
+            GreenhouseEvent.ActuatorSwitched e = (GreenhouseEvent.ActuatorSwitched) event;
+            actuatorOn[e.actuator.ordinal()] = e.on;
+            actuatorSince[e.actuator.ordinal()] = e.timestamp;
+        } else if (event instanceof GreenhouseEvent.ReadingsRecorded) {
+            GreenhouseEvent.ReadingsRecorded e = (GreenhouseEvent.ReadingsRecorded) event;
+            for (int k = 0; k < Math.min(KINDS, e.values.length); k++) recordReading(k, e.values[k], e.timestamps[k]);
+        }
+    }
+
+    public GreenhouseState copy() {
+        GreenhouseState copy = new GreenhouseState();
+        System.arraycopy(actuatorOn, 0, copy.actuatorOn, 0, ACTUATORS);
+        System.arraycopy(actuatorSince, 0, copy.actuatorSince, 0, ACTUATORS);
+        System.arraycopy(lastValue, 0, copy.lastValue, 0, KINDS);
+        System.arraycopy(lastReadingAt, 0, copy.lastReadingAt, 0, KINDS);
+        return copy;
+    }
+
+    void writeTo(ByteBuffer out) {
+        for (int a = 0; a < ACTUATORS; a++) out.put((byte) (actuatorOn[a] ? 1 : 0)).putLong(actuatorSince[a]);
+        for (int k = 0; k < KINDS; k++) out.putDouble(lastValue[k]).putLong(lastReadingAt[k]);
+    }
+
+    static GreenhouseState readFrom(ByteBuffer in) {
+        GreenhouseState state = new GreenhouseState();
+        for (int a = 0; a < ACTUATORS; a++) {
+            state.actuatorOn[a] = in.get() != 0;
+            state.actuatorSince[a] = in.getLong();
+        }
+        for (int k = 0; k < KINDS; k++) {
+            state.lastValue[k] = in.getDouble();
+            state.lastReadingAt[k] = in.getLong();
+        }
+        return state;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder("GreenhouseState(");
+        for (ActuatorActor.Type t : ActuatorActor.Type.values()) sb.append(t).append(isOn(t) ? "=on " : "=off ");
+        for (SensorActor.Kind k : SensorActor.Kind.values()) sb.append(k.wireName).append('=').append(lastValue(k)).append(' ');
+        return sb.append(')').toString();
+    }
+}
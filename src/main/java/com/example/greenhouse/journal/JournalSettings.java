@@ -0,0 +1,38 @@
+package com.example.greenhouse.journal;
+
+import com.typesafe.config.Config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/** Control-state journal location and policies, read from {@code greenhouse.journal}. */
+public final class JournalSettings {
+
+    public final boolean enabled;
+    public final Path directory;
+    /** Appended events are written and forced to disk this often. */
+    public final Duration flushInterval;
+    /** A snapshot of every greenhouse is taken after this many events; 0 disables snapshots. */
+    public final int snapshotEvery;
+    /** A greenhouse journals its latest readings at most this often. */
+    public final Duration readingsInterval;
+
+    public JournalSettings(boolean enabled, Path directory, Duration flushInterval, int snapshotEvery, Duration readingsInterval) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.flushInterval = flushInterval;
+        this.snapshotEvery = snapshotEvery;
+        this.readingsInterval = readingsInterval;
+    }
+
+    public static JournalSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.journal");
+        return new JournalSettings(
+                c.getBoolean("enabled"),
+                Paths.get(c.getString("directory")),
+                c.getDuration("flush-interval"),
+                Math.max(0, c.getInt("snapshot-every")),
+                c.getDuration("readings-interval"));
+    }
+}
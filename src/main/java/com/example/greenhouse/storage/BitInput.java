@@ -0,0 +1,50 @@
+package com.example.greenhouse.storage;
+
+import java.nio.ByteBuffer;
+
+/** MSB-first bit reader over {@code [offset, offset + length)} of a byte buffer; reads past the end yield zeros. */
+final class BitInput {
+
+    private final ByteBuffer in;
+    private final int end;
+    private int pos;
+    private long acc;
+    private int accBits;
+
+    BitInput(ByteBuffer in, int offset, int length) {
+        this.in = in;
+        this.pos = offset;
+        this.end = offset + length;
+    }
+
+    /** Reads {@code n} bits as an unsigned value, 0 < n <= 64. */
+    long read(int n) {
+        if (n > 32) {
+            long high = read(n - 32);
+            return (high << 32) | read(32);
+        }
+        if (accBits < n) refill(n);
+        accBits -= n;
+        return (acc >>> accBits) & ((1L << n) - 1);
+    }
+
+    boolean readBit() {
+        if (accBits == 0) refill(1);
+        accBits--;
+        return ((acc >>> accBits) & 1L) != 0;
+    }
+
+    // Precondition: accBits < n <= 32, so shifting in 32 more bits never drops unread ones
+    private void refill(int n) {
+        if (pos + 4 <= end) {
+            acc = (acc << 32) | (in.getInt(pos) & 0xFFFFFFFFL);
+            pos += 4;
+            accBits += 32;
+            return;
+        }
+        while (accBits < n) {
+            acc = (acc << 8) | (pos < end ? in.get(pos++) & 0xFF : 0);
+            accBits += 8;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.greenhouse.storage;
+
+import java.nio.ByteBuffer;
+
+/** MSB-first bit writer into a byte buffer, eight bytes at a time. */
+final class BitOutput {
+
+    private final ByteBuffer out;
+    private int bytePos;
+    private long acc;
+    private int accBits;
+
+    BitOutput(ByteBuffer out) { this.out = out; }
+
+    /** Writes the low {@code n} bits of {@code value}, 0 < n <= 64. */
+    void write(long value, int n) {
+        if (n < 64) value &= (1L << n) - 1;
+        int free = 64 - accBits;
+        if (n < free) {
+            acc = (acc << n) | value;
+            accBits += n;
+            return;
+        }
+        int over = n - free;
+        long head = over == 0 ? value : value >>> over;
+        acc = free == 64 ? head : (acc << free) | head;
+        out.putLong(bytePos, acc);
+        bytePos += 8;
+        acc = over == 0 ? 0 : value & ((1L << over) - 1);
+        accBits = over;
+    }
+
+    void writeBit(boolean bit) { write(bit ? 1 : 0, 1); }
+
+    /** Flushes the pending bits (zero padded to a byte) and returns the number of bytes written. */
+    int finish() {
+        if (accBits > 0) {
+            long aligned = acc << (64 - accBits);
+            int bytes = (accBits + 7) >>> 3;
+            for (int i = 0; i < bytes; i++) {
+                out.put(bytePos++, (byte) (aligned >>> (56 - 8 * i)));
+            }
+            acc = 0;
+            accBits = 0;
+        }
+        return bytePos;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.greenhouse.storage;
+
+import java.nio.ByteBuffer;
+
+/** Payload encodings of a block; the encoding id is stored in each block header. */
+final class BlockCodec {
+
+    /** Plain big-endian {@code long timestamp, double value} pairs. */
+    static final int RAW = 0;
+    /** Delta-of-delta timestamps and XOR-encoded values, see {@link GorillaCodec}. */
+    static final int GORILLA = 1;
+
+    private BlockCodec() {}
+
+    /** Upper bound of the encoded size of {@code count} points. */
+    static int maxEncodedSize(int encoding, int count) {
+        return encoding == GORILLA ? GorillaCodec.maxEncodedSize(count) : count * 16;
+    }
+
+    /** Writes the points at the start of {@code out} and returns the number of bytes used. */
+    static int encode(int encoding, long[] timestamps, double[] values, int count, ByteBuffer out) {
+        if (encoding == GORILLA) return GorillaCodec.encode(timestamps, values, count, out);
+        if (encoding != RAW) throw new IllegalArgumentException("unknown block encoding " + encoding);
+        for (int i = 0; i < count; i++) {
+            out.putLong(i * 16, timestamps[i]);
+            out.putDouble(i * 16 + 8, values[i]);
+        }
+        return count * 16;
+    }
+
+    static void decode(int encoding, ByteBuffer in, int offset, int length, int count, long from, long to, PointConsumer consumer) {
+        if (encoding == GORILLA) {
+            GorillaDecoder points = new GorillaDecoder(in, offset, length, count);
+            while (points.next()) {
+                long ts = points.timestamp();
+                if (ts >= from && ts <= to) consumer.accept(ts, points.value());
+            }
+            return;
+        }
+        if (encoding != RAW) throw new IllegalStateException("unknown block encoding " + encoding);
+        for (int i = 0; i < count; i++) {
+            long ts = in.getLong(offset + i * 16);
+            if (ts >= from && ts <= to) consumer.accept(ts, in.getDouble(offset + i * 16 + 8));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.greenhouse.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Gorilla-style block encoding (Pelkonen et al., VLDB 2015): delta-of-delta timestamps and XOR-encoded
+ * doubles in one bit stream. Regular sampling makes most timestamps a single '0' bit, and slowly
+ * drifting readings share sign, exponent and leading mantissa bits with their predecessor, so only a
+ * short window of changed bits is stored per value.
+ *
+ * Timestamp delta-of-delta: '0' | '10'+7 bits | '110'+9 bits | '1110'+12 bits | '1111'+64 bits.
+ * Value XOR: '0' (same value) | '10'+bits in the previous window | '11'+5 bits leading zeros+6 bits length+bits.
+ */
+final class GorillaCodec {
+
+    private GorillaCodec() {}
+
+    static int maxEncodedSize(int count) {
+        // 128 bits for the first point, at most 68 + 77 bits for every further one, plus padding
+        return count == 0 ? 0 : 16 + (int) (((long) (count - 1) * 145 + 7) / 8) + 1;
+    }
+
+    static int encode(long[] timestamps, double[] values, int count, ByteBuffer out) {
+        if (count == 0) return 0;
+        BitOutput w = new BitOutput(out);
+        long prevTs = timestamps[0];
+        long prevBits = Double.doubleToRawLongBits(values[0]);
+        w.write(prevTs, 64);
+        w.write(prevBits, 64);
+        long prevDelta = 0;
+        int prevLeading = -1;
+        int prevTrailing = 0;
+        for (int i = 1; i < count; i++) {
+            long delta = timestamps[i] - prevTs;
+            long dod = delta - prevDelta;
+            if (dod == 0) {
+                w.write(0b0, 1);
+            } else if (fits(dod, 7)) {
+                w.write(0b10, 2);
+                w.write(dod, 7);
+            } else if (fits(dod, 9)) {
+                w.write(0b110, 3);
+                w.write(dod, 9);
+            } else if (fits(dod, 12)) {
+                w.write(0b1110, 4);
+                w.write(dod, 12);
+            } else {
+                w.write(0b1111, 4);
+                w.write(dod, 64);
+            }
+            prevDelta = delta;
+            prevTs = timestamps[i];
+
+            long bits = Double.doubleToRawLongBits(values[i]);
+            long xor = bits ^ prevBits;
+            if (xor == 0) {
+                w.write(0b0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+                    w.write(0b10, 2);
+                    w.write(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    w.write(0b11, 2);
+                    w.write(leading, 5);
+                    w.write(significant == 64 ? 0 : significant, 6);
+                    w.write(xor >>> trailing, significant);
+                    prevLeading = leading;
+                    prevTrailing = trailing;
+                }
+            }
+            prevBits = bits;
+        }
+        return w.finish();
+    }
+
+    private static boolean fits(long v, int bits) {
+        long half = 1L << (bits - 1);
+        return v >= -half && v < half;
+    }
+
+    static long signExtend(long v, int bits) {
+        return (v << (64 - bits)) >> (64 - bits);
+    }
+}
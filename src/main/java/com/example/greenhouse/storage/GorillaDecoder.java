@@ -0,0 +1,67 @@
+package com.example.greenhouse.storage;
+
+import java.nio.ByteBuffer;
+
+/** Streaming decoder of one {@link GorillaCodec} block: call {@link #next()} until it returns false. */
+public final class GorillaDecoder {
+
+    private final BitInput in;
+    private final int count;
+    private int decoded;
+    private long timestamp;
+    private long delta;
+    private long valueBits;
+    private int leading;
+    private int trailing;
+
+    public GorillaDecoder(ByteBuffer buffer, int offset, int length, int count) {
+        this.in = new BitInput(buffer, offset, length);
+        this.count = count;
+    }
+
+    public boolean next() {
+        if (decoded == count) return false;
+        if (decoded == 0) {
+            timestamp = in.read(64);
+            valueBits = in.read(64);
+        } else {
+            readTimestamp();
+            readValue();
+        }
+        decoded++;
+        return true;
+    }
+
+    public long timestamp() { return timestamp; }
+
+    public double value() { return Double.longBitsToDouble(valueBits); }
+
+    private void readTimestamp() {
+        long dod;
+        if (!in.readBit()) {
+            dod = 0;
+        } else if (!in.readBit()) {
+            dod = GorillaCodec.signExtend(in.read(7), 7);
+        } else if (!in.readBit()) {
+            dod = GorillaCodec.signExtend(in.read(9), 9);
+        } else if (!in.readBit()) {
+            dod = GorillaCodec.signExtend(in.read(12), 12);
+        } else {
+            dod = in.read(64);
+        }
+        delta += dod;
+        timestamp += delta;
+    }
+
+    private void readValue() {
+        if (!in.readBit()) return; // same value
+        if (in.readBit()) {
+            leading = (int) in.read(5);
+            int significant = (int) in.read(6);
+            if (significant == 0) significant = 64;
+            trailing = 64 - leading - significant;
+        }
+        int significant = 64 - leading - trailing;
+        valueBits ^= in.read(significant) << trailing;
+    }
+}
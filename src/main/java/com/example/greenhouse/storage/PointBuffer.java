@@ -0,0 +1,27 @@
+package com.example.greenhouse.storage;
+
+import java.util.Arrays;
+
+/** Collects queried points into growable primitive arrays. */
+public final class PointBuffer implements PointConsumer {
+
+    private long[] timestamps = new long[64];
+    private double[] values = new double[64];
+    private int size;
+
+    @Override
+    public void accept(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        timestamps[size] = timestamp;
+        values[size++] = value;
+    }
+
+    public int size() { return size; }
+
+    public long[] timestamps() { return Arrays.copyOf(timestamps, size); }
+
+    public double[] values() { return Arrays.copyOf(values, size); }
+}
@@ -0,0 +1,7 @@
+package com.example.greenhouse.storage;
+
+/** Receives decoded points without boxing. */
+@FunctionalInterface
+public interface PointConsumer {
+    void accept(long timestamp, double value);
+}
@@ -0,0 +1,84 @@
+package com.example.greenhouse.storage;
+
+import java.util.Arrays;
+
+/**
+ * Query result of {@link Rollups}: aggregates per bucket of {@code resolutionMillis}, in time order.
+ * Records added for an existing bucket (finer buckets, or a bucket written twice) are merged into it.
+ */
+public final class RollupBuffer {
+
+    /** Tier the buckets were computed from; null when they come from raw points. */
+    public final RollupTier source;
+    public final long resolutionMillis;
+
+    private long[] starts = new long[16];
+    private double[] min = new double[16];
+    private double[] max = new double[16];
+    private double[] sum = new double[16];
+    private long[] count = new long[16];
+    private double[] last = new double[16];
+    private int size;
+
+    public RollupBuffer(RollupTier source, long resolutionMillis) {
+        this.source = source;
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    public void add(long timestamp, double min, double max, double sum, long count, double last) {
+        long bucket = Math.floorDiv(timestamp, resolutionMillis) * resolutionMillis;
+        int i = size - 1;
+        while (i >= 0 && starts[i] > bucket) i--; // input is nearly sorted: look back a little
+        if (i >= 0 && starts[i] == bucket) {
+            this.min[i] = Math.min(this.min[i], min);
+            this.max[i] = Math.max(this.max[i], max);
+            this.sum[i] += sum;
+            this.count[i] += count;
+            this.last[i] = last; // later input wins
+            return;
+        }
+        insert(i + 1, bucket, min, max, sum, count, last);
+    }
+
+    private void insert(int at, long bucket, double mn, double mx, double sm, long n, double ls) {
+        if (size == starts.length) {
+            int cap = size * 2;
+            starts = Arrays.copyOf(starts, cap);
+            min = Arrays.copyOf(min, cap);
+            max = Arrays.copyOf(max, cap);
+            sum = Arrays.copyOf(sum, cap);
+            count = Arrays.copyOf(count, cap);
+            last = Arrays.copyOf(last, cap);
+        }
+        int tail = size - at;
+        if (tail > 0) {
+            System.arraycopy(starts, at, starts, at + 1, tail);
+            System.arraycopy(min, at, min, at + 1, tail);
+            System.arraycopy(max, at, max, at + 1, tail);
+            System.arraycopy(sum, at, sum, at + 1, tail);
+            System.arraycopy(count, at, count, at + 1, tail);
+            System.arraycopy(last, at, last, at + 1, tail);
+        }
+        starts[at] = bucket;
+        min[at] = mn;
+        max[at] = mx;
+        sum[at] = sm;
+        count[at] = n;
+        last[at] = ls;
+        size++;
+    }
+
+    public int size() { return size; }
+
+    public long[] starts() { return Arrays.copyOf(starts, size); }
+
+    public double[] min() { return Arrays.copyOf(min, size); }
+
+    public double[] max() { return Arrays.copyOf(max, size); }
+
+    public double[] sum() { return Arrays.copyOf(sum, size); }
+
+    public long[] count() { return Arrays.copyOf(count, size); }
+
+    public double[] last() { return Arrays.copyOf(last, size); }
+}
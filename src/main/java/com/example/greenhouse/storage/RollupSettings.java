@@ -0,0 +1,56 @@
+package com.example.greenhouse.storage;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Rollup tiers and retention, read from {@code greenhouse.storage.rollup}. A zero retention keeps data forever. */
+public final class RollupSettings {
+
+    public final boolean enabled;
+    /** A bucket is closed and written once this long has passed after its end. */
+    public final Duration grace;
+    public final Duration compactionInterval;
+    public final Duration rawRetention;
+    private final Duration[] tierRetention; // by RollupTier ordinal
+
+    public RollupSettings(boolean enabled, Duration grace, Duration compactionInterval,
+                          Duration rawRetention, Duration minuteRetention, Duration hourRetention, Duration dayRetention) {
+        this.enabled = enabled;
+        this.grace = grace;
+        this.compactionInterval = compactionInterval;
+        this.rawRetention = rawRetention;
+        this.tierRetention = new Duration[] {minuteRetention, hourRetention, dayRetention};
+        // Data may only age out once the next tier has closed the buckets it feeds
+        check("raw", rawRetention, RollupTier.MINUTE);
+        check("minute", minuteRetention, RollupTier.HOUR);
+        check("hour", hourRetention, RollupTier.DAY);
+    }
+
+    public static RollupSettings disabled() {
+        return new RollupSettings(false, Duration.ofSeconds(30), Duration.ofMinutes(1),
+                Duration.ZERO, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+    }
+
+    public Duration retention(RollupTier tier) { return tierRetention[tier.ordinal()]; }
+
+    public static RollupSettings fromConfig(Config storage) {
+        Config c = storage.getConfig("rollup");
+        Config retention = c.getConfig("retention");
+        return new RollupSettings(
+                c.getBoolean("enabled"),
+                c.getDuration("grace"),
+                c.getDuration("compaction-interval"),
+                retention.getDuration("raw"),
+                retention.getDuration("minute"),
+                retention.getDuration("hour"),
+                retention.getDuration("day"));
+    }
+
+    private void check(String name, Duration retention, RollupTier next) {
+        if (!retention.isZero() && retention.toMillis() <= next.widthMillis + grace.toMillis()) {
+            throw new IllegalArgumentException("greenhouse.storage.rollup.retention." + name + " must exceed "
+                    + next.label + " plus the grace period, got " + retention);
+        }
+    }
+}
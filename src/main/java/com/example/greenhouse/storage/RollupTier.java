@@ -0,0 +1,28 @@
+package com.example.greenhouse.storage;
+
+/** Downsampled tiers kept next to the raw readings, finest first; every width divides the next one. */
+public enum RollupTier {
+    MINUTE("1m", 60_000L),
+    HOUR("1h", 3_600_000L),
+    DAY("1d", 86_400_000L);
+
+    public final String label;
+    public final long widthMillis;
+
+    RollupTier(String label, long widthMillis) {
+        this.label = label;
+        this.widthMillis = widthMillis;
+    }
+
+    /** Start of the (UTC-aligned) bucket holding {@code timestamp}. */
+    public long bucketOf(long timestamp) { return Math.floorDiv(timestamp, widthMillis) * widthMillis; }
+
+    /** Coarsest tier whose buckets tile {@code resolutionMillis} exactly, or null when only raw points will do. */
+    public static RollupTier forResolution(long resolutionMillis) {
+        RollupTier[] tiers = values();
+        for (int i = tiers.length - 1; i >= 0; i--) {
+            if (resolutionMillis % tiers[i].widthMillis == 0) return tiers[i];
+        }
+        return null;
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.greenhouse.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Minute, hour and day rollups (min/max/sum/count/last) of every raw series, each tier kept in its own
+ * {@link TimeSeriesStore} under {@code <directory>/rollup-<label>}.
+ *
+ * Rollups are built incrementally: every appended reading is folded into the open minute bucket of its
+ * series, a closed minute is written to the minute tier and folded into the open hour, and so on. A
+ * bucket closes when a later reading arrives or, for idle series, once the grace period after its end
+ * has passed ({@link #closeIdle}). A reading for an already closed bucket is written as a record of
+ * its own; queries merge records of the same bucket, so nothing is lost or counted twice.
+ *
+ * Open buckets are not persisted and tier stores are not flushed on every flush tick (that would write
+ * one-record blocks). Instead opening rebuilds every tier past its last stored record from the next
+ * finer tier (raw readings for minutes), and {@link #compact} forces a tier to disk before the finer
+ * data it was built from ages out.
+ *
+ * Owned by the same single writer as the raw store.
+ */
+public final class Rollups implements Closeable {
+
+    private static final RollupTier[] TIERS = RollupTier.values();
+    // A record is stored as five consecutive points with the bucket start as timestamp
+    private static final int FIELDS = 5; // min, max, sum, count, last
+
+    private final RollupSettings settings;
+    private final TimeSeriesStore raw;
+    private final TimeSeriesStore[] tiers = new TimeSeriesStore[TIERS.length];
+    private final OpenBuckets[] open = new OpenBuckets[TIERS.length];
+    private final int[][] tierSeries = new int[TIERS.length][]; // tier series id per raw series id, -1 until used
+
+    private Rollups(RollupSettings settings, TimeSeriesStore raw) {
+        this.settings = settings;
+        this.raw = raw;
+        for (int t = 0; t < TIERS.length; t++) {
+            open[t] = new OpenBuckets();
+            tierSeries[t] = new int[0];
+        }
+    }
+
+    /** Opens the tier stores next to an open raw store and rebuilds whatever they are missing. */
+    public static Rollups open(StorageSettings settings, TimeSeriesStore raw) throws IOException {
+        Rollups rollups = new Rollups(settings.rollup, raw);
+        // Whole records per block, so a torn tail never splits one
+        int pointsPerBlock = (settings.pointsPerBlock + FIELDS - 1) / FIELDS * FIELDS;
+        int segmentSize = Math.min(settings.segmentSize, Math.max(1 << 16, settings.segmentSize / 8));
+        try {
+            for (int t = 0; t < TIERS.length; t++) {
+                rollups.tiers[t] = TimeSeriesStore.open(new StorageSettings(true,
+                        settings.directory.resolve("rollup-" + TIERS[t].label), segmentSize, pointsPerBlock,
+                        settings.flushInterval, settings.compress));
+            }
+        } catch (IOException | RuntimeException e) {
+            rollups.close();
+            throw e;
+        }
+        rollups.rebuild();
+        return rollups;
+    }
+
+    // Coarsest first, so what a finer tier's rebuild cascades upwards was not already read from storage
+    private void rebuild() {
+        for (int t = TIERS.length - 1; t >= 0; t--) {
+            for (int s = 0; s < raw.seriesCount(); s++) {
+                long stored = tiers[t].lastTimestamp(tiers[t].findSeries(raw.greenhouseOf(s), raw.kindOf(s)));
+                long from = stored == Long.MIN_VALUE ? Long.MIN_VALUE : stored + TIERS[t].widthMillis;
+                int tier = t;
+                int series = s;
+                if (t == 0) {
+                    raw.query(s, from, Long.MAX_VALUE, (ts, v) -> fold(0, series, ts, v, v, v, 1, v, ts));
+                } else {
+                    readRecords(t - 1, s, from, Long.MAX_VALUE, (start, mn, mx, sm, n, ls) -> fold(tier, series, start, mn, mx, sm, n, ls, start));
+                }
+            }
+        }
+    }
+
+    /** Folds one raw reading of {@code rawSeries} into its open minute bucket. */
+    public void add(int rawSeries, long timestamp, double value) {
+        fold(0, rawSeries, timestamp, value, value, value, 1, value, timestamp);
+    }
+
+    /** Closes every bucket whose end is more than the grace period before {@code now}. */
+    public void closeIdle(long now) {
+        long grace = settings.grace.toMillis();
+        for (int t = 0; t < TIERS.length; t++) {
+            OpenBuckets b = open[t];
+            long width = TIERS[t].widthMillis;
+            for (int s = 0; s < b.size(); s++) {
+                if (b.count[s] > 0 && b.start[s] + width + grace <= now) close(t, s);
+            }
+        }
+    }
+
+    /**
+     * Enforces retention: deletes segments of the raw store and of every tier that only hold data older
+     * than that tier's retention, after forcing the next tier to disk. Returns the number of segments deleted.
+     */
+    public int compact(long now) {
+        int dropped = dropExpired(raw, settings.rawRetention, now, tiers[0]);
+        for (int t = 0; t < TIERS.length; t++) {
+            dropped += dropExpired(tiers[t], settings.retention(TIERS[t]), now, t + 1 < TIERS.length ? tiers[t + 1] : null);
+        }
+        return dropped;
+    }
+
+    private static int dropExpired(TimeSeriesStore store, Duration retention, long now, TimeSeriesStore coarser) {
+        if (retention.isZero()) return 0;
+        long cutoff = now - retention.toMillis();
+        if (!store.hasSegmentsBefore(cutoff)) return 0;
+        if (coarser != null) coarser.flush();
+        return store.dropSegmentsBefore(cutoff);
+    }
+
+    /**
+     * Aggregates of {@code rawSeries} over {@code [from, to]} in buckets of {@code resolutionMillis}, read from
+     * the coarsest tier whose buckets tile that resolution, or from raw readings when none does. Buckets
+     * are aligned to the resolution, so the first and last may extend past the requested range.
+     */
+    public RollupBuffer query(int rawSeries, long from, long to, long resolutionMillis) {
+        if (resolutionMillis <= 0) throw new IllegalArgumentException("resolution must be positive: " + resolutionMillis);
+        RollupTier tier = RollupTier.forResolution(resolutionMillis);
+        RollupBuffer out = new RollupBuffer(tier, resolutionMillis);
+        if (rawSeries < 0) return out;
+        if (tier == null) {
+            raw.query(rawSeries, from, to, (ts, v) -> out.add(ts, v, v, v, 1, v));
+            return out;
+        }
+        readRecords(tier.ordinal(), rawSeries, tier.bucketOf(from), to, out::add);
+        // Readings not yet written to the tier sit in its open bucket and in those of the finer tiers
+        for (int t = tier.ordinal(); t >= 0; t--) {
+            OpenBuckets b = open[t];
+            if (rawSeries < b.size() && b.count[rawSeries] > 0
+                    && b.start[rawSeries] >= TIERS[t].bucketOf(from) && b.start[rawSeries] <= to) {
+                out.add(b.start[rawSeries], b.min[rawSeries], b.max[rawSeries], b.sum[rawSeries], b.count[rawSeries], b.last[rawSeries]);
+            }
+        }
+        return out;
+    }
+
+    /** Writes buffered tier records; open buckets are dropped and rebuilt by the next {@link #open}. */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (TimeSeriesStore tier : tiers) {
+            if (tier == null) continue;
+            try {
+                tier.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private void fold(int t, int s, long timestamp, double mn, double mx, double sm, long n, double ls, long lastTs) {
+        OpenBuckets b = open[t];
+        b.ensure(s + 1);
+        long start = TIERS[t].bucketOf(timestamp);
+        if (b.count[s] > 0) {
+            if (start > b.start[s]) {
+                close(t, s);
+            } else if (start < b.start[s]) {
+                emit(t, s, start, mn, mx, sm, n, ls, lastTs); // late for a closed bucket
+                return;
+            }
+        }
+        if (b.count[s] == 0) {
+            b.start[s] = start;
+            b.min[s] = mn;
+            b.max[s] = mx;
+            b.sum[s] = sm;
+            b.count[s] = n;
+            b.last[s] = ls;
+            b.lastTs[s] = lastTs;
+            return;
+        }
+        if (mn < b.min[s]) b.min[s] = mn;
+        if (mx > b.max[s]) b.max[s] = mx;
+        b.sum[s] += sm;
+        b.count[s] += n;
+        if (lastTs >= b.lastTs[s]) {
+            b.last[s] = ls;
+            b.lastTs[s] = lastTs;
+        }
+    }
+
+    private void close(int t, int s) {
+        OpenBuckets b = open[t];
+        emit(t, s, b.start[s], b.min[s], b.max[s], b.sum[s], b.count[s], b.last[s], b.lastTs[s]);
+        b.count[s] = 0;
+    }
+
+    private void emit(int t, int s, long start, double mn, double mx, double sm, long n, double ls, long lastTs) {
+        TimeSeriesStore store = tiers[t];
+        int series = tierSeries(t, s);
+        store.append(series, start, mn);
+        store.append(series, start, mx);
+        store.append(series, start, sm);
+        store.append(series, start, n);
+        store.append(series, start, ls);
+        if (t + 1 < TIERS.length) fold(t + 1, s, start, mn, mx, sm, n, ls, lastTs);
+    }
+
+    private int tierSeries(int t, int rawSeries) {
+        int[] ids = tierSeries[t];
+        if (rawSeries >= ids.length) {
+            int old = ids.length;
+            ids = tierSeries[t] = Arrays.copyOf(ids, Math.max(rawSeries + 1, old * 2));
+            Arrays.fill(ids, old, ids.length, -1);
+        }
+        if (ids[rawSeries] < 0) ids[rawSeries] = tiers[t].seriesId(raw.greenhouseOf(rawSeries), raw.kindOf(rawSeries));
+        return ids[rawSeries];
+    }
+
+    private void readRecords(int t, int rawSeries, long from, long to, RecordConsumer consumer) {
+        int series = tiers[t].findSeries(raw.greenhouseOf(rawSeries), raw.kindOf(rawSeries));
+        if (series < 0) return;
+        double[] fields = new double[FIELDS];
+        int[] filled = {0};
+        tiers[t].query(series, from, to, (ts, v) -> {
+            fields[filled[0]++] = v;
+            if (filled[0] == FIELDS) {
+                filled[0] = 0;
+                consumer.accept(ts, fields[0], fields[1], fields[2], (long) fields[3], fields[4]);
+            }
+        });
+    }
+
+    private interface RecordConsumer {
+        void accept(long start, double min, double max, double sum, long count, double last);
+    }
+
+    // Open bucket per raw series id, primitive arrays grown on demand
+    private static final class OpenBuckets {
+        long[] start = new long[0];
+        double[] min = new double[0];
+        double[] max = new double[0];
+        double[] sum = new double[0];
+        long[] count = new long[0];
+        double[] last = new double[0];
+        long[] lastTs = new long[0];
+
+        int size() { return count.length; }
+
+        void ensure(int n) {
+            if (n <= count.length) return;
+            int cap = Math.max(n, count.length * 2);
+            start = Arrays.copyOf(start, cap);
+            min = Arrays.copyOf(min, cap);
+            max = Arrays.copyOf(max, cap);
+            sum = Arrays.copyOf(sum, cap);
+            count = Arrays.copyOf(count, cap);
+            last = Arrays.copyOf(last, cap);
+            lastTs = Arrays.copyOf(lastTs, cap);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.greenhouse.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped, append-only segment file holding blocks of many series, plus the in-memory time
+ * index of those blocks.
+ *
+ * Layout: a 16-byte file header (magic, version, segment id) followed by blocks of
+ * {@code int magic | int series | long minTs | long maxTs | int count | int encoding | int length | int crc | payload}.
+ * The CRC32C covers everything after the block magic, so a block torn by a crash fails validation on
+ * recovery and the segment is cut back to the last complete block. Bytes are never rewritten in
+ * place, which is what makes that truncation safe.
+ *
+ * Sealing a segment writes its index next to it ({@code .idx}) so reopening does not need a scan;
+ * the active segment is always recovered by scanning.
+ */
+final class Segment {
+
+    static final int FILE_MAGIC = 0x47485331;  // "GHS1"
+    static final int FILE_VERSION = 1;
+    static final int FILE_HEADER = 16;
+    static final int BLOCK_MAGIC = 0x4748424B; // "GHBK"
+    static final int BLOCK_HEADER = 40;
+    private static final int INDEX_MAGIC = 0x47484958; // "GHIX"
+    private static final int INDEX_ENTRY = 24;
+
+    final long id;
+    final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private boolean sealed;
+
+    // Time index: one entry per block, blocks of the same series chained newest to oldest
+    private int blocks;
+    private int[] blockSeries = new int[256];
+    private long[] blockMinTs = new long[256];
+    private long[] blockMaxTs = new long[256];
+    private int[] blockOffset = new int[256];
+    private int[] previousOfSeries = new int[256];
+    private final HashMap<Integer, Integer> lastBlockOfSeries = new HashMap<>();
+    private long minTs = Long.MAX_VALUE;
+    private long maxTs = Long.MIN_VALUE;
+
+    private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    static String fileName(long id) { return String.format("seg-%012d.dat", id); }
+
+    static Segment create(Path dir, long id, int capacity) throws IOException {
+        Path path = dir.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        segment.writeFileHeader();
+        return segment;
+    }
+
+    static Segment open(Path path, long id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        if (segment.buffer.capacity() < FILE_HEADER || segment.buffer.getInt(0) != FILE_MAGIC) {
+            // Crashed between creating the file and writing its header: nothing in it can be valid
+            segment.zeroFrom(0);
+            segment.writeFileHeader();
+        } else if (!segment.loadIndex()) {
+            segment.scan();
+        }
+        return segment;
+    }
+
+    private void writeFileHeader() {
+        buffer.putInt(0, FILE_MAGIC);
+        buffer.putInt(4, FILE_VERSION);
+        buffer.putLong(8, id);
+        position = FILE_HEADER;
+    }
+
+    boolean isSealed() { return sealed; }
+    int blockCount() { return blocks; }
+    long minTimestamp() { return minTs; }
+    long maxTimestamp() { return maxTs; }
+
+    /** Latest timestamp of {@code series} in this segment, or {@code Long.MIN_VALUE}. */
+    long lastTimestamp(int series) {
+        Integer last = lastBlockOfSeries.get(series);
+        long latest = Long.MIN_VALUE;
+        for (int b = last == null ? -1 : last; b >= 0; b = previousOfSeries[b]) latest = Math.max(latest, blockMaxTs[b]);
+        return latest;
+    }
+
+    /** Payload bytes that still fit after the next block header. */
+    int remaining() { return buffer.capacity() - position - BLOCK_HEADER; }
+
+    /** Writable view where the next block's payload goes; follow with {@link #commitBlock}. */
+    ByteBuffer payloadArea() {
+        ByteBuffer area = buffer.duplicate();
+        area.position(position + BLOCK_HEADER);
+        return area.slice();
+    }
+
+    void commitBlock(int series, long blockMin, long blockMax, int count, int encoding, int length) {
+        int at = position;
+        buffer.putInt(at + 4, series);
+        buffer.putLong(at + 8, blockMin);
+        buffer.putLong(at + 16, blockMax);
+        buffer.putInt(at + 24, count);
+        buffer.putInt(at + 28, encoding);
+        buffer.putInt(at + 32, length);
+        buffer.putInt(at + 36, crc(at, length));
+        buffer.putInt(at, BLOCK_MAGIC);
+        index(series, blockMin, blockMax, at);
+        position = at + BLOCK_HEADER + length;
+    }
+
+    /** Decodes every block of {@code series} overlapping {@code [from, to]}, oldest first. */
+    int visit(int series, long from, long to, BlockVisitor visitor) {
+        if (to < minTs || from > maxTs) return 0;
+        Integer last = lastBlockOfSeries.get(series);
+        if (last == null) return 0;
+        int[] chain = new int[8];
+        int n = 0;
+        for (int b = last; b >= 0; b = previousOfSeries[b]) {
+            if (blockMaxTs[b] >= from && blockMinTs[b] <= to) {
+                if (n == chain.length) chain = Arrays.copyOf(chain, n * 2);
+                chain[n++] = b;
+            }
+        }
+        int points = 0;
+        for (int i = n - 1; i >= 0; i--) {
+            int at = blockOffset[chain[i]];
+            int count = buffer.getInt(at + 24);
+            visitor.visit(buffer, at + BLOCK_HEADER, buffer.getInt(at + 32), count, buffer.getInt(at + 28));
+            points += count;
+        }
+        return points;
+    }
+
+    interface BlockVisitor {
+        void visit(ByteBuffer segment, int payloadOffset, int length, int count, int encoding);
+    }
+
+    void sync() { buffer.force(); }
+
+    /** Flushes and writes the index file; the segment accepts no more blocks afterwards. */
+    void seal() throws IOException {
+        buffer.force();
+        ByteBuffer idx = ByteBuffer.allocate(16 + blocks * INDEX_ENTRY + 4);
+        idx.putInt(INDEX_MAGIC).putInt(FILE_VERSION).putInt(position).putInt(blocks);
+        for (int b = 0; b < blocks; b++) {
+            idx.putInt(blockSeries[b]).putLong(blockMinTs[b]).putLong(blockMaxTs[b]).putInt(blockOffset[b]);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(idx.array(), 0, idx.position());
+        idx.putInt((int) crc.getValue());
+        idx.flip();
+        Path tmp = indexPath().resolveSibling(indexPath().getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (idx.hasRemaining()) out.write(idx);
+            out.force(true);
+        }
+        Files.move(tmp, indexPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        sealed = true;
+    }
+
+    void close() throws IOException {
+        if (!sealed) buffer.force();
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(indexPath());
+        Files.deleteIfExists(path);
+    }
+
+    private Path indexPath() {
+        String name = path.getFileName().toString();
+        return path.resolveSibling(name.substring(0, name.length() - 4) + ".idx");
+    }
+
+    private boolean loadIndex() throws IOException {
+        Path idxPath = indexPath();
+        if (!Files.exists(idxPath)) return false;
+        ByteBuffer idx = ByteBuffer.wrap(Files.readAllBytes(idxPath));
+        if (idx.capacity() < 20 || idx.getInt(0) != INDEX_MAGIC) return false;
+        int count = idx.getInt(12);
+        int end = 16 + count * INDEX_ENTRY;
+        if (count < 0 || end + 4 != idx.capacity()) return false;
+        CRC32C crc = new CRC32C();
+        crc.update(idx.array(), 0, end);
+        if ((int) crc.getValue() != idx.getInt(end)) return false;
+        idx.position(16);
+        for (int b = 0; b < count; b++) {
+            index(idx.getInt(), idx.getLong(), idx.getLong(), idx.getInt());
+        }
+        position = idx.getInt(8);
+        sealed = true;
+        return true;
+    }
+
+    // Recovery: accept blocks while magic, bounds and checksum hold, then drop everything after
+    private void scan() {
+        int at = FILE_HEADER;
+        int capacity = buffer.capacity();
+        while (at + BLOCK_HEADER <= capacity && buffer.getInt(at) == BLOCK_MAGIC) {
+            int length = buffer.getInt(at + 32);
+            if (length < 0 || length > capacity - at - BLOCK_HEADER) break;
+            if (buffer.getInt(at + 36) != crc(at, length)) break;
+            index(buffer.getInt(at + 4), buffer.getLong(at + 8), buffer.getLong(at + 16), at);
+            at += BLOCK_HEADER + length;
+        }
+        position = at;
+        zeroFrom(at);
+    }
+
+    // Clears a torn tail so a later, shorter block cannot be followed by stale bytes that look valid
+    private void zeroFrom(int from) {
+        int capacity = buffer.capacity();
+        int at = from;
+        while (at < capacity && (at & 7) != 0) buffer.put(at++, (byte) 0);
+        for (; at + 8 <= capacity; at += 8) {
+            if (buffer.getLong(at) != 0L) buffer.putLong(at, 0L);
+        }
+        while (at < capacity) buffer.put(at++, (byte) 0);
+    }
+
+    private int crc(int at, int length) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer view = buffer.duplicate();
+        view.position(at + 4).limit(at + 36);
+        crc.update(view);
+        view.limit(at + BLOCK_HEADER + length).position(at + BLOCK_HEADER);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    private void index(int series, long blockMin, long blockMax, int offset) {
+        if (blocks == blockSeries.length) {
+            int cap = blocks * 2;
+            blockSeries = Arrays.copyOf(blockSeries, cap);
+            blockMinTs = Arrays.copyOf(blockMinTs, cap);
+            blockMaxTs = Arrays.copyOf(blockMaxTs, cap);
+            blockOffset = Arrays.copyOf(blockOffset, cap);
+            previousOfSeries = Arrays.copyOf(previousOfSeries, cap);
+        }
+        int b = blocks++;
+        blockSeries[b] = series;
+        blockMinTs[b] = blockMin;
+        blockMaxTs[b] = blockMax;
+        blockOffset[b] = offset;
+        Integer previous = lastBlockOfSeries.put(series, b);
+        previousOfSeries[b] = previous == null ? -1 : previous;
+        minTs = Math.min(minTs, blockMin);
+        maxTs = Math.max(maxTs, blockMax);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.greenhouse.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Dense series ids for (greenhouse id, kind ordinal) pairs, persisted as one
+ * {@code id TAB kind TAB greenhouseId} line per series. A line is forced to disk before the id is
+ * handed out, so no stored block can reference a series the catalog does not know after a crash.
+ */
+final class SeriesCatalog {
+
+    private final FileChannel channel;
+    private final List<HashMap<String, Integer>> idsByKind = new ArrayList<>();
+    private final List<String> greenhouseOf = new ArrayList<>();
+    private final List<Integer> kindOf = new ArrayList<>();
+
+    private SeriesCatalog(FileChannel channel) { this.channel = channel; }
+
+    static SeriesCatalog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SeriesCatalog catalog = new SeriesCatalog(channel);
+        byte[] bytes = Files.readAllBytes(file);
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') continue;
+            String[] parts = new String(bytes, lineStart, i - lineStart, StandardCharsets.UTF_8).split("\t", 3);
+            catalog.add(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+            lineStart = i + 1;
+        }
+        // A torn last line (no newline) was never acknowledged: drop it
+        channel.truncate(lineStart);
+        channel.position(lineStart);
+        return catalog;
+    }
+
+    int size() { return greenhouseOf.size(); }
+
+    int idOf(String greenhouseId, int kind) {
+        if (kind >= idsByKind.size()) return -1;
+        Integer id = idsByKind.get(kind).get(greenhouseId);
+        return id == null ? -1 : id;
+    }
+
+    int register(String greenhouseId, int kind) throws IOException {
+        int existing = idOf(greenhouseId, kind);
+        if (existing >= 0) return existing;
+        int id = size();
+        ByteBuffer line = ByteBuffer.wrap((id + "\t" + kind + "\t" + greenhouseId + "\n").getBytes(StandardCharsets.UTF_8));
+        while (line.hasRemaining()) channel.write(line);
+        channel.force(false);
+        add(id, kind, greenhouseId);
+        return id;
+    }
+
+    String greenhouseOf(int seriesId) { return greenhouseOf.get(seriesId); }
+
+    int kindOf(int seriesId) { return kindOf.get(seriesId); }
+
+    void close() throws IOException { channel.close(); }
+
+    private void add(int id, int kind, String greenhouseId) {
+        if (id != greenhouseOf.size()) throw new IllegalStateException("series catalog out of order at id " + id);
+        while (idsByKind.size() <= kind) idsByKind.add(new HashMap<>());
+        idsByKind.get(kind).put(greenhouseId, id);
+        greenhouseOf.add(greenhouseId);
+        kindOf.add(kind);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.greenhouse.storage;
+
+import com.typesafe.config.Config;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+
+/** Reading store layout and flush policy, read from {@code greenhouse.storage}. */
+public final class StorageSettings {
+
+    public final boolean enabled;
+    public final Path directory;
+    /** Bytes per memory-mapped segment file; a full segment is sealed and a new one started. */
+    public final int segmentSize;
+    /** Points buffered per series before they are encoded into a block. */
+    public final int pointsPerBlock;
+    /** Partial blocks are written and segments forced to disk this often. */
+    public final Duration flushInterval;
+    /** Whether new blocks are Gorilla-compressed; blocks already on disk are read either way. */
+    public final boolean compress;
+    public final RollupSettings rollup;
+
+    public StorageSettings(boolean enabled, Path directory, int segmentSize, int pointsPerBlock, Duration flushInterval) {
+        this(enabled, directory, segmentSize, pointsPerBlock, flushInterval, true);
+    }
+
+    public StorageSettings(boolean enabled, Path directory, int segmentSize, int pointsPerBlock, Duration flushInterval, boolean compress) {
+        this(enabled, directory, segmentSize, pointsPerBlock, flushInterval, compress, RollupSettings.disabled());
+    }
+
+    public StorageSettings(boolean enabled, Path directory, int segmentSize, int pointsPerBlock, Duration flushInterval,
+                           boolean compress, RollupSettings rollup) {
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.pointsPerBlock = pointsPerBlock;
+        this.flushInterval = flushInterval;
+        this.compress = compress;
+        this.rollup = rollup;
+    }
+
+    public static StorageSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.storage");
+        long segmentBytes = c.getBytes("segment-size");
+        if (segmentBytes > Integer.MAX_VALUE) throw new IllegalArgumentException("segment-size must be below 2 GiB");
+        return new StorageSettings(
+                c.getBoolean("enabled"),
+                Paths.get(c.getString("directory")),
+                (int) segmentBytes,
+                Math.max(1, c.getInt("points-per-block")),
+                c.getDuration("flush-interval"),
+                compression(c.getString("compression")),
+                RollupSettings.fromConfig(c));
+    }
+
+    private static boolean compression(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "gorilla": return true;
+            case "none": return false;
+            default: throw new IllegalArgumentException("greenhouse.storage.compression must be gorilla or none: " + name);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.greenhouse.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Embedded append-only store for sensor series, one series per (greenhouse, kind).
+ *
+ * Points are buffered per series and written as blocks into the active memory-mapped {@link Segment},
+ * Gorilla-compressed unless disabled (see {@link GorillaCodec}); a full segment is sealed (index
+ * written next to it) and a new one started. {@link #flush()} writes
+ * partial blocks and forces the active segment, so a crash loses at most the points appended since
+ * the last flush. Opening a directory recovers every segment, truncating a torn tail of the last one.
+ *
+ * Not thread-safe: the store is owned by a single writer (see {@code StorageManager}).
+ */
+public final class TimeSeriesStore implements Closeable {
+
+    private static final String CATALOG_FILE = "series.catalog";
+
+    private final StorageSettings settings;
+    private final SeriesCatalog catalog;
+    private final List<Segment> segments = new ArrayList<>(); // oldest first, last one is active
+    private Segment active;
+    private long nextSegmentId;
+    private final int encoding;
+
+    private SeriesBuffer[] buffers = new SeriesBuffer[64];
+    private long pointsAppended;
+    private long blocksWritten;
+    private long payloadBytesWritten;
+
+    private TimeSeriesStore(StorageSettings settings, SeriesCatalog catalog) {
+        this.settings = settings;
+        this.catalog = catalog;
+        this.encoding = settings.compress ? BlockCodec.GORILLA : BlockCodec.RAW;
+    }
+
+    public static TimeSeriesStore open(StorageSettings settings) throws IOException {
+        Files.createDirectories(settings.directory);
+        if (BlockCodec.maxEncodedSize(settings.compress ? BlockCodec.GORILLA : BlockCodec.RAW, settings.pointsPerBlock) + Segment.BLOCK_HEADER + Segment.FILE_HEADER > settings.segmentSize) {
+            throw new IllegalArgumentException("segment-size too small for points-per-block " + settings.pointsPerBlock);
+        }
+        TimeSeriesStore store = new TimeSeriesStore(settings, SeriesCatalog.open(settings.directory.resolve(CATALOG_FILE)));
+        store.recover();
+        return store;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(settings.directory)) {
+            files = list.filter(p -> p.getFileName().toString().matches("seg-\\d+\\.dat")).sorted().toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id = Long.parseLong(name.substring(4, name.length() - 4));
+            segments.add(Segment.open(file, id));
+            nextSegmentId = id + 1;
+        }
+        if (!segments.isEmpty() && !segments.get(segments.size() - 1).isSealed()) {
+            active = segments.get(segments.size() - 1);
+        } else {
+            startSegment();
+        }
+    }
+
+    /** Series id of a greenhouse/kind pair, created (and persisted) on first use. */
+    public int seriesId(String greenhouseId, int kind) {
+        try {
+            return catalog.register(greenhouseId, kind);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Series id of a known pair, or -1. */
+    public int findSeries(String greenhouseId, int kind) { return catalog.idOf(greenhouseId, kind); }
+
+    public String greenhouseOf(int seriesId) { return catalog.greenhouseOf(seriesId); }
+
+    public int kindOf(int seriesId) { return catalog.kindOf(seriesId); }
+
+    public int seriesCount() { return catalog.size(); }
+
+    public void append(int seriesId, long timestamp, double value) {
+        if (seriesId >= buffers.length) buffers = Arrays.copyOf(buffers, Math.max(seriesId + 1, buffers.length * 2));
+        SeriesBuffer buffer = buffers[seriesId];
+        if (buffer == null) buffer = buffers[seriesId] = new SeriesBuffer(settings.pointsPerBlock);
+        buffer.add(timestamp, value);
+        pointsAppended++;
+        if (buffer.count == settings.pointsPerBlock) writeBlock(seriesId, buffer);
+    }
+
+    /** Streams the points of a series within {@code [from, to]} in append order and returns how many there were. */
+    public int query(int seriesId, long from, long to, PointConsumer consumer) {
+        if (seriesId < 0) return 0;
+        int[] matched = {0};
+        PointConsumer counting = (ts, value) -> { matched[0]++; consumer.accept(ts, value); };
+        for (Segment segment : segments) {
+            segment.visit(seriesId, from, to, (buf, offset, length, count, enc) ->
+                    BlockCodec.decode(enc, buf, offset, length, count, from, to, counting));
+        }
+        SeriesBuffer buffer = seriesId < buffers.length ? buffers[seriesId] : null;
+        if (buffer != null) {
+            for (int i = 0; i < buffer.count; i++) {
+                if (buffer.timestamps[i] >= from && buffer.timestamps[i] <= to) counting.accept(buffer.timestamps[i], buffer.values[i]);
+            }
+        }
+        return matched[0];
+    }
+
+    /** Latest timestamp stored for a series, buffered points included, or {@code Long.MIN_VALUE}. */
+    public long lastTimestamp(int seriesId) {
+        if (seriesId < 0) return Long.MIN_VALUE;
+        long latest = seriesId < buffers.length && buffers[seriesId] != null ? buffers[seriesId].maxTs : Long.MIN_VALUE;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            latest = Math.max(latest, segments.get(i).lastTimestamp(seriesId));
+        }
+        return latest;
+    }
+
+    /** Whether a sealed segment holds only data older than {@code cutoff}. */
+    public boolean hasSegmentsBefore(long cutoff) {
+        for (Segment segment : segments) {
+            if (segment != active && segment.maxTimestamp() < cutoff) return true;
+        }
+        return false;
+    }
+
+    /** Deletes sealed segments holding only data older than {@code cutoff}; retention is per segment, not per point. */
+    public int dropSegmentsBefore(long cutoff) {
+        int dropped = 0;
+        for (var it = segments.iterator(); it.hasNext(); ) {
+            Segment segment = it.next();
+            if (segment == active || segment.maxTimestamp() >= cutoff) continue;
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            it.remove();
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /** Writes every partial block and forces the active segment to disk. */
+    public void flush() {
+        for (int s = 0; s < buffers.length; s++) {
+            SeriesBuffer buffer = buffers[s];
+            if (buffer != null && buffer.count > 0) writeBlock(s, buffer);
+        }
+        active.sync();
+    }
+
+    public long pointsAppended() { return pointsAppended; }
+
+    public long blocksWritten() { return blocksWritten; }
+
+    /** Encoded block payload written so far, block headers excluded. */
+    public long payloadBytesWritten() { return payloadBytesWritten; }
+
+    public int segmentCount() { return segments.size(); }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        for (Segment segment : segments) segment.close();
+        catalog.close();
+    }
+
+    private void writeBlock(int seriesId, SeriesBuffer buffer) {
+        if (active.remaining() < BlockCodec.maxEncodedSize(encoding, buffer.count)) roll();
+        int length = BlockCodec.encode(encoding, buffer.timestamps, buffer.values, buffer.count, active.payloadArea());
+        active.commitBlock(seriesId, buffer.minTs, buffer.maxTs, buffer.count, encoding, length);
+        blocksWritten++;
+        payloadBytesWritten += length;
+        buffer.reset();
+    }
+
+    private void roll() {
+        try {
+            active.seal();
+            startSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void startSegment() throws IOException {
+        active = Segment.create(settings.directory, nextSegmentId++, settings.segmentSize);
+        segments.add(active);
+    }
+
+    private static final class SeriesBuffer {
+        final long[] timestamps;
+        final double[] values;
+        int count;
+        long minTs = Long.MAX_VALUE;
+        long maxTs = Long.MIN_VALUE;
+
+        SeriesBuffer(int capacity) {
+            timestamps = new long[capacity];
+            values = new double[capacity];
+        }
+
+        void add(long ts, double value) {
+            timestamps[count] = ts;
+            values[count] = value;
+            count++;
+            if (ts < minTs) minTs = ts;
+            if (ts > maxTs) maxTs = ts;
+        }
+
+        void reset() {
+            count = 0;
+            minTs = Long.MAX_VALUE;
+            maxTs = Long.MIN_VALUE;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.greenhouse.stream;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** How the sensor stream hands readings to DataProcessingManager, read from {@code greenhouse.ingest}. */
+public final class IngestSettings {
+
+    public enum Mode {
+        /** One tell per event, no flow control past the sink. */
+        FIRE_AND_FORGET,
+        /** Batches are asked into DataProcessingManager; the stream only runs ahead by max-in-flight acks. */
+        BACKPRESSURE
+    }
+
+    public final Mode mode;
+    public final int maxInFlight;
+    public final int batchSize;
+    public final Duration batchWindow;
+    public final Duration ackTimeout;
+    /** A failed stream is started again after this long, doubling up to restart-backoff-max while failures follow closely. */
+    public final Duration restartBackoff;
+    public final Duration restartBackoffMax;
+
+    public IngestSettings(Mode mode, int maxInFlight, int batchSize, Duration batchWindow, Duration ackTimeout,
+                          Duration restartBackoff, Duration restartBackoffMax) {
+        if (restartBackoffMax.compareTo(restartBackoff) < 0) {
+            throw new IllegalArgumentException("restart-backoff-max must not be below restart-backoff");
+        }
+        this.mode = mode;
+        this.maxInFlight = maxInFlight;
+        this.batchSize = batchSize;
+        this.batchWindow = batchWindow;
+        this.ackTimeout = ackTimeout;
+        this.restartBackoff = restartBackoff;
+        this.restartBackoffMax = restartBackoffMax;
+    }
+
+    public static IngestSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.ingest");
+        return new IngestSettings(
+                Mode.valueOf(c.getString("mode").trim().toUpperCase().replace('-', '_')),
+                Math.max(1, c.getInt("max-in-flight")),
+                Math.max(1, c.getInt("batch-size")),
+                c.getDuration("batch-window"),
+                c.getDuration("ack-timeout"),
+                c.getDuration("restart-backoff"),
+                c.getDuration("restart-backoff-max"));
+    }
+}
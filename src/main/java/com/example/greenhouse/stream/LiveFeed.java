@@ -0,0 +1,229 @@
+package com.example.greenhouse.stream;
+
+import akka.NotUsed;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.japi.Pair;
+import akka.stream.BoundedSourceQueue;
+import akka.stream.OverflowStrategy;
+import akka.stream.QueueOfferResult;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fans routed readings out to any number of live subscribers through a {@link BroadcastHub}, as JSON
+ * arrays of {@code {"greenhouseId", "kind", "value", "timestamp"}} objects.
+ *
+ * Routing never waits for subscribers: batches are offered to a bounded queue in front of the hub and
+ * dropped when it is full. The hub itself only runs as fast as its slowest consumer, so every subscriber
+ * stream starts with its filter followed by a stage that never backpressures (a dropping buffer or a
+ * conflate); a slow client loses data instead of holding back the hub and everybody else on it.
+ *
+ * Each reading is rendered to JSON at most once, by whichever subscriber needs it first, and shared by
+ * all others, so the per-subscriber cost is the filter scan and string concatenation.
+ */
+public final class LiveFeed {
+
+    private static final int KINDS = SensorActor.Kind.count();
+
+    private final BoundedSourceQueue<Batch> ingress;
+    private final Source<Batch, NotUsed> hub;
+    private final GreenhouseDirectory directory;
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private LiveFeed(GreenhouseDirectory directory, BoundedSourceQueue<Batch> ingress, Source<Batch, NotUsed> hub) {
+        this.directory = directory;
+        this.ingress = ingress;
+        this.hub = hub;
+    }
+
+    public static LiveFeed start(ActorSystem<?> system, LiveFeedSettings settings, GreenhouseDirectory directory) {
+        Pair<BoundedSourceQueue<Batch>, Source<Batch, NotUsed>> hub = Source.<Batch>queue(settings.ingressBuffer)
+                .toMat(BroadcastHub.of(Batch.class, settings.hubBuffer), Keep.both())
+                .run(system);
+        // Without any consumer a hub backpressures; keep it draining so the first client gets fresh readings
+        hub.second().runWith(Sink.ignore(), system);
+        return new LiveFeed(directory, hub.first(), hub.second());
+    }
+
+    /** Hands a routed batch to the hub, or drops it when the hub is behind. Safe from any thread. */
+    public void offer(SensorBatch batch) {
+        if (batch.isEmpty()) return;
+        if (ingress.offer(new Batch(batch, directory)) != QueueOfferResult.enqueued()) dropped.add(batch.size);
+    }
+
+    /** A DataProcessingManager subscriber offering every batch to the feed. */
+    public Behavior<SensorBatch> ingress() {
+        return Behaviors.receiveMessage(batch -> {
+            offer(batch);
+            return Behaviors.same();
+        });
+    }
+
+    /** Readings dropped because the hub was behind. */
+    public long dropped() { return dropped.sum(); }
+
+    /** Subscriber streams currently running. */
+    public int subscribers() { return subscribers.get(); }
+
+    /**
+     * JSON arrays of the readings matching the filter, one per routed batch with any. With
+     * {@link LiveFeedSettings.Overflow#DROP} up to {@code bufferSize} batches wait for a slow consumer
+     * before the oldest is dropped; with CONFLATE the waiting readings collapse into the latest per
+     * sensor, bounded by the sensors the filter selects.
+     */
+    public Source<String, NotUsed> subscribe(Filter filter, LiveFeedSettings.Overflow overflow, int bufferSize) {
+        Source<Selection, NotUsed> selected = hub.map(filter::select).filter(s -> s.count > 0);
+        Source<String, NotUsed> buffered = overflow == LiveFeedSettings.Overflow.DROP
+                ? selected.buffer(bufferSize, OverflowStrategy.dropHead()).map(Selection::json)
+                : selected.conflateWithSeed(Latest::new, Latest::add).map(Latest::json);
+        return buffered.watchTermination((notUsed, done) -> {
+            subscribers.incrementAndGet();
+            done.whenComplete((d, failure) -> subscribers.decrementAndGet());
+            return notUsed;
+        });
+    }
+
+    /** Which readings a subscriber gets: greenhouses by directory index (all when null) and kinds by ordinal. */
+    public static final class Filter {
+        private final boolean[] greenhouses;
+        private final int kinds;
+
+        private Filter(boolean[] greenhouses, int kinds) {
+            this.greenhouses = greenhouses;
+            this.kinds = kinds;
+        }
+
+        public static Filter all() { return new Filter(null, (1 << KINDS) - 1); }
+
+        /**
+         * @param greenhouses selected directory indexes, or null for every greenhouse (including ones
+         *                    registered later)
+         * @param kinds       selected kinds, or null for every kind
+         */
+        public static Filter of(boolean[] greenhouses, SensorActor.Kind[] kinds) {
+            int mask = 0;
+            if (kinds == null) {
+                mask = (1 << KINDS) - 1;
+            } else {
+                for (SensorActor.Kind k : kinds) mask |= 1 << k.ordinal();
+            }
+            return new Filter(greenhouses == null ? null : greenhouses.clone(), mask);
+        }
+
+        boolean matches(int greenhouse, int kind) {
+            if ((kinds & (1 << kind)) == 0) return false;
+            return greenhouses == null || (greenhouse < greenhouses.length && greenhouses[greenhouse]);
+        }
+
+        Selection select(Batch batch) {
+            SensorBatch b = batch.readings;
+            int[] positions = null;
+            int count = 0;
+            for (int i = 0; i < b.size; i++) {
+                if (!matches(b.greenhouse[i], b.kind[i])) continue;
+                if (positions == null) positions = new int[b.size - i];
+                positions[count++] = i;
+            }
+            return new Selection(batch, positions, count);
+        }
+    }
+
+    // A routed batch with its readings' JSON, rendered on first use. Racing subscribers may both render
+    // the same reading; the strings are equal and immutable, so either write is fine.
+    static final class Batch {
+        final SensorBatch readings;
+        private final GreenhouseDirectory directory;
+        private final String[] json;
+
+        Batch(SensorBatch readings, GreenhouseDirectory directory) {
+            this.readings = readings;
+            this.directory = directory;
+            this.json = new String[readings.size];
+        }
+
+        String json(int i) {
+            String s = json[i];
+            if (s == null) {
+                s = render(i);
+                json[i] = s;
+            }
+            return s;
+        }
+
+        private String render(int i) {
+            double v = readings.value[i];
+            StringBuilder sb = new StringBuilder(96).append("{\"greenhouseId\":\"");
+            JsonStringEncoder.getInstance().quoteAsString(directory.idAt(readings.greenhouse[i]), sb);
+            return sb.append("\",\"kind\":\"").append(SensorActor.Kind.ofOrdinal(readings.kind[i]).wireName)
+                    .append("\",\"value\":").append(Double.isFinite(v) ? Double.toString(v) : "null")
+                    .append(",\"timestamp\":").append(readings.timestamp[i])
+                    .append('}').toString();
+        }
+    }
+
+    // Readings of one batch picked by a filter
+    static final class Selection {
+        final Batch batch;
+        final int[] positions;
+        final int count;
+
+        Selection(Batch batch, int[] positions, int count) {
+            this.batch = batch;
+            this.positions = positions;
+            this.count = count;
+        }
+
+        String json() {
+            StringBuilder sb = new StringBuilder(count * 96).append('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(batch.json(positions[i]));
+            }
+            return sb.append(']').toString();
+        }
+    }
+
+    // Conflated selections; the map is only built once a client actually falls behind
+    private static final class Latest {
+        final Selection first;
+        Map<Integer, String> bySensor;
+
+        Latest(Selection first) { this.first = first; }
+
+        Latest add(Selection next) {
+            if (bySensor == null) {
+                bySensor = new LinkedHashMap<>();
+                put(first);
+            }
+            put(next);
+            return this;
+        }
+
+        private void put(Selection s) {
+            SensorBatch b = s.batch.readings;
+            for (int i = 0; i < s.count; i++) {
+                int p = s.positions[i];
+                bySensor.put(b.greenhouse[p] * KINDS + b.kind[p], s.batch.json(p));
+            }
+        }
+
+        String json() {
+            if (bySensor == null) return first.json();
+            return "[" + String.join(",", bySensor.values()) + "]";
+        }
+    }
+}
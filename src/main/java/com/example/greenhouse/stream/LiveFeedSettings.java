@@ -0,0 +1,51 @@
+package com.example.greenhouse.stream;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Live reading fan-out to streaming clients, read from {@code greenhouse.live}. */
+public final class LiveFeedSettings {
+
+    public enum Overflow {
+        /** Client buffer holds whole batches; when it is full the oldest is dropped. */
+        DROP,
+        /** While a client is behind only the latest reading of each of its sensors is kept. */
+        CONFLATE
+    }
+
+    public final boolean enabled;
+    /** Routed batches waiting for the hub; further batches are dropped (counted) rather than slowing routing. */
+    public final int ingressBuffer;
+    /** Batches the hub holds for its slowest consumer; a power of two. */
+    public final int hubBuffer;
+    public final Overflow overflow;
+    public final int clientBuffer;
+    /** Upper bound for a buffer size requested by a client. */
+    public final int maxClientBuffer;
+    /** Idle streams get a heartbeat this often, so proxies do not close them. */
+    public final Duration keepAlive;
+
+    public LiveFeedSettings(boolean enabled, int ingressBuffer, int hubBuffer, Overflow overflow, int clientBuffer,
+                            int maxClientBuffer, Duration keepAlive) {
+        this.enabled = enabled;
+        this.ingressBuffer = ingressBuffer;
+        this.hubBuffer = hubBuffer;
+        this.overflow = overflow;
+        this.clientBuffer = clientBuffer;
+        this.maxClientBuffer = maxClientBuffer;
+        this.keepAlive = keepAlive;
+    }
+
+    public static LiveFeedSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.live");
+        return new LiveFeedSettings(
+                c.getBoolean("enabled"),
+                Math.max(1, c.getInt("ingress-buffer")),
+                Integer.highestOneBit(Math.max(1, c.getInt("hub-buffer"))),
+                Overflow.valueOf(c.getString("overflow").trim().toUpperCase()),
+                Math.max(1, c.getInt("client-buffer")),
+                Math.max(1, c.getInt("max-client-buffer")),
+                c.getDuration("keep-alive"));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.greenhouse.stream;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic sensor load for capacity testing. Readings are produced as {@link SensorBatch}es by
+ * {@code parallelism} independent substreams, each emitting one batch per tick and owning its own
+ * {@link SplittableRandom} derived from the seed, so generation needs no shared state and a given
+ * seed always yields the same sequence of readings per substream.
+ *
+ * Greenhouse popularity follows a Zipf distribution over a seeded permutation of the fleet, so the
+ * hot greenhouses are spread across sites and shards rather than being the first ids.
+ */
+public final class LoadGenerator {
+
+    private final LoadProfile profile;
+    private final int fleetSize;
+    private final double[] popularityCdf; // null for uniform load
+    private final int[] rankToGreenhouse;
+    private final double[] kindCdf;
+
+    /** Generates load for greenhouses with directory indices {@code [0, fleetSize)}. */
+    public LoadGenerator(LoadProfile profile, int fleetSize) {
+        if (fleetSize <= 0) throw new IllegalArgumentException("fleet size must be positive: " + fleetSize);
+        this.profile = profile;
+        this.fleetSize = fleetSize;
+        this.kindCdf = cumulative(profile.kindWeights);
+        if (profile.zipfExponent > 0) {
+            double[] weights = new double[fleetSize];
+            for (int rank = 0; rank < fleetSize; rank++) {
+                weights[rank] = 1.0 / Math.pow(rank + 1, profile.zipfExponent);
+            }
+            this.popularityCdf = cumulative(weights);
+            this.rankToGreenhouse = shuffledIdentity(fleetSize, new SplittableRandom(profile.seed ^ 0x5DEECE66DL));
+        } else {
+            this.popularityCdf = null;
+            this.rankToGreenhouse = null;
+        }
+    }
+
+    public Source<SensorBatch, NotUsed> source() {
+        int parallelism = profile.parallelism;
+        double perTick = profile.eventsPerSecond * (profile.tick.toNanos() / 1e9) / parallelism;
+        return Source.range(0, parallelism - 1)
+                .flatMapMerge(parallelism, stream -> substream(stream, perTick).async());
+    }
+
+    private Source<SensorBatch, NotUsed> substream(int stream, double perTick) {
+        return Source.tick(profile.tick, profile.tick, 1L)
+                .mapMaterializedValue(cancellable -> NotUsed.getInstance())
+                // State is created per materialization: a fresh, seed-derived RNG and the fractional carry
+                .statefulMapConcat(() -> {
+                    SplittableRandom rnd = new SplittableRandom(profile.seed + 0x9E3779B97F4A7C15L * (stream + 1));
+                    double[] carry = {0.0};
+                    return tick -> {
+                        double due = carry[0] + perTick;
+                        int n = (int) due;
+                        carry[0] = due - n;
+                        return n == 0 ? List.of() : List.of(nextBatch(rnd, n, System.currentTimeMillis()));
+                    };
+                });
+    }
+
+    /** One batch of {@code n} readings; exposed for benchmarks that drive ingest without a stream. */
+    public SensorBatch nextBatch(SplittableRandom rnd, int n, long timestamp) {
+        SensorBatch.Builder batch = new SensorBatch.Builder(n);
+        for (int i = 0; i < n; i++) {
+            int kind = pick(kindCdf, rnd.nextDouble());
+            batch.add(pickGreenhouse(rnd), kind, sampleValue(kind, rnd), timestamp);
+        }
+        return batch.build();
+    }
+
+    private int pickGreenhouse(SplittableRandom rnd) {
+        if (popularityCdf == null) return rnd.nextInt(fleetSize);
+        return rankToGreenhouse[pick(popularityCdf, rnd.nextDouble())];
+    }
+
+    // Same ranges as SensorActor samples
+    private static double sampleValue(int kindOrdinal, SplittableRandom rnd) {
+        switch (SensorActor.Kind.ofOrdinal(kindOrdinal)) {
+            case Temperature: return 18 + rnd.nextDouble() * 15;
+            case Humidity: return 40 + rnd.nextDouble() * 50;
+            case SoilMoisture: return 10 + rnd.nextDouble() * 50;
+            default: return 0;
+        }
+    }
+
+    private static int pick(double[] cdf, double u) {
+        int i = Arrays.binarySearch(cdf, u);
+        i = i >= 0 ? i + 1 : -i - 1;
+        return Math.min(i, cdf.length - 1);
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double total = 0;
+        for (double w : weights) total += Math.max(0, w);
+        if (total <= 0) throw new IllegalArgumentException("weights must not all be zero");
+        double[] cdf = new double[weights.length];
+        double running = 0;
+        for (int i = 0; i < weights.length; i++) {
+            running += Math.max(0, weights[i]);
+            cdf[i] = running / total;
+        }
+        return cdf;
+    }
+
+    private static int[] shuffledIdentity(int n, SplittableRandom rnd) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) a[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = a[i]; a[i] = a[j]; a[j] = t;
+        }
+        return a;
+    }
+}
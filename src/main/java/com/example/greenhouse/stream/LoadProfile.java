@@ -0,0 +1,62 @@
+package com.example.greenhouse.stream;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/** Synthetic load shape, read from {@code greenhouse.load-generator}. */
+public final class LoadProfile {
+
+    public final boolean enabled;
+    public final double eventsPerSecond;
+    /** Greenhouses to spread load over; 0 means the configured topology. */
+    public final int fleetSize;
+    /** Relative weight per {@link SensorActor.Kind} ordinal. */
+    public final double[] kindWeights;
+    /** Zipf skew of greenhouse popularity; 0 is uniform. */
+    public final double zipfExponent;
+    public final long seed;
+    /** Independent generator substreams, each with its own RNG. */
+    public final int parallelism;
+    public final Duration tick;
+
+    public LoadProfile(boolean enabled, double eventsPerSecond, int fleetSize, double[] kindWeights,
+                       double zipfExponent, long seed, int parallelism, Duration tick) {
+        this.enabled = enabled;
+        this.eventsPerSecond = eventsPerSecond;
+        this.fleetSize = fleetSize;
+        this.kindWeights = kindWeights;
+        this.zipfExponent = zipfExponent;
+        this.seed = seed;
+        this.parallelism = parallelism;
+        this.tick = tick;
+    }
+
+    public static LoadProfile disabled() {
+        return new LoadProfile(false, 0, 0, new double[] {1, 1, 1}, 0, 0, 1, Duration.ofMillis(10));
+    }
+
+    public static LoadProfile fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.load-generator");
+        double[] weights = new double[SensorActor.Kind.count()];
+        Config mix = c.getConfig("kind-mix");
+        for (SensorActor.Kind kind : SensorActor.Kind.values()) {
+            weights[kind.ordinal()] = mix.hasPath(kind.wireName) ? mix.getDouble(kind.wireName) : 0.0;
+        }
+        return new LoadProfile(
+                c.getBoolean("enabled"),
+                c.getDouble("events-per-second"),
+                c.getInt("fleet-size"),
+                weights,
+                c.getDouble("zipf-exponent"),
+                c.getLong("seed"),
+                Math.max(1, c.getInt("parallelism")),
+                c.getDuration("tick"));
+    }
+
+    public String toString() {
+        return String.format("LoadProfile(%.0f ev/s, fleet=%d, zipf=%.2f, seed=%d, parallelism=%d, tick=%s)",
+                eventsPerSecond, fleetSize, zipfExponent, seed, parallelism, tick);
+    }
+}
@@ -1,32 +1,177 @@
 package com.example.greenhouse.stream;
 
+import akka.Done;
 import akka.NotUsed;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.japi.function.Creator;
+import akka.japi.function.Function;
+import akka.stream.RestartSettings;
 import akka.stream.javadsl.*;
 import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
 
 import java.time.Duration;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class SensorStream {
 
+    /** Fire-and-forget stream over a fixed list of greenhouses. */
     public static void run(ActorSystem<?> system,
                            ActorRef<DataProcessingManager.Command> dataRef,
                            List<String> greenhouseIds) {
         if (greenhouseIds.isEmpty()) return;
-        Random rnd = new Random();
+        IngestSettings settings = IngestSettings.fromConfig(system.settings().config());
+        withShards(system, dataRef, settings, shards -> randomEvents(greenhouseIds).map(ev -> {
+                shards.forGreenhouse(ev.greenhouseId).tell(new DataProcessingManager.SensorEnvelope(ev.greenhouseId, ev.kind, ev.value));
+                return Done.getInstance();
+            }))
+            .runWith(Sink.ignore(), system);
+    }
 
+    /** Stream over every greenhouse in the directory, ingested as configured under {@code greenhouse.ingest}. */
+    public static void run(ActorSystem<?> system,
+                           ActorRef<DataProcessingManager.Command> dataRef,
+                           GreenhouseDirectory directory) {
+        IngestSettings settings = IngestSettings.fromConfig(system.settings().config());
+        List<String> greenhouseIds = new java.util.ArrayList<>();
+        for (int i = 0; i < directory.size(); i++) greenhouseIds.add(directory.idAt(i));
+        if (settings.mode == IngestSettings.Mode.FIRE_AND_FORGET) {
+            run(system, dataRef, greenhouseIds);
+            return;
+        }
+        if (greenhouseIds.isEmpty()) return;
+        ingestWithRestarts(system, dataRef, settings, () -> randomEvents(greenhouseIds).via(batched(directory, settings)))
+            .runWith(Sink.ignore(), system)
+            .whenComplete((done, failure) -> {
+                if (failure != null) system.log().error("Sensor stream failed", failure);
+            });
+    }
+
+    /**
+     * Synthetic load over the first fleet-size greenhouses of the directory, ingested as configured under
+     * {@code greenhouse.ingest}. The achieved rate is logged every few seconds; in backpressure mode it
+     * drops below the target when ingest cannot keep up. A failed generator is restarted with backoff.
+     */
+    public static void runLoad(ActorSystem<?> system,
+                               ActorRef<DataProcessingManager.Command> dataRef,
+                               GreenhouseDirectory directory,
+                               LoadProfile profile) {
+        int fleet = profile.fleetSize > 0 ? Math.min(profile.fleetSize, directory.size()) : directory.size();
+        if (fleet == 0) return;
+        IngestSettings settings = IngestSettings.fromConfig(system.settings().config());
+        system.log().info("Starting load generator: {} over {} greenhouses, ingest {}", profile, fleet, settings.mode);
+
+        LongAdder generated = new LongAdder();
+        Duration reportEvery = Duration.ofSeconds(5);
+        var report = system.scheduler().scheduleAtFixedRate(reportEvery, reportEvery, () -> {
+            long n = generated.sumThenReset();
+            system.log().info("Load generator: {} readings/s", n / reportEvery.getSeconds());
+        }, system.executionContext());
+
+        Creator<Source<SensorBatch, NotUsed>> batches = () -> new LoadGenerator(profile, fleet).source()
+                .wireTap(batch -> generated.add(batch.size));
+        Source<Done, NotUsed> load = settings.mode == IngestSettings.Mode.BACKPRESSURE
+                ? ingestWithRestarts(system, dataRef, settings, batches)
+                : RestartSource.onFailuresWithBackoff(restartSettings(settings), () -> withShards(system, dataRef, settings, shards -> {
+                    DataProcessingManager.Shards.Splitter splitter = shards.splitter();
+                    return batches.create().map(batch -> {
+                        for (DataProcessingManager.Shards.Part part : splitter.split(batch)) shards.get(part.shard).tell(part.batch);
+                        return Done.getInstance();
+                    });
+                }));
+        load.runWith(Sink.ignore(), system).whenComplete((done, failure) -> {
+            report.cancel();
+            if (failure != null) system.log().error("Load generator failed", failure);
+        });
+    }
+
+    /** Groups events into columnar batches of up to batch-size readings, flushed every batch-window. */
+    public static Flow<SensorEvent, SensorBatch, NotUsed> batched(GreenhouseDirectory directory, IngestSettings settings) {
+        return Flow.<SensorEvent>create()
+            .groupedWithin(settings.batchSize, settings.batchWindow)
+            .map(events -> {
+                SensorBatch.Builder batch = new SensorBatch.Builder(events.size());
+                long now = System.currentTimeMillis();
+                for (SensorEvent ev : events) {
+                    int idx = directory.indexOf(ev.greenhouseId);
+                    SensorActor.Kind kind = SensorActor.Kind.fromWire(ev.kind);
+                    if (idx >= 0 && kind != null) batch.add(idx, kind.ordinal(), ev.value, now);
+                }
+                return batch.build();
+            })
+            .filter(batch -> !batch.isEmpty());
+    }
+
+    /**
+     * Batches from a fresh source per run, split per routing shard and asked into each shard by its own
+     * stage, so shards ingest side by side and nothing funnels through one mailbox. Every shard has at
+     * most max-in-flight batches unacknowledged, so a slow shard backpressures the source instead of
+     * growing mailboxes; its acks arrive in send order, which keeps per-greenhouse ordering. A timed out
+     * ack fails the run and the next one starts after restart-backoff: the timed out batch still waits in
+     * the shard's mailbox, so passing over it would keep adding batches every ack-timeout.
+     */
+    static Source<Done, NotUsed> ingestWithRestarts(ActorSystem<?> system,
+                                                    ActorRef<DataProcessingManager.Command> dataRef,
+                                                    IngestSettings settings,
+                                                    Creator<Source<SensorBatch, NotUsed>> batches) {
+        LongAdder ackTimeouts = new LongAdder();
+        return RestartSource.onFailuresWithBackoff(restartSettings(settings), () -> withShards(system, dataRef, settings,
+                shards -> batches.create().via(ingest(system, shards, settings, ackTimeouts))));
+    }
+
+    // A timed out ack is counted and fails the stage
+    private static Flow<SensorBatch, Done, NotUsed> ingest(ActorSystem<?> system,
+                                                           DataProcessingManager.Shards shards,
+                                                           IngestSettings settings,
+                                                           LongAdder ackTimeouts) {
+        DataProcessingManager.Shards.Splitter splitter = shards.splitter();
+        return Flow.<SensorBatch>create()
+            .mapConcat(splitter::split)
+            .groupBy(shards.count(), part -> part.shard)
+            .mapAsync(settings.maxInFlight, part -> AskPattern.<DataProcessingManager.Command, DataProcessingManager.IngestAck>ask(
+                    shards.get(part.shard),
+                    replyTo -> new DataProcessingManager.Ingest(part.batch, replyTo),
+                    settings.ackTimeout,
+                    system.scheduler())
+                .whenComplete((ack, failure) -> {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    if (cause instanceof TimeoutException) {
+                        ackTimeouts.increment();
+                        system.log().warn("Batch of {} readings not acked by shard {} within {} ms, restarting ingest ({} ack timeouts so far)",
+                                part.batch.size, part.shard, settings.ackTimeout.toMillis(), ackTimeouts.sum());
+                    }
+                })
+                .thenApply(ack -> Done.getInstance()))
+            .mergeSubstreams();
+    }
+
+    // Asks the tier for its shards once per run, so a run after a restart of the tier picks up the new ones
+    private static Source<Done, NotUsed> withShards(ActorSystem<?> system,
+                                                    ActorRef<DataProcessingManager.Command> dataRef,
+                                                    IngestSettings settings,
+                                                    Function<DataProcessingManager.Shards, Source<Done, NotUsed>> run) {
+        return Source.completionStage(AskPattern.<DataProcessingManager.Command, DataProcessingManager.Shards>ask(
+                    dataRef, DataProcessingManager.GetShards::new, settings.ackTimeout, system.scheduler()))
+            .flatMapConcat(run::apply);
+    }
+
+    private static RestartSettings restartSettings(IngestSettings settings) {
+        return RestartSettings.create(settings.restartBackoff, settings.restartBackoffMax, 0.2);
+    }
+
+    private static Source<SensorEvent, NotUsed> randomEvents(List<String> greenhouseIds) {
+        Random rnd = new Random();
         Source<Long, NotUsed> ticks = Source.tick(Duration.ofSeconds(1), Duration.ofSeconds(2), 1L)
                 .mapMaterializedValue(cancellable -> NotUsed.getInstance());
-
-        ticks
-            .map(t -> randomEvent(rnd, greenhouseIds))
-            .to(Sink.foreach(ev -> dataRef.tell(
-                    new DataProcessingManager.SensorEnvelope(ev.greenhouseId, ev.kind, ev.value)
-            )))
-            .run(system);
+        return ticks.map(t -> randomEvent(rnd, greenhouseIds));
     }
 
     private static SensorEvent randomEvent(Random rnd, List<String> greenhouseIds) {
@@ -51,4 +196,3 @@ public final class SensorStream {
         }
     }
 }
-
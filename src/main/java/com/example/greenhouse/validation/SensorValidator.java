@@ -0,0 +1,173 @@
+package com.example.greenhouse.validation;
+
+import com.example.greenhouse.actors.SensorBatch;
+
+import java.util.Arrays;
+
+/**
+ * Inline validation of sensor readings before they are routed. Each sensor (greenhouse index x kind)
+ * has a few primitives of state in flat arrays that grow with the directory. A reading is rejected when
+ * it is not a finite number, out of range, jumps from the last accepted reading by more than max-step
+ * (spike), changes faster than max-rate over the rate window, or repeats the same value stuck-readings
+ * times. A jump is accepted as the sensor's new level once settle-readings in a row agree on it.
+ *
+ * A sensor with quarantine-after faults is quarantined: all its readings are dropped until release-after
+ * consecutive valid ones arrive. Every fault is forgiven after release-after valid readings too. The
+ * listener hears about each transition. Validating does not allocate, except when a batch loses
+ * readings and has to be copied.
+ *
+ * Not thread safe: each routing shard owns one validator for its greenhouses.
+ */
+public final class SensorValidator {
+
+    public static final int VALID = 0;
+    public static final int NOT_A_NUMBER = 1;
+    public static final int OUT_OF_RANGE = 2;
+    public static final int SPIKE = 3;
+    public static final int RATE = 4;
+    public static final int STUCK = 5;
+    private static final String[] REASONS = {"valid", "not a number", "out of range", "spike", "rate of change", "stuck"};
+
+    /** Told when a sensor is quarantined (with the fault that tipped it) or released. */
+    @FunctionalInterface
+    public interface Listener {
+        void healthChanged(int greenhouse, int kind, boolean healthy, int reason);
+    }
+
+    private final ValidationSettings settings;
+    private final int kinds;
+    private final long rateWindowMillis;
+    // Per sensor, at greenhouse * kinds + kind
+    private double[] last = new double[0];
+    // Level a run of jumps agrees on, and how many readings of it so far
+    private double[] candidate = new double[0];
+    private int[] settling = new int[0];
+    private double[] anchor = new double[0];
+    private long[] anchorAt = new long[0];
+    private int[] repeats = new int[0];
+    private int[] faults = new int[0];
+    private int[] validStreak = new int[0];
+    private boolean[] quarantined = new boolean[0];
+    private final long[] rejected = new long[REASONS.length];
+    private long droppedWhileQuarantined;
+    private int quarantinedSensors;
+    private boolean[] keep = new boolean[64];
+
+    public SensorValidator(ValidationSettings settings, int kinds) {
+        this.settings = settings;
+        this.kinds = kinds;
+        this.rateWindowMillis = Math.max(1, settings.rateWindow.toMillis());
+    }
+
+    public static String describe(int reason) { return REASONS[reason]; }
+
+    /** The batch without rejected readings; the batch itself when every reading passed. */
+    public SensorBatch filter(SensorBatch batch, Listener listener) {
+        if (keep.length < batch.size) keep = new boolean[Math.max(batch.size, keep.length * 2)];
+        int kept = 0;
+        for (int i = 0; i < batch.size; i++) {
+            boolean ok = accept(batch.greenhouse[i], batch.kind[i], batch.value[i], batch.timestamp[i], listener);
+            keep[i] = ok;
+            if (ok) kept++;
+        }
+        if (kept == batch.size) return batch;
+        SensorBatch.Builder out = new SensorBatch.Builder(kept);
+        for (int i = 0; i < batch.size; i++) {
+            if (keep[i]) out.add(batch.greenhouse[i], batch.kind[i], batch.value[i], batch.timestamp[i]);
+        }
+        return out.build();
+    }
+
+    /** Validates one reading; false when it must not be acted on. */
+    public boolean accept(int greenhouse, int kind, double value, long timestamp, Listener listener) {
+        int s = greenhouse * kinds + kind;
+        if (s >= last.length) grow(s + 1);
+        int fault = check(s, kind, value, timestamp);
+        if (fault != VALID) {
+            rejected[fault]++;
+            validStreak[s] = 0;
+            if (++faults[s] >= settings.quarantineAfter && !quarantined[s]) {
+                quarantined[s] = true;
+                quarantinedSensors++;
+                listener.healthChanged(greenhouse, kind, false, fault);
+            }
+            return false;
+        }
+        if (++validStreak[s] >= settings.releaseAfter) {
+            faults[s] = 0;
+            if (quarantined[s]) {
+                quarantined[s] = false;
+                quarantinedSensors--;
+                listener.healthChanged(greenhouse, kind, true, VALID);
+            }
+        }
+        if (quarantined[s]) droppedWhileQuarantined++;
+        return !quarantined[s];
+    }
+
+    // Compared with the last reading within max-step, so a glitch does not make the next good reading a spike too
+    private int check(int s, int kind, double value, long timestamp) {
+        if (!Double.isFinite(value)) return NOT_A_NUMBER;
+        if (value < settings.min(kind) || value > settings.max(kind)) return OUT_OF_RANGE;
+        double previous = last[s];
+        if (Double.isNaN(previous)) return settle(s, value, timestamp);
+        if (Math.abs(value - previous) > settings.maxStep(kind)) {
+            if (settling[s] == 0 || Math.abs(value - candidate[s]) > settings.maxStep(kind)) settling[s] = 0;
+            candidate[s] = value;
+            return ++settling[s] < settings.settleReadings ? SPIKE : settle(s, value, timestamp);
+        }
+        settling[s] = 0;
+        last[s] = value;
+        if (value == previous) {
+            if (++repeats[s] >= settings.stuckReadings - 1) return STUCK;
+        } else {
+            repeats[s] = 0;
+        }
+        long elapsed = timestamp - anchorAt[s];
+        if (elapsed >= rateWindowMillis) {
+            double rate = Math.abs(value - anchor[s]) * 1000 / elapsed;
+            anchor[s] = value;
+            anchorAt[s] = timestamp;
+            if (rate > settings.maxRate(kind)) return RATE;
+        }
+        return VALID;
+    }
+
+    // First reading, or a new level: the rate is measured from here
+    private int settle(int s, double value, long timestamp) {
+        last[s] = value;
+        settling[s] = 0;
+        repeats[s] = 0;
+        anchor[s] = value;
+        anchorAt[s] = timestamp;
+        return VALID;
+    }
+
+    private void grow(int min) {
+        int n = Math.max(min, Math.max(64, last.length * 2));
+        int from = last.length;
+        last = Arrays.copyOf(last, n);
+        Arrays.fill(last, from, n, Double.NaN);
+        candidate = Arrays.copyOf(candidate, n);
+        settling = Arrays.copyOf(settling, n);
+        anchor = Arrays.copyOf(anchor, n);
+        anchorAt = Arrays.copyOf(anchorAt, n);
+        repeats = Arrays.copyOf(repeats, n);
+        faults = Arrays.copyOf(faults, n);
+        validStreak = Arrays.copyOf(validStreak, n);
+        quarantined = Arrays.copyOf(quarantined, n);
+    }
+
+    public boolean isQuarantined(int greenhouse, int kind) {
+        int s = greenhouse * kinds + kind;
+        return s < quarantined.length && quarantined[s];
+    }
+
+    public int quarantinedSensors() { return quarantinedSensors; }
+
+    /** Readings rejected for a reason ({@link #NOT_A_NUMBER} .. {@link #STUCK}). */
+    public long rejected(int reason) { return rejected[reason]; }
+
+    /** Valid readings dropped because their sensor was still quarantined. */
+    public long droppedWhileQuarantined() { return droppedWhileQuarantined; }
+}
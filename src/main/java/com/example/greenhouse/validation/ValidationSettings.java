@@ -0,0 +1,70 @@
+package com.example.greenhouse.validation;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.List;
+
+/** Ingest-time validation of sensor readings, read from {@code greenhouse.validation}. Limits are indexed by kind ordinal. */
+public final class ValidationSettings {
+
+    public final boolean enabled;
+    private final double[] min;
+    private final double[] max;
+    /** Largest believable change between two consecutive readings of a sensor. */
+    private final double[] maxStep;
+    /** Largest believable change per second, measured over at least {@link #rateWindow}. */
+    private final double[] maxRate;
+    public final Duration rateWindow;
+    /** This many identical consecutive readings mean the sensor is stuck. */
+    public final int stuckReadings;
+    /** Faulty readings (without enough valid ones in between) before a sensor is quarantined. */
+    public final int quarantineAfter;
+    /** Consecutive valid readings before a quarantined sensor is trusted again. */
+    public final int releaseAfter;
+    /** Consecutive readings, agreeing within max-step, that make a jump a new level rather than a spike. */
+    public final int settleReadings;
+
+    public ValidationSettings(boolean enabled, double[] min, double[] max, double[] maxStep, double[] maxRate, Duration rateWindow,
+                              int stuckReadings, int quarantineAfter, int releaseAfter, int settleReadings) {
+        if (settleReadings < 1) throw new IllegalArgumentException("greenhouse.validation.settle-readings must be positive: " + settleReadings);
+        this.enabled = enabled;
+        this.min = min.clone();
+        this.max = max.clone();
+        this.maxStep = maxStep.clone();
+        this.maxRate = maxRate.clone();
+        this.rateWindow = rateWindow;
+        this.stuckReadings = stuckReadings;
+        this.quarantineAfter = quarantineAfter;
+        this.releaseAfter = releaseAfter;
+        this.settleReadings = settleReadings;
+    }
+
+    public static ValidationSettings fromConfig(Config config) {
+        Config c = config.getConfig("greenhouse.validation");
+        int kinds = SensorActor.Kind.count();
+        double[] min = new double[kinds];
+        double[] max = new double[kinds];
+        double[] maxStep = new double[kinds];
+        double[] maxRate = new double[kinds];
+        for (SensorActor.Kind k : SensorActor.Kind.values()) {
+            List<Double> range = c.getDoubleList("ranges." + k.wireName);
+            if (range.size() != 2) throw new IllegalArgumentException("greenhouse.validation.ranges." + k.wireName + " must be [min, max]");
+            min[k.ordinal()] = range.get(0);
+            max[k.ordinal()] = range.get(1);
+            maxStep[k.ordinal()] = c.getDouble("max-step." + k.wireName);
+            maxRate[k.ordinal()] = c.getDouble("max-rate-per-second." + k.wireName);
+        }
+        return new ValidationSettings(c.getBoolean("enabled"), min, max, maxStep, maxRate, c.getDuration("rate-window"),
+                c.getInt("stuck-readings"), c.getInt("quarantine-after"), c.getInt("release-after"), c.getInt("settle-readings"));
+    }
+
+    public double min(int kind) { return min[kind]; }
+
+    public double max(int kind) { return max[kind]; }
+
+    public double maxStep(int kind) { return maxStep[kind]; }
+
+    public double maxRate(int kind) { return maxRate[kind]; }
+}
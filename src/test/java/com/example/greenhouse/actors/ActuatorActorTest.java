@@ -0,0 +1,223 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.example.greenhouse.device.ActuatorDevice;
+import com.example.greenhouse.device.ActuatorDriver;
+import com.example.greenhouse.device.ActuatorSettings;
+import com.example.greenhouse.device.BlockingDevice;
+import com.example.greenhouse.device.DeviceDrivers;
+import com.example.greenhouse.device.FakeDeviceServer;
+import com.example.greenhouse.device.FakeTcpDriver;
+import com.example.greenhouse.device.SimulatedDevice;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ActuatorActorTest {
+
+    private static ActorTestKit testKit;
+    private static ScheduledExecutorService deviceTimer;
+
+    @BeforeAll
+    static void setup() {
+        testKit = ActorTestKit.create();
+        deviceTimer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        testKit.shutdownTestKit();
+        deviceTimer.shutdownNow();
+    }
+
+    @Test
+    void coalescesChangesAndKeepsToTheDeviceRate() {
+        ActuatorSettings settings = ActuatorSettings.immediate().withCoalesceWindow(Duration.ofMillis(100)).withMaxCommandsPerSecond(4)
+                .withRetries(Duration.ofSeconds(1), 3, Duration.ofMillis(50));
+        SimulatedDevice device = new SimulatedDevice(Duration.ofMillis(5), Duration.ZERO, 0, deviceTimer, 1);
+        ActorRef<ActuatorActor.Command> fan = testKit.spawn(ActuatorActor.create("gh-0", ActuatorActor.Type.Fan, (g, t) -> device, settings));
+        TestProbe<ActuatorActor.Stats> probe = testKit.createTestProbe();
+
+        // 101 changes within the window: one command with the last position
+        for (int i = 0; i <= 100; i++) fan.tell(new ActuatorActor.Switch(i % 2 == 0));
+        probe.awaitAssert(() -> {
+            fan.tell(new ActuatorActor.GetStats(probe.getRef()));
+            ActuatorActor.Stats stats = probe.receiveMessage();
+            assertEquals(101, stats.requested);
+            assertEquals(1, stats.sent);
+            assertTrue(stats.confirmed && stats.on);
+            return null;
+        });
+
+        // Changes keep coming: at most 4 commands a second reach the device
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            fan.tell(new ActuatorActor.Switch(i % 2 == 0));
+            try { Thread.sleep(50); } catch (InterruptedException e) { throw new RuntimeException(e); }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        fan.tell(new ActuatorActor.GetStats(probe.getRef()));
+        long sent = probe.receiveMessage().sent - 1;
+        assertTrue(sent <= 4 * seconds + 1, sent + " commands in " + seconds + " s");
+        probe.awaitAssert(() -> {
+            fan.tell(new ActuatorActor.GetStats(probe.getRef()));
+            assertFalse(probe.receiveMessage().on);
+            assertFalse(device.isOn());
+            return null;
+        });
+    }
+
+    @Test
+    void retriesUnacknowledgedCommandsWithoutApplyingThemTwice() {
+        ActuatorSettings settings = ActuatorSettings.immediate().withMaxCommandsPerSecond(1000)
+                .withRetries(Duration.ofMillis(50), 20, Duration.ofMillis(10));
+        // Half the commands lose their command, their ack, or fail
+        SimulatedDevice device = new SimulatedDevice(Duration.ofMillis(2), Duration.ofMillis(3), 0.5, deviceTimer, 7);
+        ActorRef<ActuatorActor.Command> heater = testKit.spawn(ActuatorActor.create("gh-0", ActuatorActor.Type.Heater, (g, t) -> device, settings));
+        TestProbe<ActuatorActor.Stats> probe = testKit.createTestProbe();
+
+        for (int i = 0; i < 20; i++) {
+            boolean on = i % 2 == 0;
+            heater.tell(new ActuatorActor.Switch(on));
+            probe.awaitAssert(Duration.ofSeconds(5), () -> {
+                heater.tell(new ActuatorActor.GetStats(probe.getRef()));
+                ActuatorActor.Stats stats = probe.receiveMessage();
+                assertTrue(stats.confirmed);
+                assertEquals(on, stats.on);
+                return null;
+            });
+            assertEquals(on, device.isOn());
+        }
+        heater.tell(new ActuatorActor.GetStats(probe.getRef()));
+        ActuatorActor.Stats stats = probe.receiveMessage();
+        assertEquals(0, stats.failed);
+        assertTrue(stats.retries > 0);
+        assertEquals(20, stats.sent);
+        assertEquals(20, device.applied()); // resends of applied commands were recognized as duplicates
+    }
+
+    @Test
+    void runsBlockingDriversOnTheirExecutorAgainstTheFakeGateway() throws Exception {
+        ActuatorSettings settings = ActuatorSettings.immediate().withMaxCommandsPerSecond(1000)
+                .withRetries(Duration.ofSeconds(1), 3, Duration.ofMillis(10));
+        ExecutorService drivers = Executors.newFixedThreadPool(4, r -> new Thread(r, "test-driver"));
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (FakeDeviceServer server = FakeDeviceServer.start("127.0.0.1", 0, Duration.ofMillis(20))) {
+            FakeTcpDriver.Provider provider = (FakeTcpDriver.Provider) DeviceDrivers.provider("fake-tcp");
+            provider.configure(ConfigFactory.parseString("fake-tcp { host = \"127.0.0.1\", port = " + server.port()
+                    + ", start-server = false, latency = 0ms, connections = 2, read-timeout = 1s }"));
+            ActorRef<ActuatorActor.Command> irrigation = testKit.spawn(ActuatorActor.create("gh-3", ActuatorActor.Type.Irrigation,
+                    (g, t) -> new BlockingDevice(() -> {
+                        ActuatorDriver driver = provider.open(g, t);
+                        return (seq, on) -> {
+                            threads.add(Thread.currentThread().getName());
+                            return driver.apply(seq, on);
+                        };
+                    }, drivers), settings));
+            TestProbe<ActuatorActor.Stats> probe = testKit.createTestProbe();
+
+            irrigation.tell(new ActuatorActor.Switch(true));
+            probe.awaitAssert(() -> {
+                irrigation.tell(new ActuatorActor.GetStats(probe.getRef()));
+                assertTrue(probe.receiveMessage().on);
+                return null;
+            });
+            assertTrue(server.isOn("gh-3/irrigation"));
+            assertEquals(Set.of("test-driver"), threads);
+        } finally {
+            drivers.shutdownNow();
+        }
+    }
+
+    @Test
+    void closesItsDriverOnTheDriverExecutorWhenStopped() {
+        ActuatorSettings settings = ActuatorSettings.immediate().withMaxCommandsPerSecond(1000)
+                .withRetries(Duration.ofSeconds(1), 3, Duration.ofMillis(10));
+        ExecutorService drivers = Executors.newSingleThreadExecutor(r -> new Thread(r, "test-driver"));
+        AtomicReference<String> closedOn = new AtomicReference<>();
+        try {
+            ActorRef<ActuatorActor.Command> fan = testKit.spawn(ActuatorActor.create("gh-4", ActuatorActor.Type.Fan,
+                    (g, t) -> new BlockingDevice(() -> new ActuatorDriver() {
+                        @Override
+                        public boolean apply(long seq, boolean on) { return on; }
+
+                        @Override
+                        public void close() { closedOn.set(Thread.currentThread().getName()); }
+                    }, drivers), settings));
+            TestProbe<ActuatorActor.Stats> probe = testKit.createTestProbe();
+            fan.tell(new ActuatorActor.Switch(true));
+            probe.awaitAssert(() -> {
+                fan.tell(new ActuatorActor.GetStats(probe.getRef()));
+                assertTrue(probe.receiveMessage().on);
+                return null;
+            });
+            assertNull(closedOn.get());
+
+            testKit.stop(fan);
+            probe.awaitAssert(() -> {
+                assertEquals("test-driver", closedOn.get());
+                return null;
+            });
+        } finally {
+            drivers.shutdownNow();
+        }
+    }
+
+    @Test
+    void keepsSendingTheRequestedPositionUntilAnUnreachableDeviceRecovers() {
+        ActuatorSettings settings = ActuatorSettings.immediate().withMaxCommandsPerSecond(1000)
+                .withRetries(Duration.ofMillis(50), 2, Duration.ofMillis(10)).withRecoveryBackoff(Duration.ofMillis(100), Duration.ofMillis(200));
+        AtomicBoolean reachable = new AtomicBoolean(false);
+        AtomicBoolean on = new AtomicBoolean(false);
+        AtomicInteger attempts = new AtomicInteger();
+        ActuatorDevice device = command -> {
+            attempts.incrementAndGet();
+            if (!reachable.get()) return CompletableFuture.failedFuture(new IOException("unreachable"));
+            on.set(command.on);
+            return CompletableFuture.completedFuture(new ActuatorDevice.Ack(command.seq, command.on));
+        };
+        ActorRef<ActuatorActor.Command> fan = testKit.spawn(ActuatorActor.create("gh-0", ActuatorActor.Type.Fan, (g, t) -> device, settings));
+        TestProbe<ActuatorActor.Stats> probe = testKit.createTestProbe();
+
+        fan.tell(new ActuatorActor.Switch(true));
+        // Every attempt fails: the retries are used up more than once, and the position is still sent again
+        probe.awaitAssert(Duration.ofSeconds(3), () -> {
+            fan.tell(new ActuatorActor.GetStats(probe.getRef()));
+            ActuatorActor.Stats stats = probe.receiveMessage();
+            assertTrue(stats.failed >= 2, stats.failed + " give-ups");
+            assertFalse(stats.confirmed);
+            return null;
+        });
+        assertTrue(attempts.get() >= 6, attempts.get() + " attempts");
+
+        // No new request comes: the device gets the pending position once it is back
+        reachable.set(true);
+        probe.awaitAssert(Duration.ofSeconds(3), () -> {
+            fan.tell(new ActuatorActor.GetStats(probe.getRef()));
+            ActuatorActor.Stats stats = probe.receiveMessage();
+            assertTrue(stats.confirmed && stats.on);
+            return null;
+        });
+        assertTrue(on.get());
+        int settled = attempts.get();
+        probe.expectNoMessage(Duration.ofMillis(400));
+        assertEquals(settled, attempts.get()); // nothing more once acknowledged
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.ActorRef;
+import akka.dispatch.Envelope;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlFirstMailboxTest {
+
+    private static ControlFirstMailbox.Queue queue(int capacity, int readingsPerKind) {
+        return new ControlFirstMailbox.Queue(capacity, readingsPerKind, null);
+    }
+
+    private static void tell(ControlFirstMailbox.Queue q, Object message) {
+        q.enqueue(ActorRef.noSender(), Envelope.apply(message, ActorRef.noSender()));
+    }
+
+    private static List<Object> drain(ControlFirstMailbox.Queue q) {
+        List<Object> out = new ArrayList<>();
+        Envelope e;
+        while ((e = q.dequeue()) != null) out.add(e.message());
+        return out;
+    }
+
+    private static GreenhouseActor.SensorReading reading(String kind, double value) {
+        return new GreenhouseActor.SensorReading("gh-0-" + kind, kind, value);
+    }
+
+    @Test
+    void controlOvertakesQueriesWhichOvertakeReadings() {
+        ControlFirstMailbox.Queue q = queue(10, 10);
+        var r1 = reading("temperature", 1);
+        var r2 = reading("humidity", 2);
+        var query = new GreenhouseActor.GetControlStats(null);
+        var decision = new GreenhouseActor.ControlDecision(GreenhouseActor.ControlDecision.Action.TURN_ON_FAN);
+        var init = new GreenhouseActor.Initialize();
+        tell(q, r1);
+        tell(q, query);
+        tell(q, r2);
+        tell(q, decision);
+        tell(q, init);
+
+        assertEquals(5, q.numberOfMessages());
+        // Each lane in arrival order, readings of different kinds too
+        assertEquals(List.of(decision, init, query, r1, r2), drain(q));
+        assertFalse(q.hasMessages());
+    }
+
+    @Test
+    void aFullKindDropsItsOldestReading() {
+        ControlFirstMailbox.Queue q = queue(10, 2);
+        var t1 = reading("temperature", 1);
+        var t2 = reading("temperature", 2);
+        var t3 = reading("temperature", 3);
+        var soil = reading("soil", 40);
+        tell(q, t1);
+        tell(q, soil);
+        tell(q, t2);
+        tell(q, t3);
+
+        assertEquals(1, q.dropped());
+        // The soil reading survives the temperature burst
+        assertEquals(List.of(soil, t2, t3), drain(q));
+    }
+
+    @Test
+    void batchesGiveUpOnlyTheirSupersededReadingsAndOtherMessagesAreBoundedByCapacity() {
+        ControlFirstMailbox.Queue q = queue(2, 1);
+        long now = System.currentTimeMillis();
+        int temperature = SensorActor.Kind.Temperature.ordinal();
+        int humidity = SensorActor.Kind.Humidity.ordinal();
+        SensorBatch temperatures = new SensorBatch.Builder(2).add(0, temperature, 20, now).add(0, temperature, 21, now).build();
+        SensorBatch mixed = new SensorBatch.Builder(2).add(0, temperature, 22, now).add(0, humidity, 50, now).build();
+        SensorBatch newerTemperatures = new SensorBatch.Builder(1).add(0, temperature, 23, now).build();
+        tell(q, temperatures);
+        tell(q, mixed);
+        tell(q, newerTemperatures);
+        tell(q, new GreenhouseActor.GetControlStats(null));
+        tell(q, new GreenhouseActor.GetControlStats(null));
+        tell(q, new GreenhouseActor.GetControlStats(null));
+
+        // Three temperatures superseded, one query over capacity
+        assertEquals(4, q.dropped());
+        List<Object> out = drain(q);
+        assertEquals(4, out.size());
+        // The humidity reading of the mixed batch stays, ahead of the newer temperature
+        SensorBatch left = (SensorBatch) out.get(2);
+        assertEquals(1, left.size);
+        assertEquals(humidity, left.kind[0]);
+        assertEquals(50, left.value[0], 0.0);
+        assertSame(newerTemperatures, out.get(3));
+    }
+
+    @Test
+    void timersAndDeviceRepliesAreNeverDroppedAndGoBeforeQueries() {
+        ControlFirstMailbox.Queue q = queue(1, 1);
+        var query = new GreenhouseActor.GetControlStats(null);
+        var rejected = new GreenhouseActor.GetControlStats(null);
+        tell(q, query);
+        tell(q, rejected);
+        List<Object> internal = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            var signal = new ActuatorLink.Signal(ActuatorActor.Type.Fan, ActuatorLink.Signal.FLUSH, 0, i, null, null);
+            internal.add(signal);
+            tell(q, signal);
+        }
+
+        assertEquals(1, q.dropped());
+        List<Object> expected = new ArrayList<>(internal);
+        expected.add(query);
+        assertEquals(expected, drain(q));
+    }
+
+    @Test
+    void stopIsNeverDroppedAndLeavesAfterEarlierReadings() {
+        ControlFirstMailbox.Queue q = queue(1, 1);
+        var t1 = reading("temperature", 1);
+        var stop = new GreenhouseActor.Stop();
+        var t2 = reading("humidity", 2);
+        var query = new GreenhouseActor.GetControlStats(null);
+        tell(q, t1);
+        tell(q, stop);
+        tell(q, t2);
+        tell(q, query);
+
+        assertEquals(0, q.dropped());
+        assertEquals(List.of(query, t1, stop, t2), drain(q));
+    }
+}
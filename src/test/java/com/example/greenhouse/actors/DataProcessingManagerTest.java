@@ -3,10 +3,18 @@ package com.example.greenhouse.actors;
 import akka.actor.testkit.typed.javadsl.ActorTestKit;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.ActorRef;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.journal.GreenhouseState;
+import com.example.greenhouse.validation.ValidationSettings;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class DataProcessingManagerTest {
@@ -37,5 +45,322 @@ public class DataProcessingManagerTest {
         assertEquals("temperature", reading.kind);
         assertEquals(31.2, reading.value, 0.0001);
     }
-}
 
+    @Test
+    void shardedTierKeepsPerGreenhouseOrdering() {
+        DataProcessingManager.Shards shards = shardsOf(testKit.spawn(DataProcessingManager.create(4)));
+        TestProbe<GreenhouseActor.Command> gh0 = testKit.createTestProbe();
+        TestProbe<GreenhouseActor.Command> gh1 = testKit.createTestProbe();
+
+        shards.forGreenhouse("eu-west-site-1-gh-0").tell(new DataProcessingManager.RegisterGreenhouse("eu-west-site-1-gh-0", gh0.getRef()));
+        shards.forGreenhouse("eu-west-site-1-gh-1").tell(new DataProcessingManager.RegisterGreenhouse("eu-west-site-1-gh-1", gh1.getRef()));
+
+        for (int i = 0; i < 20; i++) {
+            shards.forGreenhouse("eu-west-site-1-gh-0").tell(new DataProcessingManager.SensorEnvelope("eu-west-site-1-gh-0", "humidity", i));
+            shards.forGreenhouse("eu-west-site-1-gh-1").tell(new DataProcessingManager.SensorEnvelope("eu-west-site-1-gh-1", "soil", i));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, gh0.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+            assertEquals(i, gh1.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        }
+    }
+
+    @Test
+    void splitsSensorBatchPerGreenhouse() {
+        GreenhouseDirectory directory = new GreenhouseDirectory(java.util.List.of("gh-a", "gh-b"));
+        DataProcessingManager.Shards shards = shardsOf(testKit.spawn(DataProcessingManager.create(2, directory)));
+        TestProbe<GreenhouseActor.Command> ghA = testKit.createTestProbe();
+        TestProbe<GreenhouseActor.Command> ghB = testKit.createTestProbe();
+        register(shards, "gh-a", ghA);
+        register(shards, "gh-b", ghB);
+
+        int temperature = SensorActor.Kind.Temperature.ordinal();
+        send(shards, new SensorBatch.Builder(4)
+                .add(0, temperature, 21.0, 1L)
+                .add(1, temperature, 22.0, 2L)
+                .add(0, temperature, 23.0, 3L)
+                .add(1, temperature, 24.0, 4L)
+                .build());
+
+        SensorBatch a = ghA.expectMessageClass(SensorBatch.class);
+        assertEquals(2, a.size);
+        assertEquals(21.0, a.value[0], 0.0001);
+        assertEquals(23.0, a.value[1], 0.0001);
+        SensorBatch b = ghB.expectMessageClass(SensorBatch.class);
+        assertEquals(2, b.size);
+        assertEquals(4L, b.timestamp[1]);
+    }
+
+    @Test
+    void sendsAGreenhouseOneBatchInOrderAndItsMailboxDropsOnlySupersededReadings() {
+        GreenhouseDirectory directory = new GreenhouseDirectory(java.util.List.of("gh-a"));
+        DataProcessingManager.Shards shards = shardsOf(testKit.spawn(DataProcessingManager.create(2, directory)));
+        TestProbe<GreenhouseActor.Command> gh = testKit.createTestProbe();
+        register(shards, "gh-a", gh);
+
+        int temperature = SensorActor.Kind.Temperature.ordinal();
+        int humidity = SensorActor.Kind.Humidity.ordinal();
+        int soil = SensorActor.Kind.SoilMoisture.ordinal();
+        send(shards, new SensorBatch.Builder(3).add(0, temperature, 20, 1).add(0, soil, 40, 1).add(0, temperature, 20.5, 2).build());
+        send(shards, new SensorBatch.Builder(2).add(0, temperature, 21, 3).add(0, humidity, 50, 3).build());
+
+        // What the shard sent, queued in a greenhouse mailbox holding one reading per kind
+        ControlFirstMailbox.Queue mailbox = new ControlFirstMailbox.Queue(10, 1, null);
+        SensorBatch first = gh.expectMessageClass(SensorBatch.class);
+        assertArrayEquals(new double[] {20, 40, 20.5}, first.value, 0.0);
+        mailbox.enqueue(akka.actor.ActorRef.noSender(), akka.dispatch.Envelope.apply(first, akka.actor.ActorRef.noSender()));
+        mailbox.enqueue(akka.actor.ActorRef.noSender(), akka.dispatch.Envelope.apply(gh.expectMessageClass(SensorBatch.class),
+                akka.actor.ActorRef.noSender()));
+        gh.expectNoMessage(Duration.ofMillis(100));
+
+        // Only the older temperatures were superseded; the soil reading of the first batch is still there, ahead of the rest
+        assertEquals(2, mailbox.dropped());
+        List<Double> left = new ArrayList<>();
+        akka.dispatch.Envelope e;
+        while ((e = mailbox.dequeue()) != null) {
+            SensorBatch part = (SensorBatch) e.message();
+            for (int r = 0; r < part.size; r++) left.add(part.value[r]);
+        }
+        assertEquals(List.of(40.0, 21.0, 50.0), left);
+    }
+
+    @Test
+    void splitsIngestPerShardAndEachShardAcksItsPart() {
+        GreenhouseDirectory directory = new GreenhouseDirectory();
+        ActorRef<DataProcessingManager.Command> data = testKit.spawn(DataProcessingManager.create(4, directory));
+        DataProcessingManager.Shards shards = shardsOf(data);
+        TestProbe<DataProcessingManager.IngestAck> ackProbe = testKit.createTestProbe();
+        SensorBatch.Builder batch = new SensorBatch.Builder(16);
+        for (int g = 0; g < 16; g++) {
+            String id = "site-0-gh-" + g;
+            data.tell(new DataProcessingManager.RegisterGreenhouse(id, testKit.<GreenhouseActor.Command>createTestProbe().getRef()));
+            batch.add(directory.register(id), SensorActor.Kind.Humidity.ordinal(), 60.0, g);
+        }
+
+        List<DataProcessingManager.Shards.Part> parts = shards.splitter().split(batch.build());
+        assertTrue(parts.size() > 1, "16 greenhouses on one of 4 shards");
+        int readings = 0;
+        for (DataProcessingManager.Shards.Part part : parts) {
+            for (int i = 0; i < part.batch.size; i++) {
+                assertEquals(part.shard, DataProcessingManager.shardFor(directory.idAt(part.batch.greenhouse[i]), 4));
+            }
+            shards.get(part.shard).tell(new DataProcessingManager.Ingest(part.batch, ackProbe.getRef()));
+            readings += part.batch.size;
+        }
+        assertEquals(16, readings);
+
+        int acked = 0;
+        for (int i = 0; i < parts.size(); i++) acked += ackProbe.expectMessageClass(DataProcessingManager.IngestAck.class).readings;
+        assertEquals(16, acked);
+        ackProbe.expectNoMessage();
+    }
+
+    @Test
+    void shardsRecordLatestValues() {
+        GreenhouseDirectory directory = new GreenhouseDirectory(java.util.List.of("gh-a", "gh-b", "gh-c"));
+        LatestValueTable latest = new LatestValueTable(SensorActor.Kind.count());
+        DataProcessingManager.Shards shards = shardsOf(testKit.spawn(DataProcessingManager.create(3, DataProcessingManager.Options.of(directory).withLatest(latest))));
+        TestProbe<DataProcessingManager.IngestAck> ackProbe = testKit.createTestProbe();
+
+        int humidity = SensorActor.Kind.Humidity.ordinal();
+        List<DataProcessingManager.Shards.Part> parts = shards.splitter().split(new SensorBatch.Builder(4)
+                .add(0, humidity, 40.0, 1L)
+                .add(1, humidity, 50.0, 1L)
+                .add(0, humidity, 41.0, 2L)
+                .add(2, SensorActor.Kind.SoilMoisture.ordinal(), 30.0, 2L)
+                .build());
+        for (DataProcessingManager.Shards.Part part : parts) shards.get(part.shard).tell(new DataProcessingManager.Ingest(part.batch, ackProbe.getRef()));
+        for (int i = 0; i < parts.size(); i++) ackProbe.expectMessageClass(DataProcessingManager.IngestAck.class);
+        shards.forGreenhouse("gh-b").tell(new DataProcessingManager.SensorEnvelope("gh-b", "temperature", 18.5));
+
+        LatestValueTable.Snapshot snapshot = latest.snapshot();
+        assertEquals(41.0, snapshot.value(0, humidity), 0.0);
+        assertEquals(50.0, snapshot.value(1, humidity), 0.0);
+        assertEquals(30.0, snapshot.value(2, SensorActor.Kind.SoilMoisture.ordinal()), 0.0);
+        ackProbe.awaitAssert(() -> {
+            assertEquals(18.5, latest.value(1, SensorActor.Kind.Temperature.ordinal()), 0.0);
+            return null;
+        });
+    }
+
+    @Test
+    void shardsDropInvalidReadingsAndQuarantineFaultySensors() {
+        GreenhouseDirectory directory = new GreenhouseDirectory(java.util.List.of("gh-a", "gh-b"));
+        LatestValueTable latest = new LatestValueTable(SensorActor.Kind.count());
+        ValidationSettings validation = new ValidationSettings(true, new double[] {-30, 0, 0}, new double[] {70, 100, 100},
+                new double[] {20, 60, 60}, new double[] {2, 6, 6}, Duration.ofSeconds(10), 50, 2, 3, 3);
+        DataProcessingManager.Shards shards = shardsOf(testKit.spawn(DataProcessingManager.create(2,
+                DataProcessingManager.Options.of(directory).withLatest(latest).withValidation(validation))));
+        TestProbe<GreenhouseActor.Command> a = testKit.createTestProbe();
+        TestProbe<GreenhouseActor.Command> b = testKit.createTestProbe();
+        register(shards, "gh-a", a);
+        register(shards, "gh-b", b);
+
+        int temperature = SensorActor.Kind.Temperature.ordinal();
+        send(shards, new SensorBatch.Builder(3).add(0, temperature, 21.0, 1).add(1, temperature, 900.0, 1).add(1, temperature, 22.0, 1).build());
+        SensorBatch routed = a.expectMessageClass(SensorBatch.class);
+        assertEquals(1, routed.size);
+        assertEquals(22.0, b.expectMessageClass(SensorBatch.class).value[0], 0.0);
+
+        // A second fault quarantines gh-b's temperature sensor: the greenhouse is told, nothing is routed
+        send(shards, new SensorBatch.Builder(1).add(1, temperature, Double.NaN, 2).build());
+        GreenhouseActor.SensorHealth health = b.expectMessageClass(GreenhouseActor.SensorHealth.class);
+        assertEquals(SensorActor.Kind.Temperature, health.kind);
+        assertFalse(health.healthy);
+        assertEquals("not a number", health.reason);
+        send(shards, new SensorBatch.Builder(1).add(1, temperature, 23.0, 3).build());
+        b.expectNoMessage(Duration.ofMillis(100));
+        assertEquals(22.0, latest.value(1, temperature), 0.0);
+    }
+
+    @Test
+    void holdsMessagesOfPassivatedGreenhouseUntilItIsRevived() {
+        String greenhouseId = "eu-west-site-2-gh-0";
+        ActorRef<DataProcessingManager.Command> data = shardsOf(testKit.spawn(DataProcessingManager.create(2))).forGreenhouse(greenhouseId);
+        TestProbe<GreenhouseActor.Command> greenhouse = testKit.createTestProbe();
+        TestProbe<SiteManager.Command> site = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, greenhouse.getRef()));
+
+        data.tell(new DataProcessingManager.Passivate(greenhouseId, greenhouse.getRef(), site.getRef()));
+        greenhouse.expectMessageClass(GreenhouseActor.Stop.class);
+        GreenhouseState snapshot = new GreenhouseState();
+        data.tell(new DataProcessingManager.Passivated(greenhouseId, snapshot));
+        site.expectNoMessage(Duration.ofMillis(100));
+
+        // The first message revives it, the rest wait with it
+        for (int i = 0; i < 3; i++) data.tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "soil", i));
+        SiteManager.Revive revive = site.expectMessageClass(SiteManager.Revive.class);
+        assertEquals(greenhouseId, revive.greenhouseId);
+        assertEquals(greenhouse.getRef().path().name(), revive.name);
+        assertSame(snapshot, revive.snapshot);
+        greenhouse.expectNoMessage(Duration.ofMillis(100));
+
+        TestProbe<GreenhouseActor.Command> revived = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, revived.getRef()));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, revived.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        }
+        data.tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "soil", 3));
+        assertEquals(3, revived.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        site.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    @Test
+    void holdsAtMostTheRevivalBufferCountedInReadings() {
+        GreenhouseDirectory directory = new GreenhouseDirectory(List.of("gh-a"));
+        ActorRef<DataProcessingManager.Command> data = testKit.spawn(DataProcessingManager.create(1, directory));
+        TestProbe<SiteManager.Command> site = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterDormant("gh-a", "gh-a", site.getRef()));
+
+        SensorBatch.Builder builder = new SensorBatch.Builder(600);
+        for (int i = 0; i < 600; i++) builder.add(0, SensorActor.Kind.Temperature.ordinal(), 20, i);
+        SensorBatch batch = builder.build();
+        data.tell(batch);
+        data.tell(batch); // 1,200 readings would not fit
+        data.tell(new DataProcessingManager.SensorEnvelope("gh-a", "soil", 40)); // one more does
+        site.expectMessageClass(SiteManager.Revive.class);
+
+        TestProbe<GreenhouseActor.Command> greenhouse = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse("gh-a", greenhouse.getRef()));
+        assertEquals(600, greenhouse.expectMessageClass(SensorBatch.class).size);
+        assertEquals(40, greenhouse.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        greenhouse.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    @Test
+    void spawnsDormantGreenhouseThroughItsSiteOnFirstMessage() {
+        ActorRef<DataProcessingManager.Command> data = testKit.spawn(DataProcessingManager.create());
+        TestProbe<SiteManager.Command> site = testKit.createTestProbe();
+        String greenhouseId = "us-east-site-3-gh-4";
+        data.tell(new DataProcessingManager.RegisterDormant(greenhouseId, "gh-4", site.getRef()));
+        site.expectNoMessage(Duration.ofMillis(100));
+
+        data.tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "humidity", 55));
+        SiteManager.Revive revive = site.expectMessageClass(SiteManager.Revive.class);
+        assertEquals("gh-4", revive.name);
+        assertNull(revive.snapshot);
+        TestProbe<GreenhouseActor.Command> greenhouse = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, greenhouse.getRef()));
+        assertEquals(55, greenhouse.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+    }
+
+    @Test
+    void parksReadingsForUnregisteredGreenhouseAndReplaysThemInOrder() {
+        ActorRef<DataProcessingManager.Command> data = testKit.spawn(DataProcessingManager.create(2,
+                DataProcessingManager.Options.of(new GreenhouseDirectory()).withParking(new ParkingSettings(true, 2, 10, Duration.ofMillis(300)))));
+        DataProcessingManager.Shards shards = shardsOf(data);
+        TestProbe<DataProcessingManager.ParkingStats> stats = testKit.createTestProbe();
+        String greenhouseId = "us-east-site-5-gh-0";
+        for (int v = 0; v < 3; v++) shards.forGreenhouse(greenhouseId).tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "temperature", v));
+        data.tell(new DataProcessingManager.GetParkingStats(stats.getRef()));
+        DataProcessingManager.ParkingStats parked = stats.receiveMessage();
+        assertEquals(2, parked.waiting);
+        assertEquals(3, parked.parked);
+        assertEquals(1, parked.dropped);
+
+        TestProbe<GreenhouseActor.Command> greenhouse = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, greenhouse.getRef()));
+        assertEquals(1, greenhouse.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        assertEquals(2, greenhouse.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+
+        String lateId = "us-east-site-5-gh-1";
+        shards.forGreenhouse(lateId).tell(new DataProcessingManager.SensorEnvelope(lateId, "soil", 40));
+        stats.awaitAssert(Duration.ofSeconds(3), () -> {
+            data.tell(new DataProcessingManager.GetParkingStats(stats.getRef()));
+            DataProcessingManager.ParkingStats s = stats.receiveMessage();
+            assertEquals(1, s.expired);
+            assertEquals(0, s.waiting);
+            assertEquals(2, s.replayed);
+            return null;
+        });
+        TestProbe<GreenhouseActor.Command> late = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse(lateId, late.getRef()));
+        late.expectNoMessage(Duration.ofMillis(100));
+    }
+
+    @Test
+    void replaysParkedReadingsThroughValidationAndTheViews() {
+        GreenhouseDirectory directory = new GreenhouseDirectory();
+        LatestValueTable latest = new LatestValueTable(SensorActor.Kind.count());
+        ValidationSettings validation = new ValidationSettings(true, new double[] {-30, 0, 0}, new double[] {70, 100, 100},
+                new double[] {20, 60, 60}, new double[] {2, 6, 6}, Duration.ofSeconds(10), 50, 2, 3, 3);
+        ActorRef<DataProcessingManager.Command> data = testKit.spawn(DataProcessingManager.create(2, DataProcessingManager.Options.of(directory)
+                .withLatest(latest).withValidation(validation).withParking(new ParkingSettings(true, 10, 10, Duration.ofSeconds(30)))));
+        TestProbe<SensorBatch> subscriber = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.Subscribe(subscriber.getRef()));
+        String greenhouseId = "us-east-site-6-gh-0";
+        ActorRef<DataProcessingManager.Command> owner = shardsOf(data).forGreenhouse(greenhouseId);
+        owner.tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "temperature", 21));
+        owner.tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "temperature", 900)); // out of range
+        owner.tell(new DataProcessingManager.SensorEnvelope(greenhouseId, "humidity", 55));
+        subscriber.expectNoMessage(Duration.ofMillis(100));
+
+        TestProbe<GreenhouseActor.Command> greenhouse = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, greenhouse.getRef()));
+        assertEquals(21, greenhouse.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        assertEquals(55, greenhouse.expectMessageClass(GreenhouseActor.SensorReading.class).value, 0.0001);
+        greenhouse.expectNoMessage(Duration.ofMillis(100));
+        assertEquals(21, subscriber.receiveMessage().value[0], 0.0);
+        assertEquals(55, subscriber.receiveMessage().value[0], 0.0);
+        int idx = directory.indexOf(greenhouseId);
+        assertEquals(21, latest.value(idx, SensorActor.Kind.Temperature.ordinal()), 0.0);
+        assertEquals(55, latest.value(idx, SensorActor.Kind.Humidity.ordinal()), 0.0);
+    }
+
+    private static DataProcessingManager.Shards shardsOf(ActorRef<DataProcessingManager.Command> data) {
+        TestProbe<DataProcessingManager.Shards> probe = testKit.createTestProbe();
+        data.tell(new DataProcessingManager.GetShards(probe.getRef()));
+        return probe.receiveMessage();
+    }
+
+    // Straight to the owning shard, so it is registered before anything sent to it afterwards arrives
+    private static void register(DataProcessingManager.Shards shards, String greenhouseId, TestProbe<GreenhouseActor.Command> greenhouse) {
+        shards.forGreenhouse(greenhouseId).tell(new DataProcessingManager.RegisterGreenhouse(greenhouseId, greenhouse.getRef()));
+    }
+
+    // As the ingest stream sends it: one part per owning shard
+    private static void send(DataProcessingManager.Shards shards, SensorBatch batch) {
+        for (DataProcessingManager.Shards.Part part : shards.splitter().split(batch)) shards.get(part.shard).tell(part.batch);
+    }
+}
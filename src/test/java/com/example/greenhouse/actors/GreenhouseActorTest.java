@@ -3,9 +3,29 @@ package com.example.greenhouse.actors;
 import akka.actor.testkit.typed.javadsl.ActorTestKit;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.ActorRef;
+import com.example.greenhouse.anomaly.AnomalySettings;
+import com.example.greenhouse.control.ControlRule;
+import com.example.greenhouse.control.ControlRules;
+import com.example.greenhouse.control.DwellSettings;
+import com.example.greenhouse.device.ActuatorDevice;
+import com.example.greenhouse.device.ActuatorSettings;
+import com.example.greenhouse.device.SimulatedDevice;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.journal.GreenhouseState;
+import com.example.greenhouse.journal.JournalSettings;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -36,5 +56,183 @@ public class GreenhouseActorTest {
         assertEquals("us-east-site-0-gh-0", reg.greenhouseId);
         assertNotNull(reg.ref);
     }
-}
 
+    @Test
+    void recoversActuatorStateAfterRestart(@TempDir Path dir) {
+        JournalSettings settings = new JournalSettings(true, dir, Duration.ofMillis(100), 0, Duration.ofSeconds(10));
+        ActorRef<JournalManager.Command> journal = testKit.spawn(JournalManager.create(settings));
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<GreenhouseState> stateProbe = testKit.createTestProbe();
+
+        ActorRef<GreenhouseActor.Command> gh = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-0", dataProbe.getRef(), journal));
+        gh.tell(new GreenhouseActor.ControlDecision(GreenhouseActor.ControlDecision.Action.TURN_ON_HEATER));
+        gh.tell(new GreenhouseActor.GetState(stateProbe.getRef()));
+        assertTrue(stateProbe.receiveMessage().isOn(ActuatorActor.Type.Heater));
+        testKit.stop(gh);
+
+        ActorRef<GreenhouseActor.Command> revived = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-0", dataProbe.getRef(), journal));
+        revived.tell(new GreenhouseActor.GetState(stateProbe.getRef())); // stashed until recovery completes
+        GreenhouseState state = stateProbe.receiveMessage();
+        assertTrue(state.isOn(ActuatorActor.Type.Heater));
+        assertFalse(state.isOn(ActuatorActor.Type.Fan));
+        testKit.stop(journal);
+    }
+
+    @Test
+    void pushesReadingsToSiteAtMostOncePerInterval() {
+        AggregateSettings aggregates = new AggregateSettings(true, Duration.ofMillis(300), new double[] {20, 40, 20}, new double[] {28, 85, 60});
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<SiteManager.Command> siteProbe = testKit.createTestProbe();
+        ActorRef<GreenhouseActor.Command> gh = testKit.spawn(GreenhouseActor.create("eu", "eu-site-1", "eu-site-1-gh-0",
+                GreenhouseServices.of(dataProbe.getRef()).withAggregates(aggregates, null), siteProbe.getRef()));
+
+        int temperature = SensorActor.Kind.Temperature.ordinal();
+        for (int b = 0; b < 10; b++) {
+            SensorBatch.Builder batch = new SensorBatch.Builder(100);
+            for (int i = 0; i < 100; i++) batch.add(0, temperature, 21 + (b * 100 + i) / 1000.0, b * 100 + i);
+            gh.tell(batch.build());
+        }
+
+        SiteManager.GreenhouseChanged changed = siteProbe.expectMessageClass(SiteManager.GreenhouseChanged.class);
+        assertEquals("eu-site-1-gh-0", changed.greenhouseId);
+        assertEquals(21.999, changed.values[temperature], 1e-9);
+        assertTrue(Double.isNaN(changed.values[SensorActor.Kind.Humidity.ordinal()]));
+        siteProbe.expectNoMessage(Duration.ofMillis(500)); // nothing changed since
+    }
+
+    @Test
+    void notifiesAnomalousReadings() {
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<NotificationManager.Command> notifications = testKit.createTestProbe();
+        AnomalySettings anomalies = new AnomalySettings(true, 0.1, 10, 4.0, 0.5, 8.0, 0.05, Duration.ofMinutes(1));
+        GreenhouseServices services = GreenhouseServices.of(dataProbe.getRef()).withAnomalies(anomalies, notifications.getRef());
+        ActorRef<GreenhouseActor.Command> gh = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-5", services));
+
+        SensorBatch.Builder batch = new SensorBatch.Builder(64);
+        int humidity = SensorActor.Kind.Humidity.ordinal();
+        for (int i = 0; i < 40; i++) batch.add(0, humidity, 60 + (i % 2), i);
+        gh.tell(batch.build());
+        notifications.expectNoMessage(Duration.ofMillis(100));
+
+        gh.tell(new SensorBatch.Builder(1).add(0, humidity, 95, 40).build());
+        NotificationManager.Notify notify = notifications.expectMessageClass(NotificationManager.Notify.class);
+        assertEquals("warn", notify.level);
+        assertTrue(notify.message.contains("[eu-site-0-gh-5] humidity spike up"), notify.message);
+    }
+
+    @Test
+    void drivesActuatorsByTheRulesOfItsClass() {
+        ControlRules rules = new ControlRules(Map.of("dry", List.of("*-gh-7")), List.of(
+                new ControlRule("irrigation", Set.of("dry"), List.of(ControlRule.Condition.below(SensorActor.Kind.SoilMoisture, 30, 40)),
+                        ActuatorActor.Type.Irrigation)));
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<GreenhouseState> stateProbe = testKit.createTestProbe();
+        GreenhouseServices services = GreenhouseServices.of(dataProbe.getRef()).withRules(rules);
+        ActorRef<GreenhouseActor.Command> dry = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-7", services));
+        ActorRef<GreenhouseActor.Command> other = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-8", services));
+
+        int soil = SensorActor.Kind.SoilMoisture.ordinal();
+        for (ActorRef<GreenhouseActor.Command> gh : List.of(dry, other)) gh.tell(new SensorBatch.Builder(1).add(0, soil, 25, 0).build());
+        dry.tell(new GreenhouseActor.GetState(stateProbe.getRef()));
+        assertTrue(stateProbe.receiveMessage().isOn(ActuatorActor.Type.Irrigation));
+        other.tell(new GreenhouseActor.GetState(stateProbe.getRef()));
+        assertFalse(stateProbe.receiveMessage().isOn(ActuatorActor.Type.Irrigation));
+
+        dry.tell(new SensorBatch.Builder(2).add(0, soil, 35, 1).add(0, soil, 41, 2).build());
+        dry.tell(new GreenhouseActor.GetState(stateProbe.getRef()));
+        assertFalse(stateProbe.receiveMessage().isOn(ActuatorActor.Type.Irrigation));
+    }
+
+    @Test
+    void sendsOnlyChangesToActuatorsAndHoldsThemForTheirDwellTime() {
+        ControlRules rules = new ControlRules(Map.of(), List.of(
+                new ControlRule("irrigation", Set.of(), List.of(ControlRule.Condition.below(SensorActor.Kind.SoilMoisture, 30, 40)),
+                        ActuatorActor.Type.Irrigation)));
+        Duration[] dwellTimes = {Duration.ZERO, Duration.ZERO, Duration.ofMillis(400)};
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<GreenhouseActor.ControlStats> statsProbe = testKit.createTestProbe();
+        TestProbe<GreenhouseState> stateProbe = testKit.createTestProbe();
+        GreenhouseServices services = GreenhouseServices.of(dataProbe.getRef()).withRules(rules)
+                .withDwell(new DwellSettings(dwellTimes, dwellTimes));
+        ActorRef<GreenhouseActor.Command> gh = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-9", services));
+        gh.tell(new GreenhouseActor.Initialize());
+
+        // Soil flapping across both thresholds on every reading: 1000 decisions
+        int soil = SensorActor.Kind.SoilMoisture.ordinal();
+        SensorBatch.Builder batch = new SensorBatch.Builder(1000);
+        for (int i = 0; i < 1000; i++) batch.add(0, soil, i % 2 == 0 ? 20 : 45, i);
+        gh.tell(batch.build());
+        gh.tell(new GreenhouseActor.GetControlStats(statsProbe.getRef()));
+        GreenhouseActor.ControlStats stats = statsProbe.receiveMessage();
+        assertEquals(1000, stats.decisions);
+        assertEquals(1, stats.commands); // switched on, then held on
+        assertEquals(1, stats.deferred);
+
+        // When the dwell is over the last decision (off) is applied
+        statsProbe.awaitAssert(() -> {
+            gh.tell(new GreenhouseActor.GetControlStats(statsProbe.getRef()));
+            assertEquals(2, statsProbe.receiveMessage().commands);
+            return null;
+        });
+        gh.tell(new GreenhouseActor.GetState(stateProbe.getRef()));
+        assertFalse(stateProbe.receiveMessage().isOn(ActuatorActor.Type.Irrigation));
+    }
+
+    @Test
+    void drivesDevicesWithoutChildActorsInLightweightMode() {
+        ControlRules rules = new ControlRules(Map.of(), List.of(
+                new ControlRule("irrigation", Set.of(), List.of(ControlRule.Condition.below(SensorActor.Kind.SoilMoisture, 30, 40)),
+                        ActuatorActor.Type.Irrigation)));
+        ActuatorSettings settings = ActuatorSettings.immediate().withMaxCommandsPerSecond(1000)
+                .withRetries(Duration.ofSeconds(1), 3, Duration.ofMillis(10));
+        ScheduledExecutorService deviceTimer = Executors.newSingleThreadScheduledExecutor();
+        Map<ActuatorActor.Type, SimulatedDevice> opened = new ConcurrentHashMap<>();
+        ActuatorDevice.Factory devices = (g, t) -> opened.computeIfAbsent(t,
+                type -> new SimulatedDevice(Duration.ofMillis(5), Duration.ZERO, 0, deviceTimer, type.ordinal()));
+        try {
+            TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+            GreenhouseServices services = GreenhouseServices.of(dataProbe.getRef()).withRules(rules)
+                    .withDwell(DwellSettings.none()).withActuators(settings, devices).withLightweight(true);
+            ActorRef<GreenhouseActor.Command> gh = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-10", services));
+            gh.tell(new GreenhouseActor.Initialize());
+            dataProbe.expectMessageClass(DataProcessingManager.RegisterGreenhouse.class);
+
+            int soil = SensorActor.Kind.SoilMoisture.ordinal();
+            gh.tell(new SensorBatch.Builder(1).add(0, soil, 20, 0).build());
+            dataProbe.awaitAssert(() -> {
+                SimulatedDevice irrigation = opened.get(ActuatorActor.Type.Irrigation);
+                assertTrue(irrigation != null && irrigation.isOn());
+                return null;
+            });
+            // Every actuator is driven by the greenhouse itself, one device each
+            assertEquals(Set.of(ActuatorActor.Type.values()), opened.keySet());
+            gh.tell(new SensorBatch.Builder(1).add(0, soil, 45, 1).build());
+            dataProbe.awaitAssert(() -> {
+                assertFalse(opened.get(ActuatorActor.Type.Irrigation).isOn());
+                return null;
+            });
+        } finally {
+            deviceTimer.shutdownNow();
+        }
+    }
+
+    @Test
+    void passivatesWhenIdleHandingOverItsState() {
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<SiteManager.Command> siteProbe = testKit.createTestProbe();
+        GreenhouseServices services = GreenhouseServices.of(dataProbe.getRef()).withPassivateAfter(Duration.ofMillis(200));
+        ActorRef<GreenhouseActor.Command> gh = testKit.spawn(GreenhouseActor.create("eu", "eu-site-0", "eu-site-0-gh-11", services,
+                siteProbe.getRef()));
+        gh.tell(new GreenhouseActor.Initialize(true));
+        dataProbe.expectMessageClass(DataProcessingManager.RegisterGreenhouse.class);
+        gh.tell(new GreenhouseActor.SensorReading("eu-site-0-gh-11-soil", "soil", 33));
+
+        DataProcessingManager.Passivate passivate = dataProbe.expectMessageClass(DataProcessingManager.Passivate.class, Duration.ofSeconds(3));
+        assertEquals(gh, passivate.ref);
+        assertEquals(siteProbe.getRef(), passivate.site);
+        gh.tell(new GreenhouseActor.Stop());
+        DataProcessingManager.Passivated passivated = dataProbe.expectMessageClass(DataProcessingManager.Passivated.class);
+        assertEquals(33, passivated.snapshot.lastValue(SensorActor.Kind.SoilMoisture), 1e-9);
+        dataProbe.expectTerminated(gh);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.greenhouse.actors;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.QuantileSketch;
+import com.example.greenhouse.fleet.QuantileViews;
+import com.example.greenhouse.fleet.SketchSettings;
+import com.example.greenhouse.fleet.SubtreeStats;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SiteManagerTest {
+
+    private static final int TEMPERATURE = SensorActor.Kind.Temperature.ordinal();
+    private static final int HUMIDITY = SensorActor.Kind.Humidity.ordinal();
+    private static final double NONE = Double.NaN;
+
+    private static ActorTestKit testKit;
+    private static GreenhouseServices services;
+
+    @BeforeAll
+    static void setup() {
+        testKit = ActorTestKit.create();
+        AggregateSettings aggregates = new AggregateSettings(true, Duration.ofMillis(200), new double[] {20, 40, 20}, new double[] {28, 85, 60});
+        services = GreenhouseServices.of(testKit.<DataProcessingManager.Command>createTestProbe().getRef()).withAggregates(aggregates, null);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    @Test
+    void keepsSiteAggregatesFromGreenhouseDeltasAndPushesThemCoalesced() {
+        TestProbe<RegionManager.Command> regionProbe = testKit.createTestProbe();
+        TestProbe<SubtreeStats> reply = testKit.createTestProbe();
+        ActorRef<SiteManager.Command> site = testKit.spawn(SiteManager.create("eu", "eu-site-0", 3, services, regionProbe.getRef()));
+
+        site.tell(new SiteManager.GreenhouseChanged("gh-0", new double[] {18.0, 60.0, NONE}));
+        site.tell(new SiteManager.GreenhouseChanged("gh-1", new double[] {24.0, NONE, NONE}));
+        site.tell(new SiteManager.GreenhouseChanged("gh-2", new double[] {30.0, 70.0, NONE}));
+        site.tell(new SiteManager.GetAggregate(reply.getRef()));
+        SubtreeStats stats = reply.receiveMessage();
+        assertEquals(3, stats.greenhouses());
+        assertEquals(2, stats.greenhousesOutOfBand());
+        assertEquals(3, stats.count(TEMPERATURE));
+        assertEquals(24.0, stats.mean(TEMPERATURE), 1e-9);
+        assertEquals(18.0, stats.min(TEMPERATURE), 0.0);
+        assertEquals(30.0, stats.max(TEMPERATURE), 0.0);
+        assertEquals(2, stats.outOfBand(TEMPERATURE));
+        assertEquals(2, stats.count(HUMIDITY));
+
+        // The coldest greenhouse warms up: its old value held the minimum
+        site.tell(new SiteManager.GreenhouseChanged("gh-0", new double[] {26.0, 60.0, NONE}));
+        site.tell(new SiteManager.GetAggregate(reply.getRef()));
+        stats = reply.receiveMessage();
+        assertEquals(24.0, stats.min(TEMPERATURE), 0.0);
+        assertEquals(80.0 / 3, stats.mean(TEMPERATURE), 1e-9);
+        assertEquals(1, stats.greenhousesOutOfBand());
+
+        // Four changes, one push
+        RegionManager.SiteChanged pushed = regionProbe.expectMessageClass(RegionManager.SiteChanged.class);
+        assertEquals("eu-site-0", pushed.siteId);
+        assertEquals(24.0, pushed.stats.min(TEMPERATURE), 0.0);
+        regionProbe.expectNoMessage(Duration.ofMillis(300));
+    }
+
+    @Test
+    void regionMergesSiteAggregates() {
+        ActorRef<RegionManager.Command> region = testKit.spawn(RegionManager.create("eu", 2, 1, services));
+        TestProbe<SubtreeStats> reply = testKit.createTestProbe();
+        SubtreeStats a = new SubtreeStats(SensorActor.Kind.count());
+        a.replace(null, new double[] {22.0, 50.0, NONE}, services.aggregates);
+        SubtreeStats b = new SubtreeStats(SensorActor.Kind.count());
+        b.replace(null, new double[] {26.0, 90.0, NONE}, services.aggregates);
+
+        region.tell(new RegionManager.SiteChanged("eu-site-0", a));
+        region.tell(new RegionManager.SiteChanged("eu-site-1", b));
+        region.tell(new RegionManager.SiteChanged("eu-site-1", b)); // a repeated push replaces, never adds
+        region.tell(new RegionManager.GetAggregate(reply.getRef()));
+
+        SubtreeStats stats = reply.receiveMessage();
+        assertEquals(2, stats.greenhouses());
+        assertEquals(1, stats.greenhousesOutOfBand());
+        assertEquals(24.0, stats.mean(TEMPERATURE), 1e-9);
+        assertEquals(50.0, stats.min(HUMIDITY), 0.0);
+        assertEquals(90.0, stats.max(HUMIDITY), 0.0);
+        assertEquals(1, stats.outOfBand(HUMIDITY));
+    }
+
+    @Test
+    void sitesAndRegionsPublishTheirAggregatesForQueries() {
+        AggregateViews views = new AggregateViews();
+        GreenhouseServices publishing = services.withAggregates(services.aggregates, views);
+        ActorRef<RegionManager.Command> region = testKit.spawn(RegionManager.create("us", 1, 1, publishing));
+        ActorRef<SiteManager.Command> site = testKit.spawn(SiteManager.create("us", "us-site-0", 1, publishing, region));
+
+        site.tell(new SiteManager.GreenhouseChanged("gh-0", new double[] {21.0, NONE, NONE}));
+        site.tell(new SiteManager.GreenhouseChanged("gh-1", new double[] {25.0, NONE, NONE}));
+
+        TestProbe<Void> probe = testKit.createTestProbe();
+        probe.awaitAssert(() -> {
+            assertNotNull(views.get(AggregateViews.region("us")));
+            return null;
+        });
+        assertEquals(23.0, views.get(AggregateViews.site("us-site-0")).stats.mean(TEMPERATURE), 1e-9);
+        assertEquals(2, views.get(AggregateViews.region("us")).stats.count(TEMPERATURE));
+
+        // The published copy stays as it was while the site moves on
+        AggregateViews.View published = views.get(AggregateViews.site("us-site-0"));
+        site.tell(new SiteManager.GreenhouseChanged("gh-0", new double[] {29.0, NONE, NONE}));
+        probe.awaitAssert(() -> {
+            assertEquals(29.0, views.get(AggregateViews.site("us-site-0")).stats.max(TEMPERATURE), 0.0);
+            return null;
+        });
+        assertEquals(25.0, published.stats.max(TEMPERATURE), 0.0);
+    }
+
+    @Test
+    void mergesGreenhouseSketchesPublishesQuantilesAndHandsThemToTheRegion() {
+        SketchSettings sketches = new SketchSettings(true, 0.02, 64, Duration.ofMillis(200), 10, new double[] {0.5, 0.99});
+        QuantileViews views = new QuantileViews();
+        GreenhouseServices withSketches = GreenhouseServices.of(services.data).withSketches(sketches, views);
+        TestProbe<RegionManager.Command> regionProbe = testKit.createTestProbe();
+        ActorRef<SiteManager.Command> site = testKit.spawn(SiteManager.create("eu", "eu-site-1", 0, withSketches, regionProbe.getRef()));
+
+        long slice = sketches.sliceOf(System.currentTimeMillis());
+        for (int g = 0; g < 2; g++) {
+            QuantileSketch temperature = sketches.newSketch();
+            for (int i = 0; i < 50; i++) temperature.add(20 + g * 10 + i / 10.0);
+            site.tell(new SketchSlice("eu-site-1-gh-" + g, slice, new QuantileSketch[] {temperature, null, null}));
+        }
+
+        // Handed up once per slice, as merged per-slice sketches rather than per greenhouse
+        long handedUp = 0;
+        while (handedUp < 100) {
+            SketchSlice up = regionProbe.expectMessageClass(SketchSlice.class, Duration.ofSeconds(2));
+            assertEquals("eu-site-1", up.sourceId);
+            assertEquals(slice, up.slice);
+            assertNull(up.sketches[HUMIDITY]);
+            handedUp += up.sketches[TEMPERATURE].count();
+        }
+        assertEquals(100, handedUp);
+
+        testKit.createTestProbe().awaitAssert(() -> {
+            QuantileViews.View view = views.get(QuantileViews.site("eu-site-1"));
+            assertNotNull(view);
+            assertEquals(100, view.count(TEMPERATURE));
+            assertEquals(0, view.count(HUMIDITY));
+            assertEquals(24.9, view.value(TEMPERATURE, 0), 24.9 * 0.02);
+            return null;
+        });
+    }
+
+    @Test
+    void acksBootstrapOnceEveryGreenhouseIsRegistered() {
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<SiteManager.SiteReady> readyProbe = testKit.createTestProbe();
+        ActorRef<SiteManager.Command> site = testKit.spawn(SiteManager.create("eu", "eu-site-7", 3, GreenhouseServices.of(dataProbe.getRef())));
+
+        site.tell(new SiteManager.Bootstrap(false, readyProbe.getRef()));
+        for (int i = 0; i < 3; i++) dataProbe.expectMessageClass(DataProcessingManager.RegisterGreenhouse.class);
+        SiteManager.SiteReady ready = readyProbe.receiveMessage();
+        assertEquals("eu-site-7", ready.siteId);
+        assertEquals(3, ready.greenhouses);
+    }
+
+    @Test
+    void lazyBootstrapSpawnsGreenhousesOnlyWhenRoutingAsks() {
+        TestProbe<DataProcessingManager.Command> dataProbe = testKit.createTestProbe();
+        TestProbe<SiteManager.SiteReady> readyProbe = testKit.createTestProbe();
+        ActorRef<SiteManager.Command> site = testKit.spawn(SiteManager.create("eu", "eu-site-8", 2, GreenhouseServices.of(dataProbe.getRef())));
+
+        site.tell(new SiteManager.Bootstrap(true, readyProbe.getRef()));
+        DataProcessingManager.RegisterDormant first = dataProbe.expectMessageClass(DataProcessingManager.RegisterDormant.class);
+        assertEquals("eu-site-8-gh-0", first.greenhouseId);
+        assertEquals("gh-0", first.name);
+        assertEquals(site, first.site);
+        dataProbe.expectMessageClass(DataProcessingManager.RegisterDormant.class);
+        assertEquals(2, readyProbe.receiveMessage().greenhouses);
+        dataProbe.expectNoMessage(Duration.ofMillis(100));
+
+        site.tell(new SiteManager.Revive("eu-site-8-gh-1", "gh-1", null));
+        assertEquals("eu-site-8-gh-1", dataProbe.expectMessageClass(DataProcessingManager.RegisterGreenhouse.class).greenhouseId);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.greenhouse.anomaly;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AnomalyDetectorTest {
+
+    private static final AnomalySettings SETTINGS = new AnomalySettings(true, 0.02, 50, 4.5, 0.5, 10.0, 0.05, Duration.ofMinutes(5));
+
+    @Test
+    void staysQuietOnStationaryNoise() {
+        AnomalyDetector detector = new AnomalyDetector(SETTINGS, 1);
+        Random random = new Random(3);
+        int reported = 0;
+        for (int i = 0; i < 5_000; i++) {
+            if (detector.update(0, 24 + random.nextGaussian() * 0.5, i * 1000L) != AnomalyDetector.NONE) reported++;
+        }
+        assertEquals(0, reported);
+        assertEquals(24, detector.mean(0), 0.3);
+        assertEquals(0.5, detector.stdDev(0), 0.2);
+    }
+
+    @Test
+    void reportsSpikesOncePerCooldownWithoutLosingTheBaseline() {
+        AnomalyDetector detector = new AnomalyDetector(SETTINGS, 2);
+        Random random = new Random(5);
+        long t = 0;
+        for (int i = 0; i < 200; i++) detector.update(1, 60 + random.nextGaussian(), t += 1000);
+
+        assertEquals(AnomalyDetector.SPIKE_HIGH, detector.update(1, 90, t += 1000));
+        assertTrue(detector.lastZ(1) > 4.5);
+        assertEquals(AnomalyDetector.NONE, detector.update(1, 91, t += 1000)); // within the cooldown
+        assertEquals(AnomalyDetector.SPIKE_LOW, detector.update(1, 20, t += 1000)); // another type of anomaly
+        assertEquals(60, detector.mean(1), 2.0);
+        // The other kind has its own series and is still warming up
+        assertEquals(AnomalyDetector.NONE, detector.update(0, 1e6, t));
+        t += Duration.ofMinutes(5).toMillis();
+        assertEquals(AnomalyDetector.SPIKE_HIGH, detector.update(1, 95, t));
+    }
+
+    @Test
+    void catchesAGradualShiftThatNeverSpikes() {
+        AnomalyDetector detector = new AnomalyDetector(SETTINGS, 1);
+        Random random = new Random(9);
+        long t = 0;
+        for (int i = 0; i < 300; i++) assertEquals(AnomalyDetector.NONE, detector.update(0, 30 + random.nextGaussian(), t += 1000));
+        int shift = AnomalyDetector.NONE;
+        for (int i = 0; i < 100 && shift == AnomalyDetector.NONE; i++) {
+            // Soil drying out: two standard deviations down, well inside the spike threshold
+            int anomaly = detector.update(0, 28 + random.nextGaussian(), t += 1000);
+            assertNotEquals(AnomalyDetector.SPIKE_LOW, anomaly);
+            shift = anomaly;
+        }
+        assertEquals(AnomalyDetector.SHIFT_DOWN, shift);
+    }
+}
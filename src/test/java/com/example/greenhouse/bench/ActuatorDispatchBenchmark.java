@@ -0,0 +1,96 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.GreenhouseActor;
+import com.example.greenhouse.actors.GreenhouseServices;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.control.ControlRules;
+import com.example.greenhouse.control.DwellSettings;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Actuator traffic at a high reading rate: greenhouses get noisy temperatures wandering around the
+ * fan threshold (28°C) and occasionally the heater one (20°C). Reported against the readings: the
+ * commands a per-reading threshold check would have sent (one per reading past a threshold), the
+ * decisions the rules made (transitions with hysteresis), and the commands that reached the actuator
+ * children after dwell times.
+ * Arguments: [greenhouses] [seconds] [dwell].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.ActuatorDispatchBenchmark
+ */
+public class ActuatorDispatchBenchmark {
+
+    private static final int BATCH = 100;
+
+    public static void main(String[] args) throws Exception {
+        int greenhouses = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Duration dwellTime = Duration.parse("PT" + (args.length > 2 ? args[2] : "1s").toUpperCase());
+
+        ActorSystem<DataProcessingManager.Command> system = ActorSystem.create(Behaviors.ignore(), "dispatch-bench");
+        Duration[] dwell = new Duration[ActuatorActor.Type.values().length];
+        Arrays.fill(dwell, dwellTime);
+        GreenhouseServices services = GreenhouseServices.of(system).withRules(ControlRules.defaults())
+                .withDwell(new DwellSettings(dwell, dwell));
+        @SuppressWarnings("unchecked")
+        ActorRef<GreenhouseActor.Command>[] refs = new ActorRef[greenhouses];
+        for (int g = 0; g < greenhouses; g++) {
+            refs[g] = system.systemActorOf(GreenhouseActor.create("bench", "bench-site", "bench-gh-" + g, services), "gh-" + g, Props.empty());
+            refs[g].tell(new GreenhouseActor.Initialize());
+        }
+
+        int temperature = SensorActor.Kind.Temperature.ordinal();
+        double[] walk = new double[greenhouses];
+        Arrays.fill(walk, 27);
+        SplittableRandom rnd = new SplittableRandom(5);
+        long readings = 0;
+        long naive = 0;
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            for (int g = 0; g < greenhouses; g++) {
+                SensorBatch.Builder batch = new SensorBatch.Builder(BATCH);
+                for (int i = 0; i < BATCH; i++) {
+                    // Slow drift between 16 and 32 plus sensor noise of about 1°C
+                    walk[g] = Math.max(16, Math.min(32, walk[g] + (rnd.nextDouble() - 0.5) * 0.2));
+                    double value = walk[g] + rnd.nextGaussian();
+                    if (value > 28 || value < 20) naive++;
+                    batch.add(g, temperature, value, readings + i);
+                }
+                refs[g].tell(batch.build());
+                readings += BATCH;
+            }
+            // Paced by the last greenhouse, so mailboxes do not grow without bound
+            AskPattern.<GreenhouseActor.Command, GreenhouseActor.ControlStats>ask(refs[greenhouses - 1],
+                    GreenhouseActor.GetControlStats::new, Duration.ofSeconds(30), system.scheduler()).toCompletableFuture().get();
+        }
+        Thread.sleep(dwellTime.toMillis() + 200); // let held decisions land
+
+        long decisions = 0;
+        long commands = 0;
+        long deferred = 0;
+        for (ActorRef<GreenhouseActor.Command> ref : refs) {
+            GreenhouseActor.ControlStats stats = AskPattern.<GreenhouseActor.Command, GreenhouseActor.ControlStats>ask(ref,
+                    GreenhouseActor.GetControlStats::new, Duration.ofSeconds(30), system.scheduler()).toCompletableFuture().get();
+            decisions += stats.decisions;
+            commands += stats.commands;
+            deferred += stats.deferred;
+        }
+        system.terminate();
+
+        System.out.printf("%d greenhouses, %d readings in %d s (%.0f/s), dwell %s%n", greenhouses, readings, seconds, readings / (double) seconds, dwellTime);
+        System.out.printf("  per-reading threshold check: %,d commands (1 per %.1f readings)%n", naive, readings / (double) naive);
+        System.out.printf("  rule transitions:            %,d decisions (1 per %.0f readings)%n", decisions, readings / (double) Math.max(1, decisions));
+        System.out.printf("  sent to actuators:           %,d commands (1 per %.0f readings, %,d held for dwell)%n", commands,
+                readings / (double) Math.max(1, commands), deferred);
+    }
+}
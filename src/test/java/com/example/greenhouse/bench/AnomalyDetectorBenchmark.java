@@ -0,0 +1,67 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.anomaly.AnomalyDetector;
+import com.example.greenhouse.anomaly.AnomalySettings;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Throughput of the per-greenhouse anomaly detection on one thread, against the ingest rate it has to
+ * keep up with: readings are spread over the detectors of many greenhouses (so state is mostly out of
+ * cache, as in the actors), with occasional spikes so reporting is exercised too. Also reports the
+ * bytes allocated per reading, which should be zero.
+ * Arguments: [greenhouses] [seconds] [target readings/s].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.AnomalyDetectorBenchmark
+ */
+public class AnomalyDetectorBenchmark {
+
+    public static void main(String[] args) {
+        int greenhouses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long target = args.length > 2 ? Long.parseLong(args[2]) : 1_000_000;
+        int kinds = SensorActor.Kind.count();
+        AnomalySettings settings = new AnomalySettings(true, 0.02, 50, 4.5, 0.5, 10.0, 0.05, Duration.ofMinutes(5));
+        AnomalyDetector[] detectors = new AnomalyDetector[greenhouses];
+        for (int g = 0; g < greenhouses; g++) detectors[g] = new AnomalyDetector(settings, kinds);
+
+        // Pre-generated readings, so the benchmark measures detection rather than the random generator
+        int n = 1 << 20;
+        int[] greenhouse = new int[n];
+        byte[] kind = new byte[n];
+        double[] value = new double[n];
+        SplittableRandom rnd = new SplittableRandom(1);
+        for (int i = 0; i < n; i++) {
+            greenhouse[i] = rnd.nextInt(greenhouses);
+            kind[i] = (byte) rnd.nextInt(kinds);
+            value[i] = 20 + kind[i] * 20 + rnd.nextDouble() * 2 + (rnd.nextInt(10_000) == 0 ? 15 : 0);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long readings = 0;
+            long anomalies = 0;
+            long now = System.currentTimeMillis();
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long t0 = System.nanoTime();
+            long end = t0 + seconds * 1_000_000_000L;
+            while (System.nanoTime() < end) {
+                for (int i = 0; i < n; i++) {
+                    if (detectors[greenhouse[i]].update(kind[i], value[i], now) != AnomalyDetector.NONE) anomalies++;
+                }
+                readings += n;
+                now += 1000;
+            }
+            double elapsed = (System.nanoTime() - t0) / 1e9;
+            long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+            double rate = readings / elapsed;
+            System.out.printf("round %d: %,d greenhouses x %d kinds: %,.0f readings/s (%.1f ns each, %.1fx the %,d/s target), %,d anomalies reported%n",
+                    round, greenhouses, kinds, rate, 1e9 / rate, rate / target, target, anomalies);
+            System.out.printf("  allocated: %.4f bytes/reading%n", (double) allocated / readings);
+        }
+    }
+}
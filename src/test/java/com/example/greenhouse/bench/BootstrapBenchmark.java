@@ -0,0 +1,80 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.GreenhouseSystemManager;
+import com.example.greenhouse.stream.LoadProfile;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the whole system to ready: from creating the actor system to the system manager's Ready,
+ * when every greenhouse is registered for routing (eager) or with routing (lazy) and sensor ingest starts.
+ * Storage, journal and HTTP are off, so what is measured is the actor hierarchy. Heap is measured after a
+ * full collection once ready.
+ * Arguments: [eager|lazy] [actors|lightweight] [regions] [sites per region] [greenhouses per site].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.BootstrapBenchmark
+ */
+public class BootstrapBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        boolean lazy = args.length > 0 && args[0].equals("lazy");
+        String mode = args.length > 1 ? args[1] : "actors";
+        int regions = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int sitesPerRegion = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int greenhousesPerSite = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+
+        for (String name : new String[] {"akka", "com.example.greenhouse"}) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        Config config = ConfigFactory.parseString("akka.loglevel = ERROR\n"
+                + "greenhouse.storage.enabled = false\n"
+                + "greenhouse.journal.enabled = false\n"
+                + "greenhouse.http.enabled = false\n"
+                + "greenhouse.greenhouse-mode = " + mode + "\n"
+                + "greenhouse.bootstrap.lazy = " + lazy + "\n"
+                + "greenhouse.bootstrap.timeout = 10m").withFallback(ConfigFactory.load());
+        List<String> regionIds = new ArrayList<>();
+        for (int r = 0; r < regions; r++) regionIds.add("region-" + r);
+        long before = usedHeap();
+
+        long start = System.nanoTime();
+        ActorSystem<GreenhouseSystemManager.Command> system = ActorSystem.create(GreenhouseSystemManager.create(), "bootstrap-bench", config);
+        try {
+            CompletableFuture<GreenhouseSystemManager.Ready> ready = new CompletableFuture<>();
+            var replyTo = system.systemActorOf(Behaviors.receive(GreenhouseSystemManager.Ready.class)
+                    .onAnyMessage(r -> {
+                        ready.complete(r);
+                        return Behaviors.same();
+                    }).build(), "ready", Props.empty());
+            system.tell(new GreenhouseSystemManager.Initialize(regionIds, sitesPerRegion, greenhousesPerSite, LoadProfile.disabled(), replyTo));
+            GreenhouseSystemManager.Ready r = ready.get(10, TimeUnit.MINUTES);
+            double total = (System.nanoTime() - start) / 1e9;
+            long heap = usedHeap() - before;
+            System.out.printf("%s bootstrap, %s mode, %,d greenhouses (%d regions x %d sites x %d): ready in %.2f s (%.2f s since Initialize)%s%n",
+                    lazy ? "lazy" : "eager", mode, r.greenhouses, regions, sitesPerRegion, greenhousesPerSite, total,
+                    r.elapsed.toMillis() / 1e3, r.complete ? "" : ", INCOMPLETE");
+            System.out.printf("  heap once ready: %,d MB (%,d bytes per greenhouse)%n", heap / 1_000_000, heap / Math.max(1, r.greenhouses));
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.storage.StorageSettings;
+import com.example.greenhouse.storage.TimeSeriesStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Compression ratio and decode throughput of the reading store, raw blocks against Gorilla blocks, on
+ * SensorActor-shaped series: the three kinds in their SensorActor ranges, sampled every few seconds
+ * with some jitter. "drift" series move a little per sample at sensor resolution (0.1), which is what
+ * real greenhouse telemetry looks like; "uniform" series are independent draws over the whole range,
+ * as SensorActor's simulation produces, and are close to the worst case for XOR encoding.
+ * Arguments: [series] [points per series].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.CompressionBenchmark
+ */
+public class CompressionBenchmark {
+
+    private static final double[][] RANGES = {{18, 33}, {40, 90}, {10, 60}}; // per Kind ordinal, as SensorActor
+
+    public static void main(String[] args) throws Exception {
+        int series = args.length > 0 ? Integer.parseInt(args[0]) : 3_000;
+        int pointsPerSeries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        for (String shape : new String[] {"drift", "uniform"}) {
+            Result raw = run(shape, false, series, pointsPerSeries);
+            Result gorilla = run(shape, true, series, pointsPerSeries);
+            System.out.printf("%-7s raw     %6.2f bytes/point, decode %,12.0f points/s%n", shape, raw.bytesPerPoint, raw.decodeRate);
+            System.out.printf("%-7s gorilla %6.2f bytes/point, decode %,12.0f points/s, ratio %.1fx%n",
+                    shape, gorilla.bytesPerPoint, gorilla.decodeRate, raw.bytesPerPoint / gorilla.bytesPerPoint);
+        }
+    }
+
+    private static Result run(String shape, boolean compress, int series, int pointsPerSeries) throws Exception {
+        Path dir = Files.createTempDirectory("greenhouse-compression-bench");
+        StorageSettings settings = new StorageSettings(true, dir, 256 << 20, 120, Duration.ofSeconds(5), compress);
+        SplittableRandom rnd = new SplittableRandom(42);
+        long points = (long) series * pointsPerSeries;
+        Result result = new Result();
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings)) {
+            int[] ids = new int[series];
+            long[] ts = new long[series];
+            double[] value = new double[series];
+            for (int s = 0; s < series; s++) {
+                int kind = s % SensorActor.Kind.count();
+                ids[s] = store.seriesId("gh-" + s / 3, kind);
+                ts[s] = 1_700_000_000_000L + rnd.nextInt(2000);
+                value[s] = sample(kind, rnd);
+            }
+            // Interleaved appends, as readings of many sensors arrive
+            for (int i = 0; i < pointsPerSeries; i++) {
+                for (int s = 0; s < series; s++) {
+                    int kind = s % SensorActor.Kind.count();
+                    ts[s] += 2000 + (rnd.nextInt(20) == 0 ? rnd.nextInt(-50, 50) : 0);
+                    value[s] = shape.equals("drift") ? drift(kind, value[s], rnd) : sample(kind, rnd);
+                    store.append(ids[s], ts[s], value[s]);
+                }
+            }
+            store.flush();
+            result.bytesPerPoint = (double) store.payloadBytesWritten() / points;
+
+            for (int round = 0; round < 5; round++) { // the first rounds warm up
+                long start = System.nanoTime();
+                long decoded = 0;
+                for (int s = 0; s < series; s++) {
+                    decoded += store.query(ids[s], Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {});
+                }
+                result.decodeRate = decoded / ((System.nanoTime() - start) / 1e9);
+            }
+        }
+        deleteRecursively(dir);
+        return result;
+    }
+
+    private static double sample(int kind, SplittableRandom rnd) {
+        return RANGES[kind][0] + rnd.nextDouble() * (RANGES[kind][1] - RANGES[kind][0]);
+    }
+
+    private static double drift(int kind, double previous, SplittableRandom rnd) {
+        double next = previous + (rnd.nextInt(5) - 2) * 0.1;
+        next = Math.max(RANGES[kind][0], Math.min(RANGES[kind][1], next));
+        return Math.round(next * 10) / 10.0;
+    }
+
+    private static void deleteRecursively(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    private static final class Result {
+        double bytesPerPoint;
+        double decodeRate;
+    }
+}
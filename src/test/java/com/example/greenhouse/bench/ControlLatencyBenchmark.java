@@ -0,0 +1,157 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.MailboxSelector;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.DispatcherSettings;
+import com.example.greenhouse.actors.GreenhouseActor;
+import com.example.greenhouse.actors.GreenhouseServices;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of control decisions to one greenhouse saturated with readings, with the ControlFirstMailbox
+ * of application.conf ("priority") or the default FIFO mailbox ("fifo"). The capacity of the greenhouse
+ * is measured first, then reading batches are offered at 1.5 times that while a decision and a control
+ * query go in every 2 ms; measured is the round trip of the query, which the greenhouse answers after
+ * the decision.
+ * Arguments: [priority|fifo] [seconds] [batch size].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.ControlLatencyBenchmark
+ */
+public class ControlLatencyBenchmark {
+
+    private static final double OVERLOAD = 1.5;
+
+    public static void main(String[] args) throws Exception {
+        boolean priority = args.length == 0 || !args[0].equals("fifo");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        for (String name : new String[] {"akka", "com.example.greenhouse"}) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        Config config = ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load());
+        long[] waits = new long[1 << 20];
+        AtomicLong answered = new AtomicLong();
+        ConcurrentLinkedQueue<Long> sentAt = new ConcurrentLinkedQueue<>();
+        AtomicLong measuring = new AtomicLong();
+        ActorSystem<GreenhouseActor.ControlStats> system = ActorSystem.create(Behaviors.receive(GreenhouseActor.ControlStats.class)
+                .onAnyMessage(stats -> {
+                    long sent = sentAt.poll();
+                    if (measuring.get() == 0) return Behaviors.same();
+                    long n = answered.getAndIncrement();
+                    if (n < waits.length) waits[(int) n] = System.nanoTime() - sent;
+                    return Behaviors.same();
+                }).build(), "control-latency-bench", config);
+        try {
+            MailboxSelector mailbox = priority ? MailboxSelector.fromConfig(DispatcherSettings.CONTROL_MAILBOX) : MailboxSelector.defaultMailbox();
+            DispatcherSelector d = DispatcherSelector.defaultDispatcher();
+            DispatcherSettings dispatchers = new DispatcherSettings(d, d, d, d, mailbox);
+            ActorRef<DataProcessingManager.Command> data = system.systemActorOf(Behaviors.ignore(), "data", d);
+            GreenhouseServices services = GreenhouseServices.of(data).withDispatchers(dispatchers);
+            ActorRef<GreenhouseActor.Command> greenhouse = system.systemActorOf(GreenhouseActor.create("bench", "bench-site", "bench-gh-0",
+                    services), "gh-0", dispatchers.greenhouse());
+            greenhouse.tell(new GreenhouseActor.Initialize());
+
+            SensorBatch[] batches = batches(batchSize);
+            double capacity = capacity(system, services, batches);
+            long interval = (long) (1e9 / (capacity * OVERLOAD));
+
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            AtomicLong offered = new AtomicLong();
+            Thread feeder = new Thread(() -> {
+                long next = System.nanoTime();
+                int i = 0;
+                while (System.nanoTime() < end) {
+                    // Catch up in bursts rather than sleeping per batch
+                    long now = System.nanoTime();
+                    while (next <= now) {
+                        greenhouse.tell(batches[i++ % batches.length]);
+                        offered.incrementAndGet();
+                        next += interval;
+                    }
+                    try {
+                        TimeUnit.MICROSECONDS.sleep(200);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "feeder");
+            feeder.start();
+            measuring.set(1);
+
+            long sent = 0;
+            boolean on = true;
+            while (System.nanoTime() < end) {
+                greenhouse.tell(new GreenhouseActor.ControlDecision(GreenhouseActor.ControlDecision.Action.of(
+                        ActuatorActor.Type.Fan, on)));
+                on = !on;
+                sentAt.add(System.nanoTime());
+                greenhouse.tell(new GreenhouseActor.GetControlStats(system));
+                sent++;
+                Thread.sleep(2);
+            }
+            feeder.join();
+            // Whatever is still queued behind the readings is reported as unanswered
+            Thread.sleep(500);
+            measuring.set(0);
+
+            int n = (int) Math.min(answered.get(), waits.length);
+            long[] sorted = Arrays.copyOf(waits, n);
+            Arrays.sort(sorted);
+            System.out.printf("%s mailbox: capacity %,.0f batches/s of %d, offered %,d batches/s for %d s%n",
+                    priority ? "control-first" : "FIFO", capacity, batchSize, offered.get() / seconds, seconds);
+            System.out.printf("  control round trip: p50 %.2f ms, p99 %.2f ms, max %.2f ms; %d of %d answered%n",
+                    n == 0 ? 0 : sorted[n / 2] / 1e6, n == 0 ? 0 : sorted[(int) (n * 0.99)] / 1e6, n == 0 ? 0 : sorted[n - 1] / 1e6, n, sent);
+        } finally {
+            system.terminate();
+        }
+    }
+
+    // One greenhouse's batches with its kinds interleaved, as routing sends them
+    private static SensorBatch[] batches(int batchSize) {
+        SplittableRandom rnd = new SplittableRandom(9);
+        SensorBatch[] batches = new SensorBatch[1024];
+        long now = System.currentTimeMillis();
+        for (int b = 0; b < batches.length; b++) {
+            SensorBatch.Builder batch = new SensorBatch.Builder(batchSize);
+            for (int i = 0; i < batchSize; i++) batch.add(0, (b + i) % SensorActor.Kind.count(), 21 + rnd.nextDouble(4), now);
+            batches[b] = batch.build();
+        }
+        return batches;
+    }
+
+    // Batches per second a greenhouse gets through, each round ended by a query. Measured on one with a FIFO
+    // mailbox, where the query is answered after the readings rather than before them
+    private static double capacity(ActorSystem<?> system, GreenhouseServices services, SensorBatch[] batches) throws Exception {
+        ActorRef<GreenhouseActor.Command> greenhouse = system.systemActorOf(GreenhouseActor.create("bench", "bench-site", "bench-gh-1",
+                services), "gh-1", DispatcherSelector.defaultDispatcher());
+        greenhouse.tell(new GreenhouseActor.Initialize());
+        double best = 0;
+        for (int round = 0; round < 5; round++) {
+            int count = 100_000;
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) greenhouse.tell(batches[i % batches.length]);
+            AskPattern.<GreenhouseActor.Command, GreenhouseActor.ControlStats>ask(greenhouse, GreenhouseActor.GetControlStats::new,
+                    Duration.ofSeconds(60), system.scheduler()).toCompletableFuture().get();
+            best = Math.max(best, count / ((System.nanoTime() - start) / 1e9));
+        }
+        return best;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.DispatcherSettings;
+import com.example.greenhouse.actors.GreenhouseActor;
+import com.example.greenhouse.actors.GreenhouseServices;
+import com.example.greenhouse.actors.NotificationManager;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Control latency under a mixed load, with the dispatchers of application.conf ("isolated") or with
+ * everything on the default dispatcher ("shared"). The load, the same in both: reading batches at a
+ * fixed rate through the sharded routing tier to 2,000 greenhouses, maintenance work that keeps its
+ * actors busy (standing in for compaction or rollups) and a notification per batch. Measured: the round
+ * trip of a control query to a greenhouse that gets no readings itself, every 2 ms, after a warm-up.
+ * Arguments: [isolated|shared] [seconds] [greenhouses] [readings per second].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.DispatcherIsolationBenchmark
+ */
+public class DispatcherIsolationBenchmark {
+
+    private static final int BATCH = 500;
+    private static final int IN_FLIGHT = 128;
+    private static final int MAINTENANCE_ACTORS = 4;
+    private static final long WARMUP_NANOS = 3_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        boolean isolated = args.length == 0 || !args[0].equals("shared");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        int greenhouses = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+        int rate = args.length > 3 ? Integer.parseInt(args[3]) : 40_000;
+
+        for (String name : new String[] {"akka", "com.example.greenhouse"}) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        Config config = ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load());
+        DispatcherSettings dispatchers = isolated ? DispatcherSettings.fromConfig(config) : DispatcherSettings.shared();
+
+        long[] waits = new long[1 << 20];
+        AtomicLong answered = new AtomicLong();
+        ConcurrentLinkedQueue<Long> sentAt = new ConcurrentLinkedQueue<>();
+        AtomicLong measureFrom = new AtomicLong(Long.MAX_VALUE);
+        ActorSystem<GreenhouseActor.ControlStats> system = ActorSystem.create(Behaviors.receive(GreenhouseActor.ControlStats.class)
+                .onAnyMessage(stats -> {
+                    // One greenhouse answers in order
+                    long sent = sentAt.poll();
+                    if (sent < measureFrom.get()) return Behaviors.same();
+                    long n = answered.getAndIncrement();
+                    if (n < waits.length) waits[(int) n] = System.nanoTime() - sent;
+                    return Behaviors.same();
+                }).build(), "dispatcher-bench", config);
+        try {
+            GreenhouseDirectory directory = new GreenhouseDirectory();
+            ActorRef<DataProcessingManager.Command> data = system.systemActorOf(DataProcessingManager.create(4,
+                    DataProcessingManager.Options.of(directory).withLatest(new LatestValueTable(SensorActor.Kind.count()))), "data-processing",
+                    dispatchers.ingest);
+            DataProcessingManager.Shards shards = AskPattern.<DataProcessingManager.Command, DataProcessingManager.Shards>ask(data,
+                    DataProcessingManager.GetShards::new, Duration.ofSeconds(3), system.scheduler()).toCompletableFuture().get();
+            ActorRef<NotificationManager.Command> notifications = system.systemActorOf(NotificationManager.create(), "notification",
+                    dispatchers.notifications);
+            GreenhouseServices services = GreenhouseServices.of(data).withAnomalies(null, notifications).withDispatchers(dispatchers);
+            // Greenhouse 0 is the quiet one that gets queried
+            @SuppressWarnings("unchecked")
+            ActorRef<GreenhouseActor.Command>[] refs = new ActorRef[greenhouses];
+            for (int g = 0; g < greenhouses; g++) {
+                String id = "bench-gh-" + g;
+                directory.register(id);
+                refs[g] = system.systemActorOf(GreenhouseActor.create("bench", "bench-site", id, services), "gh-" + g, dispatchers.control);
+                refs[g].tell(new GreenhouseActor.Initialize());
+            }
+            Thread.sleep(1_000);
+
+            AtomicLong maintenanceWork = new AtomicLong();
+            for (int m = 0; m < MAINTENANCE_ACTORS; m++) {
+                system.systemActorOf(busy(maintenanceWork), "maintenance-" + m, dispatchers.maintenance).tell(0L);
+            }
+
+            Semaphore inFlight = new Semaphore(IN_FLIGHT);
+            AtomicLong routed = new AtomicLong();
+            ActorRef<DataProcessingManager.IngestAck> acks = system.systemActorOf(Behaviors.receive(DataProcessingManager.IngestAck.class)
+                    .onAnyMessage(ack -> {
+                        routed.addAndGet(ack.readings);
+                        inFlight.release();
+                        return Behaviors.same();
+                    }).build(), "acks", dispatchers.ingest);
+            long start = System.nanoTime();
+            measureFrom.set(start + WARMUP_NANOS);
+            long end = start + WARMUP_NANOS + seconds * 1_000_000_000L;
+            Thread feeder = new Thread(() -> {
+                DataProcessingManager.Shards.Splitter splitter = shards.splitter();
+                SplittableRandom rnd = new SplittableRandom(3);
+                int kinds = SensorActor.Kind.count();
+                long interval = 1_000_000_000L * BATCH / rate;
+                long next = System.nanoTime();
+                try {
+                    while (System.nanoTime() < end) {
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+                        next += interval;
+                        SensorBatch.Builder batch = new SensorBatch.Builder(BATCH);
+                        long now = System.currentTimeMillis();
+                        for (int i = 0; i < BATCH; i++) batch.add(1 + rnd.nextInt(greenhouses - 1), rnd.nextInt(kinds), 15 + rnd.nextDouble(20), now);
+                        List<DataProcessingManager.Shards.Part> parts = splitter.split(batch.build());
+                        // Routing that falls behind is not sent more; every shard acks its own part
+                        if (!inFlight.tryAcquire(parts.size(), 10, TimeUnit.MILLISECONDS)) continue;
+                        for (DataProcessingManager.Shards.Part part : parts) {
+                            shards.get(part.shard).tell(new DataProcessingManager.Ingest(part.batch, acks));
+                        }
+                        notifications.tell(new NotificationManager.Notify("info", "batch routed"));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "feeder");
+            feeder.start();
+
+            long sent = 0;
+            long routedBefore = -1;
+            long workBefore = 0;
+            while (System.nanoTime() < end) {
+                long now = System.nanoTime();
+                sentAt.add(now);
+                refs[0].tell(new GreenhouseActor.GetControlStats(system));
+                if (now >= start + WARMUP_NANOS) {
+                    if (routedBefore < 0) {
+                        routedBefore = routed.get();
+                        workBefore = maintenanceWork.get();
+                    }
+                    sent++;
+                }
+                Thread.sleep(2);
+            }
+            feeder.join();
+            Thread.sleep(200);
+
+            int n = (int) Math.min(answered.get(), waits.length);
+            long[] sorted = Arrays.copyOf(waits, n);
+            Arrays.sort(sorted);
+            System.out.printf("%s: %d greenhouses, %d s%n", isolated ? "isolated dispatchers" : "shared default dispatcher", greenhouses, seconds);
+            System.out.printf("  control query: p50 %.2f ms, p99 %.2f ms, max %.2f ms; %d of %d answered%n",
+                    n == 0 ? 0 : sorted[n / 2] / 1e6, n == 0 ? 0 : sorted[(int) (n * 0.99)] / 1e6, n == 0 ? 0 : sorted[n - 1] / 1e6, n, sent);
+            System.out.printf("  routed %,d readings/s, maintenance %,d work units/s%n", (routed.get() - routedBefore) / seconds,
+                    (maintenanceWork.get() - workBefore) / seconds);
+        } finally {
+            system.terminate();
+        }
+    }
+
+    // About a millisecond of CPU per message, then on to the next one
+    private static Behavior<Long> busy(AtomicLong done) {
+        return Behaviors.setup(ctx -> Behaviors.receive(Long.class).onAnyMessage(seed -> {
+            long x = seed;
+            long until = System.nanoTime() + 1_000_000;
+            while (System.nanoTime() < until) x = x * 6364136223846793005L + 1442695040888963407L;
+            done.incrementAndGet();
+            ctx.getSelf().tell(x);
+            return Behaviors.same();
+        }).build());
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.device.ActuatorDriverProvider;
+import com.example.greenhouse.device.ActuatorSettings;
+import com.example.greenhouse.device.BlockingDevice;
+import com.example.greenhouse.device.DeviceDrivers;
+import com.example.greenhouse.device.FakeDeviceServer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency of the actors' dispatcher while 10k actuators drive slow blocking devices through the
+ * fake-tcp driver. A probe actor on the default dispatcher is pinged every few milliseconds and records
+ * how long each ping waited; meanwhile every device is switched every couple of seconds. With the
+ * drivers on their executor ("driver": virtual threads or driver-dispatcher) the pings should not
+ * notice; running the same drivers on the default dispatcher ("default") shows what this prevents.
+ * Arguments: [driver|default] [devices] [device latency ms] [seconds].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.DriverIsolationBenchmark
+ */
+public class DriverIsolationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        boolean onDefault = args.length > 0 && args[0].equals("default");
+        int devices = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int latencyMillis = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 15;
+
+        // Per-switch logging would cost more CPU than what is measured
+        for (String name : new String[] {"akka", "com.example.greenhouse"}) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        Config config = ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load());
+        long[] waits = new long[1 << 20];
+        AtomicLong pings = new AtomicLong();
+        ActorSystem<Long> system = ActorSystem.create(Behaviors.receive(Long.class).onAnyMessage(sent -> {
+            long n = pings.getAndIncrement();
+            if (n < waits.length) waits[(int) n] = System.nanoTime() - sent;
+            return Behaviors.same();
+        }).build(), "driver-bench", config);
+
+        try (FakeDeviceServer server = FakeDeviceServer.start("127.0.0.1", 0, Duration.ofMillis(latencyMillis))) {
+            ActorDriverSetup setup = new ActorDriverSetup(config, server.port());
+            Executor executor = onDefault ? system.executionContext() : DeviceDrivers.executor(system, "auto");
+            ActuatorSettings settings = ActuatorSettings.immediate().withMaxCommandsPerSecond(10)
+                                    .withRetries(Duration.ofSeconds(2), 3, Duration.ofMillis(500));
+            @SuppressWarnings("unchecked")
+            ActorRef<ActuatorActor.Command>[] actuators = new ActorRef[devices];
+            for (int d = 0; d < devices; d++) {
+                actuators[d] = system.systemActorOf(ActuatorActor.create("bench-gh-" + d, ActuatorActor.Type.Fan,
+                        (g, t) -> new BlockingDevice(() -> setup.provider.open(g, t), executor), settings), "fan-" + d, Props.empty());
+            }
+
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            int tick = 0;
+            long sent = 0;
+            // Every device switched every 2 s, in 20 slices; pings every 2 ms
+            while (System.nanoTime() < end) {
+                if (tick % 50 == 0) {
+                    int slice = (tick / 50) % 20;
+                    boolean on = (tick / 1000) % 2 == 0;
+                    for (int d = slice; d < devices; d += 20) actuators[d].tell(new ActuatorActor.Switch(on));
+                }
+                system.tell(System.nanoTime());
+                sent++;
+                tick++;
+                Thread.sleep(2);
+            }
+            Thread.sleep(200);
+
+            int n = (int) Math.min(pings.get(), waits.length);
+            long[] sorted = Arrays.copyOf(waits, n);
+            Arrays.sort(sorted);
+            System.out.printf("%s: %d devices at %d ms, %d s, drivers on %s%n", onDefault ? "default" : "driver", devices, latencyMillis, seconds,
+                    onDefault ? "the default dispatcher" : (executor instanceof ExecutorService ? "virtual threads" : DeviceDrivers.DISPATCHER));
+            if (n == 0) {
+                System.out.printf("  dispatcher starved: none of %d pings answered%n", sent);
+            } else {
+                System.out.printf("  dispatcher ping wait: p50 %.2f ms, p99 %.2f ms, max %.2f ms; %d of %d pings answered%n",
+                        sorted[n / 2] / 1e6, sorted[(int) (n * 0.99)] / 1e6, sorted[n - 1] / 1e6, n, sent);
+            }
+        } finally {
+            system.terminate();
+        }
+    }
+
+    private static final class ActorDriverSetup {
+        final ActuatorDriverProvider provider = DeviceDrivers.provider("fake-tcp");
+
+        ActorDriverSetup(Config config, int port) throws Exception {
+            provider.configure(ConfigFactory.parseString("fake-tcp { start-server = false, port = " + port + " }")
+                    .withFallback(config.getConfig("greenhouse.actuators")));
+        }
+    }
+}
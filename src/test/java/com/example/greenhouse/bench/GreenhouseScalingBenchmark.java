@@ -0,0 +1,91 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.GreenhouseServices;
+import com.example.greenhouse.actors.SiteManager;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time and heap per greenhouse of a fleet in the actors mode (a greenhouse with three sensor and
+ * three actuator children) or the lightweight mode (a greenhouse alone), for each of the given fleet sizes.
+ * Greenhouses are bootstrapped by sites of 1000, as in the application, and count as started when they
+ * have registered for routing; heap is measured after a full collection, with the fleet settled. A size
+ * whose projected heap (from the previous size) would not fit is skipped.
+ * Arguments: [actors|lightweight] [sizes, comma separated]. Run with a large -Xmx, e.g. -Xmx3g.
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.GreenhouseScalingBenchmark
+ */
+public class GreenhouseScalingBenchmark {
+
+    private static final int PER_SITE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        boolean lightweight = args.length > 0 && args[0].equals("lightweight");
+        String sizes = args.length > 1 ? args[1] : "10000,100000,1000000";
+
+        for (String name : new String[] {"akka", "com.example.greenhouse"}) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        Config config = ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load());
+        long max = Runtime.getRuntime().maxMemory();
+        double perGreenhouse = 0;
+        for (String size : sizes.split(",")) {
+            int n = Integer.parseInt(size.trim());
+            if (perGreenhouse * n > max * 0.8) {
+                System.out.printf("%s mode, %,d greenhouses: skipped, needs ~%,.0f MB of a %,d MB heap%n",
+                        lightweight ? "lightweight" : "actors", n, perGreenhouse * n / 1e6, max / 1_000_000);
+                continue;
+            }
+            perGreenhouse = run(config, lightweight, n);
+        }
+    }
+
+    private static double run(Config config, boolean lightweight, int n) throws Exception {
+        long before = usedHeap();
+        CountDownLatch registered = new CountDownLatch(n);
+        ActorSystem<DataProcessingManager.Command> system = ActorSystem.create(Behaviors.receive(DataProcessingManager.Command.class)
+                .onMessage(DataProcessingManager.RegisterGreenhouse.class, r -> {
+                    registered.countDown();
+                    return Behaviors.same();
+                }).build(), "scaling-bench", config);
+        try {
+            GreenhouseServices services = GreenhouseServices.of(system).withLightweight(lightweight);
+            long start = System.nanoTime();
+            for (int s = 0; s * PER_SITE < n; s++) {
+                ActorRef<SiteManager.Command> site = system.systemActorOf(SiteManager.create("bench", "site-" + s,
+                        Math.min(PER_SITE, n - s * PER_SITE), services), "site-" + s, DispatcherSelector.defaultDispatcher());
+                site.tell(new SiteManager.Bootstrap());
+            }
+            if (!registered.await(10, TimeUnit.MINUTES)) throw new IllegalStateException(registered.getCount() + " greenhouses did not start");
+            double startup = (System.nanoTime() - start) / 1e9;
+            // Let children finish starting and boot readings drain
+            Thread.sleep(Duration.ofSeconds(2).toMillis());
+            double perGreenhouse = (double) (usedHeap() - before) / n;
+            System.out.printf("%s mode, %,d greenhouses: started in %.2f s (%,.0f/s), %,.0f bytes of heap per greenhouse (%,.0f MB)%n",
+                    lightweight ? "lightweight" : "actors", n, startup, n / startup, perGreenhouse, perGreenhouse * n / 1e6);
+            return perGreenhouse;
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.HttpApiManager;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.fleet.SubtreeStats;
+import com.example.greenhouse.http.HttpSettings;
+import com.typesafe.config.ConfigFactory;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency of the HTTP query API under open-loop load: requests are sent on a fixed schedule whatever
+ * the response times, and latency is measured from the scheduled send time, so queueing shows up in the
+ * percentiles instead of slowing the client down. The fleet has 10k greenhouses whose latest values keep
+ * changing underneath (one writer thread, as a routing shard would). Mix: 70% single greenhouse, 20%
+ * site aggregates, 10% region aggregates.
+ * Arguments: [requests per second] [seconds] [greenhouses].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.HttpQueryBenchmark
+ */
+public class HttpQueryBenchmark {
+
+    private static final int CONNECTIONS = 32;
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int greenhouses = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int regions = 4;
+        int greenhousesPerSite = 100;
+        int sitesPerRegion = Math.max(1, greenhouses / (regions * greenhousesPerSite));
+
+        GreenhouseDirectory directory = new GreenhouseDirectory();
+        FleetTopology.Builder builder = FleetTopology.builder(directory);
+        for (int r = 0; r < regions; r++) {
+            for (int s = 0; s < sitesPerRegion; s++) {
+                for (int g = 0; g < greenhousesPerSite; g++) builder.add("region-" + r, "region-" + r + "-site-" + s, "region-" + r + "-site-" + s + "-gh-" + g);
+            }
+        }
+        FleetTopology topology = builder.build();
+        int fleet = directory.size();
+        LatestValueTable latest = new LatestValueTable(SensorActor.Kind.count());
+        ActuatorStates actuators = new ActuatorStates(ActuatorActor.Type.values().length);
+        for (int g = 0; g < fleet; g++) {
+            for (int k = 0; k < SensorActor.Kind.count(); k++) latest.put(g, k, 20 + k, 1);
+            actuators.switched(directory.idAt(g), g % 3, true, 1);
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            SplittableRandom rnd = new SplittableRandom(1);
+            while (!stop.get()) {
+                // ~100k readings/s of churn
+                for (int i = 0; i < 100; i++) latest.put(rnd.nextInt(fleet), rnd.nextInt(SensorActor.Kind.count()), rnd.nextDouble(15, 35), System.currentTimeMillis());
+                LockSupport.parkNanos(1_000_000);
+            }
+        });
+        writer.setDaemon(true);
+        writer.start();
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) { port = socket.getLocalPort(); }
+        HttpSettings settings = new HttpSettings(true, "127.0.0.1", port);
+        AggregateViews aggregates = aggregateViews(topology, latest);
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.setup(ctx -> {
+            ctx.spawn(HttpApiManager.create(settings, HttpApiManager.Views.of(topology, latest, actuators).withAggregates(aggregates)), "http");
+            return Behaviors.empty();
+        }), "http-bench");
+
+        ExecutorService clientThreads = Executors.newFixedThreadPool(2);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(clientThreads)
+                .build();
+        String base = "http://127.0.0.1:" + port;
+        waitUntilUp(client, base + "/api/regions/region-0/aggregates");
+        System.out.printf("%,d greenhouses, %d sites, %d regions%n", fleet, topology.siteCount(), regions);
+
+        // Below the target rate, so a cold JIT does not leave a backlog for the measured run
+        run(client, base, topology, Math.max(1, rate / 4), 10, "warmup");
+        run(client, base, topology, rate, seconds, "measure");
+
+        stop.set(true);
+        clientThreads.shutdown();
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get();
+    }
+
+    private static void run(HttpClient client, String base, FleetTopology topology, int rate, int seconds, String label) {
+        int total = rate * seconds;
+        long[] latencyMicros = new long[total];
+        AtomicInteger errors = new AtomicInteger();
+        CompletableFuture<?>[] inFlight = new CompletableFuture<?>[total];
+        // The JDK client opens a connection per concurrent request: cap them like a keep-alive pool would
+        Semaphore connections = new Semaphore(CONNECTIONS);
+        SplittableRandom rnd = new SplittableRandom(42);
+        GreenhouseDirectory directory = topology.directory();
+        long intervalNanos = 1_000_000_000L / rate;
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long scheduled = start + i * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            int pick = rnd.nextInt(10);
+            String path;
+            if (pick < 7) {
+                path = "/api/greenhouses/" + directory.idAt(rnd.nextInt(directory.size()));
+            } else if (pick < 9) {
+                path = "/api/sites/" + topology.siteId(rnd.nextInt(topology.siteCount())) + "/aggregates";
+            } else {
+                path = "/api/regions/" + topology.regionId(rnd.nextInt(topology.regionCount())) + "/aggregates";
+            }
+            int slot = i;
+            // Waiting for a free connection counts towards latency, since it is measured from the schedule
+            connections.acquireUninterruptibly();
+            inFlight[i] = client.sendAsync(HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(10)).build(),
+                            HttpResponse.BodyHandlers.ofByteArray())
+                    .handle((response, failure) -> {
+                        latencyMicros[slot] = (System.nanoTime() - scheduled) / 1_000;
+                        connections.release();
+                        if (failure != null || response.statusCode() != 200) errors.incrementAndGet();
+                        return null;
+                    });
+        }
+        CompletableFuture.allOf(inFlight).join();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        Arrays.sort(latencyMicros);
+        System.out.printf("%-8s %,d requests in %.1f s (%,.0f req/s achieved, %,d target), errors %d%n",
+                label, total, elapsed, total / elapsed, rate, errors.get());
+        System.out.printf("         p50 %.2f ms  p90 %.2f ms  p99 %.2f ms  p99.9 %.2f ms  max %.2f ms%n",
+                pct(latencyMicros, 0.50), pct(latencyMicros, 0.90), pct(latencyMicros, 0.99), pct(latencyMicros, 0.999),
+                latencyMicros[total - 1] / 1000.0);
+    }
+
+    private static double pct(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1000.0;
+    }
+
+    // What the site and region managers would have published for the starting values
+    private static AggregateViews aggregateViews(FleetTopology topology, LatestValueTable latest) {
+        AggregateSettings bands = AggregateSettings.fromConfig(ConfigFactory.load());
+        AggregateViews views = new AggregateViews();
+        SubtreeStats[] regions = new SubtreeStats[topology.regionCount()];
+        for (int r = 0; r < regions.length; r++) regions[r] = new SubtreeStats(latest.kinds());
+        long[] timestamps = new long[latest.kinds()];
+        for (int site = 0; site < topology.siteCount(); site++) {
+            SubtreeStats stats = new SubtreeStats(latest.kinds());
+            for (int g : topology.greenhousesOf(site)) {
+                double[] values = new double[latest.kinds()];
+                latest.read(g, values, timestamps);
+                stats.replace(null, values, bands);
+            }
+            views.publish(AggregateViews.site(topology.siteId(site)), stats, System.currentTimeMillis());
+            regions[topology.regionOfSite(site)].merge(stats);
+        }
+        for (int r = 0; r < regions.length; r++) views.publish(AggregateViews.region(topology.regionId(r)), regions[r], System.currentTimeMillis());
+        return views;
+    }
+
+    private static void waitUntilUp(HttpClient client, String url) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                if (client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.discarding()).statusCode() == 200) return;
+            } catch (Exception notYet) {
+                // still binding
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("query API did not come up at " + url);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.GreenhouseActor;
+import com.example.greenhouse.actors.JournalManager;
+import com.example.greenhouse.journal.ControlJournal;
+import com.example.greenhouse.journal.GreenhouseEvent;
+import com.example.greenhouse.journal.GreenhouseState;
+import com.example.greenhouse.journal.JournalSettings;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Recovery time of greenhouse control state after a restart, for a fleet with a long history.
+ * Writes the same history twice, with snapshots every 100k events and without snapshots, then times
+ * reopening the journal, and finally times a full actor-level recovery: JournalManager start plus every
+ * GreenhouseActor recovering its state. Arguments: [greenhouses] [events].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.JournalRecoveryBenchmark
+ */
+public class JournalRecoveryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int greenhouses = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        // Not a multiple of snapshot-every, so the snapshotted journal also has a tail to replay
+        long events = args.length > 1 ? Long.parseLong(args[1]) : 5_090_000L;
+
+        Path snapshotted = Files.createTempDirectory("greenhouse-journal-bench");
+        Path unsnapshotted = Files.createTempDirectory("greenhouse-journal-bench");
+        JournalSettings withSnapshots = new JournalSettings(true, snapshotted, Duration.ofSeconds(1), 100_000, Duration.ofSeconds(10));
+        JournalSettings withoutSnapshots = new JournalSettings(true, unsnapshotted, Duration.ofSeconds(1), 0, Duration.ofSeconds(10));
+        write(withSnapshots, greenhouses, events);
+        write(withoutSnapshots, greenhouses, events);
+
+        for (int round = 0; round < 3; round++) { // the first round warms up
+            report("snapshot every 100k", withSnapshots);
+            report("no snapshots       ", withoutSnapshots);
+        }
+        for (int round = 0; round < 2; round++) recoverActors(withSnapshots, greenhouses);
+
+        deleteRecursively(snapshotted);
+        deleteRecursively(unsnapshotted);
+        System.exit(0);
+    }
+
+    // Readings snapshots and actuator switches in roughly the proportion a running fleet journals them
+    private static void write(JournalSettings settings, int greenhouses, long events) throws Exception {
+        SplittableRandom rnd = new SplittableRandom(42);
+        ActuatorActor.Type[] actuators = ActuatorActor.Type.values();
+        long start = System.nanoTime();
+        try (ControlJournal journal = ControlJournal.open(settings)) {
+            for (long i = 0; i < events; i++) {
+                String id = "gh-" + rnd.nextInt(greenhouses);
+                GreenhouseEvent event = rnd.nextInt(4) == 0
+                        ? new GreenhouseEvent.ActuatorSwitched(actuators[rnd.nextInt(actuators.length)], rnd.nextBoolean(), i)
+                        : new GreenhouseEvent.ReadingsRecorded(new double[] {20 + rnd.nextDouble() * 10, 60, 30}, new long[] {i, i, i});
+                journal.append(id, event);
+            }
+        }
+        System.out.printf("wrote %,d events for %,d greenhouses in %.2f s (snapshot-every %d)%n",
+                events, greenhouses, (System.nanoTime() - start) / 1e9, settings.snapshotEvery);
+    }
+
+    private static void report(String label, JournalSettings settings) throws Exception {
+        long start = System.nanoTime();
+        try (ControlJournal journal = ControlJournal.open(settings)) {
+            System.out.printf("%s: recovered %,d greenhouses, replayed %,d events in %,d ms%n", label,
+                    journal.greenhouseCount(), journal.eventsReplayed(), (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private static void recoverActors(JournalSettings settings, int greenhouses) throws Exception {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        Behavior<Void> guardian = Behaviors.setup(ctx -> {
+            long start = System.nanoTime(); // actor system startup itself is not part of recovery
+            ActorRef<JournalManager.Command> journal = ctx.spawn(JournalManager.create(settings), "journal");
+            ActorRef<GreenhouseState> counter = ctx.spawn(Behaviors.setup(c -> {
+                int[] received = {0};
+                return Behaviors.receiveMessage(state -> {
+                    if (++received[0] == greenhouses) done.complete(System.nanoTime() - start);
+                    return Behaviors.same();
+                });
+            }), "counter");
+            for (int g = 0; g < greenhouses; g++) {
+                ActorRef<GreenhouseActor.Command> gh = ctx.spawn(GreenhouseActor.create("r", "s", "gh-" + g, ctx.getSystem().ignoreRef(), journal), "gh-" + g);
+                gh.tell(new GreenhouseActor.GetState(counter)); // answered once the state is recovered
+            }
+            return Behaviors.empty();
+        });
+        ActorSystem<Void> system = ActorSystem.create(guardian, "JournalRecoveryBenchmark");
+        long nanos = done.get(5, TimeUnit.MINUTES);
+        System.out.printf("actor recovery: journal and %,d greenhouses started and recovered in %,d ms%n", greenhouses, nanos / 1_000_000);
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    private static void deleteRecursively(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) files::iterator) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+}
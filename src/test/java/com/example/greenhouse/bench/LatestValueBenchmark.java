@@ -0,0 +1,84 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.fleet.LatestValueTable;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cost of fleet-wide reads from the latest-value table while routing shards keep writing to it: one
+ * writer thread per shard updates random sensors of its own greenhouses as fast as it can, and a reader
+ * takes full snapshots (every kind of every greenhouse) and single-row reads.
+ * Arguments: [greenhouses] [writer threads] [seconds].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.LatestValueBenchmark
+ */
+public class LatestValueBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int greenhouses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int writers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int kinds = SensorActor.Kind.count();
+        LatestValueTable table = new LatestValueTable(kinds);
+        for (int g = 0; g < greenhouses; g++) {
+            for (int k = 0; k < kinds; k++) table.put(g, k, 0, 0);
+        }
+
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder writes = new LongAdder();
+        Thread[] threads = new Thread[writers];
+        for (int w = 0; w < writers; w++) {
+            int shard = w;
+            threads[w] = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(shard);
+                long ts = 1;
+                int mine = (greenhouses - shard + writers - 1) / writers;
+                while (!stop.get()) {
+                    for (int i = 0; i < 1024; i++) {
+                        int g = shard + rnd.nextInt(mine) * writers; // rows owned by this shard only
+                        table.put(g, rnd.nextInt(kinds), rnd.nextDouble(), ts++);
+                    }
+                    writes.add(1024);
+                }
+            });
+            threads[w].start();
+        }
+
+        for (int round = 0; round < 2; round++) {
+            long writesBefore = writes.sum();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            long snapshots = 0;
+            long snapshotNanos = 0;
+            long maxSnapshotNanos = 0;
+            while (System.nanoTime() < end) {
+                long t0 = System.nanoTime();
+                LatestValueTable.Snapshot s = table.snapshot();
+                long took = System.nanoTime() - t0;
+                if (s.rows != greenhouses) throw new IllegalStateException("rows " + s.rows);
+                snapshots++;
+                snapshotNanos += took;
+                maxSnapshotNanos = Math.max(maxSnapshotNanos, took);
+            }
+            long rowReads = 0;
+            double[] values = new double[kinds];
+            long[] timestamps = new long[kinds];
+            SplittableRandom rnd = new SplittableRandom(7);
+            long t0 = System.nanoTime();
+            while (System.nanoTime() - t0 < 1_000_000_000L) {
+                for (int i = 0; i < 1024; i++) table.read(rnd.nextInt(greenhouses), values, timestamps);
+                rowReads += 1024;
+            }
+            double rowSeconds = (System.nanoTime() - t0) / 1e9;
+            System.out.printf("round %d: %,d greenhouses x %d kinds, %d writers at %,.0f writes/s%n", round, greenhouses, kinds,
+                    writers, (writes.sum() - writesBefore) / (seconds + rowSeconds));
+            System.out.printf("  snapshot: mean %.2f ms, max %.2f ms (%d taken)%n",
+                    snapshotNanos / 1e6 / snapshots, maxSnapshotNanos / 1e6, snapshots);
+            System.out.printf("  row read: %,.0f reads/s%n", rowReads / rowSeconds);
+        }
+        stop.set(true);
+        for (Thread t : threads) t.join();
+    }
+}
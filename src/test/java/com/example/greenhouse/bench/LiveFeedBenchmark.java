@@ -0,0 +1,172 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.stream.ThrottleMode;
+import akka.stream.javadsl.Sink;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.stream.LiveFeed;
+import com.example.greenhouse.stream.LiveFeedSettings;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fan-out cost of the live feed with thousands of subscribers on one hub. Routed batches are offered at
+ * a fixed rate, as the routing shards would; each subscriber has its own filter (a site, a region and
+ * kind, a single greenhouse, or, for 1%, everything) and gets JSON events as the SSE route sends them.
+ * A share of the subscribers is slow (one event per second) to show they neither stall the hub nor the
+ * others. Reported: readings dropped at the hub's ingress, events delivered to the fast subscribers
+ * and their latency from the reading's routing time.
+ * Arguments: [subscribers] [readings per second] [seconds] [slow percent] [drop|conflate].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.LiveFeedBenchmark
+ */
+public class LiveFeedBenchmark {
+
+    private static final int BATCH = 512;
+    private static final int BUCKET_MICROS = 100;
+    private static final int BUCKETS = 100_000; // up to 10 s
+    private static final String TIMESTAMP = "\"timestamp\":";
+
+    public static void main(String[] args) throws Exception {
+        int subscribers = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int slowPercent = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        LiveFeedSettings.Overflow overflow = LiveFeedSettings.Overflow.valueOf((args.length > 4 ? args[4] : "drop").toUpperCase());
+
+        GreenhouseDirectory directory = new GreenhouseDirectory();
+        FleetTopology.Builder builder = FleetTopology.builder(directory);
+        for (int r = 0; r < 4; r++) {
+            for (int s = 0; s < 25; s++) {
+                for (int g = 0; g < 100; g++) builder.add("region-" + r, "region-" + r + "-site-" + s, "region-" + r + "-site-" + s + "-gh-" + g);
+            }
+        }
+        FleetTopology topology = builder.build();
+        int fleet = directory.size();
+
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "live-bench");
+        LiveFeedSettings settings = new LiveFeedSettings(true, 1024, 256, overflow, 64, 1024, Duration.ofSeconds(15));
+        LiveFeed feed = LiveFeed.start(system, settings, directory);
+
+        AtomicLongArray latency = new AtomicLongArray(BUCKETS);
+        LongAdder events = new LongAdder();
+        LongAdder readings = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        SplittableRandom rnd = new SplittableRandom(3);
+        int slow = 0;
+        for (int i = 0; i < subscribers; i++) {
+            LiveFeed.Filter filter = filter(topology, rnd, i % 100);
+            if (i * 100L / subscribers < slowPercent) {
+                slow++;
+                feed.subscribe(filter, overflow, settings.clientBuffer)
+                        .throttle(1, Duration.ofSeconds(1), 1, ThrottleMode.shaping())
+                        .runWith(Sink.ignore(), system);
+            } else {
+                feed.subscribe(filter, overflow, settings.clientBuffer)
+                        .runWith(Sink.foreach(json -> {
+                            long micros = (System.nanoTime() - firstTimestamp(json)) / 1_000;
+                            latency.incrementAndGet((int) Math.min(BUCKETS - 1, micros / BUCKET_MICROS));
+                            events.increment();
+                            readings.add(count(json));
+                            bytes.add(json.length());
+                        }), system);
+            }
+        }
+        while (feed.subscribers() < subscribers) Thread.sleep(10);
+        System.out.printf("%,d greenhouses, %,d subscribers (%d slow), %s, %,d readings/s offered%n",
+                fleet, subscribers, slow, overflow.name().toLowerCase(), rate);
+
+        run(feed, latency, events, readings, bytes, fleet, rate, Math.max(1, seconds / 2), "warmup");
+        run(feed, latency, events, readings, bytes, fleet, rate, seconds, "measure");
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().get();
+    }
+
+    private static long firstTimestamp(String json) {
+        int from = json.indexOf(TIMESTAMP) + TIMESTAMP.length();
+        int to = from;
+        while (Character.isDigit(json.charAt(to))) to++;
+        return Long.parseLong(json, from, to, 10);
+    }
+
+    private static int count(String json) {
+        int n = 0;
+        for (int i = json.indexOf('{'); i >= 0; i = json.indexOf('{', i + 1)) n++;
+        return n;
+    }
+
+    // Out of 100: 1 everything, 49 a site, 20 a region and one kind, 30 a single greenhouse
+    private static LiveFeed.Filter filter(FleetTopology topology, SplittableRandom rnd, int pick) {
+        if (pick == 0) return LiveFeed.Filter.all();
+        boolean[] selected = new boolean[topology.directory().size()];
+        if (pick < 50) {
+            for (int g : topology.greenhousesOf(rnd.nextInt(topology.siteCount()))) selected[g] = true;
+            return LiveFeed.Filter.of(selected, null);
+        }
+        if (pick < 70) {
+            int region = rnd.nextInt(topology.regionCount());
+            for (int s = 0; s < topology.siteCount(); s++) {
+                if (topology.regionOfSite(s) == region) {
+                    for (int g : topology.greenhousesOf(s)) selected[g] = true;
+                }
+            }
+            return LiveFeed.Filter.of(selected, new SensorActor.Kind[] {SensorActor.Kind.ofOrdinal(rnd.nextInt(SensorActor.Kind.count()))});
+        }
+        selected[rnd.nextInt(selected.length)] = true;
+        return LiveFeed.Filter.of(selected, null);
+    }
+
+    private static void run(LiveFeed feed, AtomicLongArray latency, LongAdder events, LongAdder readings, LongAdder bytes,
+                            int fleet, int rate, int seconds, String label) throws InterruptedException {
+        for (int i = 0; i < BUCKETS; i++) latency.set(i, 0);
+        events.reset();
+        readings.reset();
+        bytes.reset();
+        long droppedBefore = feed.dropped();
+        SplittableRandom rnd = new SplittableRandom(11);
+        int kinds = SensorActor.Kind.count();
+        long batches = (long) rate * seconds / BATCH;
+        long intervalNanos = 1_000_000_000L * BATCH / rate;
+        long start = System.nanoTime();
+        for (long b = 0; b < batches; b++) {
+            long wait = start + b * intervalNanos - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            // Timestamps carry the routing time in nanos so subscribers can measure delivery latency
+            long now = System.nanoTime();
+            SensorBatch.Builder batch = new SensorBatch.Builder(BATCH);
+            for (int i = 0; i < BATCH; i++) batch.add(rnd.nextInt(fleet), rnd.nextInt(kinds), rnd.nextDouble(15, 35), now);
+            feed.offer(batch.build());
+        }
+        Thread.sleep(1000); // let subscribers drain
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long offered = batches * BATCH;
+        long dropped = feed.dropped() - droppedBefore;
+        System.out.printf("%-8s %,d readings offered in %.1f s, %,d (%.2f%%) dropped at hub ingress%n",
+                label, offered, elapsed, dropped, 100.0 * dropped / offered);
+        System.out.printf("         fast subscribers: %,.0f events/s, %,.0f readings/s, %,.1f MB/s JSON%n",
+                events.sum() / elapsed, readings.sum() / elapsed, bytes.sum() / elapsed / 1e6);
+        System.out.printf("         delivery latency p50 %.1f ms  p90 %.1f ms  p99 %.1f ms  max %.1f ms%n",
+                pct(latency, 0.50), pct(latency, 0.90), pct(latency, 0.99), pct(latency, 1.0));
+    }
+
+    private static double pct(AtomicLongArray buckets, double p) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += buckets.get(i);
+        if (total == 0) return Double.NaN;
+        long target = Math.max(1, (long) Math.ceil(total * p));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) return (i + 1) * BUCKET_MICROS / 1000.0;
+        }
+        return BUCKETS * BUCKET_MICROS / 1000.0;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.greenhouse.bench;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.GreenhouseServices;
+import com.example.greenhouse.actors.SiteManager;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident heap of a fleet where only a few greenhouses get readings, before and after the idle ones are
+ * passivated, and how long a passivated greenhouse takes to come back. Greenhouses are bootstrapped by sites
+ * of 1000 and routed by a sharded DataProcessingManager; the active ones get a reading every 100 ms. Once
+ * the rest are passivated, 1000 of them get one reading each, and revival is timed from that reading to
+ * the greenhouse registering again, when the held reading is delivered to it.
+ * Arguments: [actors|lightweight] [greenhouses] [active percent]. Run with e.g. -Xmx3g.
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.PassivationBenchmark
+ */
+public class PassivationBenchmark {
+
+    private static final int PER_SITE = 1000;
+    private static final Duration PASSIVATE_AFTER = Duration.ofSeconds(2);
+    private static final int WAKE = 1000;
+
+    public static void main(String[] args) throws Exception {
+        boolean lightweight = args.length > 0 && args[0].equals("lightweight");
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        double activePercent = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        int active = (int) (n * activePercent / 100);
+        if (n < 2 * WAKE) throw new IllegalArgumentException("at least " + 2 * WAKE + " greenhouses");
+
+        for (String name : new String[] {"akka", "com.example.greenhouse"}) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(name)).setLevel(ch.qos.logback.classic.Level.ERROR);
+        }
+        Config config = ConfigFactory.parseString("akka.loglevel = ERROR").withFallback(ConfigFactory.load());
+        long before = usedHeap();
+        AtomicLong registered = new AtomicLong();
+        AtomicLong passivated = new AtomicLong();
+        Map<String, Long> wokenAt = new ConcurrentHashMap<>();
+        long[] revival = new long[WAKE];
+        AtomicLong revived = new AtomicLong();
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "passivation-bench", config);
+        try {
+            DispatcherSelector d = DispatcherSelector.defaultDispatcher();
+            ActorRef<DataProcessingManager.Command> data = system.systemActorOf(DataProcessingManager.create(4, new GreenhouseDirectory()), "data", d);
+            DataProcessingManager.Shards shards = AskPattern.<DataProcessingManager.Command, DataProcessingManager.Shards>ask(data,
+                    DataProcessingManager.GetShards::new, Duration.ofSeconds(3), system.scheduler()).toCompletableFuture().get();
+            // What greenhouses tell routing passes through here to be counted
+            ActorRef<DataProcessingManager.Command> tap = system.systemActorOf(Behaviors.receive(DataProcessingManager.Command.class)
+                    .onAnyMessage(msg -> {
+                        if (msg instanceof DataProcessingManager.RegisterGreenhouse) {
+                            registered.incrementAndGet();
+                            Long woken = wokenAt.remove(((DataProcessingManager.RegisterGreenhouse) msg).greenhouseId);
+                            if (woken != null) revival[(int) revived.getAndIncrement()] = System.nanoTime() - woken;
+                        } else if (msg instanceof DataProcessingManager.Passivated) {
+                            passivated.incrementAndGet();
+                        }
+                        data.tell(msg);
+                        return Behaviors.same();
+                    }).build(), "tap", d);
+            GreenhouseServices services = GreenhouseServices.of(tap).withLightweight(lightweight).withPassivateAfter(PASSIVATE_AFTER);
+            String[] ids = new String[n];
+            for (int s = 0; s * PER_SITE < n; s++) {
+                int count = Math.min(PER_SITE, n - s * PER_SITE);
+                for (int g = 0; g < count; g++) ids[s * PER_SITE + g] = "site-" + s + "-gh-" + g;
+                system.systemActorOf(SiteManager.create("bench", "site-" + s, count, services), "site-" + s, d)
+                        .tell(new SiteManager.Bootstrap());
+            }
+            await(() -> registered.get() >= n, "greenhouses to start");
+            long resident = usedHeap();
+
+            // Every stride-th greenhouse is active, spread over all sites and shards; some passivate before this starts
+            int stride = Math.max(1, n / Math.max(1, active));
+            Thread feeder = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (int i = 0; i < n; i += stride) shards.forGreenhouse(ids[i]).tell(new DataProcessingManager.SensorEnvelope(ids[i], "temperature", 24));
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "feeder");
+            feeder.start();
+            int activeCount = (n + stride - 1) / stride;
+            await(() -> passivated.get() >= n - activeCount, "idle greenhouses to passivate");
+            Thread.sleep(1000);
+            long idle = usedHeap();
+
+            long start = System.nanoTime();
+            // Spread over the fleet, skipping the active ones
+            int step = Math.max(1, n / WAKE);
+            for (int w = 0; w < WAKE; w++) {
+                int i = w * step;
+                String id = ids[i % stride == 0 ? i + 1 : i];
+                wokenAt.put(id, System.nanoTime());
+                shards.forGreenhouse(id).tell(new DataProcessingManager.SensorEnvelope(id, "soil", 40));
+            }
+            await(() -> revived.get() >= WAKE, "passivated greenhouses to revive");
+            double wakeAll = (System.nanoTime() - start) / 1e6;
+            feeder.interrupt();
+
+            long[] sorted = revival.clone();
+            Arrays.sort(sorted);
+            System.out.printf("%s mode, %,d greenhouses, %,d active:%n", lightweight ? "lightweight" : "actors", n, activeCount);
+            System.out.printf("  heap all resident %,d MB, after passivation %,d MB (%,d passivated)%n",
+                    (resident - before) / 1_000_000, (idle - before) / 1_000_000, passivated.get());
+            System.out.printf("  revival of %d: p50 %.2f ms, p99 %.2f ms, max %.2f ms, all in %.0f ms%n", WAKE,
+                    sorted[WAKE / 2] / 1e6, sorted[(int) (WAKE * 0.99)] / 1e6, sorted[WAKE - 1] / 1e6, wakeAll);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().get(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private interface Condition { boolean holds(); }
+
+    private static void await(Condition condition, String what) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+        while (!condition.holds()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("timed out waiting for " + what);
+            Thread.sleep(50);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
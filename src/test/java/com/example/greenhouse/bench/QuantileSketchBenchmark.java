@@ -0,0 +1,93 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.fleet.QuantileSketch;
+import com.example.greenhouse.fleet.SketchSettings;
+import com.example.greenhouse.fleet.SketchWindow;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Cost of the quantile sketches on each level of the hierarchy: adding readings (greenhouse), merging
+ * per-slice sketches of many children (site, region), querying p50/p95/p99 of a merged window (every
+ * publication), memory per sketch, and the worst relative error against exact quantiles.
+ * Arguments: [children merged per level] [readings per child and slice] [window slices].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.QuantileSketchBenchmark
+ */
+public class QuantileSketchBenchmark {
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    public static void main(String[] args) {
+        int children = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int readings = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int windowSlices = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        SketchSettings settings = new SketchSettings(true, 0.02, 128, Duration.ofSeconds(10), windowSlices, QUANTILES);
+        SplittableRandom rnd = new SplittableRandom(42);
+
+        double[][] values = new double[children][readings];
+        for (int c = 0; c < children; c++) {
+            double base = 15 + rnd.nextDouble() * 15; // each greenhouse around its own temperature
+            for (int i = 0; i < readings; i++) values[c][i] = base + gaussian(rnd) * 2;
+        }
+
+        for (int round = 0; round < 3; round++) {
+            // Greenhouse: one sketch per slice
+            QuantileSketch[] perChild = new QuantileSketch[children];
+            long t0 = System.nanoTime();
+            for (int c = 0; c < children; c++) {
+                QuantileSketch s = settings.newSketch();
+                for (double v : values[c]) s.add(v);
+                perChild[c] = s;
+            }
+            long addNanos = System.nanoTime() - t0;
+
+            // Site or region: merge every child's slice
+            QuantileSketch merged = settings.newSketch();
+            t0 = System.nanoTime();
+            for (QuantileSketch s : perChild) merged.merge(s);
+            long mergeNanos = System.nanoTime() - t0;
+
+            // Window: every slot holds a merged slice, a publication merges them all and asks three quantiles
+            SketchWindow window = new SketchWindow(settings, 1, false);
+            for (long slice = 0; slice < windowSlices; slice++) window.add(slice, new QuantileSketch[] {merged}, slice);
+            int queries = 200;
+            double sink = 0;
+            t0 = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                QuantileSketch w = window.merged(0, windowSlices - 1);
+                for (double q : QUANTILES) sink += w.quantile(q);
+            }
+            long queryNanos = System.nanoTime() - t0;
+
+            double[] all = new double[children * readings];
+            for (int c = 0; c < children; c++) System.arraycopy(values[c], 0, all, c * readings, readings);
+            Arrays.sort(all);
+            double worst = 0;
+            for (double q : QUANTILES) {
+                double exact = all[(int) (q * (all.length - 1))];
+                worst = Math.max(worst, Math.abs(merged.quantile(q) - exact) / Math.abs(exact));
+            }
+
+            System.out.printf("round %d: %,d children x %,d readings, window of %d slices%n", round, children, readings, windowSlices);
+            System.out.printf("  add:    %.1f ns/reading%n", (double) addNanos / (children * readings));
+            System.out.printf("  merge:  %.2f us/child sketch (%,.0f merges/s)%n", mergeNanos / 1e3 / children, children / (mergeNanos / 1e9));
+            System.out.printf("  window: %.1f us per merge of %d slices + %d quantiles (%s)%n", queryNanos / 1e3 / queries, windowSlices,
+                    QUANTILES.length, sink > 0 ? "ok" : "?");
+            System.out.printf("  memory: %,d bytes per sketch, %,d per window and kind; worst relative error %.3f%% (bound %.1f%%)%n",
+                    bytesPerSketch(settings), bytesPerSketch(settings) * windowSlices, worst * 100, settings.relativeAccuracy * 100);
+        }
+    }
+
+    // Object headers, fields and the counters of both stores (the negative one only once used)
+    private static long bytesPerSketch(SketchSettings settings) {
+        long store = 16 + 8 * settings.maxBins + 32;
+        return 80 + 2 * store;
+    }
+
+    private static double gaussian(SplittableRandom rnd) {
+        return Math.sqrt(-2 * Math.log(1 - rnd.nextDouble())) * Math.cos(2 * Math.PI * rnd.nextDouble());
+    }
+}
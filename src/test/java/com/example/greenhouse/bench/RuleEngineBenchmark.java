@@ -0,0 +1,137 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.control.ControlRule;
+import com.example.greenhouse.control.ControlRules;
+import com.example.greenhouse.control.RuleEvaluator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of running one reading through the compiled control rules, against the number of rules. Rules
+ * have one to three conditions with thresholds spread over each kind's range, and readings are a
+ * random walk per kind as from real sensors. The compiled table only visits the switch points a reading
+ * crosses, so its time does not grow with the rules as such, only with how densely their thresholds
+ * are packed (here about 2 points crossed per reading at 10,000 rules). The baseline checks every
+ * condition of the reading's kind, as a plain list of rules would, and grows linearly.
+ *
+ * mvn -Pbench test-compile exec:exec -Dbench=RuleEngineBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleEngineBenchmark {
+
+    private static final int READINGS = 1 << 16;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int rules;
+
+    private RuleEvaluator evaluator;
+    private final int[] kind = new int[READINGS];
+    private final double[] value = new double[READINGS];
+    private int next;
+    private Blackhole blackhole;
+    private final RuleEvaluator.Listener listener = (actuator, on, rule) -> blackhole.consume(on);
+    // Baseline: conditions by kind, checked one by one
+    private List<ControlRule> specs;
+    private int[][] byKind;
+    private int[] conditionRule;
+    private ControlRule.Condition[] conditions;
+    private boolean[] holds;
+    private int[] holding;
+    private boolean[] active;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        SplittableRandom rnd = new SplittableRandom(1);
+        int kinds = SensorActor.Kind.count();
+        ActuatorActor.Type[] actuators = ActuatorActor.Type.values();
+        specs = new ArrayList<>();
+        for (int r = 0; r < rules; r++) {
+            List<ControlRule.Condition> when = new ArrayList<>();
+            for (int c = 0; c <= rnd.nextInt(3); c++) {
+                SensorActor.Kind k = SensorActor.Kind.ofOrdinal(rnd.nextInt(kinds));
+                double threshold = rnd.nextDouble() * 100;
+                double band = rnd.nextDouble() * 2;
+                when.add(rnd.nextBoolean() ? ControlRule.Condition.above(k, threshold, threshold - band)
+                        : ControlRule.Condition.below(k, threshold, threshold + band));
+            }
+            specs.add(new ControlRule("r" + r, Set.of(), when, actuators[r % actuators.length]));
+        }
+        evaluator = new ControlRules(Map.of(), specs).table(ControlRules.DEFAULT_CLASS).newEvaluator();
+        compileBaseline(kinds);
+
+        double[] walk = new double[kinds];
+        for (int k = 0; k < kinds; k++) walk[k] = 50;
+        for (int i = 0; i < READINGS; i++) {
+            int k = rnd.nextInt(kinds);
+            walk[k] = Math.max(0, Math.min(100, walk[k] + rnd.nextDouble() * 0.2 - 0.1));
+            kind[i] = k;
+            value[i] = walk[k];
+        }
+        for (int i = 0; i < READINGS; i++) {
+            evaluator.evaluate(kind[i], value[i], listener);
+            checkEveryCondition(kind[i], value[i]);
+        }
+    }
+
+    private void compileBaseline(int kinds) {
+        List<ControlRule.Condition> all = new ArrayList<>();
+        List<Integer> rule = new ArrayList<>();
+        for (int r = 0; r < specs.size(); r++) {
+            for (ControlRule.Condition c : specs.get(r).when) { all.add(c); rule.add(r); }
+        }
+        conditions = all.toArray(new ControlRule.Condition[0]);
+        conditionRule = rule.stream().mapToInt(Integer::intValue).toArray();
+        byKind = new int[kinds][];
+        for (int k = 0; k < kinds; k++) {
+            int kk = k;
+            byKind[k] = IntStream.range(0, conditions.length).filter(c -> conditions[c].kind.ordinal() == kk).toArray();
+        }
+        holds = new boolean[conditions.length];
+        holding = new int[specs.size()];
+        active = new boolean[specs.size()];
+    }
+
+    private void checkEveryCondition(int k, double v) {
+        for (int c : byKind[k]) {
+            ControlRule.Condition cond = conditions[c];
+            boolean now = holds[c] ? (cond.above ? v >= cond.clear : v <= cond.clear) : (cond.above ? v > cond.threshold : v < cond.threshold);
+            if (now == holds[c]) continue;
+            holds[c] = now;
+            int r = conditionRule[c];
+            holding[r] += now ? 1 : -1;
+            boolean ruleActive = holding[r] == specs.get(r).when.size();
+            if (ruleActive != active[r]) {
+                active[r] = ruleActive;
+                blackhole.consume(ruleActive);
+            }
+        }
+    }
+
+    @Benchmark
+    public void evaluateReading() {
+        int i = next++ & (READINGS - 1);
+        evaluator.evaluate(kind[i], value[i], listener);
+    }
+
+    @Benchmark
+    public void baselineCheckEveryCondition() {
+        int i = next++ & (READINGS - 1);
+        checkEveryCondition(kind[i], value[i]);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.stream.LoadGenerator;
+import com.example.greenhouse.stream.LoadProfile;
+import com.example.greenhouse.validation.SensorValidator;
+import com.example.greenhouse.validation.ValidationSettings;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+/**
+ * Throughput of ingest validation on one routing shard: load-generator batches (timestamps advancing
+ * as at the target rate) go through {@link SensorValidator#filter}, with a share of readings corrupted
+ * (NaN, out of range, spikes) so rejection and quarantine are exercised. Uses the limits of
+ * application.conf. Arguments: [greenhouses] [seconds] [target readings/s] [corrupt per million].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.SensorValidatorBenchmark
+ */
+public class SensorValidatorBenchmark {
+
+    public static void main(String[] args) {
+        int greenhouses = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long target = args.length > 2 ? Long.parseLong(args[2]) : 1_000_000;
+        int corruptPerMillion = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        ValidationSettings settings = ValidationSettings.fromConfig(ConfigFactory.load());
+        LoadProfile profile = new LoadProfile(true, target, greenhouses, new double[] {0.4, 0.4, 0.2}, 1.0, 42L, 1, Duration.ofMillis(10));
+        LoadGenerator generator = new LoadGenerator(profile, greenhouses);
+        SplittableRandom rnd = new SplittableRandom(42);
+
+        // Pre-generated batches of 512, each stamped 512 readings' worth of time after the previous one
+        int batchSize = 512;
+        SensorBatch[] batches = new SensorBatch[2048];
+        long millisPerBatch = Math.max(1, batchSize * 1000L / target);
+        for (int b = 0; b < batches.length; b++) {
+            SensorBatch batch = generator.nextBatch(rnd, batchSize, b * millisPerBatch);
+            for (int i = 0; i < batch.size; i++) {
+                if (rnd.nextInt(1_000_000) < corruptPerMillion) {
+                    int what = rnd.nextInt(3);
+                    batch.value[i] = what == 0 ? Double.NaN : what == 1 ? 1e6 : batch.value[i] + 40;
+                }
+            }
+            batches[b] = batch;
+        }
+
+        SensorValidator.Listener listener = (g, kind, healthy, reason) -> { };
+        for (int round = 0; round < 3; round++) {
+            SensorValidator validator = new SensorValidator(settings, SensorActor.Kind.count());
+            long readings = 0;
+            long kept = 0;
+            long nanos = 0;
+            for (int pass = 0; nanos < seconds * 1_000_000_000L; pass++) {
+                long t0 = System.nanoTime();
+                for (SensorBatch batch : batches) {
+                    kept += validator.filter(batch, listener).size;
+                    readings += batch.size;
+                }
+                nanos += System.nanoTime() - t0;
+                // A sensor seen once per pass would otherwise repeat its value and look stuck (not timed)
+                double nudge = (pass & 1) == 0 ? 1e-6 : -1e-6;
+                for (SensorBatch batch : batches) {
+                    for (int i = 0; i < batch.size; i++) batch.value[i] += nudge;
+                }
+            }
+            double elapsed = nanos / 1e9;
+            double rate = readings / elapsed;
+            long rejected = 0;
+            for (int reason = SensorValidator.NOT_A_NUMBER; reason <= SensorValidator.STUCK; reason++) rejected += validator.rejected(reason);
+            System.out.printf("round %d: %,d greenhouses: %,.0f readings/s (%.1f ns each, %.1fx the %,d/s target)%n",
+                    round, greenhouses, rate, 1e9 / rate, rate / target, target);
+            System.out.printf("  kept %.4f%%, rejected %,d (nan %,d, range %,d, spike %,d, rate %,d, stuck %,d), %,d sensors quarantined%n",
+                    100.0 * kept / readings, rejected, validator.rejected(SensorValidator.NOT_A_NUMBER),
+                    validator.rejected(SensorValidator.OUT_OF_RANGE), validator.rejected(SensorValidator.SPIKE),
+                    validator.rejected(SensorValidator.RATE), validator.rejected(SensorValidator.STUCK), validator.quarantinedSensors());
+        }
+    }
+}
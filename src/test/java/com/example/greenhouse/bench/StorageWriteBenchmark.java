@@ -0,0 +1,66 @@
+package com.example.greenhouse.bench;
+
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.storage.StorageSettings;
+import com.example.greenhouse.storage.TimeSeriesStore;
+import com.example.greenhouse.stream.LoadGenerator;
+import com.example.greenhouse.stream.LoadProfile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Sustained write throughput of the reading store on local disk, fed with load-generator batches the
+ * way StorageManager is fed. Arguments: [points] [fleet size] [directory].
+ *
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.example.greenhouse.bench.StorageWriteBenchmark
+ */
+public class StorageWriteBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long points = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000L;
+        int fleet = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Path dir = args.length > 2 ? Path.of(args[2]) : Files.createTempDirectory("greenhouse-store-bench");
+
+        StorageSettings settings = new StorageSettings(true, dir, 64 << 20, 120, Duration.ofSeconds(5));
+        LoadProfile profile = new LoadProfile(true, 0, fleet, new double[] {0.4, 0.4, 0.2}, 1.0, 42L, 1, Duration.ofMillis(10));
+        LoadGenerator generator = new LoadGenerator(profile, fleet);
+        SplittableRandom rnd = new SplittableRandom(42);
+
+        // Series ids resolved once, as StorageManager caches them
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings)) {
+            int[] series = new int[fleet * 3];
+            for (int g = 0; g < fleet; g++) {
+                for (int k = 0; k < 3; k++) series[g * 3 + k] = store.seriesId("gh-" + g, k);
+            }
+
+            long ts = System.currentTimeMillis();
+            long written = 0;
+            long nextFlush = 5_000_000;
+            long start = System.nanoTime();
+            while (written < points) {
+                SensorBatch batch = generator.nextBatch(rnd, 4096, ts++);
+                for (int i = 0; i < batch.size; i++) {
+                    store.append(series[batch.greenhouse[i] * 3 + batch.kind[i]], batch.timestamp[i], batch.value[i]);
+                }
+                written += batch.size;
+                if (written >= nextFlush) {
+                    store.flush();
+                    nextFlush += 5_000_000;
+                }
+            }
+            store.flush();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("wrote %,d points for %,d series in %.2f s: %,.0f points/s, %d segments, %,d blocks%n",
+                    written, fleet * 3, seconds, written / seconds, store.segmentCount(), store.blocksWritten());
+        }
+        long bytes;
+        try (Stream<Path> files = Files.list(dir)) {
+            bytes = files.mapToLong(p -> p.toFile().length()).sum();
+        }
+        System.out.printf("on disk: %,d bytes allocated in %s%n", bytes, dir);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.greenhouse.control;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlRulesTest {
+
+    private static final int TEMPERATURE = SensorActor.Kind.Temperature.ordinal();
+    private static final int SOIL = SensorActor.Kind.SoilMoisture.ordinal();
+
+    private final List<String> switches = new ArrayList<>();
+    private final RuleEvaluator.Listener record = (actuator, on, rule) -> switches.add(rule + (on ? " on" : " off"));
+
+    @Test
+    void switchesOnPastTheThresholdAndOffOnlyPastTheClearPoint() {
+        RuleEvaluator rules = ControlRules.defaults().tableFor("gh-0").newEvaluator();
+        for (double t : new double[] {24, 28, 28.5, 27, 29, 26.5, 25.9, 27, 19.5, 21, 22.5}) rules.evaluate(TEMPERATURE, t, record);
+        assertEquals(List.of("cooling on", "cooling off", "heating on", "heating off"), switches);
+    }
+
+    @Test
+    void combinesConditionsAndAppliesRulesByGreenhouseClass() {
+        ControlRules compiled = ControlRules.fromConfig(ConfigFactory.parseString(
+                "greenhouse.control {\n"
+                + "  classes = [{ name = nursery, match = [\"eu-*-gh-0\"] }]\n"
+                + "  rules = [\n"
+                + "    { name = cooling, actuator = fan, when = [{ kind = temperature, above = 28, clear-below = 26 }] }\n"
+                + "    { name = irrigation, classes = [nursery], actuator = irrigation, when = [\n"
+                + "        { kind = soil, below = 25, clear-above = 35 }, { kind = temperature, above = 22 }] }\n"
+                + "  ]\n"
+                + "}"));
+        assertEquals("nursery", compiled.classOf("eu-site-3-gh-0"));
+        assertEquals(ControlRules.DEFAULT_CLASS, compiled.classOf("eu-site-3-gh-10"));
+        assertEquals(1, compiled.table(ControlRules.DEFAULT_CLASS).rules());
+
+        RuleEvaluator rules = compiled.tableFor("eu-site-3-gh-0").newEvaluator();
+        rules.evaluate(SOIL, 20, record);
+        assertTrue(switches.isEmpty()); // dry, but no temperature yet
+        rules.evaluate(TEMPERATURE, 23, record);
+        assertEquals(List.of("irrigation on"), switches);
+        rules.evaluate(SOIL, 30, record); // inside the hysteresis band
+        rules.evaluate(TEMPERATURE, 21.5, record);
+        assertEquals(List.of("irrigation on", "irrigation off"), switches);
+
+        assertThrows(IllegalArgumentException.class, () -> ControlRules.fromConfig(ConfigFactory.parseString(
+                "greenhouse.control { classes = [], rules = [{ name = r, actuator = fan, classes = [nowhere], when = [{ kind = soil, above = 1 }] }] }")));
+    }
+
+    @Test
+    void indexedEvaluationMatchesCheckingEveryRuleOnEveryReading() {
+        SplittableRandom rnd = new SplittableRandom(7);
+        List<ControlRule> specs = new ArrayList<>();
+        for (int r = 0; r < 200; r++) {
+            List<ControlRule.Condition> when = new ArrayList<>();
+            for (int c = 0; c <= rnd.nextInt(3); c++) {
+                SensorActor.Kind kind = SensorActor.Kind.ofOrdinal(rnd.nextInt(SensorActor.Kind.count()));
+                double threshold = Math.rint(rnd.nextDouble() * 100);
+                double band = rnd.nextInt(3) == 0 ? 0 : rnd.nextDouble() * 10;
+                when.add(rnd.nextBoolean() ? ControlRule.Condition.above(kind, threshold, threshold - band)
+                        : ControlRule.Condition.below(kind, threshold, threshold + band));
+            }
+            specs.add(new ControlRule("r" + r, Set.of(), when, ActuatorActor.Type.Fan));
+        }
+        RuleTable table = new ControlRules(Map.of(), specs).table(ControlRules.DEFAULT_CLASS);
+        RuleEvaluator indexed = table.newEvaluator();
+
+        // Reference: every condition of the reading's kind, every time
+        boolean[][] holds = new boolean[specs.size()][3];
+        for (int i = 0; i < 100_000; i++) {
+            int kind = rnd.nextInt(SensorActor.Kind.count());
+            double value = rnd.nextInt(4) == 0 ? Math.rint(rnd.nextDouble() * 100) : rnd.nextDouble() * 100;
+            indexed.evaluate(kind, value, (actuator, on, rule) -> { });
+            for (int r = 0; r < specs.size(); r++) {
+                boolean all = true;
+                List<ControlRule.Condition> when = specs.get(r).when;
+                for (int c = 0; c < when.size(); c++) {
+                    ControlRule.Condition cond = when.get(c);
+                    if (cond.kind.ordinal() == kind) {
+                        boolean h = holds[r][c];
+                        holds[r][c] = h ? (cond.above ? value >= cond.clear : value <= cond.clear)
+                                : (cond.above ? value > cond.threshold : value < cond.threshold);
+                    }
+                    all &= holds[r][c];
+                }
+                assertEquals(all, indexed.isActive(r), "rule " + r + " after reading " + i);
+            }
+        }
+    }
+}
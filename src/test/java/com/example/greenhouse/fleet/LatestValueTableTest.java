@@ -0,0 +1,80 @@
+package com.example.greenhouse.fleet;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatestValueTableTest {
+
+    @Test
+    void keepsNewestReadingPerSlot() {
+        LatestValueTable table = new LatestValueTable(3);
+        assertTrue(Double.isNaN(table.value(5000, 0)));
+
+        table.put(5000, 1, 21.5, 100L);
+        table.put(5000, 1, 19.0, 50L); // older, ignored
+        table.put(2, 0, 7.0, 10L);
+
+        assertEquals(21.5, table.value(5000, 1), 0.0);
+        assertEquals(5001, table.rows());
+        double[] values = new double[3];
+        long[] timestamps = new long[3];
+        assertTrue(table.read(5000, values, timestamps));
+        assertEquals(100L, timestamps[1]);
+        assertEquals(LatestValueTable.NO_READING, timestamps[0]);
+        assertFalse(table.read(3, values, timestamps));
+
+        LatestValueTable.Snapshot snapshot = table.snapshot();
+        assertEquals(7.0, snapshot.value(2, 0), 0.0);
+        assertEquals(100L, snapshot.timestamp(5000, 1));
+        assertTrue(Double.isNaN(snapshot.value(4999, 2)));
+    }
+
+    @Test
+    void readersNeverSeeHalfWrittenRows() throws Exception {
+        int kinds = 4;
+        int greenhouses = 64;
+        LatestValueTable table = new LatestValueTable(kinds);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+
+        // Two writers with disjoint rows; every write of a row stamps all its kinds with the same value
+        Thread[] writers = new Thread[2];
+        for (int w = 0; w < writers.length; w++) {
+            int owner = w;
+            writers[w] = new Thread(() -> {
+                for (long n = 1; !stop.get(); n++) {
+                    for (int g = owner; g < greenhouses; g += 2) {
+                        for (int k = 0; k < kinds; k++) table.put(g, k, n, n);
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        double[] values = new double[kinds];
+        long[] timestamps = new long[kinds];
+        long deadline = System.nanoTime() + 300_000_000L;
+        while (System.nanoTime() < deadline && failure.get() == null) {
+            LatestValueTable.Snapshot snapshot = table.snapshot();
+            for (int g = 0; g < snapshot.rows; g++) {
+                for (int k = 1; k < kinds; k++) {
+                    // A row is read between two writes, so kind 0 may only be one write ahead of the rest
+                    long diff = snapshot.timestamp(g, 0) - snapshot.timestamp(g, k);
+                    if (snapshot.timestamp(g, k) != LatestValueTable.NO_READING && (diff < 0 || diff > 1)) {
+                        failure.set("row " + g + " mixes writes: " + snapshot.timestamp(g, 0) + " and " + snapshot.timestamp(g, k));
+                    }
+                }
+            }
+            table.read(7, values, timestamps);
+            for (int k = 0; k < kinds; k++) {
+                if (values[k] != timestamps[k] && timestamps[k] != LatestValueTable.NO_READING) failure.set("value/timestamp torn");
+            }
+        }
+        stop.set(true);
+        for (Thread w : writers) w.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.greenhouse.fleet;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantileSketchTest {
+
+    private static final double ACCURACY = 0.02;
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.9, 0.95, 0.99, 1};
+
+    private static double exact(double[] sorted, double q) {
+        return sorted[(int) (q * (sorted.length - 1))];
+    }
+
+    private static void assertWithinAccuracy(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double expected = exact(sorted, q);
+            assertEquals(expected, sketch.quantile(q), Math.abs(expected) * ACCURACY + 1e-9, "q=" + q);
+        }
+    }
+
+    @Test
+    void quantilesAreWithinRelativeAccuracyIncludingNegativesAndZero() {
+        Random random = new Random(7);
+        double[] values = new double[20_000];
+        for (int i = 0; i < values.length; i++) {
+            // Temperatures around freezing: negatives, zeros and positives
+            values[i] = i % 100 == 0 ? 0 : Math.round(random.nextGaussian() * 600) / 100.0 + 2;
+        }
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 512);
+        for (double v : values) sketch.add(v);
+
+        assertEquals(values.length, sketch.count());
+        assertWithinAccuracy(values, sketch);
+        assertEquals(Arrays.stream(values).min().getAsDouble(), sketch.quantile(0), 0.0);
+        assertEquals(Arrays.stream(values).max().getAsDouble(), sketch.quantile(1), 0.0);
+        assertTrue(Double.isNaN(new QuantileSketch(ACCURACY, 16).quantile(0.5)));
+    }
+
+    @Test
+    void mergingGivesTheSameSketchAsAddingEverything() {
+        Random random = new Random(11);
+        QuantileSketch all = new QuantileSketch(ACCURACY, 128);
+        QuantileSketch merged = new QuantileSketch(ACCURACY, 128);
+        double[] values = new double[9_000];
+        for (int part = 0; part < 3; part++) {
+            QuantileSketch sketch = new QuantileSketch(ACCURACY, 128);
+            for (int i = 0; i < 3_000; i++) {
+                double v = 40 + part * 15 + random.nextDouble() * 20;
+                values[part * 3_000 + i] = v;
+                sketch.add(v);
+                all.add(v);
+            }
+            merged.merge(sketch);
+        }
+        assertEquals(all.count(), merged.count());
+        for (double q : QUANTILES) assertEquals(all.quantile(q), merged.quantile(q), 0.0);
+        assertWithinAccuracy(values, merged);
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new QuantileSketch(0.01, 128)));
+    }
+
+    @Test
+    void collapsesTheLowestBucketsInsteadOfGrowing() {
+        QuantileSketch sketch = new QuantileSketch(ACCURACY, 32);
+        // Twelve orders of magnitude cannot fit 32 buckets at 2%: the smallest collapse
+        for (int e = -6; e <= 6; e++) {
+            for (int i = 0; i < 100; i++) sketch.add(Math.pow(10, e) * (1 + i / 100.0));
+        }
+        assertEquals(1300, sketch.count());
+        // High quantiles keep their accuracy, the low end is clamped into the lowest kept bucket
+        assertEquals(1.99e6, sketch.quantile(1), 0.0);
+        assertEquals(1.47e6, sketch.quantile(0.96), 1.47e6 * ACCURACY);
+        assertTrue(sketch.quantile(0.01) <= sketch.quantile(0.96));
+        // Adding values far below what is kept stays within the same memory
+        for (int i = 0; i < 1000; i++) sketch.add(1e-8);
+        assertEquals(2300, sketch.count());
+        assertEquals(1e-8, sketch.quantile(0), 0.0);
+    }
+
+    @Test
+    void windowRotatesWholeSlicesAndHandsPendingSlicesOn() {
+        SketchSettings settings = new SketchSettings(true, ACCURACY, 64, Duration.ofSeconds(10), 3, new double[] {0.5, 0.99});
+        SketchWindow window = new SketchWindow(settings, 2, true);
+        for (long slice = 100; slice < 105; slice++) {
+            QuantileSketch s = settings.newSketch();
+            for (int i = 0; i < 10; i++) s.add(slice);
+            assertTrue(window.add(slice, new QuantileSketch[] {s, null}, slice));
+        }
+        // Only slices 102..104 are left in the window
+        QuantileSketch merged = window.merged(0, 104);
+        assertEquals(30, merged.count());
+        assertEquals(102, merged.quantile(0), 0.0);
+        assertEquals(0, window.merged(1, 104).count());
+        assertFalse(window.add(101, new QuantileSketch[] {settings.newSketch()}, 104));
+
+        QuantileViews.View view = window.view(104, 1_045_000L);
+        assertEquals(30_000, view.windowMillis);
+        assertEquals(30, view.count(0));
+        assertEquals(103, view.value(0, 0), 103 * ACCURACY);
+        assertTrue(Double.isNaN(view.value(1, 1)));
+
+        List<SketchWindow.Slice> pending = window.drainPending();
+        assertEquals(3, pending.size());
+        assertEquals(30, pending.stream().mapToLong(p -> p.sketches[0].count()).sum());
+        assertTrue(window.drainPending().isEmpty());
+        // Draining hands the sketches over; the window itself is untouched
+        assertEquals(30, window.merged(0, 104).count());
+    }
+}
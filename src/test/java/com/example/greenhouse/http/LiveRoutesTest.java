@@ -0,0 +1,86 @@
+package com.example.greenhouse.http;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.stream.LiveFeed;
+import com.example.greenhouse.stream.LiveFeedSettings;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveRoutesTest {
+
+    private static ActorTestKit testKit;
+    private static LiveFeed feed;
+    private static ServerBinding binding;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        testKit = ActorTestKit.create();
+        FleetTopology topology = FleetTopology.builder(new GreenhouseDirectory())
+                .add("north", "north-site-0", "north-site-0-gh-0")
+                .add("north", "north-site-1", "north-site-1-gh-0")
+                .build();
+        LiveFeedSettings settings = new LiveFeedSettings(true, 1024, 16, LiveFeedSettings.Overflow.CONFLATE, 16, 64, Duration.ofSeconds(15));
+        feed = LiveFeed.start(testKit.system(), settings, topology.directory());
+        binding = Http.get(testKit.system()).newServerAt("127.0.0.1", 0).bind(new LiveRoutes(topology, feed, settings).route())
+                .toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    private static URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + binding.localAddress().getPort() + path);
+    }
+
+    @Test
+    void streamsFilteredReadingsAsServerSentEvents() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        assertEquals(404, client.send(HttpRequest.newBuilder(uri("/api/live?site=nowhere")).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(400, client.send(HttpRequest.newBuilder(uri("/api/live?kind=co2")).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<Stream<String>> response = client.send(
+                HttpRequest.newBuilder(uri("/api/live?site=north-site-1&kind=temperature&overflow=drop")).build(),
+                HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("content-type").orElse("").startsWith("text/event-stream"));
+        CompletableFuture<String> firstData = CompletableFuture.supplyAsync(() ->
+                response.body().filter(line -> line.startsWith("data:")).findFirst().orElseThrow());
+
+        SensorBatch batch = new SensorBatch.Builder(3)
+                .add(0, SensorActor.Kind.Temperature.ordinal(), 20.0, 1L)
+                .add(1, SensorActor.Kind.Humidity.ordinal(), 60.0, 1L)
+                .add(1, SensorActor.Kind.Temperature.ordinal(), 25.0, 1L)
+                .build();
+        for (int i = 0; i < 500 && !firstData.isDone(); i++) {
+            feed.offer(batch);
+            Thread.sleep(10);
+        }
+        JsonNode readings = new ObjectMapper().readTree(firstData.get(5, TimeUnit.SECONDS).substring("data:".length()));
+        assertEquals(1, readings.size());
+        assertEquals("north-site-1-gh-0", readings.get(0).get("greenhouseId").asText());
+        assertEquals(25.0, readings.get(0).get("value").asDouble(), 0.0);
+        response.body().close();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.greenhouse.http;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.fleet.ActuatorStates;
+import com.example.greenhouse.fleet.AggregateSettings;
+import com.example.greenhouse.fleet.AggregateViews;
+import com.example.greenhouse.fleet.FleetTopology;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.example.greenhouse.fleet.LatestValueTable;
+import com.example.greenhouse.fleet.SubtreeStats;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryRoutesTest {
+
+    private static final int TEMPERATURE = SensorActor.Kind.Temperature.ordinal();
+
+    private static ActorTestKit testKit;
+    private static ServerBinding binding;
+
+    @BeforeAll
+    static void setup() throws Exception {
+        testKit = ActorTestKit.create();
+        FleetTopology topology = FleetTopology.builder(new GreenhouseDirectory())
+                .add("north", "north-site-0", "north-site-0-gh-0")
+                .add("north", "north-site-0", "north-site-0-gh-1")
+                .add("north", "north-site-1", "north-site-1-gh-0")
+                .build();
+        LatestValueTable latest = new LatestValueTable(SensorActor.Kind.count());
+        latest.put(0, TEMPERATURE, 20.0, 1000L);
+        latest.put(1, TEMPERATURE, 24.0, 1001L);
+        latest.put(2, TEMPERATURE, 31.0, 1002L);
+        latest.put(2, SensorActor.Kind.Humidity.ordinal(), 70.0, 1002L);
+        ActuatorStates actuators = new ActuatorStates(ActuatorActor.Type.values().length);
+        actuators.switched("north-site-1-gh-0", ActuatorActor.Type.Fan.ordinal(), true, 1003L);
+        // As the site and region managers would publish them
+        AggregateSettings bands = new AggregateSettings(true, Duration.ofSeconds(1), new double[] {20, 40, 20}, new double[] {28, 85, 60});
+        SubtreeStats site0 = new SubtreeStats(SensorActor.Kind.count());
+        site0.replace(null, new double[] {20.0, Double.NaN, Double.NaN}, bands);
+        site0.replace(null, new double[] {24.0, Double.NaN, Double.NaN}, bands);
+        SubtreeStats site1 = new SubtreeStats(SensorActor.Kind.count());
+        site1.replace(null, new double[] {31.0, 70.0, Double.NaN}, bands);
+        SubtreeStats north = site0.copy();
+        north.merge(site1);
+        AggregateViews aggregates = new AggregateViews();
+        aggregates.publish(AggregateViews.site("north-site-0"), site0, 2000L);
+        aggregates.publish(AggregateViews.site("north-site-1"), site1, 2000L);
+        aggregates.publish(AggregateViews.region("north"), north, 2000L);
+
+        QueryRoutes routes = new QueryRoutes(topology, latest, actuators, aggregates);
+        binding = Http.get(testKit.system()).newServerAt("127.0.0.1", 0).bind(routes.route())
+                .toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    private static HttpResponse<String> get(String path) throws Exception {
+        URI uri = URI.create("http://127.0.0.1:" + binding.localAddress().getPort() + path);
+        return HttpClient.newHttpClient().send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static JsonNode getJson(String path) throws Exception {
+        HttpResponse<String> response = get(path);
+        assertEquals(200, response.statusCode(), response.body());
+        return new ObjectMapper().readTree(response.body());
+    }
+
+    @Test
+    void servesGreenhouseReadingsAndActuators() throws Exception {
+        JsonNode gh = getJson("/api/greenhouses/north-site-1-gh-0");
+        assertEquals("north-site-1", gh.get("site").asText());
+        assertEquals("north", gh.get("region").asText());
+        assertEquals(31.0, gh.get("readings").get("temperature").get("value").asDouble(), 0.0);
+        assertFalse(gh.get("readings").has("soil"));
+        assertTrue(gh.get("actuators").get("fan").get("on").asBoolean());
+        assertFalse(gh.get("actuators").get("heater").get("on").asBoolean());
+
+        JsonNode site = getJson("/api/sites/north-site-0/readings");
+        assertEquals(24.0, site.get("greenhouses").get("north-site-0-gh-1").get("temperature").get("value").asDouble(), 0.0);
+
+        assertEquals(404, get("/api/greenhouses/nowhere").statusCode());
+    }
+
+    @Test
+    void servesPublishedAggregates() throws Exception {
+        JsonNode site = getJson("/api/sites/north-site-0/aggregates");
+        JsonNode temperature = site.get("kinds").get("temperature");
+        assertEquals(2, temperature.get("greenhouses").asInt());
+        assertEquals(22.0, temperature.get("mean").asDouble(), 1e-9);
+        assertEquals(2000L, site.get("computedAt").asLong());
+
+        JsonNode region = getJson("/api/regions/north/aggregates");
+        assertEquals(3, region.get("kinds").get("temperature").get("greenhouses").asInt());
+        assertEquals(31.0, region.get("kinds").get("temperature").get("max").asDouble(), 0.0);
+        assertEquals(1, region.get("kinds").get("humidity").get("greenhouses").asInt());
+
+        assertEquals(404, get("/api/regions/south/aggregates").statusCode());
+    }
+}
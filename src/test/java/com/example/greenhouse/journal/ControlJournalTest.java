@@ -0,0 +1,74 @@
+package com.example.greenhouse.journal;
+
+import com.example.greenhouse.actors.ActuatorActor;
+import com.example.greenhouse.actors.SensorActor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ControlJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private JournalSettings settings(int snapshotEvery) {
+        return new JournalSettings(true, dir, Duration.ofSeconds(1), snapshotEvery, Duration.ofSeconds(10));
+    }
+
+    @Test
+    void snapshotsBoundReplayAndKeepState() throws Exception {
+        try (ControlJournal journal = ControlJournal.open(settings(1000))) {
+            for (int i = 0; i < 10_500; i++) {
+                String id = "gh-" + (i % 50);
+                journal.append(id, new GreenhouseEvent.ActuatorSwitched(ActuatorActor.Type.Fan, i % 2 == 0, i));
+            }
+            journal.append("gh-7", new GreenhouseEvent.ReadingsRecorded(new double[] {21.5, 60.0, Double.NaN}, new long[] {5, 6, 0}));
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(2, files.count(), "one snapshot and the journal written since");
+        }
+
+        try (ControlJournal journal = ControlJournal.open(settings(1000))) {
+            assertEquals(501, journal.eventsReplayed());
+            assertEquals(50, journal.greenhouseCount());
+            // gh-0 saw even i last (10450), gh-1 odd (10451)
+            assertTrue(journal.state("gh-0").isOn(ActuatorActor.Type.Fan));
+            assertFalse(journal.state("gh-1").isOn(ActuatorActor.Type.Fan));
+            assertEquals(10_451L, journal.state("gh-1").switchedAt(ActuatorActor.Type.Fan));
+            assertEquals(21.5, journal.state("gh-7").lastValue(SensorActor.Kind.Temperature));
+            assertTrue(Double.isNaN(journal.state("gh-7").lastValue(SensorActor.Kind.SoilMoisture)));
+            assertNull(journal.state("gh-unknown"));
+        }
+    }
+
+    @Test
+    void cutsTornTailAndKeepsAppending() throws Exception {
+        try (ControlJournal journal = ControlJournal.open(settings(0))) {
+            journal.append("gh-a", new GreenhouseEvent.ActuatorSwitched(ActuatorActor.Type.Heater, true, 1));
+            journal.append("gh-a", new GreenhouseEvent.ActuatorSwitched(ActuatorActor.Type.Heater, false, 2));
+        }
+        Path log;
+        try (var files = Files.list(dir)) {
+            log = files.filter(p -> p.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(log.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3); // second record torn by a crash
+        }
+
+        try (ControlJournal journal = ControlJournal.open(settings(0))) {
+            assertEquals(1, journal.eventsReplayed());
+            assertTrue(journal.state("gh-a").isOn(ActuatorActor.Type.Heater));
+            journal.append("gh-a", new GreenhouseEvent.ActuatorSwitched(ActuatorActor.Type.Irrigation, true, 3));
+        }
+        try (ControlJournal journal = ControlJournal.open(settings(0))) {
+            assertEquals(2, journal.eventsReplayed());
+            assertTrue(journal.state("gh-a").isOn(ActuatorActor.Type.Irrigation));
+        }
+    }
+}
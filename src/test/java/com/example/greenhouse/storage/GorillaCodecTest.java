@@ -0,0 +1,69 @@
+package com.example.greenhouse.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GorillaCodecTest {
+
+    @Test
+    void roundTripsDriftingReadingsAndCompressesThem() {
+        SplittableRandom rnd = new SplittableRandom(7);
+        int n = 120;
+        long[] ts = new long[n];
+        double[] values = new double[n];
+        long t = 1_700_000_000_000L;
+        double v = 22.5;
+        for (int i = 0; i < n; i++) {
+            t += 2000 + (rnd.nextInt(10) == 0 ? rnd.nextInt(-40, 40) : 0);
+            v = Math.round((v + rnd.nextDouble(-0.1, 0.1)) * 10) / 10.0;
+            ts[i] = t;
+            values[i] = v;
+        }
+
+        int length = assertRoundTrip(ts, values, n);
+        assertTrue(length < n * 16 / 3, "expected at least 3x compression, got " + length + " bytes");
+    }
+
+    @Test
+    void roundTripsEdgeValues() {
+        long[] ts = {0L, 1L, 1L, Long.MAX_VALUE / 2, -5L, 100_000L, 100_001L, 100_002L, 100_003L};
+        double[] values = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE,
+                Double.MAX_VALUE, 1.0, 1.0, -123.456};
+        assertRoundTrip(ts, values, ts.length);
+        assertRoundTrip(new long[] {42L}, new double[] {3.5}, 1);
+    }
+
+    @Test
+    void roundTripsUncorrelatedValues() {
+        SplittableRandom rnd = new SplittableRandom(11);
+        int n = 500;
+        long[] ts = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            ts[i] = rnd.nextLong();
+            values[i] = Double.longBitsToDouble(rnd.nextLong());
+        }
+        assertRoundTrip(ts, values, n);
+    }
+
+    private static int assertRoundTrip(long[] ts, double[] values, int n) {
+        ByteBuffer buf = ByteBuffer.allocate(GorillaCodec.maxEncodedSize(n) + 8);
+        buf.position(8);
+        ByteBuffer out = buf.slice();
+        int length = GorillaCodec.encode(ts, values, n, out);
+        assertTrue(length <= GorillaCodec.maxEncodedSize(n));
+
+        GorillaDecoder decoder = new GorillaDecoder(buf, 8, length, n);
+        for (int i = 0; i < n; i++) {
+            assertTrue(decoder.next());
+            assertEquals(ts[i], decoder.timestamp(), "timestamp " + i);
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()), "value " + i);
+        }
+        assertFalse(decoder.next());
+        return length;
+    }
+}
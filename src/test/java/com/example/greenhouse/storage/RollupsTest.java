@@ -0,0 +1,115 @@
+package com.example.greenhouse.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RollupsTest {
+
+    private static final long T0 = 1_700_000_000_000L / 86_400_000L * 86_400_000L; // a UTC midnight
+    private static final long HOUR = 3_600_000L;
+
+    @TempDir
+    Path dir;
+
+    private StorageSettings settings(Duration rawRetention) {
+        RollupSettings rollup = new RollupSettings(true, Duration.ofSeconds(30), Duration.ofMinutes(1),
+                rawRetention, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+        return new StorageSettings(true, dir, 1 << 16, 120, Duration.ofSeconds(5), true, rollup);
+    }
+
+    // One reading every 10 s for three hours: value is the minute of the day
+    private static void fill(TimeSeriesStore store, Rollups rollups, int series) {
+        for (long ts = T0; ts < T0 + 3 * HOUR; ts += 10_000) {
+            store.append(series, ts, (ts - T0) / 60_000);
+            rollups.add(series, ts, (ts - T0) / 60_000);
+        }
+    }
+
+    @Test
+    void picksCheapestTierAndMatchesRawAggregates() throws Exception {
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings(Duration.ZERO));
+             Rollups rollups = Rollups.open(settings(Duration.ZERO), store)) {
+            int s = store.seriesId("gh-0", 0);
+            fill(store, rollups, s);
+            rollups.closeIdle(T0 + 3 * HOUR + 60_000);
+
+            RollupBuffer hourly = rollups.query(s, T0, T0 + 3 * HOUR, HOUR);
+            assertEquals(RollupTier.HOUR, hourly.source);
+            assertArrayEquals(new long[] {T0, T0 + HOUR, T0 + 2 * HOUR}, hourly.starts());
+            assertEquals(360, hourly.count()[1]);
+            assertEquals(60, hourly.min()[1]);
+            assertEquals(119, hourly.max()[1]);
+            assertEquals(6 * (60 + 119) * 60 / 2.0, hourly.sum()[1], 1e-9);
+            assertEquals(119, hourly.last()[1]);
+
+            RollupBuffer fromRaw = rollups.query(s, T0, T0 + 3 * HOUR, 10_000);
+            assertNull(fromRaw.source);
+            assertEquals(3 * 360, fromRaw.size());
+
+            RollupBuffer perFive = rollups.query(s, T0, T0 + HOUR - 1, 5 * 60_000);
+            assertEquals(RollupTier.MINUTE, perFive.source);
+            assertEquals(12, perFive.size());
+            assertEquals(30, perFive.count()[0]);
+            assertEquals(4, perFive.max()[0]);
+        }
+    }
+
+    @Test
+    void includesOpenBucketsAndRebuildsThemAfterReopen() throws Exception {
+        int s;
+        RollupBuffer before;
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings(Duration.ZERO));
+             Rollups rollups = Rollups.open(settings(Duration.ZERO), store)) {
+            s = store.seriesId("gh-0", 1);
+            fill(store, rollups, s); // the last minute, hour and day are still open
+            before = rollups.query(s, T0, T0 + 3 * HOUR, 86_400_000L);
+            assertEquals(RollupTier.DAY, before.source);
+            assertEquals(3 * 360, before.count()[0]);
+        }
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings(Duration.ZERO));
+             Rollups rollups = Rollups.open(settings(Duration.ZERO), store)) {
+            RollupBuffer after = rollups.query(s, T0, T0 + 3 * HOUR, 86_400_000L);
+            assertArrayEquals(before.count(), after.count());
+            assertArrayEquals(before.sum(), after.sum(), 1e-9);
+            assertArrayEquals(before.last(), after.last(), 1e-9);
+
+            // Readings after the restart land in the same, rebuilt buckets
+            store.append(s, T0 + 3 * HOUR, 500);
+            rollups.add(s, T0 + 3 * HOUR, 500);
+            rollups.closeIdle(T0 + 86_400_000L + HOUR);
+            RollupBuffer day = rollups.query(s, T0, T0 + 86_400_000L, 86_400_000L);
+            assertEquals(1, day.size());
+            assertEquals(3 * 360 + 1, day.count()[0]);
+            assertEquals(500, day.max()[0]);
+        }
+    }
+
+    @Test
+    void retentionDropsRawSegmentsButKeepsRollups() throws Exception {
+        StorageSettings settings = settings(Duration.ofHours(2));
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings);
+             Rollups rollups = Rollups.open(settings, store)) {
+            int s = store.seriesId("gh-0", 2);
+            for (int g = 1; g < 40; g++) store.seriesId("gh-" + g, 2);
+            for (long ts = T0; ts < T0 + 3 * HOUR; ts += 1_000) { // enough to roll several raw segments
+                for (int g = 0; g < 40; g++) {
+                    store.append(s + g, ts, g);
+                    rollups.add(s + g, ts, g);
+                }
+            }
+            int segments = store.segmentCount();
+            assertTrue(rollups.compact(T0 + 4 * HOUR) > 0);
+            assertTrue(store.segmentCount() < segments);
+            assertEquals(0, rollups.query(s, T0, T0 + HOUR - 1, 10_000).size());
+
+            RollupBuffer hourly = rollups.query(s, T0, T0 + 3 * HOUR, HOUR);
+            assertEquals(3, hourly.size());
+            assertEquals(3600, hourly.count()[0]);
+        }
+    }
+}
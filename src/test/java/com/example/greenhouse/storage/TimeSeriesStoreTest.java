@@ -0,0 +1,73 @@
+package com.example.greenhouse.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private StorageSettings settings(int segmentSize) {
+        return new StorageSettings(true, dir, segmentSize, 16, Duration.ofSeconds(1));
+    }
+
+    // Uncompressed blocks, so the test can compute where a payload byte lives
+    private StorageSettings rawSettings(int segmentSize) {
+        return new StorageSettings(true, dir, segmentSize, 16, Duration.ofSeconds(1), false);
+    }
+
+    @Test
+    void rollsSegmentsAndRecoversAfterReopen() throws Exception {
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings(4096))) {
+            int temp = store.seriesId("gh-0", 0);
+            int soil = store.seriesId("gh-0", 2);
+            for (int i = 0; i < 1000; i++) {
+                store.append(temp, 1000L + i, 20.0 + i * 0.01);
+                store.append(soil, 1000L + i, 35.0);
+            }
+            assertTrue(store.segmentCount() > 1, "expected rolled segments");
+        }
+
+        try (TimeSeriesStore store = TimeSeriesStore.open(settings(4096))) {
+            int temp = store.findSeries("gh-0", 0);
+            PointBuffer points = new PointBuffer();
+            assertEquals(100, store.query(temp, 1500, 1599, points));
+            assertEquals(1500L, points.timestamps()[0]);
+            assertEquals(25.0, points.values()[0], 1e-9);
+            assertEquals(1000, store.query(store.findSeries("gh-0", 2), Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {}));
+        }
+    }
+
+    @Test
+    void dropsTornTailBlockOnRecovery() throws Exception {
+        try (TimeSeriesStore store = TimeSeriesStore.open(rawSettings(1 << 20))) {
+            int s = store.seriesId("gh-1", 1);
+            for (int i = 0; i < 32; i++) store.append(s, i, i); // exactly two full blocks
+        }
+        // Corrupt one payload byte of the second block, as a crash mid-write would
+        Path segment;
+        try (var files = Files.list(dir)) {
+            segment = files.filter(p -> p.toString().endsWith(".dat")).findFirst().orElseThrow();
+        }
+        int secondBlockPayload = Segment.FILE_HEADER + (Segment.BLOCK_HEADER + 16 * 16) + Segment.BLOCK_HEADER;
+        try (RandomAccessFile raf = new RandomAccessFile(segment.toFile(), "rw")) {
+            raf.seek(secondBlockPayload + 3);
+            raf.write(0x7F);
+        }
+
+        try (TimeSeriesStore store = TimeSeriesStore.open(rawSettings(1 << 20))) {
+            int s = store.findSeries("gh-1", 1);
+            assertEquals(16, store.query(s, Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {}));
+            store.append(s, 100, 1.0);
+            assertEquals(17, store.query(s, Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {}));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.greenhouse.stream;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.stream.Attributes;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.SinkQueueWithCancel;
+import com.example.greenhouse.actors.SensorActor;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveFeedTest {
+
+    private static final int TEMPERATURE = SensorActor.Kind.Temperature.ordinal();
+    private static final int HUMIDITY = SensorActor.Kind.Humidity.ordinal();
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static ActorTestKit testKit;
+    private static GreenhouseDirectory directory;
+
+    @BeforeAll
+    static void setup() {
+        testKit = ActorTestKit.create();
+        directory = new GreenhouseDirectory(List.of("gh-0", "gh-1"));
+    }
+
+    @AfterAll
+    static void tearDown() {
+        testKit.shutdownTestKit();
+    }
+
+    private static LiveFeed start() {
+        LiveFeedSettings settings = new LiveFeedSettings(true, 4096, 16, LiveFeedSettings.Overflow.DROP, 64, 1024, Duration.ofSeconds(15));
+        return LiveFeed.start(testKit.system(), settings, directory);
+    }
+
+    // Subscribers attach to the hub asynchronously: keep feeding until the subscriber has what it waits for
+    private static <T> T offerUntil(LiveFeed feed, SensorBatch batch, CompletableFuture<T> done) throws Exception {
+        for (int i = 0; i < 500 && !done.isDone(); i++) {
+            feed.offer(batch);
+            Thread.sleep(10);
+        }
+        return done.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void subscribersOnlyGetReadingsTheirFilterSelects() throws Exception {
+        LiveFeed feed = start();
+        CompletableFuture<JsonNode> temperatureOfGh0 = feed
+                .subscribe(LiveFeed.Filter.of(new boolean[] {true, false}, new SensorActor.Kind[] {SensorActor.Kind.Temperature}),
+                        LiveFeedSettings.Overflow.DROP, 8)
+                .map(JSON::readTree)
+                .runWith(Sink.head(), testKit.system()).toCompletableFuture();
+        CompletableFuture<JsonNode> humidity = feed
+                .subscribe(LiveFeed.Filter.of(null, new SensorActor.Kind[] {SensorActor.Kind.Humidity}), LiveFeedSettings.Overflow.CONFLATE, 8)
+                .map(JSON::readTree)
+                .runWith(Sink.head(), testKit.system()).toCompletableFuture();
+
+        SensorBatch batch = new SensorBatch.Builder(4)
+                .add(0, TEMPERATURE, 20.0, 1L)
+                .add(0, HUMIDITY, 60.0, 1L)
+                .add(1, TEMPERATURE, 25.0, 1L)
+                .add(1, SensorActor.Kind.SoilMoisture.ordinal(), 30.0, 1L)
+                .build();
+        offerUntil(feed, batch, CompletableFuture.allOf(temperatureOfGh0, humidity));
+
+        JsonNode t = temperatureOfGh0.get();
+        assertEquals(1, t.size());
+        assertEquals("gh-0", t.get(0).get("greenhouseId").asText());
+        assertEquals("temperature", t.get(0).get("kind").asText());
+        assertEquals(20.0, t.get(0).get("value").asDouble(), 0.0);
+        JsonNode h = humidity.get();
+        assertEquals(1, h.size());
+        assertEquals("humidity", h.get(0).get("kind").asText());
+    }
+
+    @Test
+    void stalledSubscriberIsConflatedWithoutHoldingBackOthers() throws Exception {
+        LiveFeed feed = start();
+        LiveFeed.Filter gh0 = LiveFeed.Filter.of(new boolean[] {true, false}, null);
+        // Never pulls on its own, and takes at most one element ahead
+        SinkQueueWithCancel<JsonNode> stalled = feed.subscribe(gh0, LiveFeedSettings.Overflow.CONFLATE, 8)
+                .map(JSON::readTree)
+                .runWith(Sink.<JsonNode>queue().addAttributes(Attributes.inputBuffer(1, 1)), testKit.system());
+        CompletableFuture<Optional<JsonNode>> attached = stalled.pull().toCompletableFuture();
+        CompletableFuture<List<JsonNode>> fast = feed.subscribe(gh0, LiveFeedSettings.Overflow.DROP, 8)
+                .map(JSON::readTree)
+                .takeWhile(readings -> readings.get(readings.size() - 1).get("value").asDouble() < 999, true)
+                .runWith(Sink.seq(), testKit.system()).toCompletableFuture();
+        offerUntil(feed, new SensorBatch.Builder(1).add(0, TEMPERATURE, -1, 0L).build(), attached);
+        while (feed.subscribers() < 2) Thread.sleep(10);
+        Thread.sleep(200);
+
+        // Far more batches than the hub buffers: a stalled subscriber holding the hub back would block these
+        for (int i = 0; i < 1000; i++) feed.offer(new SensorBatch.Builder(1).add(0, TEMPERATURE, i, i).build());
+
+        List<JsonNode> received = fast.get(10, TimeUnit.SECONDS);
+        assertEquals(999.0, received.get(received.size() - 1).get(0).get("value").asDouble(), 0.0);
+        assertEquals(0, feed.dropped());
+        // What piled up for the stalled one collapsed into the latest reading of the sensor
+        JsonNode latest = null;
+        for (int i = 0; i < 3 && (latest == null || latest.get(0).get("value").asDouble() != 999); i++) {
+            latest = stalled.pull().toCompletableFuture().get(5, TimeUnit.SECONDS).orElseThrow();
+        }
+        assertEquals(1, latest.size());
+        assertEquals(999.0, latest.get(0).get("value").asDouble(), 0.0);
+    }
+}
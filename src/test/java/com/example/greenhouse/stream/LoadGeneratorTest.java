@@ -0,0 +1,32 @@
+package com.example.greenhouse.stream;
+
+import com.example.greenhouse.actors.SensorBatch;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    void sameSeedGivesSameSkewedReadings() {
+        LoadProfile profile = new LoadProfile(true, 1_000_000, 1000, new double[] {1, 0, 0}, 1.2, 7L, 1, Duration.ofMillis(10));
+        SensorBatch a = new LoadGenerator(profile, 1000).nextBatch(new SplittableRandom(7), 10_000, 0L);
+        SensorBatch b = new LoadGenerator(profile, 1000).nextBatch(new SplittableRandom(7), 10_000, 0L);
+
+        assertArrayEquals(a.greenhouse, b.greenhouse);
+        assertArrayEquals(a.value, b.value);
+
+        int[] perGreenhouse = new int[1000];
+        for (int i = 0; i < a.size; i++) {
+            assertEquals(0, a.kind[i]); // only temperature has weight
+            perGreenhouse[a.greenhouse[i]]++;
+        }
+        int hottest = 0;
+        for (int count : perGreenhouse) hottest = Math.max(hottest, count);
+        // Zipf(1.2) over 1000 greenhouses puts roughly a quarter of the load on the top rank
+        assertTrue(hottest > 1500, "hottest greenhouse got " + hottest);
+    }
+}
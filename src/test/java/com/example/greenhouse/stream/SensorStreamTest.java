@@ -0,0 +1,64 @@
+package com.example.greenhouse.stream;
+
+import akka.actor.testkit.typed.javadsl.ActorTestKit;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.stream.KillSwitches;
+import akka.stream.UniqueKillSwitch;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.example.greenhouse.actors.DataProcessingManager;
+import com.example.greenhouse.actors.SensorBatch;
+import com.example.greenhouse.fleet.GreenhouseDirectory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorStreamTest {
+
+    private static final ActorTestKit testKit = ActorTestKit.create();
+
+    @AfterAll
+    static void cleanup() { testKit.shutdownTestKit(); }
+
+    @Test
+    void aStalledManagerGetsAtMostMaxInFlightBatchesPerTimeoutAndBackoff() throws Exception {
+        IngestSettings settings = new IngestSettings(IngestSettings.Mode.BACKPRESSURE, 2, 1,
+                Duration.ofMillis(10), Duration.ofMillis(200), Duration.ofMillis(300), Duration.ofMillis(300));
+        AtomicInteger queued = new AtomicInteger();
+        ActorRef<DataProcessingManager.Command> stalled = testKit.spawn(Behaviors.setup(ctx -> Behaviors.receive(DataProcessingManager.Command.class)
+                .onMessage(DataProcessingManager.GetShards.class, get -> {
+                    get.replyTo.tell(new DataProcessingManager.Shards(List.of(ctx.getSelf()), new GreenhouseDirectory(List.of("gh-0"))));
+                    return Behaviors.same();
+                })
+                .onMessage(DataProcessingManager.Ingest.class, ingest -> {
+                    queued.incrementAndGet(); // never acked
+                    return Behaviors.same();
+                })
+                .build()));
+
+        UniqueKillSwitch stream = SensorStream.ingestWithRestarts(testKit.system(), stalled, settings, () -> Source.repeat(batch()))
+                .viaMat(KillSwitches.single(), Keep.right())
+                .to(Sink.ignore())
+                .run(testKit.system());
+        Thread.sleep(1500);
+        stream.shutdown();
+
+        // Runs start at 0, after 200 + 300 ms and after 2 * (200 + 300) ms (plus jitter), two batches each;
+        // passing over timed out batches would have sent two every 200 ms
+        assertTrue(queued.get() >= 4, "queued " + queued.get());
+        assertTrue(queued.get() <= 6, "queued " + queued.get());
+    }
+
+    private static SensorBatch batch() {
+        SensorBatch.Builder batch = new SensorBatch.Builder(1);
+        batch.add(0, 0, 20.0, 0L);
+        return batch.build();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.greenhouse.validation;
+
+import com.example.greenhouse.actors.SensorBatch;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorValidatorTest {
+
+    private static final int TEMPERATURE = 0;
+    private static final int HUMIDITY = 1;
+
+    private static final ValidationSettings SETTINGS = new ValidationSettings(true,
+            new double[] {-30, 0, 0}, new double[] {70, 100, 100},
+            new double[] {5, 20, 20}, new double[] {0.5, 2, 2}, Duration.ofSeconds(10),
+            10, 3, 5, 3);
+
+    private final List<String> transitions = new ArrayList<>();
+    private final SensorValidator.Listener listener = (g, kind, healthy, reason) ->
+            transitions.add(g + "/" + kind + (healthy ? " released" : " quarantined: " + SensorValidator.describe(reason)));
+
+    @Test
+    void rejectsInvalidOutOfRangeSpikesAndFastDrift() {
+        SensorValidator validator = new SensorValidator(SETTINGS, 3);
+        assertTrue(validator.accept(0, TEMPERATURE, 22.0, 0, listener));
+        assertFalse(validator.accept(0, TEMPERATURE, Double.NaN, 1000, listener));
+        assertFalse(validator.accept(0, HUMIDITY, 140.0, 1000, listener));
+        assertTrue(validator.accept(0, TEMPERATURE, 23.0, 2000, listener));
+        assertFalse(validator.accept(0, TEMPERATURE, 31.0, 3000, listener)); // jump of 8 > max-step 5
+        assertEquals(1, validator.rejected(SensorValidator.SPIKE));
+
+        // Steps of 3 stay under max-step 5, but 6 degrees per 10s is faster than 0.5/s allows
+        SensorValidator drift = new SensorValidator(SETTINGS, 3);
+        long t = 0;
+        double v = 20;
+        boolean rejected = false;
+        for (int i = 0; i < 20 && !rejected; i++) {
+            rejected = !drift.accept(1, TEMPERATURE, v, t, listener);
+            v += 3;
+            t += 5000;
+        }
+        assertTrue(rejected);
+        assertEquals(1, drift.rejected(SensorValidator.RATE));
+        assertEquals(List.of(), transitions);
+    }
+
+    @Test
+    void rejectsOnlyTheSpikeItselfAndAcceptsASettledNewLevel() {
+        SensorValidator validator = new SensorValidator(SETTINGS, 3);
+        long t = 0;
+        assertTrue(validator.accept(0, TEMPERATURE, 22.0, t += 1000, listener));
+        // One glitch: the readings after it are compared with 22, not with the glitch
+        assertFalse(validator.accept(0, TEMPERATURE, 60.0, t += 1000, listener));
+        assertTrue(validator.accept(0, TEMPERATURE, 22.1, t += 1000, listener));
+        assertTrue(validator.accept(0, TEMPERATURE, 22.2, t += 1000, listener));
+        // Each glitch is one fault: a second one stays under quarantine-after 3
+        assertFalse(validator.accept(0, TEMPERATURE, -10.0, t += 1000, listener));
+        assertTrue(validator.accept(0, TEMPERATURE, 22.0, t += 1000, listener));
+        assertEquals(2, validator.rejected(SensorValidator.SPIKE));
+        assertFalse(validator.isQuarantined(0, TEMPERATURE));
+
+        // A sensor moved to a new level: settle-readings 3 in a row that agree, and it is followed from there
+        SensorValidator moved = new SensorValidator(SETTINGS, 3);
+        assertTrue(moved.accept(1, HUMIDITY, 40.0, t += 1000, listener));
+        assertFalse(moved.accept(1, HUMIDITY, 75.0, t += 1000, listener));
+        assertFalse(moved.accept(1, HUMIDITY, 76.0, t += 1000, listener));
+        assertTrue(moved.accept(1, HUMIDITY, 75.5, t += 1000, listener));
+        assertTrue(moved.accept(1, HUMIDITY, 76.0, t += 1000, listener));
+        assertEquals(2, moved.rejected(SensorValidator.SPIKE));
+        assertEquals(0, moved.rejected(SensorValidator.RATE));
+        assertEquals(List.of(), transitions);
+    }
+
+    @Test
+    void quarantinesAStuckSensorUntilItRecovers() {
+        SensorValidator validator = new SensorValidator(SETTINGS, 3);
+        long t = 0;
+        for (int i = 0; i < 9; i++) assertTrue(validator.accept(2, HUMIDITY, 55.0, t += 1000, listener));
+        // The tenth identical reading is stuck; three faults quarantine the sensor
+        assertFalse(validator.accept(2, HUMIDITY, 55.0, t += 1000, listener));
+        assertFalse(validator.accept(2, HUMIDITY, 55.0, t += 1000, listener));
+        assertFalse(validator.accept(2, HUMIDITY, 55.0, t += 1000, listener));
+        assertEquals(List.of("2/1 quarantined: stuck"), transitions);
+        assertTrue(validator.isQuarantined(2, HUMIDITY));
+        assertFalse(validator.isQuarantined(2, TEMPERATURE));
+
+        // Valid again, but dropped until release-after of them in a row
+        for (int i = 0; i < 4; i++) assertFalse(validator.accept(2, HUMIDITY, 56.0 + i * 0.1, t += 1000, listener));
+        assertTrue(validator.accept(2, HUMIDITY, 56.5, t += 1000, listener));
+        assertEquals("2/1 released", transitions.get(1));
+        assertEquals(0, validator.quarantinedSensors());
+        assertEquals(4, validator.droppedWhileQuarantined());
+    }
+
+    @Test
+    void filtersBatchesAndKeepsThemWhenEverythingPasses() {
+        SensorValidator validator = new SensorValidator(SETTINGS, 3);
+        SensorBatch clean = new SensorBatch.Builder(3).add(0, TEMPERATURE, 21, 0).add(1, TEMPERATURE, 22, 0).add(1, HUMIDITY, 60, 0).build();
+        assertSame(clean, validator.filter(clean, listener));
+
+        SensorBatch mixed = new SensorBatch.Builder(3).add(0, TEMPERATURE, 21.5, 1000).add(1, HUMIDITY, -4, 1000)
+                .add(1, TEMPERATURE, Double.POSITIVE_INFINITY, 1000).build();
+        SensorBatch kept = validator.filter(mixed, listener);
+        assertEquals(1, kept.size);
+        assertEquals(21.5, kept.value[0], 0.0);
+        assertEquals(1, validator.rejected(SensorValidator.OUT_OF_RANGE));
+        assertEquals(1, validator.rejected(SensorValidator.NOT_A_NUMBER));
+    }
+}